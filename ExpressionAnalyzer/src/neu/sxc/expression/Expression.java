@@ -4,14 +4,22 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.math.RoundingMode;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import neu.sxc.expression.compile.CompiledExpression;
+import neu.sxc.expression.compile.ExpressionCompiler;
 import neu.sxc.expression.lexical.LexicalAnalyzer;
 import neu.sxc.expression.lexical.LexicalException;
+import neu.sxc.expression.monitor.CompileEvent;
+import neu.sxc.expression.monitor.EvaluateEvent;
+import neu.sxc.expression.monitor.Profiler;
+import neu.sxc.expression.monitor.SlowLog;
+import neu.sxc.expression.monitor.SlowLogEntry;
 import neu.sxc.expression.syntax.SyntaxAnalyzer;
 import neu.sxc.expression.syntax.SyntaxException;
 import neu.sxc.expression.syntax.function.Function;
@@ -19,6 +27,7 @@ import neu.sxc.expression.tokens.TerminalToken;
 import neu.sxc.expression.tokens.TokenBuilder;
 import neu.sxc.expression.tokens.TokenType;
 import neu.sxc.expression.tokens.Valuable;
+import neu.sxc.expression.utils.ExpressionUtil;
 
 /**
  * 表达式
@@ -31,6 +40,11 @@ public class Expression {
 	
 	private String expression;
 	
+	/**
+	 * 表达式指纹，用于在监控数据中标识表达式
+	 */
+	private String fingerprint;
+	
 	/**
 	 * Token序列
 	 */
@@ -66,6 +80,16 @@ public class Expression {
 	 */
 	private SyntaxAnalyzer syntaxAnalyzer= new SyntaxAnalyzer();
 	
+	/**
+	 * 性能剖析器，为null时表示未开启剖析模式
+	 */
+	private Profiler profiler;
+	
+	/**
+	 * 慢日志，为null时不记录
+	 */
+	private SlowLog slowLog;
+	
 	/**
 	 * 除法运算默认采用的scale
 	 */
@@ -92,6 +116,7 @@ public class Expression {
 	
 	public void setExpression(String expression) {
 		this.expression = expression;
+		this.fingerprint = null;
 	}
 	
 	public void setExpression(InputStream source) throws IOException {
@@ -127,7 +152,18 @@ public class Expression {
 	}
 	
 	/**
-	 * 获取所有变量名，调用此方法的前提是已进行词法分析
+	 * 获取表达式指纹
+	 * @return
+	 */
+	public String getFingerprint() {
+		if(fingerprint == null)
+			fingerprint = ExpressionUtil.fingerprint(expression);
+		return fingerprint;
+	}
+	
+	/**
+	 * 获取所有变量名，调用此方法的前提是已进行词法分析。
+	 * 结果包含输入、被赋值的变量和不会执行的分支中的变量，区分它们见CompiledExpression.analyze()
 	 * @return
 	 * @throws LexicalException
 	 */
@@ -201,6 +237,31 @@ public class Expression {
 		functionDefinitions.remove(functionName);
 	}
 	
+	/**
+	 * 开启剖析模式，按操作符、函数和源代码行统计执行次数和耗时，设为null时关闭。
+	 * 同一个Profiler可在多次计算或多个表达式间共享，以累积统计
+	 * @param profiler
+	 */
+	public void setProfiler(Profiler profiler) {
+		this.profiler = profiler;
+	}
+	
+	public Profiler getProfiler() {
+		return profiler;
+	}
+	
+	/**
+	 * 设置慢日志，词法分析或计算耗时超过阈值时写入日志，设为null时关闭
+	 * @param slowLog
+	 */
+	public void setSlowLog(SlowLog slowLog) {
+		this.slowLog = slowLog;
+	}
+	
+	public SlowLog getSlowLog() {
+		return slowLog;
+	}
+	
 	public Valuable getFinalResult() {
 		return finalResult;
 	}
@@ -211,7 +272,21 @@ public class Expression {
 	 * @return token序列
 	 */
 	public List<TerminalToken> lexicalAnalysis() throws LexicalException {
+		CompileEvent event = new CompileEvent();
+		event.begin();
+		long start = System.nanoTime();
 		tokens = lexicalAnalyzer.analysis(expression, functionDefinitions);
+		long lexicalNanos = System.nanoTime() - start;
+		event.end();
+		if(slowLog != null && slowLog.isSlow(lexicalNanos) && slowLog.sample())
+			slowLog.record(new SlowLogEntry(SlowLogEntry.COMPILE, getFingerprint(),
+					null, lexicalNanos, 0, 0, null));
+		if(event.shouldCommit()) {
+			event.setFingerprint(getFingerprint());
+			event.setPhase("lexical");
+			event.setTokenCount(tokens.size());
+			event.commit();
+		}
 		return tokens;
 	}
 	
@@ -224,13 +299,62 @@ public class Expression {
 		if(this.tokens == null) 
 			throw new RuntimeException("The 'tokens' is null, Please go for lexical analysis by invoking 'lexicalAnalysis()' first.");
 		
+		EvaluateEvent event = new EvaluateEvent();
+		event.begin();
+		boolean sampled = slowLog != null && slowLog.sample();
+		//仅在事件开启或慢日志采样时记录执行路径
+		syntaxAnalyzer.setBranchRecording(event.isEnabled() || sampled);
+		syntaxAnalyzer.setProfiler(profiler);
+		long start = System.nanoTime();
 		//语法分析，返回最终结果
 		finalResult = syntaxAnalyzer.analysis(tokens, variableInitialValues);
 		//设置执行之后变量值
 		variableResult = syntaxAnalyzer.getVariableTable();
+		long evaluateNanos = System.nanoTime() - start;
+		event.end();
+		//语法分析与计算同时进行，其耗时计入计算阶段
+		if(sampled && slowLog.isSlow(evaluateNanos))
+			slowLog.record(new SlowLogEntry(SlowLogEntry.EVALUATE, getFingerprint(),
+					new ArrayList<String>(variableInitialValues.keySet()), 0, 0,
+					evaluateNanos, syntaxAnalyzer.getBranchPath()));
+		if(event.shouldCommit()) {
+			event.setFingerprint(getFingerprint());
+			event.setStatementCount(syntaxAnalyzer.getSentenceCount());
+			event.setBranchPath(syntaxAnalyzer.getBranchPath());
+			event.commit();
+		}
 		return finalResult;
 	}
 	
+	/**
+	 * 编译表达式，调用此方法的前提是已进行词法分析。
+	 * 编译结果与本表达式的变量值无关，可被多个线程复用，用于批量计算
+	 * @return 编译结果
+	 * @throws SyntaxException 语法错误异常
+	 */
+	public CompiledExpression compile() throws SyntaxException {
+		if(this.tokens == null) 
+			throw new RuntimeException("The 'tokens' is null, Please go for lexical analysis by invoking 'lexicalAnalysis()' first.");
+		
+		CompileEvent event = new CompileEvent();
+		event.begin();
+		long start = System.nanoTime();
+		CompiledExpression compiledExpression = new ExpressionCompiler().compile(expression, tokens);
+		long parseNanos = System.nanoTime() - start;
+		event.end();
+		//词法分析在lexicalAnalysis中单独记录
+		if(slowLog != null && slowLog.isSlow(parseNanos) && slowLog.sample())
+			slowLog.record(new SlowLogEntry(SlowLogEntry.COMPILE, getFingerprint(),
+					null, 0, parseNanos, 0, null));
+		if(event.shouldCommit()) {
+			event.setFingerprint(getFingerprint());
+			event.setPhase("syntax");
+			event.setTokenCount(tokens.size());
+			event.commit();
+		}
+		return compiledExpression;
+	}
+	
 	/**
 	 * 解析表达式，先执行词法分析，然后计算表达式
 	 * @return 解析结果
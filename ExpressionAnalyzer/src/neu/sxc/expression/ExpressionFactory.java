@@ -4,6 +4,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 
+import neu.sxc.expression.monitor.SlowLog;
+
 /**
  * 表达式工厂类
  * @author shanxuecheng
@@ -13,21 +15,43 @@ public class ExpressionFactory {
 	
 	private static ExpressionFactory expressionFactory = new ExpressionFactory();
 	
+	/**
+	 * 工厂创建的表达式共用的慢日志
+	 */
+	private volatile SlowLog slowLog;
+	
 	private ExpressionFactory() {}
 	
 	public static ExpressionFactory getInstance() {
 		return expressionFactory;
 	}
 	
+	/**
+	 * 设置慢日志，之后由本工厂创建的表达式均写入该日志，设为null时关闭
+	 * @param slowLog
+	 */
+	public void setSlowLog(SlowLog slowLog) {
+		this.slowLog = slowLog;
+	}
+	
+	public SlowLog getSlowLog() {
+		return slowLog;
+	}
+	
 	public Expression getExpression(String expression) {
-		return new Expression(expression);
+		return configure(new Expression(expression));
 	}
 	
 	public Expression getExpression(InputStream source) throws IOException {
-		return new Expression(source);
+		return configure(new Expression(source));
 	}
 	
 	public Expression getExpression(Reader source) throws IOException {
-		return new Expression(source);
+		return configure(new Expression(source));
+	}
+	
+	private Expression configure(Expression expression) {
+		expression.setSlowLog(slowLog);
+		return expression;
 	}
 }
@@ -0,0 +1,453 @@
+package neu.sxc.expression.batch;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import neu.sxc.expression.compile.CompiledExpression;
+import neu.sxc.expression.compile.Frame;
+import neu.sxc.expression.compile.rule.RuleEvaluationException;
+import neu.sxc.expression.compile.rule.RuleSet;
+import neu.sxc.expression.compile.rule.RuleSetBuilder;
+import neu.sxc.expression.tokens.DataType;
+import neu.sxc.expression.tokens.Valuable;
+
+/**
+ * 批量计算记录文件。
+ * 输入文件按记录边界分段，各段用FileChannel.map只读映射后在线程池中并行计算，每个任务使用自己的帧，
+ * 变量只在执行路径上被读取时才从映射区解析。
+ * 同时计算的段不超过并行度的两倍，按文件顺序取出结果后才提交后面的段，未写出的结果所占内存因此有界。
+ * 计算结果每条记录一行，按文件顺序经缓冲流写出；过滤结果为位图，第i条记录对应第i>>>3字节的第(i&7)位，经映射区写出
+ * @author shanxuecheng
+ *
+ */
+public class BatchRunner {
+	
+	private static final long MIN_CHUNK_SIZE = 1L << 20;
+	
+	private static final long MAX_CHUNK_SIZE = 1L << 28;
+	
+	private final CompiledExpression compiled;
+	
+	private final RuleSet rules;
+	
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	
+	/**
+	 * 分段大小，为0时按文件大小和并行度确定
+	 */
+	private long chunkSize = 0;
+	
+	public BatchRunner(CompiledExpression compiled) {
+		if(compiled == null)
+			throw new IllegalArgumentException("Compiled expression can not be null.");
+		this.compiled = compiled;
+		this.rules = null;
+	}
+	
+	public BatchRunner(RuleSet rules) {
+		if(rules == null)
+			throw new IllegalArgumentException("Rule set can not be null.");
+		this.compiled = null;
+		this.rules = rules;
+	}
+	
+	public BatchRunner setParallelism(int parallelism) {
+		if(parallelism < 1)
+			throw new IllegalArgumentException("Parallelism must be positive.");
+		this.parallelism = parallelism;
+		return this;
+	}
+	
+	/**
+	 * 设置分段大小，单条记录更长时该段只含这条记录
+	 * @param chunkSize 字节数，为0时自动确定
+	 * @return
+	 */
+	public BatchRunner setChunkSize(long chunkSize) {
+		if(chunkSize < 0 || chunkSize > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Illegal chunk size:" + chunkSize + ".");
+		this.chunkSize = chunkSize;
+		return this;
+	}
+	
+	/**
+	 * 计算每条记录，结果每行一条：NUMBER为不含指数的数字，DATE为yyyy-MM-dd HH:mm:ss，
+	 * 规则集为逗号分隔的匹配规则id，没有值时为空行，出错时为"ERROR: "加错误信息；
+	 * 规则集中部分规则出错时，匹配的规则id之后以空格分隔，为"ERROR: "加各出错规则的信息，以"; "分隔，该记录计为错误
+	 * @param input
+	 * @param format
+	 * @param output
+	 * @return
+	 * @throws IOException
+	 */
+	public BatchSummary evaluate(Path input, InputFormat format, Path output) throws IOException {
+		long start = System.currentTimeMillis();
+		try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ);
+				OutputStream out = new BufferedOutputStream(Files.newOutputStream(output), 1 << 16)) {
+			ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+			try {
+				RecordSource source = RecordSource.open(channel, format);
+				List<long[]> chunks = source.split(channel, chunkSize(channel.size()));
+				ChunkWindow window = new ChunkWindow(executor, channel, source, chunks, true);
+				long records = 0, matched = 0, errors = 0;
+				ChunkResult result;
+				while((result = window.next()) != null) {
+					result.lines.writeTo(out);
+					records += result.records;
+					matched += result.matched;
+					errors += result.errors;
+				}
+				out.flush();
+				return new BatchSummary(records, matched, errors, chunks.size(), System.currentTimeMillis() - start);
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+	}
+	
+	/**
+	 * 过滤记录，结果为TRUE或有规则匹配的记录在位图中置位，出错或结果不是BOOLEAN的记录不置位并计为错误；
+	 * 规则集中部分规则出错的记录按其余规则的匹配置位，并计为错误
+	 * @param input
+	 * @param format
+	 * @param output 位图文件，长度为记录数除以8向上取整
+	 * @return
+	 * @throws IOException
+	 */
+	public BatchSummary filter(Path input, InputFormat format, Path output) throws IOException {
+		long start = System.currentTimeMillis();
+		try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+			ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+			try {
+				RecordSource source = RecordSource.open(channel, format);
+				List<long[]> chunks = source.split(channel, chunkSize(channel.size()));
+				ChunkWindow window = new ChunkWindow(executor, channel, source, chunks, false);
+				List<ChunkResult> results = new ArrayList<ChunkResult>();
+				long records = 0, matched = 0, errors = 0;
+				ChunkResult result;
+				while((result = window.next()) != null) {
+					results.add(result);
+					records += result.records;
+					matched += result.matched;
+					errors += result.errors;
+				}
+				writeBitmap(output, results, records);
+				return new BatchSummary(records, matched, errors, chunks.size(), System.currentTimeMillis() - start);
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+	}
+	
+	private long chunkSize(long size) {
+		if(chunkSize > 0)
+			return chunkSize;
+		return Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, size / (parallelism * 4L)));
+	}
+	
+	private static ChunkResult get(Future<ChunkResult> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Batch interrupted.", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof IOException)
+				throw (IOException)cause;
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			throw new IOException(cause);
+		}
+	}
+	
+	/**
+	 * 将各段的位图按文件顺序拼接，经映射区写出
+	 */
+	private static void writeBitmap(Path output, List<ChunkResult> results, long records) throws IOException {
+		long length = (records + 7) >>> 3;
+		try (FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			if(length == 0)
+				return;
+			MappedByteBuffer bitmap = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+			long base = 0;
+			for(ChunkResult result : results) {
+				for(int i=result.bits.nextSetBit(0); i>=0; i=result.bits.nextSetBit(i + 1)) {
+					long bit = base + i;
+					int index = (int)(bit >>> 3);
+					bitmap.put(index, (byte)(bitmap.get(index) | (1 << (bit & 7))));
+				}
+				base += result.records;
+			}
+			bitmap.force();
+		}
+	}
+	
+	/**
+	 * 按文件顺序取各段的结果，已提交未取出的段不超过并行度的两倍
+	 */
+	private class ChunkWindow {
+		
+		private final ExecutorService executor;
+		
+		private final FileChannel channel;
+		
+		private final RecordSource source;
+		
+		private final List<long[]> chunks;
+		
+		private final boolean evaluating;
+		
+		private final ArrayDeque<Future<ChunkResult>> inFlight = new ArrayDeque<Future<ChunkResult>>();
+		
+		private int submitted = 0;
+		
+		private ChunkWindow(ExecutorService executor, FileChannel channel, RecordSource source,
+				List<long[]> chunks, boolean evaluating) {
+			this.executor = executor;
+			this.channel = channel;
+			this.source = source;
+			this.chunks = chunks;
+			this.evaluating = evaluating;
+		}
+		
+		/**
+		 * @return 下一段的结果，没有更多段时返回null
+		 * @throws IOException
+		 */
+		private ChunkResult next() throws IOException {
+			while(submitted < chunks.size() && inFlight.size() < parallelism * 2)
+				inFlight.add(executor.submit(new ChunkTask(channel, source, chunks.get(submitted++), evaluating)));
+			Future<ChunkResult> future = inFlight.poll();
+			return future == null ? null : get(future);
+		}
+	}
+	
+	/**
+	 * 一段的计算结果
+	 */
+	private static class ChunkResult {
+		
+		private final ByteArrayOutputStream lines;
+		
+		private final BitSet bits;
+		
+		private int records = 0;
+		
+		private int matched = 0;
+		
+		private int errors = 0;
+		
+		private ChunkResult(boolean evaluating) {
+			lines = evaluating ? new ByteArrayOutputStream() : null;
+			bits = evaluating ? null : new BitSet();
+		}
+	}
+	
+	/**
+	 * 计算一段记录
+	 */
+	private class ChunkTask implements Callable<ChunkResult> {
+		
+		private final FileChannel channel;
+		
+		private final RecordSource source;
+		
+		private final long[] chunk;
+		
+		private final boolean evaluating;
+		
+		private ChunkTask(FileChannel channel, RecordSource source, long[] chunk, boolean evaluating) {
+			this.channel = channel;
+			this.source = source;
+			this.chunk = chunk;
+			this.evaluating = evaluating;
+		}
+		
+		public ChunkResult call() throws IOException {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, chunk[0], chunk[1] - chunk[0]);
+			RecordSource.Cursor cursor = source.cursor(buffer,
+					compiled != null ? compiled.getVariableNames() : rules.getVariableNames());
+			Frame frame = compiled != null ? compiled.newFrame() : rules.newFrame();
+			SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+			ChunkResult result = new ChunkResult(evaluating);
+			StringBuilder line = new StringBuilder();
+			List<RuleEvaluationException> failures = new ArrayList<RuleEvaluationException>();
+			while(cursor.next()) {
+				int record = result.records++;
+				line.setLength(0);
+				boolean match;
+				try {
+					if(compiled != null) {
+						compiled.bind(frame, cursor);
+						Valuable value = compiled.evaluate(frame);
+						if(evaluating) {
+							match = value != null && value.getDataType() == DataType.BOOLEAN && value.getBooleanValue();
+							format(value, dateFormat, line);
+						} else {
+							match = CompiledExpression.isTrue(value);
+						}
+					} else {
+						rules.bind(frame, cursor);
+						failures.clear();
+						List<String> ids = rules.match(frame, failures);
+						match = !ids.isEmpty();
+						if(evaluating)
+							for(int i=0; i<ids.size(); i++)
+								line.append(i == 0 ? "" : ",").append(ids.get(i));
+						if(!failures.isEmpty()) {
+							result.errors++;
+							if(evaluating) {
+								line.append(ids.isEmpty() ? "ERROR: " : " ERROR: ");
+								for(int i=0; i<failures.size(); i++)
+									line.append(i == 0 ? "" : "; ")
+											.append(String.valueOf(failures.get(i).getMessage()).replace('\n', ' '));
+							}
+						}
+					}
+				} catch (RuntimeException e) {
+					result.errors++;
+					match = false;
+					line.setLength(0);
+					line.append("ERROR: ").append(String.valueOf(e.getMessage()).replace('\n', ' '));
+				}
+				if(match) {
+					result.matched++;
+					if(!evaluating)
+						result.bits.set(record);
+				}
+				if(evaluating) {
+					line.append('\n');
+					result.lines.write(line.toString().getBytes(StandardCharsets.UTF_8));
+				}
+			}
+			return result;
+		}
+	}
+	
+	private static void format(Valuable value, SimpleDateFormat dateFormat, StringBuilder line) {
+		if(value == null || value.getValue() == null)
+			return;
+		if(value.getDataType() == DataType.NUMBER)
+			line.append(value.getNumberValue().toPlainString());
+		else if(value.getDataType() == DataType.DATE)
+			line.append(dateFormat.format(value.getDateValue().getTime()));
+		else
+			line.append(String.valueOf(value.getValue()).replace('\n', ' '));
+	}
+	
+	/**
+	 * 命令行入口，参数见runCommand
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		int code = runCommand(args, System.out);
+		if(code != 0)
+			System.exit(code);
+	}
+	
+	/**
+	 * 执行命令行：
+	 * <pre>
+	 * (-e 表达式 | -f 表达式文件 | -r 规则文件) -i 输入文件 [-t csv|binary] -o 输出文件 [--filter] [-p 线程数]
+	 * </pre>
+	 * 规则文件每行一条规则，格式为"id: 源码"，以#开头的行和空行被忽略
+	 * @param args
+	 * @param out 输出统计或错误信息
+	 * @return 成功时返回0，参数错误返回2，计算失败返回1
+	 */
+	public static int runCommand(String[] args, PrintStream out) {
+		String expression = null, expressionFile = null, ruleFile = null, input = null, output = null;
+		InputFormat format = InputFormat.CSV;
+		boolean filter = false;
+		int parallelism = Runtime.getRuntime().availableProcessors();
+		try {
+			for(int i=0; i<args.length; i++) {
+				String arg = args[i];
+				if("--filter".equals(arg)) {
+					filter = true;
+					continue;
+				}
+				if(i + 1 >= args.length)
+					throw new IllegalArgumentException("Missing value for " + arg + ".");
+				String value = args[++i];
+				if("-e".equals(arg))
+					expression = value;
+				else if("-f".equals(arg))
+					expressionFile = value;
+				else if("-r".equals(arg))
+					ruleFile = value;
+				else if("-i".equals(arg))
+					input = value;
+				else if("-o".equals(arg))
+					output = value;
+				else if("-t".equals(arg))
+					format = InputFormat.valueOf(value.toUpperCase());
+				else if("-p".equals(arg))
+					parallelism = Integer.parseInt(value);
+				else
+					throw new IllegalArgumentException("Unknown option:" + arg + ".");
+			}
+			int sources = (expression != null ? 1 : 0) + (expressionFile != null ? 1 : 0) + (ruleFile != null ? 1 : 0);
+			if(sources != 1 || input == null || output == null)
+				throw new IllegalArgumentException("Exactly one of -e, -f, -r and both -i, -o are required.");
+		} catch (IllegalArgumentException e) {
+			out.println(e.getMessage());
+			out.println("Usage: (-e expression | -f expression-file | -r rule-file) -i input [-t csv|binary] -o output [--filter] [-p threads]");
+			return 2;
+		}
+		try {
+			BatchRunner runner;
+			if(ruleFile != null) {
+				runner = new BatchRunner(readRules(Paths.get(ruleFile)));
+			} else {
+				String source = expression != null ? expression
+						: new String(Files.readAllBytes(Paths.get(expressionFile)), StandardCharsets.UTF_8);
+				runner = new BatchRunner(CompiledExpression.compile(source));
+			}
+			runner.setParallelism(parallelism);
+			BatchSummary summary = filter ? runner.filter(Paths.get(input), format, Paths.get(output))
+					: runner.evaluate(Paths.get(input), format, Paths.get(output));
+			out.println(summary);
+			return 0;
+		} catch (Exception e) {
+			out.println("ERROR: " + e.getMessage());
+			return 1;
+		}
+	}
+	
+	private static RuleSet readRules(Path file) throws IOException {
+		RuleSetBuilder builder = new RuleSetBuilder();
+		for(String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+			line = line.trim();
+			if(line.isEmpty() || line.startsWith("#"))
+				continue;
+			int colon = line.indexOf(':');
+			if(colon <= 0)
+				throw new IllegalArgumentException("Illegal rule line:" + line + ".");
+			builder.addRule(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+		}
+		return builder.build();
+	}
+}
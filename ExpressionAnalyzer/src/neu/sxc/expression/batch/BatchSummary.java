@@ -0,0 +1,62 @@
+package neu.sxc.expression.batch;
+
+/**
+ * 批量计算的统计
+ * @author shanxuecheng
+ *
+ */
+public class BatchSummary {
+	
+	private final long recordCount;
+	
+	private final long matchedCount;
+	
+	private final long errorCount;
+	
+	private final int chunkCount;
+	
+	private final long elapsedMillis;
+	
+	BatchSummary(long recordCount, long matchedCount, long errorCount, int chunkCount, long elapsedMillis) {
+		this.recordCount = recordCount;
+		this.matchedCount = matchedCount;
+		this.errorCount = errorCount;
+		this.chunkCount = chunkCount;
+		this.elapsedMillis = elapsedMillis;
+	}
+	
+	public long getRecordCount() {
+		return recordCount;
+	}
+	
+	/**
+	 * @return 结果为TRUE或有规则匹配的记录数
+	 */
+	public long getMatchedCount() {
+		return matchedCount;
+	}
+	
+	/**
+	 * @return 计算出错的记录数
+	 */
+	public long getErrorCount() {
+		return errorCount;
+	}
+	
+	/**
+	 * @return 输入被分成的段数
+	 */
+	public int getChunkCount() {
+		return chunkCount;
+	}
+	
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+	
+	@Override
+	public String toString() {
+		return "records=" + recordCount + ", matched=" + matchedCount + ", errors=" + errorCount
+				+ ", chunks=" + chunkCount + ", elapsed=" + elapsedMillis + "ms";
+	}
+}
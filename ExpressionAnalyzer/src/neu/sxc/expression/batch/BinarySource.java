@@ -0,0 +1,107 @@
+package neu.sxc.expression.batch;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import neu.sxc.expression.compile.binary.RecordSchema;
+
+/**
+ * 二进制记录文件。记录没有同步标记，分段时须顺序读取每条记录的长度，只访问记录头
+ * @author shanxuecheng
+ *
+ */
+final class BinarySource extends RecordSource {
+	
+	/**
+	 * 顺序读取记录长度时每次映射的最大字节数
+	 */
+	private static final long WINDOW = 1L << 30;
+	
+	/**
+	 * 读取头部时映射的最大字节数
+	 */
+	private static final long HEADER_WINDOW = 1L << 20;
+	
+	private final RecordSchema schema;
+	
+	/**
+	 * 第一条记录在文件中的位置
+	 */
+	private final long dataStart;
+	
+	BinarySource(FileChannel channel) throws IOException {
+		MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), HEADER_WINDOW));
+		schema = RecordSchema.readHeader(header);
+		dataStart = header.position();
+	}
+	
+	@Override
+	List<long[]> split(FileChannel channel, long chunkSize) throws IOException {
+		List<long[]> chunks = new ArrayList<long[]>();
+		long size = channel.size();
+		long chunkStart = dataStart;
+		long position = dataStart;
+		while(position < size) {
+			//映射一个窗口，读取完整落在窗口内的记录的长度
+			long windowStart = position;
+			MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+					Math.min(size - windowStart, WINDOW));
+			while(position < size) {
+				int offset = (int)(position - windowStart);
+				if(offset + 4 > window.limit()) {
+					if(position + 4 > size)
+						throw new IllegalStateException("Truncated record at " + position + ".");
+					break;
+				}
+				int length = RecordSchema.recordLength(window, offset);
+				if(length < schema.getFixedSize())
+					throw new IllegalStateException("Corrupt record at " + position + ".");
+				if(offset + (long)length > window.limit()) {
+					if(position + length > size)
+						throw new IllegalStateException("Truncated record at " + position + ".");
+					if(position == windowStart)
+						throw new IllegalStateException("Record at " + position + " is too long.");
+					break;
+				}
+				if(position + length - chunkStart > chunkSize && position > chunkStart) {
+					chunks.add(new long[]{chunkStart, position});
+					chunkStart = position;
+				}
+				position += length;
+			}
+		}
+		if(position > chunkStart)
+			chunks.add(new long[]{chunkStart, position});
+		return chunks;
+	}
+	
+	@Override
+	Cursor cursor(final ByteBuffer chunk, String[] variableNames) {
+		final int[] fields = new int[variableNames.length];
+		for(int i=0; i<variableNames.length; i++)
+			fields[i] = schema.indexOf(variableNames[i]);
+		return new Cursor() {
+			
+			private int record = -1;
+			
+			private int next = 0;
+			
+			@Override
+			boolean next() {
+				if(next >= chunk.limit())
+					return false;
+				record = next;
+				next += RecordSchema.recordLength(chunk, record);
+				return true;
+			}
+			
+			public Object resolve(String name, int slot) {
+				return schema.read(chunk, record, fields[slot]);
+			}
+		};
+	}
+}
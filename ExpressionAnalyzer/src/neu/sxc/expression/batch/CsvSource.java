@@ -0,0 +1,194 @@
+package neu.sxc.expression.batch;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import neu.sxc.expression.tokens.Valuable;
+import neu.sxc.expression.utils.ValueUtil;
+
+/**
+ * CSV文件。第一行为列名，其余每行一条记录，空行被跳过。
+ * 字段只在被读取时解析：带引号的字段为STRING，空字段没有值，true和false为BOOLEAN，
+ * 符合数字格式的为NUMBER，其余为STRING。分段时在换行处切分，因此字段中不能含换行
+ * @author shanxuecheng
+ *
+ */
+final class CsvSource extends RecordSource {
+	
+	/**
+	 * 查找换行时每次读取的字节数
+	 */
+	private static final int SCAN_SIZE = 8192;
+	
+	private final String[] columns;
+	
+	/**
+	 * 第一条记录在文件中的位置
+	 */
+	private final long dataStart;
+	
+	CsvSource(FileChannel channel) throws IOException {
+		long headerEnd = lineEnd(channel, 0);
+		ByteBuffer header = ByteBuffer.allocate((int)(headerEnd - 0));
+		channel.read(header, 0);
+		header.flip();
+		String line = StandardCharsets.UTF_8.decode(header).toString();
+		if(line.startsWith("\uFEFF"))
+			line = line.substring(1);
+		List<String> names = new ArrayList<String>();
+		for(String name : line.split(",", -1)) {
+			name = name.trim();
+			if(name.length() >= 2 && name.startsWith("\"") && name.endsWith("\""))
+				name = name.substring(1, name.length() - 1).replace("\"\"", "\"");
+			names.add(name);
+		}
+		columns = names.toArray(new String[names.size()]);
+		dataStart = Math.min(headerEnd + 1, channel.size());
+	}
+	
+	/**
+	 * @return from之后第一个换行符的位置，没有时返回文件长度
+	 */
+	private static long lineEnd(FileChannel channel, long from) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(SCAN_SIZE);
+		long position = from;
+		while(true) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if(read <= 0)
+				return channel.size();
+			for(int i=0; i<read; i++)
+				if(buffer.get(i) == '\n')
+					return position + i;
+			position += read;
+		}
+	}
+	
+	@Override
+	List<long[]> split(FileChannel channel, long chunkSize) throws IOException {
+		List<long[]> chunks = new ArrayList<long[]>();
+		long size = channel.size();
+		long start = dataStart;
+		while(start < size) {
+			long end = size;
+			if(size - start > chunkSize)
+				end = Math.min(size, lineEnd(channel, start + chunkSize - 1) + 1);
+			chunks.add(new long[]{start, end});
+			start = end;
+		}
+		return chunks;
+	}
+	
+	@Override
+	Cursor cursor(final ByteBuffer chunk, String[] variableNames) {
+		final int[] columnOfSlot = new int[variableNames.length];
+		for(int i=0; i<variableNames.length; i++)
+			columnOfSlot[i] = Arrays.asList(columns).indexOf(variableNames[i]);
+		return new Cursor() {
+			
+			/**
+			 * 当前行各字段的[开始, 结束)位置
+			 */
+			private final int[] starts = new int[columns.length];
+			
+			private final int[] ends = new int[columns.length];
+			
+			private int next = 0;
+			
+			@Override
+			boolean next() {
+				int limit = chunk.limit();
+				while(next < limit) {
+					int lineStart = next;
+					int lineEnd = lineStart;
+					while(lineEnd < limit && chunk.get(lineEnd) != '\n')
+						lineEnd++;
+					next = lineEnd + 1;
+					if(lineEnd > lineStart && chunk.get(lineEnd - 1) == '\r')
+						lineEnd--;
+					if(lineEnd > lineStart) {
+						splitFields(lineStart, lineEnd);
+						return true;
+					}
+				}
+				return false;
+			}
+			
+			/**
+			 * 记录各字段位置，引号中的逗号不分隔字段，缺少的字段为空
+			 */
+			private void splitFields(int from, int to) {
+				int column = 0;
+				int fieldStart = from;
+				boolean quoted = false;
+				for(int i=from; i<to && column<columns.length; i++) {
+					byte b = chunk.get(i);
+					if(b == '"') {
+						quoted = !quoted;
+					} else if(b == ',' && !quoted) {
+						starts[column] = fieldStart;
+						ends[column++] = i;
+						fieldStart = i + 1;
+					}
+				}
+				if(column < columns.length) {
+					starts[column] = fieldStart;
+					ends[column++] = to;
+				}
+				for(; column<columns.length; column++)
+					starts[column] = ends[column] = to;
+			}
+			
+			public Object resolve(String name, int slot) {
+				int column = columnOfSlot[slot];
+				return column < 0 ? null : parse(chunk, starts[column], ends[column]);
+			}
+		};
+	}
+	
+	/**
+	 * 解析字段
+	 * @return 空字段返回null
+	 */
+	private static Valuable parse(ByteBuffer chunk, int start, int end) {
+		while(start < end && chunk.get(start) == ' ')
+			start++;
+		while(end > start && chunk.get(end - 1) == ' ')
+			end--;
+		if(start == end)
+			return null;
+		if(chunk.get(start) == '"') {
+			String value = text(chunk, start + 1, end > start + 1 && chunk.get(end - 1) == '"' ? end - 1 : end);
+			return ValueUtil.stringValue(value.replace("\"\"", "\""));
+		}
+		if(matches(chunk, start, end, "true"))
+			return ValueUtil.booleanValue(true);
+		if(matches(chunk, start, end, "false"))
+			return ValueUtil.booleanValue(false);
+		BigDecimal number = ValueUtil.parseNumber(chunk, start, end);
+		if(number != null)
+			return ValueUtil.numberValue(number);
+		return ValueUtil.stringValue(text(chunk, start, end));
+	}
+	
+	private static boolean matches(ByteBuffer chunk, int start, int end, String word) {
+		if(end - start != word.length())
+			return false;
+		for(int i=0; i<word.length(); i++)
+			if(chunk.get(start + i) != word.charAt(i))
+				return false;
+		return true;
+	}
+	
+	private static String text(ByteBuffer chunk, int start, int end) {
+		byte[] bytes = new byte[end - start];
+		chunk.get(start, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
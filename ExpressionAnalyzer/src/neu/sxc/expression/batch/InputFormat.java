@@ -0,0 +1,18 @@
+package neu.sxc.expression.batch;
+
+/**
+ * 批量计算的输入格式
+ * @author shanxuecheng
+ *
+ */
+public enum InputFormat {
+	/**
+	 * UTF-8 CSV，第一行为列名，字段中不能含换行
+	 */
+	CSV,
+	
+	/**
+	 * RecordSchema头部之后紧接二进制记录
+	 */
+	BINARY
+}
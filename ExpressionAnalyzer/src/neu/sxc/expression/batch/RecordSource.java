@@ -0,0 +1,55 @@
+package neu.sxc.expression.batch;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+import neu.sxc.expression.compile.VariableResolver;
+
+/**
+ * 记录文件，负责读取头部、按记录边界分段和逐条读取
+ * @author shanxuecheng
+ *
+ */
+abstract class RecordSource {
+	
+	/**
+	 * 读取头部
+	 * @param channel
+	 * @param format
+	 * @return
+	 * @throws IOException
+	 */
+	static RecordSource open(FileChannel channel, InputFormat format) throws IOException {
+		return format == InputFormat.CSV ? new CsvSource(channel) : new BinarySource(channel);
+	}
+	
+	/**
+	 * 将头部之后的数据按记录边界分段，每段不超过chunkSize，单条记录更长时该段只含这条记录
+	 * @param channel
+	 * @param chunkSize
+	 * @return 各段在文件中的[开始, 结束)位置，按文件顺序排列
+	 * @throws IOException
+	 */
+	abstract List<long[]> split(FileChannel channel, long chunkSize) throws IOException;
+	
+	/**
+	 * 创建逐条读取一段数据的游标
+	 * @param chunk 一段数据，从0开始
+	 * @param variableNames 按槽位排列的变量名
+	 * @return
+	 */
+	abstract Cursor cursor(ByteBuffer chunk, String[] variableNames);
+	
+	/**
+	 * 记录游标，同时作为当前记录的变量解析器
+	 */
+	static abstract class Cursor implements VariableResolver {
+		/**
+		 * 移到下一条记录
+		 * @return 没有更多记录时返回false
+		 */
+		abstract boolean next();
+	}
+}
@@ -0,0 +1,187 @@
+package neu.sxc.expression.compile;
+
+import java.math.BigDecimal;
+
+/**
+ * 数值聚合：计数、求和、最小值、最大值、平均值。
+ * 默认以Kahan-Neumaier补偿求和，不分配对象；精确模式下以BigDecimal求和，每次累加分配一个BigDecimal，
+ * double值按其十进制表示（BigDecimal.valueOf）累加，最小值、最大值也以BigDecimal保存。
+ * 对象不是线程安全的，并行聚合时各线程使用各自的对象，最后以merge合并
+ * @author shanxuecheng
+ *
+ */
+public class Aggregate {
+	
+	/**
+	 * 是否以BigDecimal精确求和
+	 */
+	private final boolean exact;
+	
+	private long count = 0;
+	
+	private double sum = 0;
+	
+	/**
+	 * 补偿求和中累计的舍入误差
+	 */
+	private double compensation = 0;
+	
+	private BigDecimal exactSum = BigDecimal.ZERO;
+	
+	private double min = Double.POSITIVE_INFINITY;
+	
+	private double max = Double.NEGATIVE_INFINITY;
+	
+	/**
+	 * 精确模式下的最小值、最大值，没有值时为null
+	 */
+	private BigDecimal exactMin = null;
+	
+	private BigDecimal exactMax = null;
+	
+	public Aggregate() {
+		this(false);
+	}
+	
+	/**
+	 * @param exact 是否以BigDecimal精确求和
+	 */
+	public Aggregate(boolean exact) {
+		this.exact = exact;
+	}
+	
+	public boolean isExact() {
+		return exact;
+	}
+	
+	public void add(double value) {
+		if(exact) {
+			add(BigDecimal.valueOf(value));
+			return;
+		}
+		count++;
+		addToSum(value);
+		if(value < min)
+			min = value;
+		if(value > max)
+			max = value;
+	}
+	
+	public void add(BigDecimal value) {
+		if(!exact) {
+			add(value.doubleValue());
+			return;
+		}
+		count++;
+		exactSum = exactSum.add(value);
+		addToExtremes(value);
+	}
+	
+	private void addToExtremes(BigDecimal value) {
+		if(exactMin == null || value.compareTo(exactMin) < 0)
+			exactMin = value;
+		if(exactMax == null || value.compareTo(exactMax) > 0)
+			exactMax = value;
+	}
+	
+	private void addToSum(double value) {
+		double total = sum + value;
+		if(Math.abs(sum) >= Math.abs(value))
+			compensation += (sum - total) + value;
+		else
+			compensation += (value - total) + sum;
+		sum = total;
+	}
+	
+	/**
+	 * 合并另一个聚合结果
+	 * @param other
+	 * @return this
+	 */
+	public Aggregate merge(Aggregate other) {
+		if(other.count == 0)
+			return this;
+		count += other.count;
+		if(exact) {
+			exactSum = exactSum.add(other.getExactSum());
+			addToExtremes(other.getExactMin());
+			addToExtremes(other.getExactMax());
+			return this;
+		}
+		if(other.exact) {
+			addToSum(other.getSum());
+		} else {
+			addToSum(other.sum);
+			addToSum(other.compensation);
+		}
+		if(other.getMin() < min)
+			min = other.getMin();
+		if(other.getMax() > max)
+			max = other.getMax();
+		return this;
+	}
+	
+	public long getCount() {
+		return count;
+	}
+	
+	public double getSum() {
+		return exact ? exactSum.doubleValue() : sum + compensation;
+	}
+	
+	/**
+	 * @return 和，非精确模式下由补偿求和结果转换
+	 */
+	public BigDecimal getExactSum() {
+		return exact ? exactSum : new BigDecimal(sum).add(new BigDecimal(compensation));
+	}
+	
+	/**
+	 * @return 最小值，没有值时返回NaN
+	 */
+	public double getMin() {
+		if(count == 0)
+			return Double.NaN;
+		return exact ? exactMin.doubleValue() : min;
+	}
+	
+	/**
+	 * @return 最大值，没有值时返回NaN
+	 */
+	public double getMax() {
+		if(count == 0)
+			return Double.NaN;
+		return exact ? exactMax.doubleValue() : max;
+	}
+	
+	/**
+	 * @return 最小值，非精确模式下由double转换，没有值时返回null
+	 */
+	public BigDecimal getExactMin() {
+		if(count == 0)
+			return null;
+		return exact ? exactMin : BigDecimal.valueOf(min);
+	}
+	
+	/**
+	 * @return 最大值，非精确模式下由double转换，没有值时返回null
+	 */
+	public BigDecimal getExactMax() {
+		if(count == 0)
+			return null;
+		return exact ? exactMax : BigDecimal.valueOf(max);
+	}
+	
+	/**
+	 * @return 平均值，没有值时返回NaN
+	 */
+	public double getAverage() {
+		return count == 0 ? Double.NaN : getSum() / count;
+	}
+	
+	@Override
+	public String toString() {
+		return "count=" + count + ", sum=" + getSum() + ", min=" + getMin()
+				+ ", max=" + getMax() + ", avg=" + getAverage();
+	}
+}
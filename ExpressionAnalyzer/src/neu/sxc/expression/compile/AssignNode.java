@@ -0,0 +1,51 @@
+package neu.sxc.expression.compile;
+
+import neu.sxc.expression.syntax.ArgumentsMismatchException;
+import neu.sxc.expression.tokens.DelimiterToken;
+import neu.sxc.expression.tokens.Valuable;
+
+/**
+ * 赋值节点，语义与AssignOperator相同，但结果写入Frame而不修改VariableToken
+ * @author shanxuecheng
+ *
+ */
+public final class AssignNode extends Node {
+	
+	/**
+	 * 被赋值的变量
+	 */
+	private final VariableNode variable;
+	
+	private final Node value;
+	
+	public AssignNode(DelimiterToken assignToken, VariableNode variable, Node value) {
+		super(assignToken);
+		this.variable = variable;
+		this.value = value;
+	}
+	
+	public VariableNode getVariable() {
+		return variable;
+	}
+	
+	public Node getValue() {
+		return value;
+	}
+	
+	public int getSlot() {
+		return variable.getSlot();
+	}
+
+	@Override
+	public Valuable evaluate(Frame frame) {
+		Valuable result = value.evaluate(frame);
+		Valuable current = frame.resolve(variable.getSlot());
+		//若变量已定义，则先判断数据类型是否匹配再赋值
+		if(current != null && current.getDataType() != result.getDataType())
+			throw new ArgumentsMismatchException("Type mismatch in assignment: cannot convert from "
+							+ result.getDataType().name() + " to "
+							+ current.getDataType().name() + ".", getToken());
+		frame.set(variable.getSlot(), result);
+		return result;
+	}
+}
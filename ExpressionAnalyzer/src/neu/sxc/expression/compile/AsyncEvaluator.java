@@ -0,0 +1,149 @@
+package neu.sxc.expression.compile;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
+
+import neu.sxc.expression.tokens.Valuable;
+import neu.sxc.expression.utils.DataLoader;
+
+/**
+ * 异步计算。
+ * 函数或变量解析器可返回CompletableFuture（通常来自DataLoader.load），值未加载时语句挂起。
+ * 每轮执行所有计算中可执行的语句，然后对每个加载器发起一次批量加载，全部完成后进入下一轮，
+ * 因此远程访问次数取决于依赖层数，而非计算个数与访问次数之积。
+ * 结果与同步计算相同，出错时报告顺序执行时第一个出错的语句。
+ * 挂起的语句重新执行时会再次调用其中的函数和解析器，它们应返回已缓存的值，DataLoader满足这一点。
+ * 不是线程安全的：先提交所有计算，再调用run
+ * @author shanxuecheng
+ *
+ */
+public class AsyncEvaluator {
+	
+	private final List<DataLoader<?, ?>> loaders = new ArrayList<DataLoader<?, ?>>();
+	
+	/**
+	 * 各表达式的依赖图及各语句的读、写槽位集合
+	 */
+	private final Map<CompiledExpression, StatementGraph> graphs =
+			new IdentityHashMap<CompiledExpression, StatementGraph>();
+	
+	private final Map<CompiledExpression, BitSet[][]> slotSets =
+			new IdentityHashMap<CompiledExpression, BitSet[][]>();
+	
+	private List<AsyncJob> jobs = new ArrayList<AsyncJob>();
+	
+	private volatile int roundCount = 0;
+	
+	/**
+	 * 添加加载器，每轮结束时对其发起批量加载
+	 * @param loader
+	 */
+	public void addLoader(DataLoader<?, ?> loader) {
+		loaders.add(loader);
+	}
+	
+	/**
+	 * 提交计算
+	 * @param compiled
+	 * @param variables 变量初始值
+	 * @return 计算结果，在run之后完成
+	 */
+	public CompletableFuture<Valuable> submit(CompiledExpression compiled, Map<String, ?> variables) {
+		Frame frame = compiled.newFrame();
+		compiled.bind(frame, variables);
+		return submit(compiled, frame);
+	}
+	
+	/**
+	 * 提交按需解析变量的计算，解析器可返回CompletableFuture
+	 * @param compiled
+	 * @param resolver
+	 * @return 计算结果，在run之后完成
+	 */
+	public CompletableFuture<Valuable> submit(CompiledExpression compiled, VariableResolver resolver) {
+		Frame frame = compiled.newFrame();
+		compiled.bind(frame, resolver);
+		return submit(compiled, frame);
+	}
+	
+	private CompletableFuture<Valuable> submit(CompiledExpression compiled, Frame frame) {
+		StatementGraph graph = graphs.get(compiled);
+		if(graph == null) {
+			graph = new StatementGraph(compiled);
+			int count = graph.getStatementCount();
+			BitSet[][] sets = new BitSet[2][count];
+			for(int i=0; i<count; i++) {
+				sets[0][i] = toBitSet(graph.reads(i));
+				sets[1][i] = toBitSet(graph.writes(i));
+			}
+			graphs.put(compiled, graph);
+			slotSets.put(compiled, sets);
+		}
+		BitSet[][] sets = slotSets.get(compiled);
+		AsyncJob job = new AsyncJob(compiled, graph, sets[0], sets[1], frame);
+		jobs.add(job);
+		return job.result;
+	}
+	
+	private static BitSet toBitSet(int[] slots) {
+		BitSet set = new BitSet();
+		for(int slot : slots)
+			set.set(slot);
+		return set;
+	}
+	
+	/**
+	 * 计算所有已提交的计算
+	 * @return 所有计算结束时完成
+	 */
+	public CompletableFuture<Void> run() {
+		CompletableFuture<Void> finished = new CompletableFuture<Void>();
+		List<AsyncJob> submitted = jobs;
+		jobs = new ArrayList<AsyncJob>();
+		round(submitted, finished);
+		return finished;
+	}
+	
+	/**
+	 * 执行一轮，然后批量加载挂起的语句等待的值
+	 */
+	private void round(List<AsyncJob> active, final CompletableFuture<Void> finished) {
+		roundCount++;
+		List<CompletableFuture<?>> waiting = new ArrayList<CompletableFuture<?>>();
+		final List<AsyncJob> remaining = new ArrayList<AsyncJob>();
+		for(AsyncJob job : active) {
+			try {
+				if(!job.step(waiting))
+					remaining.add(job);
+			} catch(Throwable e) {
+				job.result.completeExceptionally(e);
+			}
+		}
+		if(remaining.isEmpty()) {
+			finished.complete(null);
+			return;
+		}
+		for(DataLoader<?, ?> loader : loaders)
+			loader.dispatch();
+		//加载失败的值在重新执行语句时抛出
+		CompletableFuture.allOf(waiting.toArray(new CompletableFuture<?>[waiting.size()]))
+				.handle(new BiFunction<Void, Throwable, Void>() {
+					public Void apply(Void value, Throwable error) {
+						round(remaining, finished);
+						return null;
+					}
+				});
+	}
+	
+	/**
+	 * @return 已执行的轮数
+	 */
+	public int getRoundCount() {
+		return roundCount;
+	}
+}
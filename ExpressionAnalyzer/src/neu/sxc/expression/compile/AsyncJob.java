@@ -0,0 +1,122 @@
+package neu.sxc.expression.compile;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import neu.sxc.expression.syntax.PendingValueException;
+import neu.sxc.expression.tokens.Valuable;
+
+/**
+ * 一次异步计算。
+ * 每轮按顺序执行所有可执行的顶层语句：语句与之前未完成的语句没有读写冲突时才执行，
+ * 因此提前执行不改变顺序执行的结果。语句因等待值挂起时恢复它可能写的变量及其解析状态，
+ * 值加载后整条语句重新执行
+ * @author shanxuecheng
+ *
+ */
+final class AsyncJob {
+	
+	private final CompiledExpression compiled;
+	
+	private final StatementGraph graph;
+	
+	/**
+	 * 各语句的读、写槽位集合
+	 */
+	private final BitSet[] reads;
+	
+	private final BitSet[] writes;
+	
+	private final Frame frame;
+	
+	private final boolean[] done;
+	
+	/**
+	 * 各语句的值
+	 */
+	private final Valuable[] values;
+	
+	/**
+	 * 之前有语句未完成时出错的语句，轮到它时才报告
+	 */
+	private final RuntimeException[] errors;
+	
+	final CompletableFuture<Valuable> result = new CompletableFuture<Valuable>();
+	
+	AsyncJob(CompiledExpression compiled, StatementGraph graph,
+			BitSet[] reads, BitSet[] writes, Frame frame) {
+		this.compiled = compiled;
+		this.graph = graph;
+		this.reads = reads;
+		this.writes = writes;
+		this.frame = frame;
+		int count = graph.getStatementCount();
+		done = new boolean[count];
+		values = new Valuable[count];
+		errors = new RuntimeException[count];
+	}
+	
+	/**
+	 * 执行所有可执行的语句
+	 * @param waiting 收集挂起的语句等待的值
+	 * @return 计算是否已结束
+	 */
+	boolean step(List<CompletableFuture<?>> waiting) {
+		Statement[] statements = compiled.getStatements();
+		//之前未完成的语句的读写集合
+		BitSet blockedReads = new BitSet();
+		BitSet blockedWrites = new BitSet();
+		boolean blocked = false;
+		for(int i=0; i<statements.length; i++) {
+			if(done[i])
+				continue;
+			if(errors[i] == null && (!blocked
+					|| !reads[i].intersects(blockedWrites) && !writes[i].intersects(blockedReads))) {
+				try {
+					values[i] = execute(statements[i], graph.writes(i));
+					done[i] = true;
+					continue;
+				} catch(PendingValueException e) {
+					waiting.addAll(e.getFutures());
+				} catch(RuntimeException e) {
+					errors[i] = e;
+				}
+			}
+			if(errors[i] != null && !blocked) {
+				result.completeExceptionally(errors[i]);
+				return true;
+			}
+			blocked = true;
+			blockedReads.or(reads[i]);
+			blockedWrites.or(writes[i]);
+		}
+		if(blocked)
+			return false;
+		Valuable value = null;
+		for(Valuable statementValue : values)
+			if(statementValue != null)
+				value = statementValue;
+		result.complete(value);
+		return true;
+	}
+	
+	/**
+	 * 执行语句，挂起时恢复语句可能写的变量
+	 */
+	private Valuable execute(Statement statement, int[] writeSlots) {
+		Valuable[] saved = new Valuable[writeSlots.length];
+		boolean[] resolved = new boolean[writeSlots.length];
+		for(int k=0; k<writeSlots.length; k++) {
+			saved[k] = frame.get(writeSlots[k]);
+			resolved[k] = frame.isResolved(writeSlots[k]);
+		}
+		try {
+			return statement.execute(frame);
+		} catch(PendingValueException e) {
+			for(int k=0; k<writeSlots.length; k++)
+				frame.restore(writeSlots[k], saved[k], resolved[k]);
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,481 @@
+package neu.sxc.expression.compile;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import neu.sxc.expression.Expression;
+import neu.sxc.expression.ExpressionFactory;
+import neu.sxc.expression.lexical.LexicalException;
+import neu.sxc.expression.syntax.SyntaxException;
+import neu.sxc.expression.syntax.function.Function;
+import neu.sxc.expression.tokens.DataType;
+import neu.sxc.expression.tokens.TokenBuilder;
+import neu.sxc.expression.tokens.Valuable;
+import neu.sxc.expression.utils.Bitmap;
+import neu.sxc.expression.utils.SegmentAction;
+import neu.sxc.expression.utils.SegmentTask;
+
+/**
+ * 编译后的表达式。
+ * 编译结果不可变，可被多个线程同时计算，每次计算的变量值保存在各自的Frame中。
+ * 与解释执行的区别：单独作为语句读取未定义的变量（如"q;"）时，解释执行得到没有值的结果，
+ * 编译后的计算与其他读取一样抛出VariableNotInitializedException
+ * @author shanxuecheng
+ *
+ */
+public class CompiledExpression {
+	
+	private final String source;
+	
+	private final String fingerprint;
+	
+	/**
+	 * 顶层语句
+	 */
+	private final Statement[] statements;
+	
+	/**
+	 * 按槽位排列的变量名
+	 */
+	private final String[] variableNames;
+	
+	/**
+	 * 变量名及其槽位
+	 */
+	private final Map<String, Integer> slots = new HashMap<String, Integer>();
+	
+	public CompiledExpression(String source, String fingerprint,
+			Statement[] statements, String[] variableNames) {
+		this.source = source;
+		this.fingerprint = fingerprint;
+		this.statements = statements;
+		this.variableNames = variableNames;
+		for(int i=0; i<variableNames.length; i++)
+			slots.put(variableNames[i], i);
+	}
+	
+	/**
+	 * 解析并编译表达式
+	 * @param source 表达式源码
+	 * @param functions 表达式中用到的自定义函数
+	 * @return
+	 * @throws LexicalException
+	 * @throws SyntaxException
+	 */
+	public static CompiledExpression compile(String source, Function... functions) {
+		Expression expression = ExpressionFactory.getInstance().getExpression(source);
+		for(Function function : functions)
+			expression.addFunction(function);
+		expression.lexicalAnalysis();
+		return expression.compile();
+	}
+	
+	public String getSource() {
+		return source;
+	}
+	
+	public String getFingerprint() {
+		return fingerprint;
+	}
+	
+	public Statement[] getStatements() {
+		return statements;
+	}
+	
+	/**
+	 * @return 按槽位排列的变量名
+	 */
+	public String[] getVariableNames() {
+		return variableNames.clone();
+	}
+	
+	/**
+	 * 获取变量槽位
+	 * @param variableName
+	 * @return 变量不存在时返回-1
+	 */
+	public int getSlot(String variableName) {
+		Integer slot = slots.get(variableName);
+		return slot == null ? -1 : slot;
+	}
+	
+	/**
+	 * 静态分析表达式读写的变量和调用的函数
+	 * @return
+	 */
+	public ExpressionAnalysis analyze() {
+		return new ExpressionAnalysis(this);
+	}
+	
+	/**
+	 * 创建计算帧
+	 * @return
+	 */
+	public Frame newFrame() {
+		return new Frame(variableNames.length);
+	}
+	
+	/**
+	 * 将变量值绑定到帧，表达式中未使用的变量被忽略。
+	 * 变量值可以是Valuable，或TokenBuilder.buildRuntimeValue支持的类型
+	 * @param frame
+	 * @param variables
+	 */
+	public void bind(Frame frame, Map<String, ?> variables) {
+		for(int i=0; i<variableNames.length; i++) {
+			Object value = variables.get(variableNames[i]);
+			frame.set(i, value == null ? null : toValuable(value));
+		}
+	}
+	
+	/**
+	 * 清除帧并绑定变量解析器，变量在执行路径上首次被读取时才解析。
+	 * 分支中被赋值的变量也在首次读取或赋值时才解析，分支结束时按解析结果保持与预先绑定相同的作用域语义
+	 * @param frame
+	 * @param resolver
+	 */
+	public void bind(Frame frame, VariableResolver resolver) {
+		frame.clear();
+		frame.setResolver(resolver, variableNames);
+	}
+	
+	/**
+	 * 计算表达式
+	 * @param frame 已绑定变量的帧，计算后保存变量的值
+	 * @return 最后一个产生值的语句的值
+	 */
+	public Valuable evaluate(Frame frame) {
+		return Statement.executeBlock(statements, frame);
+	}
+	
+	/**
+	 * 计算表达式
+	 * @param variables 变量初始值
+	 * @return
+	 */
+	public Valuable evaluate(Map<String, ?> variables) {
+		Frame frame = newFrame();
+		bind(frame, variables);
+		return evaluate(frame);
+	}
+	
+	/**
+	 * 按需解析变量并计算表达式，未执行的分支中读取的变量不会被解析
+	 * @param resolver
+	 * @return
+	 */
+	public Valuable evaluate(VariableResolver resolver) {
+		Frame frame = newFrame();
+		bind(frame, resolver);
+		return evaluate(frame);
+	}
+	
+	/**
+	 * 获取帧中所有已定义变量的值
+	 * @param frame
+	 * @return
+	 */
+	public Map<String, Valuable> getVariables(Frame frame) {
+		Map<String, Valuable> variables = new LinkedHashMap<String, Valuable>();
+		for(int i=0; i<variableNames.length; i++)
+			if(frame.get(i) != null)
+				variables.put(variableNames[i], frame.get(i));
+		return variables;
+	}
+	
+	/**
+	 * 批量计算，每行一组变量值
+	 * @param rows
+	 * @return 按行排列的结果
+	 */
+	public Valuable[] evaluateBatch(List<? extends Map<String, ?>> rows) {
+		return evaluateBatch(rows, new Valuable[rows.size()]);
+	}
+	
+	/**
+	 * 批量计算，结果写入调用方提供的数组。所有行复用同一个帧
+	 * @param rows
+	 * @param results 结果数组，长度不小于行数
+	 * @return results
+	 */
+	public Valuable[] evaluateBatch(List<? extends Map<String, ?>> rows, Valuable[] results) {
+		if(results.length < rows.size())
+			throw new IllegalArgumentException("Result array is shorter than the batch: "
+					+ results.length + " < " + rows.size() + ".");
+		Frame frame = newFrame();
+		int i = 0;
+		for(Map<String, ?> row : rows) {
+			frame.clear();
+			bind(frame, row);
+			results[i++] = evaluate(frame);
+		}
+		return results;
+	}
+	
+	/**
+	 * 按谓词计算，不构造结果列表
+	 * @param frame 已绑定变量的帧
+	 * @return 结果为TRUE时返回true，没有结果或结果为FALSE时返回false
+	 * @throws IllegalStateException 结果不是BOOLEAN时
+	 */
+	public boolean matches(Frame frame) {
+		return isTrue(evaluate(frame));
+	}
+	
+	/**
+	 * 过滤，返回结果为TRUE的行。所有行复用同一个帧
+	 * @param rows
+	 * @return 第i位表示第i行是否匹配
+	 */
+	public Bitmap filter(List<? extends Map<String, ?>> rows) {
+		Bitmap bitmap = new Bitmap(rows.size());
+		Frame frame = newFrame();
+		int i = 0;
+		for(Map<String, ?> row : rows) {
+			frame.clear();
+			bind(frame, row);
+			if(matches(frame))
+				bitmap.set(i);
+			i++;
+		}
+		return bitmap;
+	}
+	
+	/**
+	 * 聚合，没有结果的行被跳过。
+	 * 如需只聚合满足条件的行，可写作“if(条件) 表达式; endif”
+	 * @param rows
+	 * @param aggregate 聚合结果
+	 * @return aggregate
+	 */
+	public Aggregate aggregate(List<? extends Map<String, ?>> rows, Aggregate aggregate) {
+		Frame frame = newFrame();
+		for(Map<String, ?> row : rows) {
+			frame.clear();
+			bind(frame, row);
+			BigDecimal value = toNumber(evaluate(frame));
+			if(value != null)
+				aggregate.add(value);
+		}
+		return aggregate;
+	}
+	
+	/**
+	 * 分组聚合，值或分组键没有结果的行被跳过
+	 * @param rows
+	 * @param key 分组键表达式，结果须为整数
+	 * @param groups 分组聚合结果
+	 * @return groups
+	 */
+	public GroupedAggregate aggregate(List<? extends Map<String, ?>> rows,
+			CompiledExpression key, GroupedAggregate groups) {
+		Frame frame = newFrame();
+		Frame keyFrame = key.newFrame();
+		for(Map<String, ?> row : rows) {
+			frame.clear();
+			bind(frame, row);
+			BigDecimal value = toNumber(evaluate(frame));
+			if(value == null)
+				continue;
+			keyFrame.clear();
+			key.bind(keyFrame, row);
+			BigDecimal keyValue = toNumber(key.evaluate(keyFrame));
+			if(keyValue != null)
+				groups.add(GroupedAggregate.toKey(keyValue), value);
+		}
+		return groups;
+	}
+	
+	/**
+	 * 并行批量计算。行被分为若干段，在pool中并行计算，每段使用各自的帧，结果按行序写入
+	 * @param rows
+	 * @param pool
+	 * @return 按行排列的结果
+	 */
+	public Valuable[] evaluateBatchParallel(List<? extends Map<String, ?>> rows, ForkJoinPool pool) {
+		final List<? extends Map<String, ?>> list = randomAccess(rows);
+		final Valuable[] results = new Valuable[list.size()];
+		SegmentTask.invoke(pool, new SegmentAction() {
+			public void run(int segment, int from, int to) {
+				Frame frame = newFrame();
+				for(int i=from; i<to; i++) {
+					frame.clear();
+					bind(frame, list.get(i));
+					results[i] = evaluate(frame);
+				}
+			}
+		}, list.size(), grainOf(pool, list.size()));
+		return results;
+	}
+	
+	/**
+	 * 并行过滤，各段大小为64的倍数，分别写入位图中不同的long
+	 * @param rows
+	 * @param pool
+	 * @return 与filter(rows)相同
+	 */
+	public Bitmap filterParallel(List<? extends Map<String, ?>> rows, ForkJoinPool pool) {
+		final List<? extends Map<String, ?>> list = randomAccess(rows);
+		final Bitmap bitmap = new Bitmap(list.size());
+		SegmentTask.invoke(pool, new SegmentAction() {
+			public void run(int segment, int from, int to) {
+				Frame frame = newFrame();
+				for(int i=from; i<to; i++) {
+					frame.clear();
+					bind(frame, list.get(i));
+					if(matches(frame))
+						bitmap.set(i);
+				}
+			}
+		}, list.size(), grainOf(pool, list.size()));
+		return bitmap;
+	}
+	
+	/**
+	 * 并行聚合，每段聚合到各自的Aggregate，最后按段号顺序合并到aggregate
+	 * @param rows
+	 * @param aggregate
+	 * @param pool
+	 * @return aggregate
+	 */
+	public Aggregate aggregateParallel(List<? extends Map<String, ?>> rows,
+			final Aggregate aggregate, ForkJoinPool pool) {
+		final List<? extends Map<String, ?>> list = randomAccess(rows);
+		int grain = grainOf(pool, list.size());
+		final Aggregate[] partials = new Aggregate[SegmentTask.segmentCount(list.size(), grain)];
+		SegmentTask.invoke(pool, new SegmentAction() {
+			public void run(int segment, int from, int to) {
+				partials[segment] = aggregate(list.subList(from, to), new Aggregate(aggregate.isExact()));
+			}
+		}, list.size(), grain);
+		for(Aggregate partial : partials)
+			aggregate.merge(partial);
+		return aggregate;
+	}
+	
+	/**
+	 * 并行分组聚合，每段聚合到各自的GroupedAggregate，最后按段号顺序合并到groups
+	 * @param rows
+	 * @param key
+	 * @param groups
+	 * @param pool
+	 * @return groups
+	 */
+	public GroupedAggregate aggregateParallel(List<? extends Map<String, ?>> rows,
+			final CompiledExpression key, final GroupedAggregate groups, ForkJoinPool pool) {
+		final List<? extends Map<String, ?>> list = randomAccess(rows);
+		int grain = grainOf(pool, list.size());
+		final GroupedAggregate[] partials = new GroupedAggregate[SegmentTask.segmentCount(list.size(), grain)];
+		SegmentTask.invoke(pool, new SegmentAction() {
+			public void run(int segment, int from, int to) {
+				partials[segment] = aggregate(list.subList(from, to), key,
+						new GroupedAggregate(groups.isExact(), groups.size()));
+			}
+		}, list.size(), grain);
+		for(GroupedAggregate partial : partials)
+			groups.merge(partial);
+		return groups;
+	}
+	
+	private static int grainOf(ForkJoinPool pool, int rowCount) {
+		return SegmentTask.grainOf(pool, rowCount, 64);
+	}
+	
+	/**
+	 * 并行计算按下标访问各行，不支持随机访问的列表先复制
+	 */
+	private static List<? extends Map<String, ?>> randomAccess(List<? extends Map<String, ?>> rows) {
+		if(rows instanceof RandomAccess)
+			return rows;
+		return new ArrayList<Map<String, ?>>(rows);
+	}
+	
+	/**
+	 * 取聚合表达式结果的数值
+	 * @param result
+	 * @return 没有结果时返回null
+	 * @throws IllegalStateException 结果不是NUMBER时
+	 */
+	public static BigDecimal toNumber(Valuable result) {
+		if(result == null)
+			return null;
+		if(result.getDataType() != DataType.NUMBER)
+			throw new IllegalStateException("Aggregated expression must produce NUMBER, but produced "
+					+ result.getDataType().name() + ".");
+		return result.getNumberValue();
+	}
+	
+	/**
+	 * 判断谓词结果是否为TRUE
+	 * @param result
+	 * @return
+	 * @throws IllegalStateException 结果不是BOOLEAN时
+	 */
+	public static boolean isTrue(Valuable result) {
+		if(result == null)
+			return false;
+		if(result.getDataType() != DataType.BOOLEAN)
+			throw new IllegalStateException("Predicate must produce BOOLEAN, but produced "
+					+ result.getDataType().name() + ".");
+		return result.getBooleanValue();
+	}
+	
+	/**
+	 * 逐行计算，每次调用next()时计算下一行。所有行复用同一个帧
+	 * @param rows
+	 * @return
+	 */
+	public Iterator<Valuable> evaluate(final Iterator<? extends Map<String, ?>> rows) {
+		final Frame frame = newFrame();
+		return new Iterator<Valuable>() {
+			public boolean hasNext() {
+				return rows.hasNext();
+			}
+			
+			public Valuable next() {
+				if(!rows.hasNext())
+					throw new NoSuchElementException();
+				frame.clear();
+				bind(frame, rows.next());
+				return evaluate(frame);
+			}
+		};
+	}
+	
+	/**
+	 * 逐行计算，结果流与输入流同序、同为惰性。每个线程复用自己的帧，可用于并行流
+	 * @param rows
+	 * @return
+	 */
+	public Stream<Valuable> evaluate(Stream<? extends Map<String, ?>> rows) {
+		final ThreadLocal<Frame> frames = new ThreadLocal<Frame>() {
+			@Override
+			protected Frame initialValue() {
+				return newFrame();
+			}
+		};
+		return rows.map(new java.util.function.Function<Map<String, ?>, Valuable>() {
+			public Valuable apply(Map<String, ?> row) {
+				Frame frame = frames.get();
+				frame.clear();
+				bind(frame, row);
+				return evaluate(frame);
+			}
+		});
+	}
+	
+	static Valuable toValuable(Object value) {
+		if(value instanceof Valuable)
+			return (Valuable)value;
+		return TokenBuilder.buildRuntimeValue(value);
+	}
+}
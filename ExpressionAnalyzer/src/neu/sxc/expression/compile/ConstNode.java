@@ -0,0 +1,28 @@
+package neu.sxc.expression.compile;
+
+import neu.sxc.expression.tokens.ConstToken;
+import neu.sxc.expression.tokens.Valuable;
+
+/**
+ * 常量节点
+ * @author shanxuecheng
+ *
+ */
+public final class ConstNode extends Node {
+	
+	private final ConstToken constant;
+	
+	public ConstNode(ConstToken constant) {
+		super(constant);
+		this.constant = constant;
+	}
+	
+	public ConstToken getConstant() {
+		return constant;
+	}
+
+	@Override
+	public Valuable evaluate(Frame frame) {
+		return constant;
+	}
+}
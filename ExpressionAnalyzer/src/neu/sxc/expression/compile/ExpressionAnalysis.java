@@ -0,0 +1,178 @@
+package neu.sxc.expression.compile;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import neu.sxc.expression.tokens.DataType;
+import neu.sxc.expression.tokens.Valuable;
+
+/**
+ * 编译结果的静态分析：
+ * 需要的输入（在某条执行路径上先读后写或只读的变量）、被赋值的变量、读取的变量、调用的函数，以及每条顶层语句读写的变量。
+ * 分析按执行顺序跟踪每个位置上一定已赋值的变量，分支中新定义的变量在分支结束后失效，与计算时的作用域语义一致；
+ * 条件为BOOLEAN常量的if语句只分析会执行的分支
+ * @author shanxuecheng
+ *
+ */
+public class ExpressionAnalysis {
+	
+	private final CompiledExpression compiled;
+	
+	private final Set<String> requiredInputs = new LinkedHashSet<String>();
+	
+	private final Set<String> readVariables = new LinkedHashSet<String>();
+	
+	private final Set<String> assignedVariables = new LinkedHashSet<String>();
+	
+	private final Set<String> functions = new LinkedHashSet<String>();
+	
+	private final List<Set<String>> statementReads = new ArrayList<Set<String>>();
+	
+	private final List<Set<String>> statementWrites = new ArrayList<Set<String>>();
+	
+	public ExpressionAnalysis(CompiledExpression compiled) {
+		this.compiled = compiled;
+		BitSet assigned = new BitSet();
+		for(Statement statement : compiled.getStatements()) {
+			Set<String> reads = new LinkedHashSet<String>();
+			Set<String> writes = new LinkedHashSet<String>();
+			analyze(statement, assigned, reads, writes);
+			statementReads.add(Collections.unmodifiableSet(reads));
+			statementWrites.add(Collections.unmodifiableSet(writes));
+		}
+	}
+	
+	/**
+	 * @param statement
+	 * @param assigned 执行到此处时一定已赋值的变量槽位，分析后更新
+	 * @param reads
+	 * @param writes
+	 */
+	private void analyze(Statement statement, BitSet assigned, Set<String> reads, Set<String> writes) {
+		if(statement instanceof SentenceStatement) {
+			analyze(((SentenceStatement)statement).getNode(), assigned, reads, writes);
+		} else if(statement instanceof IfStatement) {
+			IfStatement ifStatement = (IfStatement)statement;
+			Node condition = ifStatement.getCondition();
+			analyze(condition, assigned, reads, writes);
+			Boolean constant = constantCondition(condition);
+			//分支中新定义的变量在分支结束后失效，因此分支结束后一定已赋值的变量不变
+			if(constant == null || constant)
+				analyze(ifStatement.getThenBlock(), (BitSet)assigned.clone(), reads, writes);
+			if(constant == null || !constant)
+				analyze(ifStatement.getElseBlock(), (BitSet)assigned.clone(), reads, writes);
+		}
+	}
+	
+	private void analyze(Statement[] block, BitSet assigned, Set<String> reads, Set<String> writes) {
+		for(Statement statement : block)
+			analyze(statement, assigned, reads, writes);
+	}
+	
+	/**
+	 * 按计算顺序分析节点：先计算参数，赋值节点先计算右侧再赋值
+	 */
+	private void analyze(Node node, BitSet assigned, Set<String> reads, Set<String> writes) {
+		if(node instanceof VariableNode) {
+			VariableNode variable = (VariableNode)node;
+			reads.add(variable.getName());
+			readVariables.add(variable.getName());
+			if(!assigned.get(variable.getSlot()))
+				requiredInputs.add(variable.getName());
+		} else if(node instanceof AssignNode) {
+			AssignNode assign = (AssignNode)node;
+			analyze(assign.getValue(), assigned, reads, writes);
+			String name = assign.getVariable().getName();
+			writes.add(name);
+			assignedVariables.add(name);
+			assigned.set(assign.getSlot());
+		} else if(node instanceof OperatorNode) {
+			for(Node argument : ((OperatorNode)node).getArguments())
+				analyze(argument, assigned, reads, writes);
+		} else if(node instanceof FunctionNode) {
+			FunctionNode function = (FunctionNode)node;
+			for(Node argument : function.getArguments())
+				analyze(argument, assigned, reads, writes);
+			functions.add(function.getFunction().getName());
+		} else if(node instanceof MemoNode) {
+			analyze(((MemoNode)node).getNode(), assigned, reads, writes);
+		}
+	}
+	
+	/**
+	 * @return 条件为BOOLEAN常量时返回其值，否则返回null
+	 */
+	private static Boolean constantCondition(Node condition) {
+		if(!(condition instanceof ConstNode))
+			return null;
+		Valuable constant = ((ConstNode)condition).getConstant();
+		return constant.getDataType() == DataType.BOOLEAN ? constant.getBooleanValue() : null;
+	}
+	
+	public CompiledExpression getCompiledExpression() {
+		return compiled;
+	}
+	
+	/**
+	 * @return 计算前须提供值的变量，即在某条执行路径上被赋值前读取的变量，按首次出现的顺序
+	 */
+	public Set<String> getRequiredInputs() {
+		return Collections.unmodifiableSet(requiredInputs);
+	}
+	
+	/**
+	 * @return 会执行的代码中读取的变量
+	 */
+	public Set<String> getReadVariables() {
+		return Collections.unmodifiableSet(readVariables);
+	}
+	
+	/**
+	 * @return 会执行的代码中被赋值的变量，即表达式的输出
+	 */
+	public Set<String> getAssignedVariables() {
+		return Collections.unmodifiableSet(assignedVariables);
+	}
+	
+	/**
+	 * @return 会执行的代码中调用的函数名
+	 */
+	public Set<String> getFunctions() {
+		return Collections.unmodifiableSet(functions);
+	}
+	
+	/**
+	 * @return 顶层语句数
+	 */
+	public int getStatementCount() {
+		return statementReads.size();
+	}
+	
+	/**
+	 * @param statement 顶层语句下标
+	 * @return 语句（含各分支）读取的变量
+	 */
+	public Set<String> getReads(int statement) {
+		return statementReads.get(statement);
+	}
+	
+	/**
+	 * @param statement 顶层语句下标
+	 * @return 语句（含各分支）赋值的变量
+	 */
+	public Set<String> getWrites(int statement) {
+		return statementWrites.get(statement);
+	}
+	
+	/**
+	 * @param statement 顶层语句下标
+	 * @return 语句开始行号
+	 */
+	public int getLine(int statement) {
+		return compiled.getStatements()[statement].getLine();
+	}
+}
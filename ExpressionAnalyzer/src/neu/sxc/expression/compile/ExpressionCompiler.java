@@ -0,0 +1,256 @@
+package neu.sxc.expression.compile;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import neu.sxc.expression.lexical.LexicalConstants;
+import neu.sxc.expression.syntax.Grammar;
+import neu.sxc.expression.syntax.SyntaxException;
+import neu.sxc.expression.syntax.operator.AssignOperator;
+import neu.sxc.expression.syntax.operator.Operator;
+import neu.sxc.expression.tokens.ConstToken;
+import neu.sxc.expression.tokens.ContextOperationToken;
+import neu.sxc.expression.tokens.DelimiterToken;
+import neu.sxc.expression.tokens.ExecutionToken;
+import neu.sxc.expression.tokens.FunctionToken;
+import neu.sxc.expression.tokens.NonterminalToken;
+import neu.sxc.expression.tokens.TerminalToken;
+import neu.sxc.expression.tokens.Token;
+import neu.sxc.expression.tokens.VariableToken;
+import neu.sxc.expression.utils.ExpressionUtil;
+import neu.sxc.expression.utils.Stack;
+
+/**
+ * 编译器。与SyntaxAnalyzer使用同一文法做语法分析，
+ * 但遇到语义动作时构造语法树节点而不执行，变量名解析为槽位
+ * @author shanxuecheng
+ *
+ */
+public class ExpressionCompiler {
+	/**
+	 * 文法
+	 */
+	private Grammar grammar = Grammar.getGrammar();
+	
+	/**
+	 * 语法栈
+	 */
+	private Stack<Token> syntaxStack = new Stack<Token>();
+	
+	/**
+	 * 节点栈，对应解释执行时的语义栈
+	 */
+	private Stack<Node> nodeStack = new Stack<Node>();
+	
+	/**
+	 * 操作符栈
+	 */
+	private Stack<DelimiterToken> operatorTokenStack = new Stack<DelimiterToken>();
+	
+	/**
+	 * 函数符号栈
+	 */
+	private Stack<FunctionToken> functionTokenStack = new Stack<FunctionToken>();
+	
+	/**
+	 * 用于记录函数参数在节点栈中的开始位置
+	 */
+	private Stack<Integer> argumentStartIndexStack = new Stack<Integer>();
+	
+	/**
+	 * 语句块栈，栈底为顶层语句
+	 */
+	private Stack<List<Statement>> blockStack = new Stack<List<Statement>>();
+	
+	/**
+	 * 正在构造的if语句
+	 */
+	private Stack<IfBuilder> ifStack = new Stack<IfBuilder>();
+	
+	/**
+	 * 变量名及其槽位
+	 */
+	private Map<String, Integer> slots = new LinkedHashMap<String, Integer>();
+	
+	/**
+	 * 编译
+	 * @param source 表达式源代码
+	 * @param tokens 词法分析得到的Token序列
+	 * @return
+	 * @throws SyntaxException
+	 */
+	public CompiledExpression compile(String source, List<TerminalToken> tokens) throws SyntaxException {
+		syntaxStack.clear();
+		nodeStack.clear();
+		operatorTokenStack.clear();
+		functionTokenStack.clear();
+		argumentStartIndexStack.clear();
+		blockStack.clear();
+		ifStack.clear();
+		slots.clear();
+		
+		blockStack.push(new ArrayList<Statement>());
+		int index = 0;
+		while(index < tokens.size()) {
+			//一条语句编译结束时，返回下一语句的开始位置
+			index = compileSentence(tokens, index);
+		}
+		
+		List<Statement> statements = blockStack.pop();
+		return new CompiledExpression(source, ExpressionUtil.fingerprint(source),
+				statements.toArray(new Statement[statements.size()]),
+				slots.keySet().toArray(new String[slots.size()]));
+	}
+	
+	private int compileSentence(List<TerminalToken> tokens, int index) throws SyntaxException {
+		syntaxStack.push(grammar.getStart());
+		TerminalToken currentToken = tokens.get(index++);
+		Token syntaxStackTop = null;
+		while(!syntaxStack.isEmpty()) {
+			syntaxStackTop = syntaxStack.pop();
+			switch(syntaxStackTop.getTokenType()) {
+			case NT:
+				Token[] production = ((NonterminalToken)syntaxStackTop).getProduction(currentToken);
+				if(production != null)
+					reverseProductionIntoSyntaxStack(production);
+				else
+					throw new SyntaxException(currentToken);
+				break;
+			case EXECUTION:
+				buildExecution((ExecutionToken)syntaxStackTop);
+				break;
+			case CONTEXT_OPERATION:
+				contextOperate((ContextOperationToken)syntaxStackTop, currentToken);
+				break;
+			default:
+				if(currentToken.equalsInGrammar((TerminalToken)syntaxStackTop)) {
+					dealTerminalToken(currentToken);
+					if(!syntaxStack.isEmpty()) {
+						if(index < tokens.size())
+							currentToken = tokens.get(index++);
+						else
+							throw new SyntaxException("Sentence is not properly over at line:"
+									+ currentToken.getLine() + ".");
+					}
+				} else
+					throw new SyntaxException(currentToken);
+				break;
+			}
+		}
+		return index;
+	}
+	
+	private void dealTerminalToken(TerminalToken currentToken) {
+		switch(currentToken.getTokenType()) {
+		case CONST:
+			nodeStack.push(new ConstNode((ConstToken)currentToken));
+			break;
+		case VARIABLE:
+			nodeStack.push(new VariableNode((VariableToken)currentToken, slotOf(currentToken.getText())));
+			break;
+		case DELIMITER:
+			if(LexicalConstants.OPERATORS.contains(currentToken.getText()))
+				operatorTokenStack.push((DelimiterToken)currentToken);
+			else if(currentToken.equalsInGrammar(grammar.getGrammarEnd()))
+				//语句结束，节点栈顶即为该语句
+				blockStack.top().add(new SentenceStatement(nodeStack.pop(), currentToken.getLine()));
+			break;
+		case FUNCTION:
+			functionTokenStack.push((FunctionToken)currentToken);
+			argumentStartIndexStack.push(nodeStack.size());
+			break;
+		default:
+			break;
+		}
+	}
+	
+	private void reverseProductionIntoSyntaxStack(Token[] production) {
+		for(int i=production.length-1; i>=0; i--)
+			syntaxStack.push(production[i]);
+	}
+	
+	/**
+	 * 构造操作符或函数节点
+	 * @param executionToken
+	 */
+	private void buildExecution(ExecutionToken executionToken) {
+		Operator operator = (Operator)executionToken.getExecutable();
+		if(operator == null) {	//函数
+			FunctionToken functionToken = functionTokenStack.pop();
+			Node[] arguments = popArguments(nodeStack.size() - argumentStartIndexStack.pop());
+			nodeStack.push(new FunctionNode(functionToken, arguments));
+		} else {
+			DelimiterToken operatorToken = operatorTokenStack.pop();
+			Node[] arguments = popArguments(operator.getArgumentNum());
+			if(operator instanceof AssignOperator)
+				nodeStack.push(new AssignNode(operatorToken, (VariableNode)arguments[0], arguments[1]));
+			else
+				nodeStack.push(new OperatorNode(operator, operatorToken, arguments));
+		}
+	}
+	
+	private Node[] popArguments(int argumentNum) {
+		Node[] arguments = new Node[argumentNum];
+		for(int i=argumentNum-1; i>=0; i--)
+			arguments[i] = nodeStack.pop();
+		return arguments;
+	}
+	
+	private void contextOperate(ContextOperationToken contextOperationToken, TerminalToken currentToken) {
+		switch(contextOperationToken.getContextOperation()) {
+		case IF_CONDITION:
+			ifStack.push(new IfBuilder(nodeStack.pop(), currentToken));
+			break;
+		case ELSE_CONDITION:
+			ifStack.top().inElse = true;
+			break;
+		case NEW_CONTEXT:
+			blockStack.push(new ArrayList<Statement>());
+			break;
+		case END_CONTEXT:
+			List<Statement> block = blockStack.pop();
+			IfBuilder ifBuilder = ifStack.top();
+			if(ifBuilder.inElse)
+				ifBuilder.elseBlock = block;
+			else
+				ifBuilder.thenBlock = block;
+			break;
+		case END_IF:
+			blockStack.top().add(ifStack.pop().build());
+			break;
+		}
+	}
+	
+	private int slotOf(String variableName) {
+		Integer slot = slots.get(variableName);
+		if(slot == null) {
+			slot = slots.size();
+			slots.put(variableName, slot);
+		}
+		return slot;
+	}
+	
+	/**
+	 * 构造中的if语句
+	 */
+	private static class IfBuilder {
+		private final Node condition;
+		private final TerminalToken conditionToken;
+		private boolean inElse = false;
+		private List<Statement> thenBlock = new ArrayList<Statement>();
+		private List<Statement> elseBlock = new ArrayList<Statement>();
+		
+		IfBuilder(Node condition, TerminalToken conditionToken) {
+			this.condition = condition;
+			this.conditionToken = conditionToken;
+		}
+		
+		IfStatement build() {
+			return new IfStatement(condition, conditionToken,
+					thenBlock.toArray(new Statement[thenBlock.size()]),
+					elseBlock.toArray(new Statement[elseBlock.size()]));
+		}
+	}
+}
@@ -0,0 +1,273 @@
+package neu.sxc.expression.compile;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+import neu.sxc.expression.syntax.PendingValueException;
+import neu.sxc.expression.tokens.Valuable;
+
+/**
+ * 计算帧，按槽位保存一次计算中的变量值。
+ * 帧不是线程安全的，但可在同一线程的多次计算间复用
+ * @author shanxuecheng
+ *
+ */
+public final class Frame {
+	
+	/**
+	 * 变量槽位
+	 */
+	private final Valuable[] slots;
+	
+	/**
+	 * 进入分支时尚未定义的变量槽位，分支结束时清除其中不是输入变量的
+	 */
+	private int[] scopeStack = new int[8];
+	
+	private int scopeSize = 0;
+	
+	/**
+	 * 执行路径，仅在开启记录时不为null
+	 */
+	private StringBuilder branchPath;
+	
+	/**
+	 * 公共子表达式的值，仅在规则集计算中使用
+	 */
+	private final Valuable[] memo;
+	
+	/**
+	 * 各缓存值写入时的版本，与当前版本不同的缓存值无效，清除帧时只需递增版本
+	 */
+	private final int[] memoVersions;
+	
+	private int version = 1;
+	
+	/**
+	 * 变量解析器，仅在按需解析时不为null
+	 */
+	private VariableResolver resolver;
+	
+	private String[] variableNames;
+	
+	/**
+	 * 已调用过解析器的槽位
+	 */
+	private boolean[] resolved;
+	
+	/**
+	 * 已调用过解析器但解析器没有给出值的槽位
+	 */
+	private boolean[] absent;
+	
+	/**
+	 * 附属帧，规则集中含赋值的规则在各自的附属帧上计算，随本帧复用
+	 */
+	private Frame[] children;
+	
+	public Frame(int size) {
+		this(size, 0);
+	}
+	
+	/**
+	 * @param size 变量槽位数
+	 * @param memoSize 公共子表达式缓存个数
+	 */
+	public Frame(int size, int memoSize) {
+		slots = new Valuable[size];
+		memo = memoSize == 0 ? null : new Valuable[memoSize];
+		memoVersions = memoSize == 0 ? null : new int[memoSize];
+	}
+	
+	public int size() {
+		return slots.length;
+	}
+	
+	public Valuable get(int slot) {
+		return slots[slot];
+	}
+	
+	public void set(int slot, Valuable value) {
+		slots[slot] = value;
+	}
+	
+	/**
+	 * 取变量值，变量未定义且设置了解析器时，首次读取调用解析器并缓存结果。
+	 * 解析器返回未完成的CompletableFuture时不缓存，抛出PendingValueException
+	 * @param slot
+	 * @return 变量未定义时返回null
+	 */
+	public Valuable resolve(int slot) {
+		Valuable value = slots[slot];
+		if(value == null && resolver != null && !resolved[slot]) {
+			Object resolvedValue = resolver.resolve(variableNames[slot], slot);
+			if(resolvedValue instanceof CompletableFuture)
+				resolvedValue = PendingValueException.getNow((CompletableFuture<?>)resolvedValue);
+			resolved[slot] = true;
+			absent[slot] = resolvedValue == null;
+			if(resolvedValue != null) {
+				value = CompiledExpression.toValuable(resolvedValue);
+				slots[slot] = value;
+			}
+		}
+		return value;
+	}
+	
+	/**
+	 * 设置变量解析器，通常由CompiledExpression.bind调用。清除帧时解析器被移除
+	 * @param resolver
+	 * @param variableNames 按槽位排列的变量名
+	 */
+	public void setResolver(VariableResolver resolver, String[] variableNames) {
+		if(variableNames.length != slots.length)
+			throw new IllegalArgumentException("Expected " + slots.length
+					+ " variable names, but got " + variableNames.length + ".");
+		this.resolver = resolver;
+		this.variableNames = variableNames;
+		if(resolved == null) {
+			resolved = new boolean[slots.length];
+			absent = new boolean[slots.length];
+		} else {
+			Arrays.fill(resolved, false);
+		}
+	}
+	
+	/**
+	 * @param slot
+	 * @return 变量是否已有值或已调用过解析器
+	 */
+	boolean isResolved(int slot) {
+		return slots[slot] != null || resolver == null || resolved[slot];
+	}
+	
+	/**
+	 * 恢复变量的值和解析状态
+	 * @param slot
+	 * @param value
+	 * @param isResolved
+	 */
+	void restore(int slot, Valuable value, boolean isResolved) {
+		slots[slot] = value;
+		if(resolver != null)
+			resolved[slot] = isResolved;
+	}
+	
+	/**
+	 * @return 是否设置了变量解析器
+	 */
+	public boolean isResolving() {
+		return resolver != null;
+	}
+	
+	/**
+	 * 清除所有变量值和变量解析器，以便复用
+	 */
+	public void clear() {
+		Arrays.fill(slots, null);
+		scopeSize = 0;
+		resolver = null;
+		variableNames = null;
+		clearMemo();
+		if(branchPath != null)
+			branchPath.setLength(0);
+	}
+	
+	/**
+	 * 取附属帧
+	 * @param index
+	 * @return 未设置时返回null
+	 */
+	public Frame getChild(int index) {
+		return children == null || index >= children.length ? null : children[index];
+	}
+	
+	/**
+	 * 设置附属帧，清除本帧时附属帧保留
+	 * @param index
+	 * @param child
+	 */
+	public void setChild(int index, Frame child) {
+		if(children == null)
+			children = new Frame[index + 1];
+		else if(index >= children.length)
+			children = Arrays.copyOf(children, Math.max(index + 1, children.length * 2));
+		children[index] = child;
+	}
+	
+	/**
+	 * 设置是否记录执行路径
+	 * @param branchRecording
+	 */
+	public void setBranchRecording(boolean branchRecording) {
+		branchPath = branchRecording ? new StringBuilder() : null;
+	}
+	
+	/**
+	 * @return 执行路径，格式为“行号:T|F”，以逗号分隔；未记录时返回null
+	 */
+	public String getBranchPath() {
+		return branchPath == null ? null : branchPath.toString();
+	}
+	
+	/**
+	 * 使公共子表达式的缓存值失效，在两次计算之间修改了变量值时调用
+	 */
+	public void clearMemo() {
+		if(memo != null && ++version == 0) {
+			Arrays.fill(memoVersions, 0);
+			version = 1;
+		}
+	}
+	
+	/**
+	 * 取公共子表达式的缓存值
+	 * @param index
+	 * @return 自上次清除后尚未计算时返回null
+	 */
+	Valuable getMemo(int index) {
+		return memoVersions[index] == version ? memo[index] : null;
+	}
+	
+	void setMemo(int index, Valuable value) {
+		memo[index] = value;
+		memoVersions[index] = version;
+	}
+	
+	void recordBranch(int line, boolean taken) {
+		if(branchPath == null)
+			return;
+		if(branchPath.length() > 0)
+			branchPath.append(',');
+		branchPath.append(line).append(':').append(taken ? 'T' : 'F');
+	}
+	
+	/**
+	 * 进入分支作用域，记录将被赋值但尚未定义的变量。
+	 * 按需解析时不在此解析这些变量：分支中首次读取或赋值时才调用解析器，未执行到的赋值不引起解析
+	 * @param assignedSlots 分支中被赋值的变量槽位
+	 * @return 作用域标记
+	 */
+	int enterScope(int[] assignedSlots) {
+		int mark = scopeSize;
+		for(int slot : assignedSlots) {
+			if(slots[slot] == null) {
+				if(scopeSize == scopeStack.length)
+					scopeStack = Arrays.copyOf(scopeStack, scopeSize * 2);
+				scopeStack[scopeSize++] = slot;
+			}
+		}
+		return mark;
+	}
+	
+	/**
+	 * 退出分支作用域，清除分支中新定义的变量，解析器给出了值的输入变量保留赋值
+	 * @param mark
+	 */
+	void exitScope(int mark) {
+		while(scopeSize > mark) {
+			int slot = scopeStack[--scopeSize];
+			if(resolver == null || !resolved[slot] || absent[slot])
+				slots[slot] = null;
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package neu.sxc.expression.compile;
+
+import neu.sxc.expression.syntax.ArgumentsMismatchException;
+import neu.sxc.expression.syntax.PendingValueException;
+import neu.sxc.expression.syntax.function.Function;
+import neu.sxc.expression.tokens.FunctionToken;
+import neu.sxc.expression.tokens.Valuable;
+
+/**
+ * 函数调用节点
+ * @author shanxuecheng
+ *
+ */
+public final class FunctionNode extends Node {
+	
+	private final Function function;
+	
+	private final Node[] arguments;
+	
+	public FunctionNode(FunctionToken functionToken, Node[] arguments) {
+		super(functionToken);
+		this.function = functionToken.getFunction();
+		this.arguments = arguments;
+	}
+	
+	public Function getFunction() {
+		return function;
+	}
+	
+	public Node[] getArguments() {
+		return arguments;
+	}
+
+	@Override
+	public Valuable evaluate(Frame frame) {
+		Valuable[] values = new Valuable[arguments.length];
+		//参数挂起时继续计算其余参数，一并等待
+		PendingValueException pending = null;
+		for(int i=0; i<arguments.length; i++) {
+			try {
+				values[i] = arguments[i].evaluate(frame);
+			} catch(PendingValueException e) {
+				pending = PendingValueException.combine(pending, e);
+			} catch(RuntimeException e) {
+				//之前的参数挂起时错误推迟到重新执行时报告，保持顺序计算的出错位置
+				if(pending != null)
+					throw pending;
+				throw e;
+			}
+		}
+		if(pending != null)
+			throw pending;
+		try {
+			return function.execute(values);
+		} catch(ArgumentsMismatchException e) {
+			throw new ArgumentsMismatchException(e.getMessage(), getToken(), e);
+		}
+	}
+}
@@ -0,0 +1,168 @@
+package neu.sxc.expression.compile;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 按long型键分组聚合。开放寻址（线性探测）哈希表，键保存在long[]中，
+ * 每组一个Aggregate，只在出现新分组时分配对象。
+ * 对象不是线程安全的，并行聚合时各线程使用各自的对象，最后以merge合并
+ * @author shanxuecheng
+ *
+ */
+public class GroupedAggregate {
+	
+	private final boolean exact;
+	
+	private long[] keys;
+	
+	private Aggregate[] aggregates;
+	
+	private int size = 0;
+	
+	public GroupedAggregate() {
+		this(false, 16);
+	}
+	
+	/**
+	 * @param exact 是否以BigDecimal精确求和
+	 * @param expectedGroups 预计分组数
+	 */
+	public GroupedAggregate(boolean exact, int expectedGroups) {
+		this.exact = exact;
+		int capacity = Integer.highestOneBit(Math.max(expectedGroups, 8) * 2 - 1) << 1;
+		keys = new long[capacity];
+		aggregates = new Aggregate[capacity];
+	}
+	
+	public boolean isExact() {
+		return exact;
+	}
+	
+	/**
+	 * 将分组键表达式的值转换为键
+	 * @param value
+	 * @return
+	 * @throws IllegalStateException 值不是整数时
+	 */
+	public static long toKey(double value) {
+		long key = (long)value;
+		if(key != value)
+			throw new IllegalStateException("Group key must be an integer: " + value + ".");
+		return key;
+	}
+	
+	public static long toKey(BigDecimal value) {
+		try {
+			return value.longValueExact();
+		} catch(ArithmeticException e) {
+			throw new IllegalStateException("Group key must be an integer: " + value.toPlainString() + ".");
+		}
+	}
+	
+	public void add(long key, double value) {
+		aggregateOf(key).add(value);
+	}
+	
+	public void add(long key, BigDecimal value) {
+		aggregateOf(key).add(value);
+	}
+	
+	/**
+	 * @return 分组数
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * @param key
+	 * @return 分组不存在时返回null
+	 */
+	public Aggregate get(long key) {
+		int index = indexOf(key);
+		return aggregates[index];
+	}
+	
+	/**
+	 * @return 所有分组键，无序
+	 */
+	public long[] keys() {
+		long[] result = new long[size];
+		int j = 0;
+		for(int i=0; i<keys.length; i++)
+			if(aggregates[i] != null)
+				result[j++] = keys[i];
+		return result;
+	}
+	
+	/**
+	 * 合并另一个分组聚合结果
+	 * @param other
+	 * @return this
+	 */
+	public GroupedAggregate merge(GroupedAggregate other) {
+		for(int i=0; i<other.keys.length; i++)
+			if(other.aggregates[i] != null)
+				aggregateOf(other.keys[i]).merge(other.aggregates[i]);
+		return this;
+	}
+	
+	/**
+	 * @return 按键排序的分组结果
+	 */
+	public Map<Long, Aggregate> toMap() {
+		long[] sortedKeys = keys();
+		Arrays.sort(sortedKeys);
+		Map<Long, Aggregate> result = new LinkedHashMap<Long, Aggregate>();
+		for(long key : sortedKeys)
+			result.put(key, get(key));
+		return result;
+	}
+	
+	private Aggregate aggregateOf(long key) {
+		int index = indexOf(key);
+		Aggregate aggregate = aggregates[index];
+		if(aggregate == null) {
+			aggregate = new Aggregate(exact);
+			keys[index] = key;
+			aggregates[index] = aggregate;
+			//装载因子不超过0.5
+			if(++size * 2 > keys.length)
+				resize();
+		}
+		return aggregate;
+	}
+	
+	/**
+	 * @return 键所在的位置，键不存在时返回应插入的空位
+	 */
+	private int indexOf(long key) {
+		int mask = keys.length - 1;
+		int index = hash(key) & mask;
+		while(aggregates[index] != null && keys[index] != key)
+			index = (index + 1) & mask;
+		return index;
+	}
+	
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32));
+	}
+	
+	private void resize() {
+		long[] oldKeys = keys;
+		Aggregate[] oldAggregates = aggregates;
+		keys = new long[oldKeys.length * 2];
+		aggregates = new Aggregate[oldKeys.length * 2];
+		for(int i=0; i<oldKeys.length; i++) {
+			if(oldAggregates[i] != null) {
+				int index = indexOf(oldKeys[i]);
+				keys[index] = oldKeys[i];
+				aggregates[index] = oldAggregates[i];
+			}
+		}
+	}
+}
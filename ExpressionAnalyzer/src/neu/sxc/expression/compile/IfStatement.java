@@ -0,0 +1,122 @@
+package neu.sxc.expression.compile;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import neu.sxc.expression.syntax.SyntaxException;
+import neu.sxc.expression.tokens.DataType;
+import neu.sxc.expression.tokens.TerminalToken;
+import neu.sxc.expression.tokens.Valuable;
+
+/**
+ * if-else语句。
+ * 与解释执行时的上下文语义一致：分支中新定义的变量在分支结束后失效，已定义变量的赋值保留
+ * @author shanxuecheng
+ *
+ */
+public final class IfStatement extends Statement {
+	
+	private final Node condition;
+	
+	/**
+	 * if条件结束位置的Token，用于定位错误和记录执行路径
+	 */
+	private final TerminalToken conditionToken;
+	
+	private final Statement[] thenBlock;
+	
+	private final Statement[] elseBlock;
+	
+	/**
+	 * 两个分支中被赋值的变量槽位
+	 */
+	private final int[] thenAssignedSlots;
+	
+	private final int[] elseAssignedSlots;
+	
+	public IfStatement(Node condition, TerminalToken conditionToken,
+			Statement[] thenBlock, Statement[] elseBlock) {
+		super(conditionToken.getLine());
+		this.condition = condition;
+		this.conditionToken = conditionToken;
+		this.thenBlock = thenBlock;
+		this.elseBlock = elseBlock;
+		this.thenAssignedSlots = assignedSlots(thenBlock);
+		this.elseAssignedSlots = assignedSlots(elseBlock);
+	}
+	
+	public Node getCondition() {
+		return condition;
+	}
+	
+	public TerminalToken getConditionToken() {
+		return conditionToken;
+	}
+	
+	public Statement[] getThenBlock() {
+		return thenBlock;
+	}
+	
+	public Statement[] getElseBlock() {
+		return elseBlock;
+	}
+	
+	/**
+	 * 计算条件
+	 * @param frame
+	 * @return
+	 */
+	public boolean evaluateCondition(Frame frame) {
+		Valuable value = condition.evaluate(frame);
+		if(value.getDataType() != DataType.BOOLEAN)
+			throw new SyntaxException("Type mismatch: cannot convert from " +
+					value.getDataType().name() + " to BOOLEAN.", conditionToken);
+		return value.getBooleanValue();
+	}
+
+	@Override
+	public Valuable execute(Frame frame) {
+		boolean taken = evaluateCondition(frame);
+		frame.recordBranch(getLine(), taken);
+		return executeBranch(taken ? thenBlock : elseBlock,
+				taken ? thenAssignedSlots : elseAssignedSlots, frame);
+	}
+	
+	/**
+	 * 在新的作用域中执行分支，分支结束后清除分支中新定义的变量
+	 */
+	private static Valuable executeBranch(Statement[] block, int[] assignedSlots, Frame frame) {
+		if(block.length == 0)
+			return null;
+		int mark = frame.enterScope(assignedSlots);
+		try {
+			return executeBlock(block, frame);
+		} finally {
+			frame.exitScope(mark);
+		}
+	}
+	
+	private static int[] assignedSlots(Statement[] block) {
+		Set<Integer> slots = new LinkedHashSet<Integer>();
+		collectAssignedSlots(block, slots);
+		int[] result = new int[slots.size()];
+		int i = 0;
+		for(Integer slot : slots)
+			result[i++] = slot;
+		return result;
+	}
+	
+	private static void collectAssignedSlots(Statement[] block, Set<Integer> slots) {
+		for(Statement statement : block) {
+			if(statement instanceof SentenceStatement) {
+				Node node = ((SentenceStatement)statement).getNode();
+				if(node instanceof AssignNode)
+					slots.add(((AssignNode)node).getSlot());
+			} else if(statement instanceof IfStatement) {
+				IfStatement ifStatement = (IfStatement)statement;
+				collectAssignedSlots(ifStatement.thenBlock, slots);
+				collectAssignedSlots(ifStatement.elseBlock, slots);
+			}
+		}
+	}
+}
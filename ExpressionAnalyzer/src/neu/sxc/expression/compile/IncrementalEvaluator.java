@@ -0,0 +1,240 @@
+package neu.sxc.expression.compile;
+
+import java.util.Map;
+
+import neu.sxc.expression.tokens.Valuable;
+
+/**
+ * 增量计算。按StatementGraph记录每条顶层语句执行后其所写变量的值（即变量的各个版本），
+ * 输入改变时只重新执行读取该输入的语句，以及所写变量值发生变化的语句的下游语句，类似电子表格的重算。
+ * 重新执行的语句从所读变量对应版本的值开始计算，结果与从头执行整个表达式相同。
+ * 执行出错的语句视为不改变任何变量，getResult()抛出第一个出错语句的异常；
+ * 语句中的函数只在语句被重新执行时调用。
+ * 对象不是线程安全的
+ * @author shanxuecheng
+ *
+ */
+public class IncrementalEvaluator {
+	
+	private final CompiledExpression compiled;
+	
+	private final StatementGraph graph;
+	
+	private final Statement[] statements;
+	
+	/**
+	 * 输入值，按槽位保存
+	 */
+	private final Valuable[] inputs;
+	
+	/**
+	 * 各语句执行后其所写变量的值
+	 */
+	private final Valuable[][] versions;
+	
+	/**
+	 * 各语句的值
+	 */
+	private final Valuable[] results;
+	
+	/**
+	 * 各语句执行抛出的异常
+	 */
+	private final RuntimeException[] errors;
+	
+	private final boolean[] dirty;
+	
+	/**
+	 * 执行语句使用的帧，执行前只设置语句读写的槽位
+	 */
+	private final Frame frame;
+	
+	/**
+	 * 上次计算执行的语句数
+	 */
+	private int executedCount = 0;
+	
+	public IncrementalEvaluator(CompiledExpression compiled) {
+		this(new StatementGraph(compiled));
+	}
+	
+	public IncrementalEvaluator(StatementGraph graph) {
+		this.graph = graph;
+		this.compiled = graph.getCompiledExpression();
+		this.statements = compiled.getStatements();
+		int count = statements.length;
+		this.inputs = new Valuable[compiled.getVariableNames().length];
+		this.versions = new Valuable[count][];
+		for(int i=0; i<count; i++)
+			versions[i] = new Valuable[graph.writes(i).length];
+		this.results = new Valuable[count];
+		this.errors = new RuntimeException[count];
+		this.dirty = new boolean[count];
+		this.frame = compiled.newFrame();
+	}
+	
+	public StatementGraph getGraph() {
+		return graph;
+	}
+	
+	/**
+	 * 以一组新的输入执行所有语句
+	 * @param variables
+	 * @return 与getResult()相同
+	 */
+	public Valuable bind(Map<String, ?> variables) {
+		Frame values = compiled.newFrame();
+		compiled.bind(values, variables);
+		for(int slot=0; slot<inputs.length; slot++)
+			inputs[slot] = values.get(slot);
+		for(int i=0; i<statements.length; i++)
+			dirty[i] = true;
+		recompute(0);
+		return getResult();
+	}
+	
+	/**
+	 * 修改一个输入值，只重新执行受影响的语句
+	 * @param variable
+	 * @param value 为null时输入变为未定义
+	 * @return 与getResult()相同
+	 */
+	public Valuable update(String variable, Object value) {
+		int first = setInput(variable, value);
+		recompute(first);
+		return getResult();
+	}
+	
+	/**
+	 * 同时修改多个输入值
+	 * @param changes
+	 * @return 与getResult()相同
+	 */
+	public Valuable update(Map<String, ?> changes) {
+		int first = statements.length;
+		for(Map.Entry<String, ?> entry : changes.entrySet())
+			first = Math.min(first, setInput(entry.getKey(), entry.getValue()));
+		recompute(first);
+		return getResult();
+	}
+	
+	/**
+	 * 设置输入值，标记读取该输入的语句
+	 * @return 第一条被标记的语句
+	 */
+	private int setInput(String variable, Object value) {
+		int slot = compiled.getSlot(variable);
+		if(slot < 0)
+			return statements.length;
+		Valuable valuable = value == null ? null : CompiledExpression.toValuable(value);
+		if(sameValue(inputs[slot], valuable))
+			return statements.length;
+		inputs[slot] = valuable;
+		int[] readers = graph.inputReaders(slot);
+		for(int reader : readers)
+			dirty[reader] = true;
+		return readers.length == 0 ? statements.length : readers[0];
+	}
+	
+	/**
+	 * 按语句顺序执行被标记的语句，所写变量的值改变时标记其下游语句
+	 * @param first 第一条被标记的语句
+	 */
+	private void recompute(int first) {
+		executedCount = 0;
+		for(int i=first; i<statements.length; i++) {
+			if(!dirty[i])
+				continue;
+			dirty[i] = false;
+			executedCount++;
+			if(execute(i))
+				for(int dependent : graph.dependents(i))
+					dirty[dependent] = true;
+		}
+	}
+	
+	/**
+	 * 执行一条语句
+	 * @param statement
+	 * @return 语句所写变量的值或出错状态是否改变
+	 */
+	private boolean execute(int statement) {
+		boolean failedBefore = errors[statement] != null;
+		loadVersions(statement);
+		try {
+			results[statement] = statements[statement].execute(frame);
+			errors[statement] = null;
+		} catch (RuntimeException e) {
+			//出错的语句不改变任何变量
+			results[statement] = null;
+			errors[statement] = e;
+			loadVersions(statement);
+		}
+		frame.clearMemo();
+		boolean changed = failedBefore != (errors[statement] != null);
+		int[] writes = graph.writes(statement);
+		Valuable[] written = versions[statement];
+		for(int k=0; k<writes.length; k++) {
+			Valuable value = frame.get(writes[k]);
+			if(!sameValue(written[k], value)) {
+				written[k] = value;
+				changed = true;
+			}
+		}
+		return changed;
+	}
+	
+	/**
+	 * 将语句所读变量的对应版本载入帧
+	 */
+	private void loadVersions(int statement) {
+		int[] reads = graph.reads(statement);
+		int[] writers = graph.readVersions(statement);
+		int[] positions = graph.readVersionPositions(statement);
+		for(int k=0; k<reads.length; k++)
+			frame.set(reads[k], writers[k] < 0 ? inputs[reads[k]] : versions[writers[k]][positions[k]]);
+	}
+	
+	private static boolean sameValue(Valuable a, Valuable b) {
+		if(a == b)
+			return true;
+		if(a == null || b == null || a.getDataType() != b.getDataType())
+			return false;
+		return a.getValue() == null ? b.getValue() == null : a.getValue().equals(b.getValue());
+	}
+	
+	/**
+	 * @return 最后一个产生值的语句的值
+	 * @throws RuntimeException 有语句出错时，抛出第一个出错语句的异常
+	 */
+	public Valuable getResult() {
+		Valuable result = null;
+		for(int i=0; i<statements.length; i++) {
+			if(errors[i] != null)
+				throw errors[i];
+			if(results[i] != null)
+				result = results[i];
+		}
+		return result;
+	}
+	
+	/**
+	 * 取所有语句执行后变量的值
+	 * @param variable
+	 * @return 变量未定义时返回null
+	 */
+	public Valuable getValue(String variable) {
+		int slot = compiled.getSlot(variable);
+		if(slot < 0)
+			return null;
+		int writer = graph.finalWriter(slot);
+		return writer < 0 ? inputs[slot] : versions[writer][graph.finalWriterPosition(slot)];
+	}
+	
+	/**
+	 * @return 上次bind或update执行的语句数
+	 */
+	public int getExecutedCount() {
+		return executedCount;
+	}
+}
@@ -0,0 +1,43 @@
+package neu.sxc.expression.compile;
+
+import neu.sxc.expression.tokens.Valuable;
+
+/**
+ * 缓存节点。被多处引用的公共子表达式在一次计算中只计算一次，值缓存在Frame中，
+ * 帧须以Frame(size, memoSize)创建。计算出错时不缓存，下次引用时重新计算并抛出同样的异常
+ * @author shanxuecheng
+ *
+ */
+public final class MemoNode extends Node {
+	
+	private final Node node;
+	
+	/**
+	 * 缓存位置
+	 */
+	private final int index;
+	
+	public MemoNode(Node node, int index) {
+		super(node.getToken());
+		this.node = node;
+		this.index = index;
+	}
+	
+	public Node getNode() {
+		return node;
+	}
+	
+	public int getIndex() {
+		return index;
+	}
+
+	@Override
+	public Valuable evaluate(Frame frame) {
+		Valuable value = frame.getMemo(index);
+		if(value == null) {
+			value = node.evaluate(frame);
+			frame.setMemo(index, value);
+		}
+		return value;
+	}
+}
@@ -0,0 +1,32 @@
+package neu.sxc.expression.compile;
+
+import neu.sxc.expression.tokens.TerminalToken;
+import neu.sxc.expression.tokens.Valuable;
+
+/**
+ * 语法树节点。节点不保存运行时状态，可被多个线程以不同的Frame同时计算
+ * @author shanxuecheng
+ *
+ */
+public abstract class Node {
+	
+	/**
+	 * 节点对应的Token，用于定位错误
+	 */
+	private final TerminalToken token;
+	
+	public Node(TerminalToken token) {
+		this.token = token;
+	}
+	
+	public TerminalToken getToken() {
+		return token;
+	}
+	
+	/**
+	 * 计算节点的值
+	 * @param frame 变量槽位
+	 * @return
+	 */
+	public abstract Valuable evaluate(Frame frame);
+}
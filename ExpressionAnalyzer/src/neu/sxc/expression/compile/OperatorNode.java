@@ -0,0 +1,64 @@
+package neu.sxc.expression.compile;
+
+import neu.sxc.expression.syntax.ArgumentsMismatchException;
+import neu.sxc.expression.syntax.PendingValueException;
+import neu.sxc.expression.syntax.operator.Operator;
+import neu.sxc.expression.tokens.DelimiterToken;
+import neu.sxc.expression.tokens.Valuable;
+
+/**
+ * 操作符节点
+ * @author shanxuecheng
+ *
+ */
+public final class OperatorNode extends Node {
+	
+	private final Operator operator;
+	
+	private final Node[] arguments;
+	
+	public OperatorNode(Operator operator, DelimiterToken operatorToken, Node[] arguments) {
+		super(operatorToken);
+		this.operator = operator;
+		this.arguments = arguments;
+	}
+	
+	public Operator getOperator() {
+		return operator;
+	}
+	
+	public Node[] getArguments() {
+		return arguments;
+	}
+
+	@Override
+	public Valuable evaluate(Frame frame) {
+		Valuable[] values = new Valuable[arguments.length];
+		//参数挂起时继续计算其余参数，一并等待
+		PendingValueException pending = null;
+		for(int i=0; i<arguments.length; i++) {
+			try {
+				values[i] = arguments[i].evaluate(frame);
+			} catch(PendingValueException e) {
+				pending = PendingValueException.combine(pending, e);
+			} catch(RuntimeException e) {
+				//之前的参数挂起时错误推迟到重新执行时报告，保持顺序计算的出错位置
+				if(pending != null)
+					throw pending;
+				throw e;
+			}
+		}
+		if(pending != null)
+			throw pending;
+		try {
+			return operator.execute(values);
+		} catch(ArgumentsMismatchException e) {
+			throw new ArgumentsMismatchException(e.getMessage(), getToken(), e);
+		} catch(ArithmeticException e) {
+			ArithmeticException arithmeticException = new ArithmeticException(e.getMessage()
+					+ " At line:" + getToken().getLine() + ", column:" + getToken().getColumn() + ".");
+			arithmeticException.initCause(e);
+			throw arithmeticException;
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package neu.sxc.expression.compile;
+
+import neu.sxc.expression.tokens.Valuable;
+
+/**
+ * 以分号结束的单条语句
+ * @author shanxuecheng
+ *
+ */
+public final class SentenceStatement extends Statement {
+	
+	private final Node node;
+	
+	public SentenceStatement(Node node, int line) {
+		super(line);
+		this.node = node;
+	}
+	
+	public Node getNode() {
+		return node;
+	}
+
+	@Override
+	public Valuable execute(Frame frame) {
+		return node.evaluate(frame);
+	}
+}
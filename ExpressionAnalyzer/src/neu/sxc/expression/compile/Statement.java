@@ -0,0 +1,47 @@
+package neu.sxc.expression.compile;
+
+import neu.sxc.expression.tokens.Valuable;
+
+/**
+ * 语句
+ * @author shanxuecheng
+ *
+ */
+public abstract class Statement {
+	
+	/**
+	 * 语句开始行号
+	 */
+	private final int line;
+	
+	public Statement(int line) {
+		this.line = line;
+	}
+	
+	public int getLine() {
+		return line;
+	}
+	
+	/**
+	 * 执行语句
+	 * @param frame
+	 * @return 语句的值，语句未产生值时返回null
+	 */
+	public abstract Valuable execute(Frame frame);
+	
+	/**
+	 * 顺序执行语句块
+	 * @param block
+	 * @param frame
+	 * @return 最后一个产生值的语句的值，没有时返回null
+	 */
+	public static Valuable executeBlock(Statement[] block, Frame frame) {
+		Valuable result = null;
+		for(Statement statement : block) {
+			Valuable value = statement.execute(frame);
+			if(value != null)
+				result = value;
+		}
+		return result;
+	}
+}
@@ -0,0 +1,232 @@
+package neu.sxc.expression.compile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 顶层语句的依赖图。
+ * 每条语句的读集合包含语句中（含条件和各分支）读取的变量，以及可能被赋值的变量：
+ * 赋值时要检查原值的类型，分支中的赋值也可能不执行，因此语句结束后这些变量的值仍取决于之前的值。
+ * 语句读取的每个变量的版本由它之前最后一条可能写该变量的语句决定，没有时读取输入值
+ * @author shanxuecheng
+ *
+ */
+public class StatementGraph {
+	
+	private final CompiledExpression compiled;
+	
+	/**
+	 * 各语句读取的变量槽位，包含可能被赋值的变量
+	 */
+	private final int[][] reads;
+	
+	/**
+	 * 各语句可能赋值的变量槽位
+	 */
+	private final int[][] writes;
+	
+	/**
+	 * 各语句读取的变量由哪条语句写入，-1表示输入值
+	 */
+	private final int[][] readVersions;
+	
+	/**
+	 * 各语句读取的变量在写入语句的writes中的位置
+	 */
+	private final int[][] readVersionPositions;
+	
+	/**
+	 * 读取各语句所写变量的后续语句，升序排列
+	 */
+	private final int[][] dependents;
+	
+	/**
+	 * 读取各输入变量的语句，升序排列
+	 */
+	private final int[][] inputReaders;
+	
+	/**
+	 * 最后写各变量的语句，-1表示没有语句写该变量
+	 */
+	private final int[] finalWriters;
+	
+	private final int[] finalWriterPositions;
+	
+	public StatementGraph(CompiledExpression compiled) {
+		this.compiled = compiled;
+		Statement[] statements = compiled.getStatements();
+		int count = statements.length;
+		int slotCount = compiled.getVariableNames().length;
+		reads = new int[count][];
+		writes = new int[count][];
+		readVersions = new int[count][];
+		readVersionPositions = new int[count][];
+		
+		List<List<Integer>> dependentLists = new ArrayList<List<Integer>>();
+		List<List<Integer>> readerLists = new ArrayList<List<Integer>>();
+		for(int i=0; i<count; i++)
+			dependentLists.add(new ArrayList<Integer>());
+		for(int slot=0; slot<slotCount; slot++)
+			readerLists.add(new ArrayList<Integer>());
+		
+		int[] lastWriter = new int[slotCount];
+		int[] lastWriterPosition = new int[slotCount];
+		Arrays.fill(lastWriter, -1);
+		for(int i=0; i<count; i++) {
+			Set<Integer> read = new LinkedHashSet<Integer>();
+			Set<Integer> written = new LinkedHashSet<Integer>();
+			collect(new Statement[]{statements[i]}, read, written);
+			read.addAll(written);
+			reads[i] = toArray(read);
+			writes[i] = toArray(written);
+			readVersions[i] = new int[reads[i].length];
+			readVersionPositions[i] = new int[reads[i].length];
+			for(int k=0; k<reads[i].length; k++) {
+				int slot = reads[i][k];
+				readVersions[i][k] = lastWriter[slot];
+				readVersionPositions[i][k] = lastWriterPosition[slot];
+				if(lastWriter[slot] < 0)
+					readerLists.get(slot).add(i);
+				else
+					addLast(dependentLists.get(lastWriter[slot]), i);
+			}
+			for(int k=0; k<writes[i].length; k++) {
+				lastWriter[writes[i][k]] = i;
+				lastWriterPosition[writes[i][k]] = k;
+			}
+		}
+		dependents = new int[count][];
+		for(int i=0; i<count; i++)
+			dependents[i] = toArray(dependentLists.get(i));
+		inputReaders = new int[slotCount][];
+		for(int slot=0; slot<slotCount; slot++)
+			inputReaders[slot] = toArray(readerLists.get(slot));
+		finalWriters = lastWriter;
+		finalWriterPositions = lastWriterPosition;
+	}
+	
+	/**
+	 * 追加语句下标，语句按升序处理，只需与末尾比较即可去重
+	 */
+	private static void addLast(List<Integer> list, int statement) {
+		if(list.isEmpty() || list.get(list.size() - 1) != statement)
+			list.add(statement);
+	}
+	
+	private static int[] toArray(Collection<Integer> values) {
+		int[] array = new int[values.size()];
+		int i = 0;
+		for(Integer value : values)
+			array[i++] = value;
+		return array;
+	}
+	
+	/**
+	 * 收集语句块中读取和赋值的变量
+	 */
+	static void collect(Statement[] block, Set<Integer> read, Set<Integer> written) {
+		for(Statement statement : block) {
+			if(statement instanceof SentenceStatement) {
+				collect(((SentenceStatement)statement).getNode(), read, written);
+			} else if(statement instanceof IfStatement) {
+				IfStatement ifStatement = (IfStatement)statement;
+				collect(ifStatement.getCondition(), read, written);
+				collect(ifStatement.getThenBlock(), read, written);
+				collect(ifStatement.getElseBlock(), read, written);
+			}
+		}
+	}
+	
+	static void collect(Node node, Set<Integer> read, Set<Integer> written) {
+		if(node instanceof VariableNode) {
+			read.add(((VariableNode)node).getSlot());
+		} else if(node instanceof AssignNode) {
+			collect(((AssignNode)node).getValue(), read, written);
+			written.add(((AssignNode)node).getSlot());
+		} else if(node instanceof OperatorNode) {
+			for(Node argument : ((OperatorNode)node).getArguments())
+				collect(argument, read, written);
+		} else if(node instanceof FunctionNode) {
+			for(Node argument : ((FunctionNode)node).getArguments())
+				collect(argument, read, written);
+		} else if(node instanceof MemoNode) {
+			collect(((MemoNode)node).getNode(), read, written);
+		}
+	}
+	
+	public CompiledExpression getCompiledExpression() {
+		return compiled;
+	}
+	
+	public int getStatementCount() {
+		return reads.length;
+	}
+	
+	/**
+	 * @param statement 顶层语句下标
+	 * @return 语句读取的变量槽位，包含可能被赋值的变量
+	 */
+	public int[] getReads(int statement) {
+		return reads[statement].clone();
+	}
+	
+	/**
+	 * @param statement 顶层语句下标
+	 * @return 语句可能赋值的变量槽位
+	 */
+	public int[] getWrites(int statement) {
+		return writes[statement].clone();
+	}
+	
+	/**
+	 * @param statement 顶层语句下标
+	 * @return 直接依赖该语句结果的后续语句，升序排列
+	 */
+	public int[] getDependents(int statement) {
+		return dependents[statement].clone();
+	}
+	
+	/**
+	 * @param slot
+	 * @return 读取该变量输入值的语句，升序排列
+	 */
+	public int[] getInputReaders(int slot) {
+		return inputReaders[slot].clone();
+	}
+	
+	int[] reads(int statement) {
+		return reads[statement];
+	}
+	
+	int[] writes(int statement) {
+		return writes[statement];
+	}
+	
+	int[] readVersions(int statement) {
+		return readVersions[statement];
+	}
+	
+	int[] readVersionPositions(int statement) {
+		return readVersionPositions[statement];
+	}
+	
+	int[] dependents(int statement) {
+		return dependents[statement];
+	}
+	
+	int[] inputReaders(int slot) {
+		return inputReaders[slot];
+	}
+	
+	int finalWriter(int slot) {
+		return finalWriters[slot];
+	}
+	
+	int finalWriterPosition(int slot) {
+		return finalWriterPositions[slot];
+	}
+}
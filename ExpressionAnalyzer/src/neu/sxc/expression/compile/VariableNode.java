@@ -0,0 +1,36 @@
+package neu.sxc.expression.compile;
+
+import neu.sxc.expression.syntax.VariableNotInitializedException;
+import neu.sxc.expression.tokens.Valuable;
+import neu.sxc.expression.tokens.VariableToken;
+
+/**
+ * 变量节点，变量名在编译时解析为槽位
+ * @author shanxuecheng
+ *
+ */
+public final class VariableNode extends Node {
+	
+	private final int slot;
+	
+	public VariableNode(VariableToken variable, int slot) {
+		super(variable);
+		this.slot = slot;
+	}
+	
+	public int getSlot() {
+		return slot;
+	}
+	
+	public String getName() {
+		return getToken().getText();
+	}
+
+	@Override
+	public Valuable evaluate(Frame frame) {
+		Valuable value = frame.resolve(slot);
+		if(value == null)
+			throw new VariableNotInitializedException((VariableToken)getToken());
+		return value;
+	}
+}
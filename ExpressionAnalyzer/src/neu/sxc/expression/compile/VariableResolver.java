@@ -0,0 +1,19 @@
+package neu.sxc.expression.compile;
+
+/**
+ * 变量解析器，按需提供变量值。
+ * 以解析器绑定的帧在执行路径上首次读取未定义的变量时调用解析器，结果缓存在帧中，
+ * 同一次计算中每个变量最多解析一次
+ * @author shanxuecheng
+ *
+ */
+public interface VariableResolver {
+	/**
+	 * 取变量值
+	 * @param name 变量名
+	 * @param slot 变量在表达式中的槽位
+	 * @return Valuable或TokenBuilder.buildRuntimeValue支持的类型，返回null表示变量未定义；
+	 *         也可返回CompletableFuture，由AsyncEvaluator等待加载完成
+	 */
+	public Object resolve(String name, int slot);
+}
@@ -0,0 +1,60 @@
+package neu.sxc.expression.compile.binary;
+
+import neu.sxc.expression.tokens.DataType;
+
+/**
+ * 二进制记录的字段类型
+ * @author shanxuecheng
+ *
+ */
+public enum FieldType {
+	/**
+	 * 8字节整数，读取为NUMBER
+	 */
+	LONG(8, DataType.NUMBER),
+	
+	/**
+	 * 8字节浮点数，读取为NUMBER
+	 */
+	DOUBLE(8, DataType.NUMBER),
+	
+	/**
+	 * 1字节，0为false
+	 */
+	BOOLEAN(1, DataType.BOOLEAN),
+	
+	/**
+	 * 2字节UTF-16字符
+	 */
+	CHARACTER(2, DataType.CHARACTER),
+	
+	/**
+	 * 8字节毫秒时间戳
+	 */
+	DATE(8, DataType.DATE),
+	
+	/**
+	 * 4字节偏移和4字节长度，指向记录变长区中的UTF-8字节
+	 */
+	STRING(8, DataType.STRING);
+	
+	private final int width;
+	
+	private final DataType dataType;
+	
+	private FieldType(int width, DataType dataType) {
+		this.width = width;
+		this.dataType = dataType;
+	}
+	
+	/**
+	 * @return 字段在定长区中的字节数
+	 */
+	public int getWidth() {
+		return width;
+	}
+	
+	public DataType getDataType() {
+		return dataType;
+	}
+}
@@ -0,0 +1,83 @@
+package neu.sxc.expression.compile.binary;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import neu.sxc.expression.compile.CompiledExpression;
+import neu.sxc.expression.compile.Frame;
+import neu.sxc.expression.compile.VariableResolver;
+import neu.sxc.expression.tokens.Valuable;
+
+/**
+ * 从二进制记录绑定变量。
+ * 构造时按变量槽位计算字段偏移，绑定时不反序列化记录，只在执行路径上读取变量时按偏移读取字段。
+ * 对象不可变，可被多个线程同时使用
+ * @author shanxuecheng
+ *
+ */
+public class RecordBinder {
+	
+	private final RecordSchema schema;
+	
+	private final CompiledExpression compiled;
+	
+	/**
+	 * 各槽位对应的字段，不在模式中的变量为-1
+	 */
+	private final int[] fields;
+	
+	/**
+	 * @param schema
+	 * @param compiled
+	 * @throws IllegalArgumentException 表达式的输入变量不在模式中时
+	 */
+	public RecordBinder(RecordSchema schema, CompiledExpression compiled) {
+		this.schema = schema;
+		this.compiled = compiled;
+		String[] names = compiled.getVariableNames();
+		fields = new int[names.length];
+		for(int i=0; i<names.length; i++)
+			fields[i] = schema.indexOf(names[i]);
+		List<String> missing = new ArrayList<String>();
+		for(String name : compiled.analyze().getRequiredInputs())
+			if(schema.indexOf(name) < 0)
+				missing.add(name);
+		if(!missing.isEmpty())
+			throw new IllegalArgumentException("No field for variables: " + missing + ".");
+	}
+	
+	public RecordSchema getSchema() {
+		return schema;
+	}
+	
+	public CompiledExpression getCompiledExpression() {
+		return compiled;
+	}
+	
+	/**
+	 * 清除帧并绑定记录
+	 * @param frame
+	 * @param buffer
+	 * @param record 记录开始处的绝对位置
+	 */
+	public void bind(Frame frame, final ByteBuffer buffer, final int record) {
+		compiled.bind(frame, new VariableResolver() {
+			public Object resolve(String name, int slot) {
+				return schema.read(buffer, record, fields[slot]);
+			}
+		});
+	}
+	
+	/**
+	 * 计算一条记录
+	 * @param buffer
+	 * @param record 记录开始处的绝对位置
+	 * @return
+	 */
+	public Valuable evaluate(ByteBuffer buffer, int record) {
+		Frame frame = compiled.newFrame();
+		bind(frame, buffer, record);
+		return compiled.evaluate(frame);
+	}
+}
@@ -0,0 +1,198 @@
+package neu.sxc.expression.compile.binary;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
+
+import neu.sxc.expression.tokens.DataType;
+import neu.sxc.expression.tokens.TokenBuilder;
+import neu.sxc.expression.tokens.Valuable;
+import neu.sxc.expression.utils.ValueUtil;
+
+/**
+ * 二进制记录的模式。
+ * 记录布局：4字节记录长度（含自身），存在位图（每字段1位，置位表示有值），按字段顺序排列的定长区，
+ * 之后为字符串的变长区。字段在记录中的偏移在构造时计算。整数按大端序存放，与ByteBuffer的默认字节序相同。
+ * 模式可写为头部，与记录一起保存。对象不可变
+ * @author shanxuecheng
+ *
+ */
+public class RecordSchema {
+	
+	/**
+	 * 头部标识"EXRB"
+	 */
+	public static final int MAGIC = 0x45585242;
+	
+	public static final int VERSION = 1;
+	
+	private final String[] names;
+	
+	private final FieldType[] types;
+	
+	/**
+	 * 各字段相对于记录开始处的偏移
+	 */
+	private final int[] offsets;
+	
+	/**
+	 * 记录头和定长区的总字节数
+	 */
+	private final int fixedSize;
+	
+	private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+	
+	public RecordSchema(String[] names, FieldType[] types) {
+		if(names.length != types.length)
+			throw new IllegalArgumentException("Expected " + names.length + " field types, but got " + types.length + ".");
+		this.names = names.clone();
+		this.types = types.clone();
+		offsets = new int[names.length];
+		int offset = 4 + bitmapSize(names.length);
+		for(int i=0; i<names.length; i++) {
+			if(indexes.put(names[i], i) != null)
+				throw new IllegalArgumentException("Duplicate field: " + names[i] + ".");
+			offsets[i] = offset;
+			offset += types[i].getWidth();
+		}
+		fixedSize = offset;
+	}
+	
+	private static int bitmapSize(int fieldCount) {
+		return (fieldCount + 7) >>> 3;
+	}
+	
+	public int getFieldCount() {
+		return names.length;
+	}
+	
+	public String getName(int field) {
+		return names[field];
+	}
+	
+	public FieldType getType(int field) {
+		return types[field];
+	}
+	
+	/**
+	 * @param field
+	 * @return 字段相对于记录开始处的偏移
+	 */
+	public int getOffset(int field) {
+		return offsets[field];
+	}
+	
+	/**
+	 * @param name
+	 * @return 字段不存在时返回-1
+	 */
+	public int indexOf(String name) {
+		Integer index = indexes.get(name);
+		return index == null ? -1 : index;
+	}
+	
+	/**
+	 * @return 记录头和定长区的总字节数，即不含字符串的记录长度
+	 */
+	public int getFixedSize() {
+		return fixedSize;
+	}
+	
+	/**
+	 * @param buffer
+	 * @param record 记录开始处的绝对位置
+	 * @return 记录长度
+	 */
+	public static int recordLength(ByteBuffer buffer, int record) {
+		return buffer.getInt(record);
+	}
+	
+	/**
+	 * @param buffer
+	 * @param record 记录开始处的绝对位置
+	 * @param field
+	 * @return 字段是否有值
+	 */
+	public boolean isPresent(ByteBuffer buffer, int record, int field) {
+		return (buffer.get(record + 4 + (field >>> 3)) & (1 << (field & 7))) != 0;
+	}
+	
+	/**
+	 * 按偏移读取字段
+	 * @param buffer
+	 * @param record 记录开始处的绝对位置
+	 * @param field 字段下标，小于0时返回null
+	 * @return 字段没有值时返回null
+	 */
+	public Valuable read(ByteBuffer buffer, int record, int field) {
+		if(field < 0 || !isPresent(buffer, record, field))
+			return null;
+		int offset = record + offsets[field];
+		switch(types[field]) {
+		case LONG:
+			return ValueUtil.numberValue(BigDecimal.valueOf(buffer.getLong(offset)));
+		case DOUBLE:
+			return ValueUtil.numberValue(BigDecimal.valueOf(buffer.getDouble(offset)));
+		case BOOLEAN:
+			return ValueUtil.booleanValue(buffer.get(offset) != 0);
+		case CHARACTER:
+			return TokenBuilder.getBuilder().dataType(DataType.CHARACTER)
+					.value(buffer.getChar(offset)).buildRuntimeValue();
+		case DATE:
+			Calendar date = Calendar.getInstance();
+			date.setTimeInMillis(buffer.getLong(offset));
+			return TokenBuilder.getBuilder().dataType(DataType.DATE).value(date).buildRuntimeValue();
+		default:
+			byte[] bytes = new byte[buffer.getInt(offset + 4)];
+			buffer.get(record + buffer.getInt(offset), bytes);
+			return ValueUtil.stringValue(new String(bytes, StandardCharsets.UTF_8));
+		}
+	}
+	
+	/**
+	 * 在position处写入头部：标识、版本、字段数，以及各字段的类型和名称
+	 * @param out
+	 */
+	public void writeHeader(ByteBuffer out) {
+		out.putInt(MAGIC);
+		out.putInt(VERSION);
+		out.putInt(names.length);
+		for(int i=0; i<names.length; i++) {
+			byte[] name = names[i].getBytes(StandardCharsets.UTF_8);
+			out.put((byte)types[i].ordinal());
+			out.putShort((short)name.length);
+			out.put(name);
+		}
+	}
+	
+	/**
+	 * 从position处读取头部，position移到第一条记录
+	 * @param in
+	 * @return
+	 * @throws IllegalArgumentException 头部格式错误时
+	 */
+	public static RecordSchema readHeader(ByteBuffer in) {
+		if(in.getInt() != MAGIC)
+			throw new IllegalArgumentException("Not a binary record header.");
+		int version = in.getInt();
+		if(version != VERSION)
+			throw new IllegalArgumentException("Unsupported binary record version: " + version + ".");
+		int count = in.getInt();
+		String[] names = new String[count];
+		FieldType[] types = new FieldType[count];
+		FieldType[] allTypes = FieldType.values();
+		for(int i=0; i<count; i++) {
+			int type = in.get();
+			if(type < 0 || type >= allTypes.length)
+				throw new IllegalArgumentException("Unknown field type: " + type + ".");
+			types[i] = allTypes[type];
+			byte[] name = new byte[in.getShort()];
+			in.get(name);
+			names[i] = new String(name, StandardCharsets.UTF_8);
+		}
+		return new RecordSchema(names, types);
+	}
+}
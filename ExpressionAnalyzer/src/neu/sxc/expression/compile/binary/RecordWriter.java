@@ -0,0 +1,223 @@
+package neu.sxc.expression.compile.binary;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Map;
+
+import neu.sxc.expression.tokens.Valuable;
+
+/**
+ * 按模式写二进制记录。先设置当前记录的字段，再调用write写出，未设置的字段没有值。
+ * 不是线程安全的
+ * @author shanxuecheng
+ *
+ */
+public class RecordWriter {
+	
+	private final RecordSchema schema;
+	
+	/**
+	 * 当前记录的记录头和定长区
+	 */
+	private final ByteBuffer fixed;
+	
+	/**
+	 * 当前记录中字符串字段的UTF-8字节
+	 */
+	private final byte[][] strings;
+	
+	public RecordWriter(RecordSchema schema) {
+		this.schema = schema;
+		this.fixed = ByteBuffer.allocate(schema.getFixedSize());
+		this.strings = new byte[schema.getFieldCount()][];
+	}
+	
+	public RecordSchema getSchema() {
+		return schema;
+	}
+	
+	public RecordWriter setLong(int field, long value) {
+		fixed.putLong(offset(field, FieldType.LONG), value);
+		return this;
+	}
+	
+	public RecordWriter setDouble(int field, double value) {
+		fixed.putDouble(offset(field, FieldType.DOUBLE), value);
+		return this;
+	}
+	
+	public RecordWriter setBoolean(int field, boolean value) {
+		fixed.put(offset(field, FieldType.BOOLEAN), (byte)(value ? 1 : 0));
+		return this;
+	}
+	
+	public RecordWriter setChar(int field, char value) {
+		fixed.putChar(offset(field, FieldType.CHARACTER), value);
+		return this;
+	}
+	
+	/**
+	 * @param field
+	 * @param millis 毫秒时间戳
+	 * @return
+	 */
+	public RecordWriter setDate(int field, long millis) {
+		fixed.putLong(offset(field, FieldType.DATE), millis);
+		return this;
+	}
+	
+	public RecordWriter setString(int field, String value) {
+		offset(field, FieldType.STRING);
+		strings[field] = value.getBytes(StandardCharsets.UTF_8);
+		return this;
+	}
+	
+	/**
+	 * 按字段类型设置值，值为null时字段没有值
+	 * @param name 字段名
+	 * @param value Number、Boolean、Character、Calendar、Date、String或Valuable
+	 * @return
+	 * @throws IllegalArgumentException 字段不存在、值与字段类型不符或写入LONG字段的数不是long范围内的整数时
+	 */
+	public RecordWriter set(String name, Object value) {
+		int field = schema.indexOf(name);
+		if(field < 0)
+			throw new IllegalArgumentException("No field named " + name + ".");
+		if(value instanceof Valuable)
+			value = ((Valuable)value).getValue();
+		if(value == null) {
+			clear(field);
+			return this;
+		}
+		FieldType type = schema.getType(field);
+		if(type == FieldType.LONG && value instanceof Number)
+			return setLong(field, toLong((Number)value, name));
+		if(type == FieldType.DOUBLE && value instanceof Number)
+			return setDouble(field, ((Number)value).doubleValue());
+		if(type == FieldType.BOOLEAN && value instanceof Boolean)
+			return setBoolean(field, (Boolean)value);
+		if(type == FieldType.CHARACTER && value instanceof Character)
+			return setChar(field, (Character)value);
+		if(type == FieldType.DATE && value instanceof Calendar)
+			return setDate(field, ((Calendar)value).getTimeInMillis());
+		if(type == FieldType.DATE && value instanceof Date)
+			return setDate(field, ((Date)value).getTime());
+		if(type == FieldType.STRING && value instanceof String)
+			return setString(field, (String)value);
+		throw new IllegalArgumentException("Cannot write " + value.getClass().getName()
+				+ " to " + type.name() + " field " + name + ".");
+	}
+	
+	/**
+	 * 转为long，不截断小数或溢出
+	 */
+	private static long toLong(Number value, String name) {
+		try {
+			if(value instanceof BigDecimal)
+				return ((BigDecimal)value).longValueExact();
+			if(value instanceof BigInteger)
+				return ((BigInteger)value).longValueExact();
+		} catch (ArithmeticException e) {
+			throw new IllegalArgumentException("Value " + value + " of field " + name + " is not a long.", e);
+		}
+		if(value instanceof Double || value instanceof Float) {
+			double d = value.doubleValue();
+			//2^63不能表示为long
+			if(d != Math.rint(d) || d < -0x1p63 || d >= 0x1p63)
+				throw new IllegalArgumentException("Value " + value + " of field " + name + " is not a long.");
+			return (long)d;
+		}
+		return value.longValue();
+	}
+	
+	/**
+	 * 清除字段的值
+	 * @param field
+	 */
+	private void clear(int field) {
+		int bitmap = 4 + (field >>> 3);
+		fixed.put(bitmap, (byte)(fixed.get(bitmap) & ~(1 << (field & 7))));
+		strings[field] = null;
+	}
+	
+	/**
+	 * 检查字段类型并标记字段有值
+	 * @return 字段在定长区中的偏移
+	 */
+	private int offset(int field, FieldType type) {
+		if(schema.getType(field) != type)
+			throw new IllegalArgumentException("Field " + schema.getName(field) + " is "
+					+ schema.getType(field).name() + ", not " + type.name() + ".");
+		int bitmap = 4 + (field >>> 3);
+		fixed.put(bitmap, (byte)(fixed.get(bitmap) | (1 << (field & 7))));
+		return schema.getOffset(field);
+	}
+	
+	/**
+	 * @return 当前记录的字节数
+	 */
+	public int size() {
+		int size = schema.getFixedSize();
+		for(byte[] string : strings)
+			if(string != null)
+				size += string.length;
+		return size;
+	}
+	
+	/**
+	 * 在position处写出当前记录并开始新记录
+	 * @param out
+	 * @return 记录的字节数
+	 * @throws BufferOverflowException 空间不足时，此时out和当前记录都不变
+	 */
+	public int write(ByteBuffer out) {
+		int size = size();
+		if(out.remaining() < size)
+			throw new BufferOverflowException();
+		int record = out.position();
+		fixed.putInt(0, size);
+		out.put(fixed.array(), 0, schema.getFixedSize());
+		for(int i=0; i<strings.length; i++) {
+			if(strings[i] == null)
+				continue;
+			out.putInt(record + schema.getOffset(i), out.position() - record);
+			out.putInt(record + schema.getOffset(i) + 4, strings[i].length);
+			out.put(strings[i]);
+		}
+		reset();
+		return size;
+	}
+	
+	/**
+	 * 清除当前记录的所有字段
+	 */
+	private void reset() {
+		Arrays.fill(fixed.array(), (byte)0);
+		Arrays.fill(strings, null);
+	}
+	
+	/**
+	 * 按字段名写出一条记录，不在模式中的键被忽略。
+	 * 出错时当前记录被清除，已设置的字段不会带入下一条记录
+	 * @param out
+	 * @param values
+	 * @return 记录的字节数
+	 */
+	public int write(ByteBuffer out, Map<String, ?> values) {
+		try {
+			for(Map.Entry<String, ?> entry : values.entrySet())
+				if(schema.indexOf(entry.getKey()) >= 0)
+					set(entry.getKey(), entry.getValue());
+			return write(out);
+		} catch (RuntimeException e) {
+			reset();
+			throw e;
+		}
+	}
+}
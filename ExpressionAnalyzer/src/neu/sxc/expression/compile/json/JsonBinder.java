@@ -0,0 +1,180 @@
+package neu.sxc.expression.compile.json;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import neu.sxc.expression.compile.CompiledExpression;
+import neu.sxc.expression.compile.Frame;
+import neu.sxc.expression.tokens.Valuable;
+
+/**
+ * 直接从UTF-8编码的JSON绑定变量。
+ * 只提取表达式的输入变量，变量默认对应顶层同名字段，也可通过alias映射到以点分隔的路径。
+ * JSON只扫描一遍，其余字段跳过而不分配对象，所有变量都取到后停止扫描。
+ * 数字直接解析为BigDecimal，字符串为STRING，true和false为BOOLEAN；
+ * null、对象和数组不绑定，读取时变量未定义。同名字段取第一个。
+ * 设置完别名后可被多个线程同时使用
+ * @author shanxuecheng
+ *
+ */
+public class JsonBinder {
+	
+	private final CompiledExpression compiled;
+	
+	/**
+	 * 变量名及其路径
+	 */
+	private final Map<String, String> aliases = new HashMap<String, String>();
+	
+	/**
+	 * 路径树的根
+	 */
+	private PathNode root;
+	
+	/**
+	 * 路径树的叶子数，即需要绑定的变量数
+	 */
+	private int leafCount;
+	
+	public JsonBinder(CompiledExpression compiled) {
+		this.compiled = compiled;
+		buildPaths();
+	}
+	
+	public CompiledExpression getCompiledExpression() {
+		return compiled;
+	}
+	
+	/**
+	 * 将变量映射到JSON路径
+	 * @param variableName
+	 * @param path 以点分隔的字段名，如"order.customer.id"
+	 * @return
+	 * @throws IllegalArgumentException 与其他变量的路径相同或互为前缀时
+	 */
+	public JsonBinder alias(String variableName, String path) {
+		String previous = aliases.put(variableName, path);
+		try {
+			buildPaths();
+		} catch(IllegalArgumentException e) {
+			if(previous == null)
+				aliases.remove(variableName);
+			else
+				aliases.put(variableName, previous);
+			throw e;
+		}
+		return this;
+	}
+	
+	private void buildPaths() {
+		PathTree tree = new PathTree();
+		int count = 0;
+		for(String name : compiled.analyze().getRequiredInputs()) {
+			String path = aliases.containsKey(name) ? aliases.get(name) : name;
+			if(!tree.add(path.split("\\."), compiled.getSlot(name)))
+				throw new IllegalArgumentException("Path \"" + path + "\" of variable \"" + name
+						+ "\" conflicts with the path of another variable.");
+			count++;
+		}
+		root = tree.toNode();
+		leafCount = count;
+	}
+	
+	/**
+	 * 清除帧并从JSON绑定变量
+	 * @param frame
+	 * @param json 从position到limit的UTF-8 JSON对象，position不变
+	 * @throws JsonFormatException JSON格式错误时
+	 */
+	public void bind(Frame frame, ByteBuffer json) {
+		frame.clear();
+		new JsonScanner(json, frame, leafCount).scanRoot(root);
+	}
+	
+	public void bind(Frame frame, byte[] json) {
+		bind(frame, ByteBuffer.wrap(json));
+	}
+	
+	/**
+	 * 以JSON中的字段为变量计算表达式
+	 * @param json
+	 * @return
+	 */
+	public Valuable evaluate(ByteBuffer json) {
+		Frame frame = compiled.newFrame();
+		bind(frame, json);
+		return compiled.evaluate(frame);
+	}
+	
+	public Valuable evaluate(byte[] json) {
+		return evaluate(ByteBuffer.wrap(json));
+	}
+	
+	/**
+	 * 路径树节点，子节点按UTF-8编码的字段名匹配
+	 */
+	static final class PathNode {
+		
+		final byte[][] names;
+		
+		final PathNode[] children;
+		
+		/**
+		 * 叶子节点绑定的变量槽位，非叶子节点为-1
+		 */
+		final int slot;
+		
+		PathNode(byte[][] names, PathNode[] children, int slot) {
+			this.names = names;
+			this.children = children;
+			this.slot = slot;
+		}
+	}
+	
+	/**
+	 * 构造路径树时使用的可变节点
+	 */
+	private static final class PathTree {
+		
+		private final Map<String, PathTree> children = new LinkedHashMap<String, PathTree>();
+		
+		private int slot = -1;
+		
+		/**
+		 * @return 路径与已有路径相同或互为前缀时返回false
+		 */
+		boolean add(String[] path, int slot) {
+			PathTree node = this;
+			for(String name : path) {
+				if(node.slot >= 0)
+					return false;
+				PathTree child = node.children.get(name);
+				if(child == null) {
+					child = new PathTree();
+					node.children.put(name, child);
+				}
+				node = child;
+			}
+			if(node.slot >= 0 || !node.children.isEmpty())
+				return false;
+			node.slot = slot;
+			return true;
+		}
+		
+		PathNode toNode() {
+			List<byte[]> names = new ArrayList<byte[]>();
+			List<PathNode> nodes = new ArrayList<PathNode>();
+			for(Map.Entry<String, PathTree> entry : children.entrySet()) {
+				names.add(entry.getKey().getBytes(StandardCharsets.UTF_8));
+				nodes.add(entry.getValue().toNode());
+			}
+			return new PathNode(names.toArray(new byte[names.size()][]),
+					nodes.toArray(new PathNode[nodes.size()]), slot);
+		}
+	}
+}
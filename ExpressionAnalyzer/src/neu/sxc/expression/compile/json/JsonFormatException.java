@@ -0,0 +1,24 @@
+package neu.sxc.expression.compile.json;
+
+/**
+ * JSON格式错误
+ * @author shanxuecheng
+ *
+ */
+@SuppressWarnings("serial")
+public class JsonFormatException extends RuntimeException {
+	
+	private final int offset;
+	
+	public JsonFormatException(String message, int offset) {
+		super(message + " At offset:" + offset + ".");
+		this.offset = offset;
+	}
+	
+	/**
+	 * @return 出错位置相对于JSON开始处的字节偏移
+	 */
+	public int getOffset() {
+		return offset;
+	}
+}
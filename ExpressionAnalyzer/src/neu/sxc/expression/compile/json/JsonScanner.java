@@ -0,0 +1,316 @@
+package neu.sxc.expression.compile.json;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import neu.sxc.expression.compile.Frame;
+import neu.sxc.expression.tokens.Valuable;
+import neu.sxc.expression.utils.ExpressionUtil;
+import neu.sxc.expression.utils.ValueUtil;
+
+/**
+ * 单次扫描JSON，按路径树把字段值写入帧。只按绝对位置读取缓冲区，不改变其position。
+ * 被跳过的值只检查括号和引号配对，不完整校验格式
+ * @author shanxuecheng
+ *
+ */
+final class JsonScanner {
+	
+	/**
+	 * long可精确表示的十进制位数
+	 */
+	
+	private final ByteBuffer buffer;
+	
+	private final int start;
+	
+	private final int limit;
+	
+	private int pos;
+	
+	private final Frame frame;
+	
+	/**
+	 * 尚未取到的变量数
+	 */
+	private int remaining;
+	
+	JsonScanner(ByteBuffer buffer, Frame frame, int leafCount) {
+		this.buffer = buffer;
+		this.start = buffer.position();
+		this.limit = buffer.limit();
+		this.pos = start;
+		this.frame = frame;
+		this.remaining = leafCount;
+	}
+	
+	void scanRoot(JsonBinder.PathNode root) {
+		skipBlank();
+		if(peek() != '{')
+			throw error("Expected '{'");
+		if(remaining > 0)
+			scanObject(root);
+	}
+	
+	/**
+	 * 扫描对象，pos位于'{'
+	 * @return 所有变量都已取到时返回true，此时停止扫描
+	 */
+	private boolean scanObject(JsonBinder.PathNode node) {
+		pos++;
+		skipBlank();
+		if(peek() == '}') {
+			pos++;
+			return false;
+		}
+		while(true) {
+			expect('"', "Expected field name");
+			int child = matchKey(node);
+			skipBlank();
+			expect(':', "Expected ':'");
+			skipBlank();
+			if(child < 0) {
+				skipValue();
+			} else {
+				JsonBinder.PathNode target = node.children[child];
+				if(target.slot >= 0) {
+					if(frame.get(target.slot) == null) {
+						Valuable value = readValue();
+						if(value != null) {
+							frame.set(target.slot, value);
+							if(--remaining == 0)
+								return true;
+						}
+					} else {
+						skipValue();
+					}
+				} else if(peek() == '{') {
+					if(scanObject(target))
+						return true;
+				} else {
+					skipValue();
+				}
+			}
+			skipBlank();
+			if(peek() == '}') {
+				pos++;
+				return false;
+			}
+			expect(',', "Expected ',' or '}'");
+			skipBlank();
+		}
+	}
+	
+	/**
+	 * 读取字段名并与子节点匹配，pos位于左引号之后，返回时位于右引号之后
+	 * @return 子节点下标，没有匹配时返回-1
+	 */
+	private int matchKey(JsonBinder.PathNode node) {
+		int begin = pos;
+		boolean escaped = skipString();
+		int end = pos - 1;
+		if(escaped) {
+			//含转义的字段名很少见，解码后比较
+			String key = decode(begin, end);
+			for(int i=0; i<node.names.length; i++)
+				if(key.equals(new String(node.names[i], StandardCharsets.UTF_8)))
+					return i;
+			return -1;
+		}
+		int length = end - begin;
+		for(int i=0; i<node.names.length; i++) {
+			byte[] name = node.names[i];
+			if(name.length != length)
+				continue;
+			int k = 0;
+			while(k < length && buffer.get(begin + k) == name[k])
+				k++;
+			if(k == length)
+				return i;
+		}
+		return -1;
+	}
+	
+	/**
+	 * 读取基本类型的值
+	 * @return null、对象和数组返回null
+	 */
+	private Valuable readValue() {
+		byte c = peek();
+		if(c == '"') {
+			pos++;
+			int begin = pos;
+			boolean escaped = skipString();
+			String value = escaped ? decode(begin, pos - 1) : utf8(begin, pos - 1);
+			return ValueUtil.stringValue(value);
+		}
+		if(c == '-' || isDigit(c))
+			return ValueUtil.numberValue(readNumber());
+		if(c == 't') {
+			expectLiteral("true");
+			return ValueUtil.booleanValue(true);
+		}
+		if(c == 'f') {
+			expectLiteral("false");
+			return ValueUtil.booleanValue(false);
+		}
+		skipValue();
+		return null;
+	}
+	
+	/**
+	 * 解析数字。JSON的数字不能以正号或小数点开头，其余格式由ValueUtil.parseNumber检查
+	 */
+	private BigDecimal readNumber() {
+		int begin = pos;
+		if(peek() == '-')
+			pos++;
+		if(pos >= limit || !isDigit(buffer.get(pos)))
+			throw error("Illegal number");
+		while(pos < limit && isNumberChar(buffer.get(pos)))
+			pos++;
+		BigDecimal number = ValueUtil.parseNumber(buffer, begin, pos);
+		if(number == null)
+			throw error("Illegal number");
+		return number;
+	}
+	
+	/**
+	 * 跳过一个值，不分配对象
+	 */
+	private void skipValue() {
+		byte c = peek();
+		if(c == '"') {
+			pos++;
+			skipString();
+		} else if(c == '{' || c == '[') {
+			int depth = 0;
+			do {
+				byte b = next();
+				if(b == '"')
+					skipString();
+				else if(b == '{' || b == '[')
+					depth++;
+				else if(b == '}' || b == ']')
+					depth--;
+			} while(depth > 0);
+		} else if(c == '-' || isDigit(c)) {
+			pos++;
+			while(pos < limit && isNumberChar(buffer.get(pos)))
+				pos++;
+		} else if(c == 't') {
+			expectLiteral("true");
+		} else if(c == 'f') {
+			expectLiteral("false");
+		} else if(c == 'n') {
+			expectLiteral("null");
+		} else {
+			throw error("Unexpected character '" + (char)c + "'");
+		}
+	}
+	
+	/**
+	 * 跳过字符串，pos位于左引号之后，返回时位于右引号之后
+	 * @return 是否含转义字符
+	 */
+	private boolean skipString() {
+		boolean escaped = false;
+		while(true) {
+			byte b = next();
+			if(b == '"')
+				return escaped;
+			if(b == '\\') {
+				escaped = true;
+				next();
+			}
+		}
+	}
+	
+	private void expectLiteral(String literal) {
+		for(int i=0; i<literal.length(); i++)
+			expect(literal.charAt(i), "Expected " + literal);
+	}
+	
+	/**
+	 * 当前字节不是c时抛出异常，错误位置为当前字节
+	 */
+	private void expect(char c, String message) {
+		if(peek() != c)
+			throw error(message);
+		pos++;
+	}
+	
+	private String utf8(int begin, int end) {
+		byte[] bytes = new byte[end - begin];
+		buffer.get(begin, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * 解码含转义字符的字符串
+	 */
+	private String decode(int begin, int end) {
+		String raw = utf8(begin, end);
+		StringBuilder sb = new StringBuilder(raw.length());
+		for(int i=0; i<raw.length(); i++) {
+			char c = raw.charAt(i);
+			if(c != '\\') {
+				sb.append(c);
+				continue;
+			}
+			char escape = raw.charAt(++i);
+			if(escape == 'u') {
+				if(i + 4 >= raw.length())
+					throw error("Illegal unicode escape");
+				try {
+					sb.append((char)Integer.parseInt(raw.substring(i + 1, i + 5), 16));
+				} catch(NumberFormatException e) {
+					throw error("Illegal unicode escape");
+				}
+				i += 4;
+			} else if(escape == '/') {
+				sb.append('/');
+			} else {
+				char escapedChar = ExpressionUtil.getEscapedChar(escape);
+				if(escapedChar == 0)
+					throw error("Illegal escape '\\" + escape + "'");
+				sb.append(escapedChar);
+			}
+		}
+		return sb.toString();
+	}
+	
+	private void skipBlank() {
+		while(pos < limit) {
+			byte b = buffer.get(pos);
+			if(b != ' ' && b != '\t' && b != '\n' && b != '\r')
+				return;
+			pos++;
+		}
+	}
+	
+	private byte peek() {
+		if(pos >= limit)
+			throw error("Unexpected end of JSON");
+		return buffer.get(pos);
+	}
+	
+	private byte next() {
+		byte b = peek();
+		pos++;
+		return b;
+	}
+	
+	private static boolean isDigit(byte b) {
+		return b >= '0' && b <= '9';
+	}
+	
+	private static boolean isNumberChar(byte b) {
+		return isDigit(b) || b == '.' || b == 'e' || b == 'E' || b == '+' || b == '-';
+	}
+	
+	private JsonFormatException error(String message) {
+		return new JsonFormatException(message + ".", pos - start);
+	}
+}
@@ -0,0 +1,61 @@
+package neu.sxc.expression.compile.rule;
+
+import java.util.Arrays;
+
+/**
+ * 可增长的int数组，避免装箱
+ * @author shanxuecheng
+ *
+ */
+class IntList {
+	
+	private int[] values;
+	
+	private int size = 0;
+	
+	IntList() {
+		this(16);
+	}
+	
+	IntList(int capacity) {
+		values = new int[Math.max(capacity, 1)];
+	}
+	
+	void add(int value) {
+		if(size == values.length)
+			values = Arrays.copyOf(values, size * 2);
+		values[size++] = value;
+	}
+	
+	void addAll(int[] array) {
+		if(size + array.length > values.length)
+			values = Arrays.copyOf(values, Math.max(size * 2, size + array.length));
+		System.arraycopy(array, 0, values, size, array.length);
+		size += array.length;
+	}
+	
+	int get(int index) {
+		return values[index];
+	}
+	
+	int size() {
+		return size;
+	}
+	
+	void clear() {
+		size = 0;
+	}
+	
+	int[] toArray() {
+		return Arrays.copyOf(values, size);
+	}
+	
+	/**
+	 * @return 升序排列的副本
+	 */
+	int[] toSortedArray() {
+		int[] result = toArray();
+		Arrays.sort(result);
+		return result;
+	}
+}
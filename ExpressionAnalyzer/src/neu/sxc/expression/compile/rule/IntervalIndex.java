@@ -0,0 +1,111 @@
+package neu.sxc.expression.compile.rule;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * 数值区间索引。所有区间端点排序后将数轴划分为基本段：
+ * (-∞,p0), [p0,p0], (p0,p1), [p1,p1], ..., (pm-1,+∞)，每个区间对应连续若干基本段，
+ * 以线段树保存，查询包含某值的区间时从根走到该值所在的叶子，耗时O(log m + 结果数)
+ * @author shanxuecheng
+ *
+ */
+class IntervalIndex {
+	
+	/**
+	 * 排序去重的端点
+	 */
+	private final BigDecimal[] points;
+	
+	/**
+	 * 基本段数
+	 */
+	private final int pieces;
+	
+	/**
+	 * 线段树各节点上完整覆盖该节点的规则，根节点为1
+	 */
+	private final int[][] tree;
+	
+	IntervalIndex(List<NumericRange> ranges, List<Integer> rules) {
+		TreeSet<BigDecimal> endpoints = new TreeSet<BigDecimal>();
+		for(NumericRange range : ranges) {
+			if(range.low != null)
+				endpoints.add(range.low);
+			if(range.high != null)
+				endpoints.add(range.high);
+		}
+		points = endpoints.toArray(new BigDecimal[endpoints.size()]);
+		pieces = 2 * points.length + 1;
+		List<List<Integer>> lists = new ArrayList<List<Integer>>(4 * pieces);
+		for(int i=0; i<4*pieces; i++)
+			lists.add(null);
+		for(int i=0; i<ranges.size(); i++) {
+			NumericRange range = ranges.get(i);
+			if(range.isEmpty())
+				continue;
+			int from = range.low == null ? 0 : 2 * indexOf(range.low) + (range.lowInclusive ? 1 : 2);
+			int to = range.high == null ? pieces - 1 : 2 * indexOf(range.high) + (range.highInclusive ? 1 : 0);
+			if(from <= to)
+				insert(lists, 1, 0, pieces - 1, from, to, rules.get(i));
+		}
+		tree = new int[4 * pieces][];
+		for(int i=0; i<tree.length; i++) {
+			List<Integer> list = lists.get(i);
+			if(list != null) {
+				tree[i] = new int[list.size()];
+				for(int j=0; j<tree[i].length; j++)
+					tree[i][j] = list.get(j);
+			}
+		}
+	}
+	
+	private int indexOf(BigDecimal point) {
+		return Arrays.binarySearch(points, point);
+	}
+	
+	private static void insert(List<List<Integer>> lists, int node, int left, int right, 
+			int from, int to, int rule) {
+		if(from <= left && right <= to) {
+			if(lists.get(node) == null)
+				lists.set(node, new ArrayList<Integer>(2));
+			lists.get(node).add(rule);
+			return;
+		}
+		int middle = (left + right) >>> 1;
+		if(from <= middle)
+			insert(lists, 2 * node, left, middle, from, to, rule);
+		if(to > middle)
+			insert(lists, 2 * node + 1, middle + 1, right, from, to, rule);
+	}
+	
+	/**
+	 * 查询包含value的区间对应的规则
+	 * @param value
+	 * @param out
+	 */
+	void query(BigDecimal value, IntList out) {
+		int index = Arrays.binarySearch(points, value);
+		int piece = index >= 0 ? 2 * index + 1 : 2 * (-index - 1);
+		int node = 1;
+		int left = 0;
+		int right = pieces - 1;
+		while(true) {
+			if(tree[node] != null)
+				out.addAll(tree[node]);
+			if(left == right)
+				break;
+			int middle = (left + right) >>> 1;
+			if(piece <= middle) {
+				node = 2 * node;
+				right = middle;
+			} else {
+				node = 2 * node + 1;
+				left = middle + 1;
+			}
+		}
+	}
+}
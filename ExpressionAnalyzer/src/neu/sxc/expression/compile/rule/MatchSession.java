@@ -0,0 +1,268 @@
+package neu.sxc.expression.compile.rule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import neu.sxc.expression.compile.CompiledExpression;
+import neu.sxc.expression.compile.Frame;
+import neu.sxc.expression.tokens.TokenBuilder;
+import neu.sxc.expression.tokens.Valuable;
+import neu.sxc.expression.utils.Bitmap;
+
+/**
+ * 规则网络的会话，即工作内存。
+ * 保存变量值、各alpha节点的结果和各规则的匹配状态，update()只重新计算依赖被修改变量的节点和规则。
+ * alpha节点的结果缓存到其读取的变量改变为止，节点中的函数调用不会因时间等外部因素重新计算。
+ * 会话不是线程安全的
+ * @author shanxuecheng
+ *
+ */
+public class MatchSession {
+	
+	private final RuleNetwork network;
+	
+	private final RuleSet ruleSet;
+	
+	private final Frame frame;
+	
+	/**
+	 * 各alpha节点是否成立
+	 */
+	private final boolean[] alphaValues;
+	
+	/**
+	 * 各alpha节点计算抛出的异常
+	 */
+	private final RuntimeException[] alphaErrors;
+	
+	private final Bitmap matched;
+	
+	/**
+	 * 计算出错的规则
+	 */
+	private final Bitmap failed;
+	
+	/**
+	 * 本次更新中已计算的alpha节点和规则，以更新次数标记
+	 */
+	private final int[] alphaStamps;
+	
+	private final int[] ruleStamps;
+	
+	private int stamp = 0;
+	
+	/**
+	 * 上次更新计算的alpha节点数
+	 */
+	private int evaluatedAlphaCount = 0;
+	
+	MatchSession(RuleNetwork network) {
+		this.network = network;
+		this.ruleSet = network.getRuleSet();
+		this.frame = ruleSet.newFrame();
+		int alphaCount = network.getAlphaCount();
+		int ruleCount = ruleSet.getRuleCount();
+		this.alphaValues = new boolean[alphaCount];
+		this.alphaErrors = new RuntimeException[alphaCount];
+		this.alphaStamps = new int[alphaCount];
+		this.ruleStamps = new int[ruleCount];
+		this.matched = new Bitmap(ruleCount);
+		this.failed = new Bitmap(ruleCount);
+	}
+	
+	/**
+	 * 以一组新的变量值重新计算全部节点
+	 * @param input
+	 */
+	public void bind(Map<String, ?> input) {
+		ruleSet.bind(frame, input);
+		nextStamp();
+		int alphaCount = network.getAlphaCount();
+		for(int alpha=0; alpha<alphaCount; alpha++)
+			evaluateAlpha(alpha);
+		for(int rule=0; rule<ruleSet.getRuleCount(); rule++)
+			evaluateRule(rule);
+		evaluatedAlphaCount = alphaCount;
+	}
+	
+	/**
+	 * 修改一个变量的值
+	 * @param variable
+	 * @param value 为null时变量变为未定义
+	 */
+	public void update(String variable, Object value) {
+		nextStamp();
+		set(variable, value);
+		IntList alphas = new IntList();
+		collectAlphas(variable, alphas);
+		propagate(alphas);
+	}
+	
+	/**
+	 * 同时修改多个变量的值，依赖其中多个变量的节点只计算一次
+	 * @param changes
+	 */
+	public void update(Map<String, ?> changes) {
+		nextStamp();
+		for(Map.Entry<String, ?> entry : changes.entrySet())
+			set(entry.getKey(), entry.getValue());
+		IntList alphas = new IntList();
+		for(String variable : changes.keySet())
+			collectAlphas(variable, alphas);
+		propagate(alphas);
+	}
+	
+	private void set(String variable, Object value) {
+		int slot = ruleSet.getSlot(variable);
+		if(slot < 0)
+			return;
+		frame.set(slot, value == null ? null 
+				: value instanceof Valuable ? (Valuable)value : TokenBuilder.buildRuntimeValue(value));
+		frame.clearMemo();
+	}
+	
+	/**
+	 * 收集依赖变量的alpha节点，每个节点只收集一次
+	 */
+	private void collectAlphas(String variable, IntList alphas) {
+		int slot = ruleSet.getSlot(variable);
+		if(slot < 0)
+			return;
+		for(int alpha : network.slotAlphas[slot]) {
+			if(alphaStamps[alpha] != stamp) {
+				alphaStamps[alpha] = stamp;
+				alphas.add(alpha);
+			}
+		}
+	}
+	
+	/**
+	 * 先计算所有受影响的alpha节点，再计算它们所属的规则
+	 */
+	private void propagate(IntList alphas) {
+		for(int i=0; i<alphas.size(); i++)
+			evaluateAlpha(alphas.get(i));
+		for(int i=0; i<alphas.size(); i++)
+			for(int rule : network.alphaToRules[alphas.get(i)])
+				if(ruleStamps[rule] != stamp)
+					evaluateRule(rule);
+		evaluatedAlphaCount = alphas.size();
+	}
+	
+	private void nextStamp() {
+		if(++stamp == 0) {
+			Arrays.fill(alphaStamps, 0);
+			Arrays.fill(ruleStamps, 0);
+			stamp = 1;
+		}
+	}
+	
+	private void evaluateAlpha(int alpha) {
+		alphaStamps[alpha] = stamp;
+		alphaErrors[alpha] = null;
+		try {
+			int rule = network.alphaRules[alpha];
+			if(rule >= 0)
+				alphaValues[alpha] = ruleSet.matches(frame, rule);
+			else
+				alphaValues[alpha] = CompiledExpression.isTrue(network.alphaNodes[alpha].evaluate(frame));
+		} catch (RuntimeException e) {
+			alphaValues[alpha] = false;
+			alphaErrors[alpha] = e;
+		}
+	}
+	
+	/**
+	 * 由alpha节点的结果得到规则状态。条件不短路计算，最左边出错的条件决定规则的异常
+	 * @param rule
+	 */
+	private void evaluateRule(int rule) {
+		ruleStamps[rule] = stamp;
+		boolean result = true;
+		boolean error = false;
+		for(int alpha : network.ruleAlphas[rule]) {
+			if(alphaErrors[alpha] != null) {
+				error = true;
+				break;
+			}
+			result &= alphaValues[alpha];
+		}
+		if(error) {
+			failed.set(rule);
+			matched.clear(rule);
+		} else {
+			failed.clear(rule);
+			if(result)
+				matched.set(rule);
+			else
+				matched.clear(rule);
+		}
+	}
+	
+	/**
+	 * @return 上次bind或update中计算的alpha节点数
+	 */
+	public int getEvaluatedAlphaCount() {
+		return evaluatedAlphaCount;
+	}
+	
+	/**
+	 * 取变量的当前值
+	 * @param variable
+	 * @return 未定义时返回null
+	 */
+	public Valuable getValue(String variable) {
+		int slot = ruleSet.getSlot(variable);
+		return slot < 0 ? null : frame.get(slot);
+	}
+	
+	/**
+	 * @param ruleId
+	 * @return 规则当前是否匹配
+	 */
+	public boolean isMatched(String ruleId) {
+		int rule = ruleSet.getRuleIndex(ruleId);
+		if(rule < 0)
+			throw new IllegalArgumentException("Unknown rule:" + ruleId + ".");
+		return matched.get(rule);
+	}
+	
+	/**
+	 * @return 当前匹配的规则id，按规则添加顺序排列
+	 * @throws RuleEvaluationException 有规则计算出错时，抛出第一个出错规则的异常
+	 */
+	public List<String> getMatches() {
+		return getMatches(null);
+	}
+	
+	/**
+	 * 取当前匹配的规则，出错的规则不影响其余规则
+	 * @param failures 收集出错的规则，按规则添加顺序排列；为null时有规则出错即抛出异常
+	 * @return 当前匹配的规则id，按规则添加顺序排列
+	 * @throws RuleEvaluationException failures为null且有规则计算出错时，抛出第一个出错规则的异常
+	 */
+	public List<String> getMatches(List<RuleEvaluationException> failures) {
+		for(int rule = failed.nextSetBit(0); rule >= 0; rule = failed.nextSetBit(rule + 1)) {
+			if(failures == null)
+				throw error(rule);
+			failures.add(error(rule));
+		}
+		List<String> result = new ArrayList<String>();
+		for(int rule = matched.nextSetBit(0); rule >= 0; rule = matched.nextSetBit(rule + 1))
+			result.add(ruleSet.getRuleId(rule));
+		return result;
+	}
+	
+	private RuleEvaluationException error(int rule) {
+		for(int alpha : network.ruleAlphas[rule]) {
+			RuntimeException e = alphaErrors[alpha];
+			if(e instanceof RuleEvaluationException)
+				return (RuleEvaluationException)e;
+			if(e != null)
+				return new RuleEvaluationException(ruleSet.getRuleId(rule), e);
+		}
+		throw new IllegalStateException();
+	}
+}
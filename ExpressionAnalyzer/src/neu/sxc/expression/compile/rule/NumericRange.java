@@ -0,0 +1,76 @@
+package neu.sxc.expression.compile.rule;
+
+import java.math.BigDecimal;
+
+/**
+ * 数值区间，由同一变量上的多个比较条件求交得到，边界为null表示无界
+ * @author shanxuecheng
+ *
+ */
+class NumericRange {
+	
+	BigDecimal low;
+	
+	boolean lowInclusive;
+	
+	BigDecimal high;
+	
+	boolean highInclusive;
+	
+	/**
+	 * 与“变量 op 常量”求交
+	 * @param op 比较运算，见PredicateIndex中的常量
+	 * @param constant
+	 */
+	void intersect(int op, BigDecimal constant) {
+		switch(op) {
+		case PredicateIndex.GREAT:
+			raiseLow(constant, false);
+			break;
+		case PredicateIndex.GREAT_EQUAL:
+			raiseLow(constant, true);
+			break;
+		case PredicateIndex.LESS:
+			lowerHigh(constant, false);
+			break;
+		case PredicateIndex.LESS_EQUAL:
+			lowerHigh(constant, true);
+			break;
+		case PredicateIndex.EQUAL:
+			raiseLow(constant, true);
+			lowerHigh(constant, true);
+			break;
+		}
+	}
+	
+	private void raiseLow(BigDecimal value, boolean inclusive) {
+		int c = low == null ? 1 : value.compareTo(low);
+		if(c > 0) {
+			low = value;
+			lowInclusive = inclusive;
+		} else if(c == 0) {
+			lowInclusive &= inclusive;
+		}
+	}
+	
+	private void lowerHigh(BigDecimal value, boolean inclusive) {
+		int c = high == null ? -1 : value.compareTo(high);
+		if(c < 0) {
+			high = value;
+			highInclusive = inclusive;
+		} else if(c == 0) {
+			highInclusive &= inclusive;
+		}
+	}
+	
+	boolean isBounded() {
+		return low != null && high != null;
+	}
+	
+	boolean isEmpty() {
+		if(low == null || high == null)
+			return false;
+		int c = low.compareTo(high);
+		return c > 0 || (c == 0 && !(lowInclusive && highInclusive));
+	}
+}
@@ -0,0 +1,229 @@
+package neu.sxc.expression.compile.rule;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import neu.sxc.expression.compile.ConstNode;
+import neu.sxc.expression.compile.Frame;
+import neu.sxc.expression.compile.Node;
+import neu.sxc.expression.compile.OperatorNode;
+import neu.sxc.expression.compile.SentenceStatement;
+import neu.sxc.expression.compile.Statement;
+import neu.sxc.expression.compile.VariableNode;
+import neu.sxc.expression.syntax.operator.AndOperator;
+import neu.sxc.expression.syntax.operator.EqualOperator;
+import neu.sxc.expression.syntax.operator.GreatEOperator;
+import neu.sxc.expression.syntax.operator.GreatOperator;
+import neu.sxc.expression.syntax.operator.LessEOperator;
+import neu.sxc.expression.syntax.operator.LessOperator;
+import neu.sxc.expression.syntax.operator.NotOperator;
+import neu.sxc.expression.syntax.operator.Operator;
+import neu.sxc.expression.tokens.ConstToken;
+import neu.sxc.expression.tokens.DataType;
+
+/**
+ * 规则谓词索引。从形如“条件 && 条件 && ...”的单语句规则中提取“变量 op 常量”形式的原子条件：
+ * NUMBER常量的>、>=、<、<=、==按变量求交为区间，STRING、CHARACTER常量的==，以及单独的BOOLEAN变量或其取反。
+ * 每条规则选一个原子条件作为入口条件登记在对应变量的索引中，匹配时只有入口条件可能成立的规则才被完整计算，
+ * 没有可提取条件的规则总是被计算。
+ * 被排除的规则不再计算，因此其其余合取项中的运行时错误（如除零）不会抛出
+ * @author shanxuecheng
+ *
+ */
+class PredicateIndex {
+	
+	static final int GREAT = 0;
+	
+	static final int GREAT_EQUAL = 1;
+	
+	static final int LESS = 2;
+	
+	static final int LESS_EQUAL = 3;
+	
+	static final int EQUAL = 4;
+	
+	/**
+	 * 总是计算的规则
+	 */
+	private final int[] unindexed;
+	
+	private final VariableIndex[] variables;
+	
+	private final int ruleCount;
+	
+	/**
+	 * @param statements 各规则的原语句
+	 * @param slotMaps 各规则槽位到共享槽位的映射
+	 * @param indexable 各规则是否可建立索引，含赋值的规则不可
+	 */
+	PredicateIndex(Statement[][] statements, int[][] slotMaps, boolean[] indexable) {
+		this.ruleCount = statements.length;
+		Map<Integer, VariableIndex> indexes = new LinkedHashMap<Integer, VariableIndex>();
+		IntList others = new IntList();
+		for(int rule=0; rule<statements.length; rule++) {
+			Conditions conditions = new Conditions();
+			if(indexable[rule] && statements[rule].length == 1 && statements[rule][0] instanceof SentenceStatement)
+				collect(((SentenceStatement)statements[rule][0]).getNode(), slotMaps[rule], conditions);
+			if(!register(conditions, rule, indexes))
+				others.add(rule);
+		}
+		this.unindexed = others.toArray();
+		this.variables = indexes.values().toArray(new VariableIndex[indexes.size()]);
+		for(VariableIndex variable : variables)
+			variable.freeze();
+	}
+	
+	/**
+	 * 规则中的原子条件，按共享槽位保存
+	 */
+	private static class Conditions {
+		
+		final Map<Integer, NumericRange> ranges = new LinkedHashMap<Integer, NumericRange>();
+		
+		final Map<Integer, Object> equalities = new LinkedHashMap<Integer, Object>();
+	}
+	
+	/**
+	 * 从合取式中提取原子条件，其余合取项被忽略
+	 */
+	private static void collect(Node node, int[] slotMap, Conditions conditions) {
+		if(node instanceof VariableNode) {
+			putEquality(conditions, slotMap[((VariableNode)node).getSlot()], Boolean.TRUE);
+			return;
+		}
+		if(!(node instanceof OperatorNode))
+			return;
+		Operator operator = ((OperatorNode)node).getOperator();
+		Node[] arguments = ((OperatorNode)node).getArguments();
+		if(operator instanceof AndOperator) {
+			collect(arguments[0], slotMap, conditions);
+			collect(arguments[1], slotMap, conditions);
+		} else if(operator instanceof NotOperator) {
+			if(arguments[0] instanceof VariableNode)
+				putEquality(conditions, slotMap[((VariableNode)arguments[0]).getSlot()], Boolean.FALSE);
+		} else if(arguments.length == 2) {
+			int op = comparison(operator);
+			if(op < 0)
+				return;
+			VariableNode variable;
+			ConstToken constant;
+			if(arguments[0] instanceof VariableNode && arguments[1] instanceof ConstNode) {
+				variable = (VariableNode)arguments[0];
+				constant = ((ConstNode)arguments[1]).getConstant();
+			} else if(arguments[0] instanceof ConstNode && arguments[1] instanceof VariableNode) {
+				variable = (VariableNode)arguments[1];
+				constant = ((ConstNode)arguments[0]).getConstant();
+				op = flip(op);
+			} else {
+				return;
+			}
+			int slot = slotMap[variable.getSlot()];
+			if(constant.getDataType() == DataType.NUMBER) {
+				NumericRange range = conditions.ranges.get(slot);
+				if(range == null) {
+					range = new NumericRange();
+					conditions.ranges.put(slot, range);
+				}
+				range.intersect(op, constant.getNumberValue());
+			} else if(op == EQUAL && constant.getDataType() == DataType.STRING) {
+				putEquality(conditions, slot, constant.getStringValue());
+			} else if(op == EQUAL && constant.getDataType() == DataType.CHARACTER) {
+				putEquality(conditions, slot, constant.getCharValue());
+			}
+		}
+	}
+	
+	private static void putEquality(Conditions conditions, int slot, Object value) {
+		if(!conditions.equalities.containsKey(slot))
+			conditions.equalities.put(slot, value);
+	}
+	
+	private static int comparison(Operator operator) {
+		if(operator instanceof GreatOperator)
+			return GREAT;
+		if(operator instanceof GreatEOperator)
+			return GREAT_EQUAL;
+		if(operator instanceof LessOperator)
+			return LESS;
+		if(operator instanceof LessEOperator)
+			return LESS_EQUAL;
+		if(operator instanceof EqualOperator)
+			return EQUAL;
+		return -1;
+	}
+	
+	/**
+	 * 常量在左侧时交换比较方向
+	 */
+	private static int flip(int op) {
+		switch(op) {
+		case GREAT:
+			return LESS;
+		case GREAT_EQUAL:
+			return LESS_EQUAL;
+		case LESS:
+			return GREAT;
+		case LESS_EQUAL:
+			return GREAT_EQUAL;
+		default:
+			return op;
+		}
+	}
+	
+	/**
+	 * 选择入口条件并登记规则。选择顺序：STRING、CHARACTER相等条件，有界区间，BOOLEAN条件，半无界区间
+	 * @return 没有可用条件时返回false
+	 */
+	private static boolean register(Conditions conditions, int rule, Map<Integer, VariableIndex> indexes) {
+		for(Map.Entry<Integer, Object> entry : conditions.equalities.entrySet()) {
+			if(!(entry.getValue() instanceof Boolean)) {
+				variableIndex(indexes, entry.getKey()).addEquality(entry.getValue(), rule);
+				return true;
+			}
+		}
+		for(Map.Entry<Integer, NumericRange> entry : conditions.ranges.entrySet()) {
+			if(entry.getValue().isBounded()) {
+				variableIndex(indexes, entry.getKey()).addRange(entry.getValue(), rule);
+				return true;
+			}
+		}
+		for(Map.Entry<Integer, Object> entry : conditions.equalities.entrySet()) {
+			variableIndex(indexes, entry.getKey()).addEquality(entry.getValue(), rule);
+			return true;
+		}
+		for(Map.Entry<Integer, NumericRange> entry : conditions.ranges.entrySet()) {
+			variableIndex(indexes, entry.getKey()).addRange(entry.getValue(), rule);
+			return true;
+		}
+		return false;
+	}
+	
+	private static VariableIndex variableIndex(Map<Integer, VariableIndex> indexes, int slot) {
+		VariableIndex index = indexes.get(slot);
+		if(index == null) {
+			index = new VariableIndex(slot);
+			indexes.put(slot, index);
+		}
+		return index;
+	}
+	
+	/**
+	 * @return 以索引过滤的规则数
+	 */
+	int getIndexedRuleCount() {
+		return ruleCount - unindexed.length;
+	}
+	
+	/**
+	 * 查找候选规则，按需解析时被索引的变量均被解析
+	 * @param frame 已绑定输入的帧
+	 * @return 升序排列的规则下标
+	 */
+	int[] candidates(Frame frame) {
+		IntList out = new IntList();
+		out.addAll(unindexed);
+		for(VariableIndex variable : variables)
+			variable.collect(frame.resolve(variable.slot), out);
+		return out.toSortedArray();
+	}
+}
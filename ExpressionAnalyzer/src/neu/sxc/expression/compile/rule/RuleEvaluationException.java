@@ -0,0 +1,21 @@
+package neu.sxc.expression.compile.rule;
+
+/**
+ * 规则计算异常，原异常为cause
+ * @author shanxuecheng
+ *
+ */
+@SuppressWarnings("serial")
+public class RuleEvaluationException extends RuntimeException {
+	
+	private final String ruleId;
+	
+	public RuleEvaluationException(String ruleId, RuntimeException cause) {
+		super("Rule " + ruleId + " failed: " + cause.getMessage(), cause);
+		this.ruleId = ruleId;
+	}
+	
+	public String getRuleId() {
+		return ruleId;
+	}
+}
@@ -0,0 +1,180 @@
+package neu.sxc.expression.compile.rule;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import neu.sxc.expression.compile.AssignNode;
+import neu.sxc.expression.compile.FunctionNode;
+import neu.sxc.expression.compile.MemoNode;
+import neu.sxc.expression.compile.Node;
+import neu.sxc.expression.compile.OperatorNode;
+import neu.sxc.expression.compile.SentenceStatement;
+import neu.sxc.expression.compile.Statement;
+import neu.sxc.expression.compile.VariableNode;
+import neu.sxc.expression.syntax.operator.AndOperator;
+
+/**
+ * 规则判别网络（TREAT式）。单语句规则按“&&”拆分为条件，每个条件是一个alpha节点，
+ * 结构相同的条件在规则间共享同一节点；其余规则整体作为一个alpha节点。
+ * 网络记录每个变量被哪些alpha节点读取、每个alpha节点属于哪些规则，
+ * 变量改变时只重新计算依赖它的alpha节点及这些节点所属的规则，见MatchSession。
+ * 对象不可变，可创建多个会话
+ * @author shanxuecheng
+ *
+ */
+public class RuleNetwork {
+	
+	private final RuleSet ruleSet;
+	
+	/**
+	 * alpha节点的条件，整体计算规则的alpha节点为null
+	 */
+	final Node[] alphaNodes;
+	
+	/**
+	 * 整体计算的规则下标，条件alpha节点为-1
+	 */
+	final int[] alphaRules;
+	
+	/**
+	 * 各共享槽位被哪些alpha节点读取
+	 */
+	final int[][] slotAlphas;
+	
+	/**
+	 * 各alpha节点属于哪些规则
+	 */
+	final int[][] alphaToRules;
+	
+	/**
+	 * 各规则的alpha节点，按条件在规则中从左到右的顺序
+	 */
+	final int[][] ruleAlphas;
+	
+	public RuleNetwork(RuleSet ruleSet) {
+		this.ruleSet = ruleSet;
+		int ruleCount = ruleSet.getRuleCount();
+		List<Node> nodes = new ArrayList<Node>();
+		List<Integer> wholeRules = new ArrayList<Integer>();
+		List<Set<Integer>> reads = new ArrayList<Set<Integer>>();
+		List<List<Integer>> rulesOfAlpha = new ArrayList<List<Integer>>();
+		Map<Node, Integer> shared = new IdentityHashMap<Node, Integer>();
+		ruleAlphas = new int[ruleCount][];
+		
+		for(int rule=0; rule<ruleCount; rule++) {
+			Statement[] statements = ruleSet.getStatements(rule);
+			List<Node> conditions = new ArrayList<Node>();
+			if(statements != null && statements.length == 1 && statements[0] instanceof SentenceStatement)
+				split(((SentenceStatement)statements[0]).getNode(), conditions);
+			if(conditions.isEmpty()) {
+				//整体计算，依赖规则中的所有变量
+				Set<Integer> slots = new LinkedHashSet<Integer>();
+				for(int slot : ruleSet.getSlotMap(rule))
+					slots.add(slot);
+				ruleAlphas[rule] = new int[]{nodes.size()};
+				nodes.add(null);
+				wholeRules.add(rule);
+				reads.add(slots);
+				rulesOfAlpha.add(new ArrayList<Integer>());
+				rulesOfAlpha.get(rulesOfAlpha.size() - 1).add(rule);
+				continue;
+			}
+			ruleAlphas[rule] = new int[conditions.size()];
+			for(int i=0; i<conditions.size(); i++) {
+				Node condition = conditions.get(i);
+				Integer alpha = shared.get(condition);
+				if(alpha == null) {
+					alpha = nodes.size();
+					shared.put(condition, alpha);
+					nodes.add(condition);
+					wholeRules.add(-1);
+					Set<Integer> slots = new LinkedHashSet<Integer>();
+					collectReads(condition, slots);
+					reads.add(slots);
+					rulesOfAlpha.add(new ArrayList<Integer>());
+				}
+				ruleAlphas[rule][i] = alpha;
+				List<Integer> owners = rulesOfAlpha.get(alpha);
+				if(owners.isEmpty() || owners.get(owners.size() - 1) != rule)
+					owners.add(rule);
+			}
+		}
+		
+		int alphaCount = nodes.size();
+		alphaNodes = nodes.toArray(new Node[alphaCount]);
+		alphaRules = new int[alphaCount];
+		alphaToRules = new int[alphaCount][];
+		List<List<Integer>> alphasOfSlot = new ArrayList<List<Integer>>();
+		for(int slot=0; slot<ruleSet.getVariableNames().length; slot++)
+			alphasOfSlot.add(new ArrayList<Integer>());
+		for(int alpha=0; alpha<alphaCount; alpha++) {
+			alphaRules[alpha] = wholeRules.get(alpha);
+			alphaToRules[alpha] = toArray(rulesOfAlpha.get(alpha));
+			for(int slot : reads.get(alpha))
+				alphasOfSlot.get(slot).add(alpha);
+		}
+		slotAlphas = new int[alphasOfSlot.size()][];
+		for(int slot=0; slot<slotAlphas.length; slot++)
+			slotAlphas[slot] = toArray(alphasOfSlot.get(slot));
+	}
+	
+	private static int[] toArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+		for(int i=0; i<array.length; i++)
+			array[i] = list.get(i);
+		return array;
+	}
+	
+	/**
+	 * 按“&&”拆分条件，与计算顺序相同，从左到右
+	 */
+	private static void split(Node node, List<Node> conditions) {
+		Node target = node instanceof MemoNode ? ((MemoNode)node).getNode() : node;
+		if(target instanceof OperatorNode && ((OperatorNode)target).getOperator() instanceof AndOperator) {
+			Node[] arguments = ((OperatorNode)target).getArguments();
+			split(arguments[0], conditions);
+			split(arguments[1], conditions);
+		} else {
+			conditions.add(node);
+		}
+	}
+	
+	private static void collectReads(Node node, Set<Integer> slots) {
+		if(node instanceof VariableNode) {
+			slots.add(((VariableNode)node).getSlot());
+		} else if(node instanceof MemoNode) {
+			collectReads(((MemoNode)node).getNode(), slots);
+		} else if(node instanceof OperatorNode) {
+			for(Node argument : ((OperatorNode)node).getArguments())
+				collectReads(argument, slots);
+		} else if(node instanceof FunctionNode) {
+			for(Node argument : ((FunctionNode)node).getArguments())
+				collectReads(argument, slots);
+		} else if(node instanceof AssignNode) {
+			collectReads(((AssignNode)node).getValue(), slots);
+		}
+	}
+	
+	public RuleSet getRuleSet() {
+		return ruleSet;
+	}
+	
+	/**
+	 * @return alpha节点数，即规则间不同条件的个数
+	 */
+	public int getAlphaCount() {
+		return alphaNodes.length;
+	}
+	
+	/**
+	 * 创建会话，会话保存一组变量值及各节点的计算结果
+	 * @return
+	 */
+	public MatchSession newSession() {
+		return new MatchSession(this);
+	}
+}
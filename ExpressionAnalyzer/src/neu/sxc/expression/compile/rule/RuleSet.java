@@ -0,0 +1,296 @@
+package neu.sxc.expression.compile.rule;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import neu.sxc.expression.compile.CompiledExpression;
+import neu.sxc.expression.compile.Frame;
+import neu.sxc.expression.compile.Statement;
+import neu.sxc.expression.compile.VariableResolver;
+import neu.sxc.expression.tokens.TokenBuilder;
+import neu.sxc.expression.tokens.Valuable;
+
+/**
+ * 规则集，由RuleSetBuilder构造。
+ * 输入变量只绑定一次到共享帧，规则间相同的子表达式在一次匹配中只计算一次，
+ * 匹配开销取决于不同子表达式的个数，而非规则数与变量数之积。
+ * 共享子表达式出错时，错误位置为第一个含该子表达式的规则中的位置。
+ * 建立了谓词索引时，只有候选规则被完整计算。
+ * 含赋值的规则在共享帧的附属帧上单独计算，附属帧随共享帧复用。
+ * 对象不可变，可被多个线程以各自的帧同时使用
+ * @author shanxuecheng
+ *
+ */
+public class RuleSet {
+	
+	private final String[] ruleIds;
+	
+	/**
+	 * 共享槽位的变量名
+	 */
+	private final String[] variableNames;
+	
+	private final Map<String, Integer> slots = new HashMap<String, Integer>();
+	
+	/**
+	 * 规则id及其下标
+	 */
+	private final Map<String, Integer> ruleIndexes = new HashMap<String, Integer>();
+	
+	/**
+	 * 以共享节点重建的规则语句，含赋值的规则为null
+	 */
+	private final Statement[][] statements;
+	
+	/**
+	 * 各规则的编译结果，含赋值的规则以此单独计算
+	 */
+	private final CompiledExpression[] compiled;
+	
+	/**
+	 * 各规则槽位到共享槽位的映射
+	 */
+	private final int[][] slotMaps;
+	
+	private final int sharedNodeCount;
+	
+	private final int memoCount;
+	
+	/**
+	 * 谓词索引，未建立时为null
+	 */
+	private final PredicateIndex index;
+	
+	RuleSet(String[] ruleIds, String[] variableNames, Statement[][] statements,
+			CompiledExpression[] compiled, int[][] slotMaps, int sharedNodeCount, int memoCount,
+			PredicateIndex index) {
+		this.ruleIds = ruleIds;
+		this.variableNames = variableNames;
+		this.statements = statements;
+		this.compiled = compiled;
+		this.slotMaps = slotMaps;
+		this.sharedNodeCount = sharedNodeCount;
+		this.memoCount = memoCount;
+		this.index = index;
+		for(int i=0; i<variableNames.length; i++)
+			slots.put(variableNames[i], i);
+		for(int i=0; i<ruleIds.length; i++)
+			ruleIndexes.put(ruleIds[i], i);
+	}
+	
+	public int getRuleCount() {
+		return ruleIds.length;
+	}
+	
+	public String getRuleId(int rule) {
+		return ruleIds[rule];
+	}
+	
+	/**
+	 * 获取规则下标
+	 * @param ruleId
+	 * @return 规则不存在时返回-1
+	 */
+	public int getRuleIndex(String ruleId) {
+		Integer index = ruleIndexes.get(ruleId);
+		return index == null ? -1 : index;
+	}
+	
+	public String[] getRuleIds() {
+		return ruleIds.clone();
+	}
+	
+	/**
+	 * @return 按共享槽位排列的变量名
+	 */
+	public String[] getVariableNames() {
+		return variableNames.clone();
+	}
+	
+	/**
+	 * 获取变量的共享槽位
+	 * @param variableName
+	 * @return 变量不存在时返回-1
+	 */
+	public int getSlot(String variableName) {
+		Integer slot = slots.get(variableName);
+		return slot == null ? -1 : slot;
+	}
+	
+	/**
+	 * @return 合并后不同子表达式的个数
+	 */
+	public int getSharedNodeCount() {
+		return sharedNodeCount;
+	}
+	
+	/**
+	 * @return 被多处引用、每次匹配只计算一次的子表达式个数
+	 */
+	public int getMemoCount() {
+		return memoCount;
+	}
+	
+	/**
+	 * @param rule
+	 * @return 以共享节点重建的规则语句，含赋值的规则返回null
+	 */
+	Statement[] getStatements(int rule) {
+		return statements[rule];
+	}
+	
+	/**
+	 * @param rule
+	 * @return 规则槽位到共享槽位的映射
+	 */
+	int[] getSlotMap(int rule) {
+		return slotMaps[rule];
+	}
+	
+	public boolean isIndexed() {
+		return index != null;
+	}
+	
+	/**
+	 * @return 以谓词索引过滤的规则数，未建立索引时为0
+	 */
+	public int getIndexedRuleCount() {
+		return index == null ? 0 : index.getIndexedRuleCount();
+	}
+	
+	/**
+	 * 查找需要完整计算的规则
+	 * @param frame 已绑定输入的帧
+	 * @return 升序排列的规则下标，未建立索引时为全部规则
+	 */
+	public int[] candidates(Frame frame) {
+		if(index != null)
+			return index.candidates(frame);
+		int[] all = new int[ruleIds.length];
+		for(int i=0; i<all.length; i++)
+			all[i] = i;
+		return all;
+	}
+	
+	/**
+	 * 创建共享帧
+	 * @return
+	 */
+	public Frame newFrame() {
+		return new Frame(variableNames.length, memoCount);
+	}
+	
+	/**
+	 * 清除帧并绑定输入，规则中未使用的变量被忽略
+	 * @param frame
+	 * @param input
+	 */
+	public void bind(Frame frame, Map<String, ?> input) {
+		frame.clear();
+		for(int i=0; i<variableNames.length; i++) {
+			Object value = input.get(variableNames[i]);
+			if(value != null)
+				frame.set(i, value instanceof Valuable ? (Valuable)value : TokenBuilder.buildRuntimeValue(value));
+		}
+	}
+	
+	/**
+	 * 清除帧并绑定变量解析器，规则只在执行路径上读取变量时才解析
+	 * @param frame
+	 * @param resolver
+	 */
+	public void bind(Frame frame, VariableResolver resolver) {
+		frame.clear();
+		frame.setResolver(resolver, variableNames);
+	}
+	
+	/**
+	 * 匹配输入
+	 * @param input
+	 * @return 匹配的规则id，按规则添加顺序排列
+	 * @throws RuleEvaluationException 规则计算出错或结果不是BOOLEAN时
+	 */
+	public List<String> match(Map<String, ?> input) {
+		Frame frame = newFrame();
+		bind(frame, input);
+		return match(frame);
+	}
+	
+	/**
+	 * 匹配已绑定输入的帧
+	 * @param frame
+	 * @return 匹配的规则id，按规则添加顺序排列
+	 * @throws RuleEvaluationException 规则计算出错或结果不是BOOLEAN时
+	 */
+	public List<String> match(Frame frame) {
+		return match(frame, null);
+	}
+	
+	/**
+	 * 匹配已绑定输入的帧，出错的规则不影响其余规则
+	 * @param frame
+	 * @param failures 收集出错的规则，按规则添加顺序排列；为null时遇到第一个出错的规则即抛出异常
+	 * @return 匹配的规则id，按规则添加顺序排列
+	 * @throws RuleEvaluationException failures为null且规则计算出错或结果不是BOOLEAN时
+	 */
+	public List<String> match(Frame frame, List<RuleEvaluationException> failures) {
+		List<String> matched = new ArrayList<String>();
+		if(index != null) {
+			for(int rule : index.candidates(frame))
+				match(frame, rule, matched, failures);
+		} else {
+			for(int rule=0; rule<ruleIds.length; rule++)
+				match(frame, rule, matched, failures);
+		}
+		return matched;
+	}
+	
+	private void match(Frame frame, int rule, List<String> matched, List<RuleEvaluationException> failures) {
+		try {
+			if(matches(frame, rule))
+				matched.add(ruleIds[rule]);
+		} catch (RuleEvaluationException e) {
+			if(failures == null)
+				throw e;
+			failures.add(e);
+		}
+	}
+	
+	/**
+	 * 判断单条规则是否匹配
+	 * @param frame 已绑定输入的帧
+	 * @param rule 规则下标
+	 * @return
+	 * @throws RuleEvaluationException 规则计算出错或结果不是BOOLEAN时
+	 */
+	public boolean matches(Frame frame, int rule) {
+		try {
+			if(statements[rule] != null)
+				return CompiledExpression.isTrue(Statement.executeBlock(statements[rule], frame));
+			//含赋值的规则在自己的帧上计算
+			final int[] slotMap = slotMaps[rule];
+			Frame own = frame.getChild(rule);
+			if(own == null) {
+				own = compiled[rule].newFrame();
+				frame.setChild(rule, own);
+			}
+			if(frame.isResolving()) {
+				final Frame shared = frame;
+				compiled[rule].bind(own, new VariableResolver() {
+					public Object resolve(String name, int slot) {
+						return shared.resolve(slotMap[slot]);
+					}
+				});
+			} else {
+				own.clear();
+				for(int i=0; i<slotMap.length; i++)
+					own.set(i, frame.get(slotMap[i]));
+			}
+			return CompiledExpression.isTrue(compiled[rule].evaluate(own));
+		} catch (RuntimeException e) {
+			throw new RuleEvaluationException(ruleIds[rule], e);
+		}
+	}
+}
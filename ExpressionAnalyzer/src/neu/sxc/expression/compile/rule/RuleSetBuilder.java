@@ -0,0 +1,188 @@
+package neu.sxc.expression.compile.rule;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import neu.sxc.expression.compile.AssignNode;
+import neu.sxc.expression.compile.CompiledExpression;
+import neu.sxc.expression.compile.FunctionNode;
+import neu.sxc.expression.compile.IfStatement;
+import neu.sxc.expression.compile.Node;
+import neu.sxc.expression.compile.OperatorNode;
+import neu.sxc.expression.compile.SentenceStatement;
+import neu.sxc.expression.compile.Statement;
+
+/**
+ * 规则集构造器。各规则分别编译后合并：
+ * 所有规则的变量映射到同一组共享槽位，输入只绑定一次；
+ * 不含赋值的规则合并公共子表达式，在共享帧上计算；含赋值的规则会修改帧，仍以各自的编译结果单独计算。
+ * 开启索引后，以规则中“变量 op 常量”形式的条件建立谓词索引，见PredicateIndex
+ * @author shanxuecheng
+ *
+ */
+public class RuleSetBuilder {
+	
+	private final Map<String, CompiledExpression> rules = new LinkedHashMap<String, CompiledExpression>();
+	
+	/**
+	 * 是否建立谓词索引
+	 */
+	private boolean indexed = false;
+	
+	/**
+	 * 编译并添加规则
+	 * @param id 规则id
+	 * @param source 规则源码，最后一个产生值的语句须为BOOLEAN
+	 * @return
+	 */
+	public RuleSetBuilder addRule(String id, String source) {
+		return addRule(id, CompiledExpression.compile(source));
+	}
+	
+	/**
+	 * 添加规则
+	 * @param id 规则id
+	 * @param rule
+	 * @return
+	 */
+	public RuleSetBuilder addRule(String id, CompiledExpression rule) {
+		if(id == null || rule == null)
+			throw new IllegalArgumentException("Rule id and rule can not be null.");
+		if(rules.containsKey(id))
+			throw new IllegalArgumentException("Duplicate rule id:" + id + ".");
+		rules.put(id, rule);
+		return this;
+	}
+	
+	/**
+	 * 设置是否建立谓词索引。
+	 * 被索引排除的规则不再计算，其其余合取项中的运行时错误（如除零）不会抛出，因此默认关闭
+	 * @param indexed
+	 * @return
+	 */
+	public RuleSetBuilder setIndexed(boolean indexed) {
+		this.indexed = indexed;
+		return this;
+	}
+	
+	public RuleSet build() {
+		Map<String, Integer> slots = new LinkedHashMap<String, Integer>();
+		int ruleCount = rules.size();
+		String[] ids = new String[ruleCount];
+		CompiledExpression[] compiled = new CompiledExpression[ruleCount];
+		int[][] slotMaps = new int[ruleCount][];
+		int r = 0;
+		for(Map.Entry<String, CompiledExpression> entry : rules.entrySet()) {
+			ids[r] = entry.getKey();
+			compiled[r] = entry.getValue();
+			String[] names = compiled[r].getVariableNames();
+			slotMaps[r] = new int[names.length];
+			for(int i=0; i<names.length; i++) {
+				Integer slot = slots.get(names[i]);
+				if(slot == null) {
+					slot = slots.size();
+					slots.put(names[i], slot);
+				}
+				slotMaps[r][i] = slot;
+			}
+			r++;
+		}
+		
+		//先合并所有规则的节点并统计引用次数，再构造共享节点
+		SharedNodeTable table = new SharedNodeTable();
+		List<List<Integer>> roots = new ArrayList<List<Integer>>();
+		for(r=0; r<ruleCount; r++) {
+			if(isPure(compiled[r].getStatements())) {
+				List<Integer> ruleRoots = new ArrayList<Integer>();
+				collectRoots(compiled[r].getStatements(), slotMaps[r], table, ruleRoots);
+				roots.add(ruleRoots);
+			} else {
+				roots.add(null);
+			}
+		}
+		Statement[][] statements = new Statement[ruleCount][];
+		Statement[][] originals = new Statement[ruleCount][];
+		boolean[] pure = new boolean[ruleCount];
+		for(r=0; r<ruleCount; r++) {
+			originals[r] = compiled[r].getStatements();
+			pure[r] = roots.get(r) != null;
+			if(pure[r])
+				statements[r] = rebuild(originals[r], table, roots.get(r).iterator());
+		}
+		PredicateIndex index = indexed ? new PredicateIndex(originals, slotMaps, pure) : null;
+		return new RuleSet(ids, slots.keySet().toArray(new String[slots.size()]),
+				statements, compiled, slotMaps, table.size(), table.getMemoCount(), index);
+	}
+	
+	private static void collectRoots(Statement[] block, int[] slotMap, SharedNodeTable table, List<Integer> roots) {
+		for(Statement statement : block) {
+			if(statement instanceof SentenceStatement) {
+				int id = table.intern(((SentenceStatement)statement).getNode(), slotMap);
+				table.reference(id);
+				roots.add(id);
+			} else {
+				IfStatement ifStatement = (IfStatement)statement;
+				int id = table.intern(ifStatement.getCondition(), slotMap);
+				table.reference(id);
+				roots.add(id);
+				collectRoots(ifStatement.getThenBlock(), slotMap, table, roots);
+				collectRoots(ifStatement.getElseBlock(), slotMap, table, roots);
+			}
+		}
+	}
+	
+	/**
+	 * 以共享节点重建语句，遍历顺序与collectRoots相同
+	 */
+	private static Statement[] rebuild(Statement[] block, SharedNodeTable table, Iterator<Integer> roots) {
+		Statement[] result = new Statement[block.length];
+		for(int i=0; i<block.length; i++) {
+			if(block[i] instanceof SentenceStatement) {
+				result[i] = new SentenceStatement(table.build(roots.next()), block[i].getLine());
+			} else {
+				IfStatement ifStatement = (IfStatement)block[i];
+				Node condition = table.build(roots.next());
+				Statement[] thenBlock = rebuild(ifStatement.getThenBlock(), table, roots);
+				Statement[] elseBlock = rebuild(ifStatement.getElseBlock(), table, roots);
+				result[i] = new IfStatement(condition, ifStatement.getConditionToken(), thenBlock, elseBlock);
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * 判断语句块是否不含赋值
+	 */
+	private static boolean isPure(Statement[] block) {
+		for(Statement statement : block) {
+			if(statement instanceof SentenceStatement) {
+				if(!isPure(((SentenceStatement)statement).getNode()))
+					return false;
+			} else {
+				IfStatement ifStatement = (IfStatement)statement;
+				if(!isPure(ifStatement.getCondition()) || !isPure(ifStatement.getThenBlock())
+						|| !isPure(ifStatement.getElseBlock()))
+					return false;
+			}
+		}
+		return true;
+	}
+	
+	private static boolean isPure(Node node) {
+		if(node instanceof AssignNode)
+			return false;
+		Node[] arguments = null;
+		if(node instanceof OperatorNode)
+			arguments = ((OperatorNode)node).getArguments();
+		else if(node instanceof FunctionNode)
+			arguments = ((FunctionNode)node).getArguments();
+		if(arguments != null)
+			for(Node argument : arguments)
+				if(!isPure(argument))
+					return false;
+		return true;
+	}
+}
@@ -0,0 +1,175 @@
+package neu.sxc.expression.compile.rule;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import neu.sxc.expression.compile.ConstNode;
+import neu.sxc.expression.compile.FunctionNode;
+import neu.sxc.expression.compile.MemoNode;
+import neu.sxc.expression.compile.Node;
+import neu.sxc.expression.compile.OperatorNode;
+import neu.sxc.expression.compile.VariableNode;
+import neu.sxc.expression.tokens.DelimiterToken;
+import neu.sxc.expression.tokens.FunctionToken;
+import neu.sxc.expression.tokens.VariableToken;
+
+/**
+ * 规则集的公共子表达式表。各规则的语法树节点按结构散列合并（hash-consing），
+ * 结构相同的子表达式只保留一个节点，被多处引用的操作符节点包装为MemoNode，每次计算只算一次。
+ * 函数可能有副作用或结果不确定，函数调用节点不合并
+ * @author shanxuecheng
+ *
+ */
+class SharedNodeTable {
+	
+	/**
+	 * 节点结构及其编号
+	 */
+	private final Map<String, Integer> ids = new HashMap<String, Integer>();
+	
+	/**
+	 * 按编号排列的代表节点，变量节点已映射到共享槽位，子节点为原节点
+	 */
+	private final List<Node> representatives = new ArrayList<Node>();
+	
+	/**
+	 * 按编号排列的子节点编号
+	 */
+	private final List<int[]> children = new ArrayList<int[]>();
+	
+	/**
+	 * 按编号排列的引用次数
+	 */
+	private final List<Integer> references = new ArrayList<Integer>();
+	
+	/**
+	 * 按编号排列的构造结果
+	 */
+	private Node[] built;
+	
+	private int memoCount = 0;
+	
+	/**
+	 * 合并一个规则中的节点
+	 * @param node 规则中的节点
+	 * @param slotMap 规则槽位到共享槽位的映射
+	 * @return 节点编号
+	 */
+	int intern(Node node, int[] slotMap) {
+		if(built != null)
+			throw new IllegalStateException("Shared nodes have been built.");
+		StringBuilder key = new StringBuilder();
+		int[] childIds;
+		if(node instanceof ConstNode) {
+			ConstNode constant = (ConstNode)node;
+			key.append("C:").append(constant.getConstant().getDataType().name())
+				.append(':').append(constant.getConstant().getValue());
+			childIds = new int[0];
+		} else if(node instanceof VariableNode) {
+			VariableNode variable = (VariableNode)node;
+			int slot = slotMap[variable.getSlot()];
+			node = new VariableNode((VariableToken)variable.getToken(), slot);
+			key.append("V:").append(slot);
+			childIds = new int[0];
+		} else if(node instanceof OperatorNode) {
+			OperatorNode operator = (OperatorNode)node;
+			childIds = internAll(operator.getArguments(), slotMap);
+			key.append("O:").append(operator.getOperator().getClass().getName());
+			appendIds(key, childIds);
+		} else if(node instanceof FunctionNode) {
+			FunctionNode function = (FunctionNode)node;
+			childIds = internAll(function.getArguments(), slotMap);
+			//每个函数调用单独编号
+			key.append("F:").append(representatives.size());
+		} else {
+			throw new IllegalArgumentException("Node can not be shared: " + node.getClass().getSimpleName() + ".");
+		}
+		
+		Integer id = ids.get(key.toString());
+		if(id != null)
+			return id;
+		id = representatives.size();
+		ids.put(key.toString(), id);
+		representatives.add(node);
+		children.add(childIds);
+		references.add(0);
+		for(int childId : childIds)
+			reference(childId);
+		return id;
+	}
+	
+	private int[] internAll(Node[] nodes, int[] slotMap) {
+		int[] result = new int[nodes.length];
+		for(int i=0; i<nodes.length; i++)
+			result[i] = intern(nodes[i], slotMap);
+		return result;
+	}
+	
+	private static void appendIds(StringBuilder key, int[] childIds) {
+		key.append('(');
+		for(int i=0; i<childIds.length; i++) {
+			if(i > 0)
+				key.append(',');
+			key.append(childIds[i]);
+		}
+		key.append(')');
+	}
+	
+	/**
+	 * 记录一次对节点的引用，语句的根节点由调用方引用
+	 * @param id
+	 */
+	void reference(int id) {
+		references.set(id, references.get(id) + 1);
+	}
+	
+	/**
+	 * 构造共享节点，须在所有规则合并后调用
+	 * @param id
+	 * @return
+	 */
+	Node build(int id) {
+		if(built == null)
+			built = new Node[representatives.size()];
+		if(built[id] != null)
+			return built[id];
+		Node representative = representatives.get(id);
+		int[] childIds = children.get(id);
+		Node node;
+		if(representative instanceof OperatorNode) {
+			OperatorNode operator = (OperatorNode)representative;
+			node = new OperatorNode(operator.getOperator(), (DelimiterToken)operator.getToken(), buildAll(childIds));
+			if(references.get(id) > 1)
+				node = new MemoNode(node, memoCount++);
+		} else if(representative instanceof FunctionNode) {
+			node = new FunctionNode((FunctionToken)representative.getToken(), buildAll(childIds));
+		} else {
+			node = representative;
+		}
+		built[id] = node;
+		return node;
+	}
+	
+	private Node[] buildAll(int[] childIds) {
+		Node[] nodes = new Node[childIds.length];
+		for(int i=0; i<childIds.length; i++)
+			nodes[i] = build(childIds[i]);
+		return nodes;
+	}
+	
+	/**
+	 * @return 合并后的节点数
+	 */
+	int size() {
+		return representatives.size();
+	}
+	
+	/**
+	 * @return 已构造的缓存节点数
+	 */
+	int getMemoCount() {
+		return memoCount;
+	}
+}
@@ -0,0 +1,130 @@
+package neu.sxc.expression.compile.rule;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import neu.sxc.expression.tokens.DataType;
+import neu.sxc.expression.tokens.Valuable;
+
+/**
+ * 单个变量上的规则索引：NUMBER区间条件以IntervalIndex索引，
+ * STRING、CHARACTER相等条件和BOOLEAN条件以散列表索引。
+ * 输入值为空或类型与条件不符时，无法判断条件是否成立，以该类型索引的规则全部作为候选
+ * @author shanxuecheng
+ *
+ */
+class VariableIndex {
+	
+	final int slot;
+	
+	private final List<NumericRange> ranges = new ArrayList<NumericRange>();
+	
+	private final List<Integer> rangeRules = new ArrayList<Integer>();
+	
+	private final Map<Object, IntList> equalities = new HashMap<Object, IntList>();
+	
+	private final IntList stringRules = new IntList();
+	
+	private final IntList charRules = new IntList();
+	
+	private final IntList booleanRules = new IntList();
+	
+	private IntervalIndex intervals;
+	
+	/**
+	 * 以各类型索引的所有规则
+	 */
+	private int[] allRanges;
+	
+	private int[] allStrings;
+	
+	private int[] allChars;
+	
+	private int[] allBooleans;
+	
+	private final Map<Object, int[]> equalityIndex = new HashMap<Object, int[]>();
+	
+	VariableIndex(int slot) {
+		this.slot = slot;
+	}
+	
+	void addRange(NumericRange range, int rule) {
+		ranges.add(range);
+		rangeRules.add(rule);
+	}
+	
+	/**
+	 * @param value String、Character或Boolean
+	 * @param rule
+	 */
+	void addEquality(Object value, int rule) {
+		IntList rules = equalities.get(value);
+		if(rules == null) {
+			rules = new IntList(2);
+			equalities.put(value, rules);
+		}
+		rules.add(rule);
+		if(value instanceof String)
+			stringRules.add(rule);
+		else if(value instanceof Character)
+			charRules.add(rule);
+		else
+			booleanRules.add(rule);
+	}
+	
+	/**
+	 * 构造完成后建立索引
+	 */
+	void freeze() {
+		intervals = ranges.isEmpty() ? null : new IntervalIndex(ranges, rangeRules);
+		allRanges = new int[rangeRules.size()];
+		for(int i=0; i<allRanges.length; i++)
+			allRanges[i] = rangeRules.get(i);
+		allStrings = stringRules.toArray();
+		allChars = charRules.toArray();
+		allBooleans = booleanRules.toArray();
+		for(Map.Entry<Object, IntList> entry : equalities.entrySet())
+			equalityIndex.put(entry.getKey(), entry.getValue().toArray());
+	}
+	
+	/**
+	 * 收集条件可能成立的规则
+	 * @param value 变量值，可为null
+	 * @param out
+	 */
+	void collect(Valuable value, IntList out) {
+		DataType type = value == null ? null : value.getDataType();
+		if(intervals != null) {
+			if(type == DataType.NUMBER)
+				intervals.query(value.getNumberValue(), out);
+			else
+				out.addAll(allRanges);
+		}
+		if(allStrings.length > 0) {
+			if(type == DataType.STRING)
+				addEqual(value.getStringValue(), out);
+			else
+				out.addAll(allStrings);
+		}
+		if(allChars.length > 0) {
+			if(type == DataType.CHARACTER)
+				addEqual(value.getCharValue(), out);
+			else
+				out.addAll(allChars);
+		}
+		if(allBooleans.length > 0) {
+			if(type == DataType.BOOLEAN)
+				addEqual(value.getBooleanValue(), out);
+			else
+				out.addAll(allBooleans);
+		}
+	}
+	
+	private void addEqual(Object key, IntList out) {
+		int[] rules = equalityIndex.get(key);
+		if(rules != null)
+			out.addAll(rules);
+	}
+}
@@ -0,0 +1,56 @@
+package neu.sxc.expression.compile.sql;
+
+import java.util.Collections;
+import java.util.List;
+
+import neu.sxc.expression.compile.CompiledExpression;
+
+/**
+ * 谓词翻译结果：参数化的WHERE片段，以及须在Java中计算的剩余谓词。
+ * 原谓词等价于WHERE片段与剩余谓词的合取
+ * @author shanxuecheng
+ *
+ */
+public class SqlFilter {
+	
+	private final String where;
+	
+	private final List<Object> parameters;
+	
+	private final CompiledExpression residual;
+	
+	SqlFilter(String where, List<Object> parameters, CompiledExpression residual) {
+		this.where = where;
+		this.parameters = Collections.unmodifiableList(parameters);
+		this.residual = residual;
+	}
+	
+	/**
+	 * @return WHERE片段，不含WHERE关键字，参数以?表示；没有可翻译的条件时返回null
+	 */
+	public String getWhere() {
+		return where;
+	}
+	
+	/**
+	 * @return 按?出现顺序排列的参数值，类型为BigDecimal、String、Boolean或java.sql.Timestamp
+	 */
+	public List<Object> getParameters() {
+		return parameters;
+	}
+	
+	/**
+	 * @return 剩余谓词，须对数据库返回的每行计算；全部条件都已翻译时返回null。
+	 * 只含部分条件的剩余谓词没有指纹
+	 */
+	public CompiledExpression getResidual() {
+		return residual;
+	}
+	
+	/**
+	 * @return 是否全部条件都已翻译
+	 */
+	public boolean isComplete() {
+		return residual == null;
+	}
+}
@@ -0,0 +1,400 @@
+package neu.sxc.expression.compile.sql;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import neu.sxc.expression.compile.AssignNode;
+import neu.sxc.expression.compile.CompiledExpression;
+import neu.sxc.expression.compile.ConstNode;
+import neu.sxc.expression.compile.FunctionNode;
+import neu.sxc.expression.compile.Node;
+import neu.sxc.expression.compile.OperatorNode;
+import neu.sxc.expression.compile.SentenceStatement;
+import neu.sxc.expression.compile.Statement;
+import neu.sxc.expression.compile.VariableNode;
+import neu.sxc.expression.syntax.function.Abs;
+import neu.sxc.expression.syntax.function.Function;
+import neu.sxc.expression.syntax.function.Max;
+import neu.sxc.expression.syntax.operator.AddOperator;
+import neu.sxc.expression.syntax.operator.AndOperator;
+import neu.sxc.expression.syntax.operator.EqualOperator;
+import neu.sxc.expression.syntax.operator.GreatEOperator;
+import neu.sxc.expression.syntax.operator.GreatOperator;
+import neu.sxc.expression.syntax.operator.LessEOperator;
+import neu.sxc.expression.syntax.operator.LessOperator;
+import neu.sxc.expression.syntax.operator.MinusOperator;
+import neu.sxc.expression.syntax.operator.MultiplyOperator;
+import neu.sxc.expression.syntax.operator.NegativeOperator;
+import neu.sxc.expression.syntax.operator.NotEqualOperator;
+import neu.sxc.expression.syntax.operator.NotOperator;
+import neu.sxc.expression.syntax.operator.Operator;
+import neu.sxc.expression.syntax.operator.OrOperator;
+import neu.sxc.expression.tokens.ConstToken;
+import neu.sxc.expression.tokens.DataType;
+import neu.sxc.expression.tokens.DelimiterToken;
+
+/**
+ * 将编译后的谓词翻译为参数化的SQL WHERE片段，使大部分过滤在数据库中完成。
+ * 只翻译单条无赋值语句的谓词，顶层&&的各个条件分别翻译，不能翻译的条件组成剩余谓词。
+ * 可翻译：比较、&&、||、!、+、-、*、取负、常量（含DATE）、abs和max（翻译为GREATEST），
+ * 以及已映射到列的变量。除法和取模不翻译，因为整数列在多数数据库中按整数除法计算，与BigDecimal除法的结果不同。
+ * +也用于连接字符串，只在至少一个操作数为NUMBER常量、声明为NUMBER的列或其他算术结果时翻译。
+ * 比较只在至少一个操作数为数值或DATE（常量或声明了类型的列）时翻译：数据库的排序规则常常不区分大小写或按语言排序，
+ * 与Java中逐字符比较字符串的结果不同，因此字符串比较默认留在剩余谓词中，数据库使用二进制排序规则时可调用setBinaryCollation翻译。
+ * 数据库中值为NULL的列使条件不成立，而在Java中计算时抛出变量未初始化异常
+ * @author shanxuecheng
+ *
+ */
+public class SqlTranslator {
+	
+	/**
+	 * 运算优先级，子表达式优先级低于父表达式时加括号
+	 */
+	private static final int OR = 1;
+	
+	private static final int AND = 2;
+	
+	private static final int NOT = 3;
+	
+	private static final int COMPARISON = 4;
+	
+	private static final int ADDITIVE = 5;
+	
+	private static final int MULTIPLICATIVE = 6;
+	
+	private static final int UNARY = 7;
+	
+	private static final int ATOM = 8;
+	
+	/**
+	 * 变量名及其列名
+	 */
+	private final Map<String, String> columns = new HashMap<String, String>();
+	
+	/**
+	 * 变量名及其列的数据类型，未声明类型的列不在此
+	 */
+	private final Map<String, DataType> columnTypes = new HashMap<String, DataType>();
+	
+	/**
+	 * 数据库是否按二进制排序规则比较字符串
+	 */
+	private boolean binaryCollation = false;
+	
+	/**
+	 * 声明数据库按二进制排序规则比较字符串（如MySQL的utf8mb4_bin、PostgreSQL的"C"），
+	 * 此时字符串和字符的比较与Java中的结果相同，也被翻译
+	 * @param binaryCollation
+	 * @return
+	 */
+	public SqlTranslator setBinaryCollation(boolean binaryCollation) {
+		this.binaryCollation = binaryCollation;
+		return this;
+	}
+	
+	/**
+	 * 映射变量到列，未映射的变量不翻译
+	 * @param variableName
+	 * @param column 列名，按原样写入SQL
+	 * @return
+	 */
+	public SqlTranslator mapColumn(String variableName, String column) {
+		return mapColumn(variableName, column, null);
+	}
+	
+	/**
+	 * 映射变量到列并声明列的数据类型，NUMBER列参与的+才被翻译
+	 * @param variableName
+	 * @param column 列名，按原样写入SQL
+	 * @param dataType 列的数据类型，为null时类型未知
+	 * @return
+	 */
+	public SqlTranslator mapColumn(String variableName, String column, DataType dataType) {
+		columns.put(variableName, column);
+		if(dataType == null)
+			columnTypes.remove(variableName);
+		else
+			columnTypes.put(variableName, dataType);
+		return this;
+	}
+	
+	/**
+	 * 翻译谓词
+	 * @param predicate
+	 * @return
+	 */
+	public SqlFilter translate(CompiledExpression predicate) {
+		Statement[] statements = predicate.getStatements();
+		if(statements.length != 1 || !(statements[0] instanceof SentenceStatement)
+				|| ((SentenceStatement)statements[0]).getNode() instanceof AssignNode)
+			return new SqlFilter(null, new ArrayList<Object>(), predicate);
+		
+		SentenceStatement statement = (SentenceStatement)statements[0];
+		StringBuilder where = new StringBuilder();
+		List<Object> parameters = new ArrayList<Object>();
+		Node residual = split(statement.getNode(), where, parameters);
+		if(residual == null)
+			return new SqlFilter(where.toString(), parameters, null);
+		//剩余谓词只含部分条件，不能沿用原谓词的指纹
+		CompiledExpression residualPredicate = residual == statement.getNode() ? predicate
+				: new CompiledExpression(predicate.getSource(), null,
+						new Statement[]{new SentenceStatement(residual, statement.getLine())},
+						predicate.getVariableNames());
+		return new SqlFilter(where.length() == 0 ? null : where.toString(), parameters, residualPredicate);
+	}
+	
+	/**
+	 * 按顶层&&拆分条件，可翻译的条件追加到where
+	 * @return 剩余条件，全部可翻译时返回null
+	 */
+	private Node split(Node node, StringBuilder where, List<Object> parameters) {
+		if(node instanceof OperatorNode && ((OperatorNode)node).getOperator() instanceof AndOperator) {
+			OperatorNode and = (OperatorNode)node;
+			Node left = split(and.getArguments()[0], where, parameters);
+			Node right = split(and.getArguments()[1], where, parameters);
+			if(left == null)
+				return right;
+			if(right == null)
+				return left;
+			if(left == and.getArguments()[0] && right == and.getArguments()[1])
+				return node;
+			return new OperatorNode(and.getOperator(), (DelimiterToken)and.getToken(), new Node[]{left, right});
+		}
+		List<Object> conditionParameters = new ArrayList<Object>();
+		Fragment condition = predicate(node, conditionParameters);
+		if(condition == null)
+			return node;
+		if(where.length() > 0)
+			where.append(" AND ");
+		where.append(condition.wrap(AND));
+		parameters.addAll(conditionParameters);
+		return null;
+	}
+	
+	/**
+	 * 翻译结果为BOOLEAN的节点
+	 * @return 不能翻译时返回null
+	 */
+	private Fragment predicate(Node node, List<Object> parameters) {
+		if(node instanceof ConstNode) {
+			ConstToken constant = ((ConstNode)node).getConstant();
+			if(constant.getDataType() != DataType.BOOLEAN)
+				return null;
+			return new Fragment(constant.getBooleanValue() ? "1 = 1" : "1 = 0", COMPARISON);
+		}
+		if(node instanceof VariableNode) {
+			Fragment column = value(node, parameters);
+			if(column == null)
+				return null;
+			parameters.add(Boolean.TRUE);
+			return new Fragment(column.sql + " = ?", COMPARISON);
+		}
+		if(!(node instanceof OperatorNode))
+			return null;
+		Operator operator = ((OperatorNode)node).getOperator();
+		Node[] arguments = ((OperatorNode)node).getArguments();
+		if(operator instanceof NotOperator) {
+			Fragment operand = predicate(arguments[0], parameters);
+			return operand == null ? null : new Fragment("NOT " + operand.wrap(NOT + 1), NOT);
+		}
+		if(operator instanceof AndOperator || operator instanceof OrOperator) {
+			int precedence = operator instanceof AndOperator ? AND : OR;
+			Fragment left = predicate(arguments[0], parameters);
+			if(left == null)
+				return null;
+			Fragment right = predicate(arguments[1], parameters);
+			if(right == null)
+				return null;
+			return new Fragment(left.wrap(precedence)
+					+ (precedence == AND ? " AND " : " OR ") + right.wrap(precedence), precedence);
+		}
+		String comparison = comparison(operator);
+		if(comparison == null)
+			return null;
+		//可能比较字符串时，只在二进制排序规则下翻译
+		if(!binaryCollation && !isOrdered(arguments[0]) && !isOrdered(arguments[1]))
+			return null;
+		Fragment left = value(arguments[0], parameters);
+		if(left == null)
+			return null;
+		Fragment right = value(arguments[1], parameters);
+		if(right == null)
+			return null;
+		return new Fragment(left.wrap(COMPARISON + 1) + comparison + right.wrap(COMPARISON + 1), COMPARISON);
+	}
+	
+	private static String comparison(Operator operator) {
+		if(operator instanceof GreatOperator)
+			return " > ";
+		if(operator instanceof GreatEOperator)
+			return " >= ";
+		if(operator instanceof LessOperator)
+			return " < ";
+		if(operator instanceof LessEOperator)
+			return " <= ";
+		if(operator instanceof EqualOperator)
+			return " = ";
+		if(operator instanceof NotEqualOperator)
+			return " <> ";
+		return null;
+	}
+	
+	/**
+	 * 翻译结果为NUMBER、STRING、CHARACTER或DATE的节点
+	 * @return 不能翻译时返回null
+	 */
+	private Fragment value(Node node, List<Object> parameters) {
+		if(node instanceof VariableNode) {
+			String column = columns.get(((VariableNode)node).getName());
+			return column == null ? null : new Fragment(column, ATOM);
+		}
+		if(node instanceof ConstNode) {
+			Object parameter = parameter(((ConstNode)node).getConstant());
+			if(parameter == null)
+				return null;
+			parameters.add(parameter);
+			return new Fragment("?", ATOM);
+		}
+		if(node instanceof FunctionNode)
+			return function(((FunctionNode)node).getFunction(), ((FunctionNode)node).getArguments(), parameters);
+		if(!(node instanceof OperatorNode))
+			return null;
+		Operator operator = ((OperatorNode)node).getOperator();
+		Node[] arguments = ((OperatorNode)node).getArguments();
+		if(operator instanceof NegativeOperator) {
+			Fragment operand = value(arguments[0], parameters);
+			return operand == null ? null : new Fragment("-" + operand.wrap(UNARY + 1), UNARY);
+		}
+		String symbol;
+		int precedence;
+		if(operator instanceof AddOperator) {
+			//+也用于连接字符串，不能确定为数值加法时不翻译
+			if(isText(arguments[0]) || isText(arguments[1])
+					|| !isNumeric(arguments[0]) && !isNumeric(arguments[1]))
+				return null;
+			symbol = " + ";
+			precedence = ADDITIVE;
+		} else if(operator instanceof MinusOperator) {
+			symbol = " - ";
+			precedence = ADDITIVE;
+		} else if(operator instanceof MultiplyOperator) {
+			symbol = " * ";
+			precedence = MULTIPLICATIVE;
+		} else {
+			return null;
+		}
+		Fragment left = value(arguments[0], parameters);
+		if(left == null)
+			return null;
+		Fragment right = value(arguments[1], parameters);
+		if(right == null)
+			return null;
+		//左结合，右操作数优先级相同时也加括号
+		return new Fragment(left.wrap(precedence) + symbol + right.wrap(precedence + 1), precedence);
+	}
+	
+	private Fragment function(Function function, Node[] arguments, List<Object> parameters) {
+		if(function instanceof Abs) {
+			Fragment argument = value(arguments[0], parameters);
+			return argument == null ? null : new Fragment("ABS(" + argument.sql + ")", ATOM);
+		}
+		if(function instanceof Max && arguments.length > 0) {
+			if(arguments.length == 1)
+				return value(arguments[0], parameters);
+			StringBuilder sql = new StringBuilder("GREATEST(");
+			for(int i=0; i<arguments.length; i++) {
+				Fragment argument = value(arguments[i], parameters);
+				if(argument == null)
+					return null;
+				if(i > 0)
+					sql.append(", ");
+				sql.append(argument.sql);
+			}
+			return new Fragment(sql.append(')').toString(), ATOM);
+		}
+		return null;
+	}
+	
+	/**
+	 * 节点的值是否必为NUMBER：NUMBER常量、声明为NUMBER的列、-、*、取负、abs，以及有这类操作数的+
+	 */
+	private boolean isNumeric(Node node) {
+		if(node instanceof ConstNode)
+			return ((ConstNode)node).getConstant().getDataType() == DataType.NUMBER;
+		if(node instanceof VariableNode)
+			return columnTypes.get(((VariableNode)node).getName()) == DataType.NUMBER;
+		if(node instanceof FunctionNode)
+			return ((FunctionNode)node).getFunction() instanceof Abs;
+		if(!(node instanceof OperatorNode))
+			return false;
+		Operator operator = ((OperatorNode)node).getOperator();
+		Node[] arguments = ((OperatorNode)node).getArguments();
+		if(operator instanceof AddOperator)
+			return isNumeric(arguments[0]) || isNumeric(arguments[1]);
+		return operator instanceof MinusOperator || operator instanceof MultiplyOperator
+				|| operator instanceof NegativeOperator;
+	}
+	
+	/**
+	 * 节点的值是否必为NUMBER或DATE，这两种类型在数据库中的比较与Java相同
+	 */
+	private boolean isOrdered(Node node) {
+		if(isNumeric(node))
+			return true;
+		if(node instanceof ConstNode)
+			return ((ConstNode)node).getConstant().getDataType() == DataType.DATE;
+		if(node instanceof VariableNode)
+			return columnTypes.get(((VariableNode)node).getName()) == DataType.DATE;
+		return false;
+	}
+	
+	private static boolean isText(Node node) {
+		if(!(node instanceof ConstNode))
+			return false;
+		DataType dataType = ((ConstNode)node).getConstant().getDataType();
+		return dataType == DataType.STRING || dataType == DataType.CHARACTER;
+	}
+	
+	/**
+	 * 常量的参数值，BOOLEAN常量只能作为条件
+	 */
+	private static Object parameter(ConstToken constant) {
+		switch(constant.getDataType()) {
+		case NUMBER:
+			return constant.getNumberValue();
+		case STRING:
+			return constant.getStringValue();
+		case CHARACTER:
+			return String.valueOf(constant.getCharValue());
+		case DATE:
+			return new Timestamp(constant.getDateValue().getTimeInMillis());
+		default:
+			return null;
+		}
+	}
+	
+	/**
+	 * SQL片段及其运算优先级
+	 */
+	private static class Fragment {
+		
+		final String sql;
+		
+		final int precedence;
+		
+		Fragment(String sql, int precedence) {
+			this.sql = sql;
+			this.precedence = precedence;
+		}
+		
+		/**
+		 * 优先级低于minPrecedence时加括号
+		 */
+		String wrap(int minPrecedence) {
+			return precedence < minPrecedence ? "(" + sql + ")" : sql;
+		}
+	}
+}
@@ -0,0 +1,168 @@
+package neu.sxc.expression.compile.stream;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+import neu.sxc.expression.compile.CompiledExpression;
+import neu.sxc.expression.compile.Frame;
+import neu.sxc.expression.compile.VariableResolver;
+import neu.sxc.expression.tokens.Valuable;
+
+/**
+ * 将编译后的表达式适配为java.util.function中的函数，以便在Stream中使用。
+ * 变量通过FieldAccessor从元素中读取，访问器在适配时按槽位绑定，计算时只读取执行路径上用到的变量。
+ * 适配得到的函数是线程安全的，每个线程复用各自的帧，可用于并行Stream
+ * @author shanxuecheng
+ *
+ * @param <T> 元素类型
+ */
+public class ExpressionAdapter<T> {
+	
+	private final CompiledExpression compiled;
+	
+	private final Map<String, FieldAccessor<? super T>> accessors = new HashMap<String, FieldAccessor<? super T>>();
+	
+	public ExpressionAdapter(CompiledExpression compiled) {
+		this.compiled = compiled;
+	}
+	
+	/**
+	 * 以ObjectBinder找到的属性绑定所有变量
+	 * @param binder
+	 * @return
+	 */
+	public static <T> ExpressionAdapter<T> of(ObjectBinder<T> binder) {
+		ExpressionAdapter<T> adapter = new ExpressionAdapter<T>(binder.getCompiledExpression());
+		for(String name : binder.getCompiledExpression().getVariableNames()) {
+			FieldAccessor<T> accessor = binder.getAccessor(name);
+			if(accessor != null)
+				adapter.bind(name, accessor);
+		}
+		return adapter;
+	}
+	
+	/**
+	 * 绑定变量的访问器
+	 * @param variableName
+	 * @param accessor
+	 * @return
+	 */
+	public ExpressionAdapter<T> bind(String variableName, FieldAccessor<? super T> accessor) {
+		accessors.put(variableName, accessor);
+		return this;
+	}
+	
+	/**
+	 * 适配为谓词，结果须为BOOLEAN，没有结果时不匹配
+	 * @return
+	 * @throws IllegalArgumentException 表达式的输入变量未绑定访问器时
+	 */
+	public Predicate<T> toPredicate() {
+		final ThreadLocal<Evaluation<T>> evaluations = evaluations();
+		return new Predicate<T>() {
+			public boolean test(T element) {
+				return CompiledExpression.isTrue(evaluations.get().evaluate(element));
+			}
+		};
+	}
+	
+	/**
+	 * 适配为double函数，结果须为NUMBER
+	 * @return
+	 * @throws IllegalArgumentException 表达式的输入变量未绑定访问器时
+	 */
+	public ToDoubleFunction<T> toDoubleFunction() {
+		final ThreadLocal<Evaluation<T>> evaluations = evaluations();
+		return new ToDoubleFunction<T>() {
+			public double applyAsDouble(T element) {
+				return number(evaluations.get().evaluate(element)).doubleValue();
+			}
+		};
+	}
+	
+	/**
+	 * 适配为long函数，结果须为整数
+	 * @return
+	 * @throws IllegalArgumentException 表达式的输入变量未绑定访问器时
+	 */
+	public ToLongFunction<T> toLongFunction() {
+		final ThreadLocal<Evaluation<T>> evaluations = evaluations();
+		return new ToLongFunction<T>() {
+			public long applyAsLong(T element) {
+				return number(evaluations.get().evaluate(element)).longValueExact();
+			}
+		};
+	}
+	
+	private static BigDecimal number(Valuable result) {
+		BigDecimal value = CompiledExpression.toNumber(result);
+		if(value == null)
+			throw new IllegalStateException("Expression produced no value.");
+		return value;
+	}
+	
+	/**
+	 * 按槽位排列访问器，检查所有输入变量都已绑定
+	 */
+	@SuppressWarnings("unchecked")
+	private ThreadLocal<Evaluation<T>> evaluations() {
+		List<String> unbound = new ArrayList<String>();
+		for(String name : compiled.analyze().getRequiredInputs())
+			if(!accessors.containsKey(name))
+				unbound.add(name);
+		if(!unbound.isEmpty())
+			throw new IllegalArgumentException("No accessor bound for variables: " + unbound + ".");
+		String[] names = compiled.getVariableNames();
+		final FieldAccessor<? super T>[] slotAccessors = (FieldAccessor<? super T>[])new FieldAccessor<?>[names.length];
+		for(int i=0; i<names.length; i++)
+			slotAccessors[i] = accessors.get(names[i]);
+		final CompiledExpression expression = compiled;
+		return new ThreadLocal<Evaluation<T>>() {
+			@Override
+			protected Evaluation<T> initialValue() {
+				return new Evaluation<T>(expression, slotAccessors);
+			}
+		};
+	}
+	
+	/**
+	 * 一个线程上的计算，以当前元素作为变量解析器
+	 */
+	private static class Evaluation<T> implements VariableResolver {
+		
+		private final CompiledExpression compiled;
+		
+		private final FieldAccessor<? super T>[] accessors;
+		
+		private final Frame frame;
+		
+		private T element;
+		
+		Evaluation(CompiledExpression compiled, FieldAccessor<? super T>[] accessors) {
+			this.compiled = compiled;
+			this.accessors = accessors;
+			this.frame = compiled.newFrame();
+		}
+		
+		Valuable evaluate(T element) {
+			this.element = element;
+			compiled.bind(frame, this);
+			try {
+				return compiled.evaluate(frame);
+			} finally {
+				this.element = null;
+			}
+		}
+		
+		public Object resolve(String name, int slot) {
+			FieldAccessor<? super T> accessor = accessors[slot];
+			return accessor == null ? null : accessor.get(element);
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package neu.sxc.expression.compile.stream;
+
+/**
+ * 从调用方对象中取变量值
+ * @author shanxuecheng
+ *
+ * @param <T> 对象类型
+ */
+public interface FieldAccessor<T> {
+	/**
+	 * 取值
+	 * @param object
+	 * @return Valuable或TokenBuilder.buildRuntimeValue支持的类型，返回null表示变量未定义
+	 */
+	public Object get(T object);
+}
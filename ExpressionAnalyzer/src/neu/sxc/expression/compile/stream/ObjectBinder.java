@@ -0,0 +1,333 @@
+package neu.sxc.expression.compile.stream;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.RecordComponent;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import neu.sxc.expression.compile.CompiledExpression;
+import neu.sxc.expression.compile.Frame;
+import neu.sxc.expression.tokens.DataType;
+import neu.sxc.expression.tokens.TokenBuilder;
+import neu.sxc.expression.tokens.Valuable;
+import neu.sxc.expression.utils.ValueUtil;
+
+/**
+ * 按类绑定变量。
+ * 构造时为每个变量查找同名的记录组件、getter（getXxx或isXxx）或字段，生成MethodHandle，
+ * 计算时直接读取到帧中：基本类型字段不装箱，也不经过TokenBuilder.buildRuntimeValue的类型判断。
+ * 找不到属性的变量不绑定，但表达式的输入变量都须能找到。对象不可变，可被多个线程同时使用
+ * @author shanxuecheng
+ *
+ * @param <T> 对象类型
+ */
+public class ObjectBinder<T> {
+	
+	private final CompiledExpression compiled;
+	
+	/**
+	 * 按槽位排列的访问器，未绑定的变量为null
+	 */
+	private final FieldAccessor<Object>[] accessors;
+	
+	/**
+	 * 使用公共查找，只能访问公共类的公共成员，其他成员通过setAccessible访问
+	 * @param type
+	 * @param compiled
+	 */
+	public ObjectBinder(Class<T> type, CompiledExpression compiled) {
+		this(type, compiled, MethodHandles.publicLookup());
+	}
+	
+	/**
+	 * @param type
+	 * @param compiled
+	 * @param lookup 用于访问type成员的查找对象，非公共类可传入MethodHandles.lookup()
+	 * @throws IllegalArgumentException 输入变量找不到属性或属性类型不支持时
+	 */
+	@SuppressWarnings("unchecked")
+	public ObjectBinder(Class<T> type, CompiledExpression compiled, MethodHandles.Lookup lookup) {
+		this.compiled = compiled;
+		String[] names = compiled.getVariableNames();
+		accessors = (FieldAccessor<Object>[])new FieldAccessor<?>[names.length];
+		for(int i=0; i<names.length; i++)
+			accessors[i] = accessor(type, names[i], lookup);
+		List<String> missing = new ArrayList<String>();
+		for(String name : compiled.analyze().getRequiredInputs())
+			if(accessors[compiled.getSlot(name)] == null)
+				missing.add(name);
+		if(!missing.isEmpty())
+			throw new IllegalArgumentException("No property of " + type.getName()
+					+ " for variables: " + missing + ".");
+	}
+	
+	public CompiledExpression getCompiledExpression() {
+		return compiled;
+	}
+	
+	/**
+	 * 取变量的访问器，可用于ExpressionAdapter
+	 * @param variableName
+	 * @return 变量不存在或未绑定时返回null
+	 */
+	@SuppressWarnings("unchecked")
+	public FieldAccessor<T> getAccessor(String variableName) {
+		int slot = compiled.getSlot(variableName);
+		return slot < 0 ? null : (FieldAccessor<T>)(FieldAccessor<?>)accessors[slot];
+	}
+	
+	/**
+	 * 清除帧并读取对象的属性
+	 * @param frame
+	 * @param object
+	 */
+	public void bind(Frame frame, T object) {
+		frame.clear();
+		for(int i=0; i<accessors.length; i++)
+			if(accessors[i] != null)
+				frame.set(i, (Valuable)accessors[i].get(object));
+	}
+	
+	/**
+	 * 以对象的属性为变量计算表达式
+	 * @param object
+	 * @return
+	 */
+	public Valuable evaluate(T object) {
+		Frame frame = compiled.newFrame();
+		bind(frame, object);
+		return compiled.evaluate(frame);
+	}
+	
+	/**
+	 * 查找属性，依次为记录组件、getter、字段
+	 * @return 找不到时返回null
+	 */
+	private static FieldAccessor<Object> accessor(Class<?> type, String name, MethodHandles.Lookup lookup) {
+		try {
+			if(type.isRecord()) {
+				for(RecordComponent component : type.getRecordComponents())
+					if(component.getName().equals(name))
+						return accessor(unreflect(component.getAccessor(), lookup), component.getType(), name);
+			}
+			String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+			Method getter = getter(type, "get" + suffix);
+			if(getter == null) {
+				getter = getter(type, "is" + suffix);
+				if(getter != null && getter.getReturnType() != boolean.class && getter.getReturnType() != Boolean.class)
+					getter = null;
+			}
+			if(getter != null)
+				return accessor(unreflect(getter, lookup), getter.getReturnType(), name);
+			Field field = field(type, name);
+			if(field != null)
+				return accessor(unreflectGetter(field, lookup), field.getType(), name);
+			return null;
+		} catch(IllegalAccessException e) {
+			throw new IllegalArgumentException("Cannot access property \"" + name + "\" of " + type.getName() + ".", e);
+		}
+	}
+	
+	private static Method getter(Class<?> type, String methodName) {
+		for(Class<?> c=type; c!=null && c!=Object.class; c=c.getSuperclass()) {
+			try {
+				Method method = c.getDeclaredMethod(methodName);
+				if(!Modifier.isStatic(method.getModifiers()) && method.getReturnType() != void.class)
+					return method;
+			} catch(NoSuchMethodException e) {
+			}
+		}
+		return null;
+	}
+	
+	private static Field field(Class<?> type, String fieldName) {
+		for(Class<?> c=type; c!=null && c!=Object.class; c=c.getSuperclass()) {
+			try {
+				Field field = c.getDeclaredField(fieldName);
+				if(!Modifier.isStatic(field.getModifiers()))
+					return field;
+			} catch(NoSuchFieldException e) {
+			}
+		}
+		return null;
+	}
+	
+	private static MethodHandle unreflect(Method method, MethodHandles.Lookup lookup) throws IllegalAccessException {
+		try {
+			return lookup.unreflect(method);
+		} catch(IllegalAccessException e) {
+			method.setAccessible(true);
+			return lookup.unreflect(method);
+		}
+	}
+	
+	private static MethodHandle unreflectGetter(Field field, MethodHandles.Lookup lookup) throws IllegalAccessException {
+		try {
+			return lookup.unreflectGetter(field);
+		} catch(IllegalAccessException e) {
+			field.setAccessible(true);
+			return lookup.unreflectGetter(field);
+		}
+	}
+	
+	/**
+	 * 按属性类型生成访问器，基本类型的句柄转换为接收Object、返回long、float、double、boolean或char
+	 */
+	private static FieldAccessor<Object> accessor(MethodHandle handle, Class<?> valueType, String name) {
+		if(valueType == long.class || valueType == int.class || valueType == short.class || valueType == byte.class)
+			return new LongAccessor(handle.asType(MethodType.methodType(long.class, Object.class)));
+		if(valueType == float.class)
+			return new FloatAccessor(handle.asType(MethodType.methodType(float.class, Object.class)));
+		if(valueType == double.class)
+			return new DoubleAccessor(handle.asType(MethodType.methodType(double.class, Object.class)));
+		if(valueType == boolean.class)
+			return new BooleanAccessor(handle.asType(MethodType.methodType(boolean.class, Object.class)));
+		if(valueType == char.class)
+			return new CharAccessor(handle.asType(MethodType.methodType(char.class, Object.class)));
+		if(Number.class.isAssignableFrom(valueType) || valueType == String.class || valueType == Character.class
+				|| valueType == Boolean.class || Calendar.class.isAssignableFrom(valueType))
+			return new ObjectAccessor(handle.asType(MethodType.methodType(Object.class, Object.class)));
+		throw new IllegalArgumentException("Unsupported type of property \"" + name + "\": " + valueType.getName() + ".");
+	}
+	
+	private static RuntimeException rethrow(Throwable e) {
+		if(e instanceof RuntimeException)
+			return (RuntimeException)e;
+		if(e instanceof Error)
+			throw (Error)e;
+		return new RuntimeException(e);
+	}
+	
+	private static final class LongAccessor implements FieldAccessor<Object> {
+		
+		private final MethodHandle handle;
+		
+		LongAccessor(MethodHandle handle) {
+			this.handle = handle;
+		}
+		
+		public Object get(Object object) {
+			try {
+				return ValueUtil.numberValue(BigDecimal.valueOf((long)handle.invokeExact(object)));
+			} catch(Throwable e) {
+				throw rethrow(e);
+			}
+		}
+	}
+	
+	private static final class DoubleAccessor implements FieldAccessor<Object> {
+		
+		private final MethodHandle handle;
+		
+		DoubleAccessor(MethodHandle handle) {
+			this.handle = handle;
+		}
+		
+		public Object get(Object object) {
+			try {
+				return ValueUtil.numberValue(BigDecimal.valueOf((double)handle.invokeExact(object)));
+			} catch(Throwable e) {
+				throw rethrow(e);
+			}
+		}
+	}
+	
+	/**
+	 * float按其十进制表示转换，0.1f绑定为0.1而非拓宽后的0.10000000149011612
+	 */
+	private static final class FloatAccessor implements FieldAccessor<Object> {
+		
+		private final MethodHandle handle;
+		
+		FloatAccessor(MethodHandle handle) {
+			this.handle = handle;
+		}
+		
+		public Object get(Object object) {
+			try {
+				return ValueUtil.numberValue(new BigDecimal(Float.toString((float)handle.invokeExact(object))));
+			} catch(Throwable e) {
+				throw rethrow(e);
+			}
+		}
+	}
+	
+	private static final class BooleanAccessor implements FieldAccessor<Object> {
+		
+		private final MethodHandle handle;
+		
+		BooleanAccessor(MethodHandle handle) {
+			this.handle = handle;
+		}
+		
+		public Object get(Object object) {
+			try {
+				return ValueUtil.booleanValue((boolean)handle.invokeExact(object));
+			} catch(Throwable e) {
+				throw rethrow(e);
+			}
+		}
+	}
+	
+	private static final class CharAccessor implements FieldAccessor<Object> {
+		
+		private final MethodHandle handle;
+		
+		CharAccessor(MethodHandle handle) {
+			this.handle = handle;
+		}
+		
+		public Object get(Object object) {
+			try {
+				char value = (char)handle.invokeExact(object);
+				return TokenBuilder.getBuilder().dataType(DataType.CHARACTER).value(value).buildRuntimeValue();
+			} catch(Throwable e) {
+				throw rethrow(e);
+			}
+		}
+	}
+	
+	/**
+	 * 引用类型属性，值为null时变量未定义
+	 */
+	private static final class ObjectAccessor implements FieldAccessor<Object> {
+		
+		private final MethodHandle handle;
+		
+		ObjectAccessor(MethodHandle handle) {
+			this.handle = handle;
+		}
+		
+		public Object get(Object object) {
+			Object value;
+			try {
+				value = (Object)handle.invokeExact(object);
+			} catch(Throwable e) {
+				throw rethrow(e);
+			}
+			if(value == null)
+				return null;
+			if(value instanceof BigDecimal)
+				return ValueUtil.numberValue((BigDecimal)value);
+			if(value instanceof BigInteger)
+				return ValueUtil.numberValue(new BigDecimal((BigInteger)value));
+			if(value instanceof Float)
+				return ValueUtil.numberValue(new BigDecimal(value.toString()));
+			if(value instanceof Double)
+				return ValueUtil.numberValue(BigDecimal.valueOf((Double)value));
+			if(value instanceof Number)
+				return ValueUtil.numberValue(BigDecimal.valueOf(((Number)value).longValue()));
+			if(value instanceof Boolean)
+				return ValueUtil.booleanValue((Boolean)value);
+			return TokenBuilder.buildRuntimeValue(value);
+		}
+	}
+}
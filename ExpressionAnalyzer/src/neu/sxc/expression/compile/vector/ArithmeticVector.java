@@ -0,0 +1,100 @@
+package neu.sxc.expression.compile.vector;
+
+import neu.sxc.expression.tokens.DataType;
+import neu.sxc.expression.tokens.TerminalToken;
+
+/**
+ * 数值运算：+、-、*、/、%及max。两个操作数的保存方式须相同，
+ * 以long[]保存时除/外精确计算，溢出时抛出PrecisionLossException
+ * @author shanxuecheng
+ *
+ */
+final class ArithmeticVector extends VectorNode {
+	
+	static final int ADD = 0;
+	static final int MINUS = 1;
+	static final int MULTIPLY = 2;
+	static final int DIVIDE = 3;
+	static final int MOD = 4;
+	static final int MAX = 5;
+	
+	private final int operation;
+	
+	private final VectorNode left;
+	
+	private final VectorNode right;
+	
+	/**
+	 * 操作符Token，用于定位除零错误
+	 */
+	private final TerminalToken token;
+	
+	ArithmeticVector(int operation, VectorNode left, VectorNode right, TerminalToken token,
+			int register, int precision) {
+		super(DataType.NUMBER, register, precision);
+		this.operation = operation;
+		this.left = left;
+		this.right = right;
+		this.token = token;
+	}
+
+	@Override
+	void evaluate(VectorFrame frame, int[] sel, int n) {
+		left.evaluate(frame, sel, n);
+		right.evaluate(frame, sel, n);
+		try {
+			if(isLong())
+				evaluateLongs(frame.longs(left.register), frame.longs(right.register), frame.longs(register), sel, n);
+			else
+				evaluateDoubles(frame.doubles(left.register), frame.doubles(right.register), frame.doubles(register), sel, n);
+		} catch(ArithmeticException e) {
+			ArithmeticException arithmeticException = new ArithmeticException(e.getMessage()
+					+ " At line:" + token.getLine() + ", column:" + token.getColumn() + ".");
+			arithmeticException.initCause(e);
+			throw arithmeticException;
+		}
+	}
+	
+	private void evaluateLongs(long[] a, long[] b, long[] out, int[] sel, int n) {
+		switch(operation) {
+		case ADD:
+			VectorKernels.add(a, b, out, sel, n);
+			break;
+		case MINUS:
+			VectorKernels.subtract(a, b, out, sel, n);
+			break;
+		case MULTIPLY:
+			VectorKernels.multiply(a, b, out, sel, n);
+			break;
+		case MOD:
+			VectorKernels.mod(a, b, out, sel, n);
+			break;
+		case MAX:
+			VectorKernels.max(a, b, out, sel, n);
+			break;
+		}
+	}
+	
+	private void evaluateDoubles(double[] a, double[] b, double[] out, int[] sel, int n) {
+		switch(operation) {
+		case ADD:
+			VectorKernels.NUMERIC.add(a, b, out, sel, n);
+			break;
+		case MINUS:
+			VectorKernels.NUMERIC.subtract(a, b, out, sel, n);
+			break;
+		case MULTIPLY:
+			VectorKernels.NUMERIC.multiply(a, b, out, sel, n);
+			break;
+		case DIVIDE:
+			VectorKernels.divide(a, b, out, sel, n);
+			break;
+		case MOD:
+			VectorKernels.mod(a, b, out, sel, n);
+			break;
+		case MAX:
+			VectorKernels.max(a, b, out, sel, n);
+			break;
+		}
+	}
+}
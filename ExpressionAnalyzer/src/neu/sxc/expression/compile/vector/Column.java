@@ -0,0 +1,171 @@
+package neu.sxc.expression.compile.vector;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Calendar;
+
+import neu.sxc.expression.tokens.DataType;
+import neu.sxc.expression.tokens.TokenBuilder;
+import neu.sxc.expression.tokens.Valuable;
+
+/**
+ * 列，按数据类型以基本类型数组保存一列值：
+ * NUMBER为long[]或double[]，BOOLEAN为boolean[]，STRING为String[]，CHARACTER为char[]，DATE为毫秒时间戳long[]
+ * @author shanxuecheng
+ *
+ */
+public final class Column {
+	
+	private final DataType dataType;
+	
+	private final Object values;
+	
+	private final int size;
+	
+	/**
+	 * 空值标志，为null时表示没有空值
+	 */
+	private final boolean[] nulls;
+	
+	private Column(DataType dataType, Object values, int size, boolean[] nulls) {
+		if(nulls != null && nulls.length < size)
+			throw new IllegalArgumentException("Null flags are shorter than the column: "
+					+ nulls.length + " < " + size + ".");
+		this.dataType = dataType;
+		this.values = values;
+		this.size = size;
+		this.nulls = nulls;
+	}
+	
+	public static Column ofLongs(long[] values) {
+		return new Column(DataType.NUMBER, values, values.length, null);
+	}
+	
+	public static Column ofDoubles(double[] values) {
+		return new Column(DataType.NUMBER, values, values.length, null);
+	}
+	
+	public static Column ofBooleans(boolean[] values) {
+		return new Column(DataType.BOOLEAN, values, values.length, null);
+	}
+	
+	public static Column ofStrings(String[] values) {
+		return new Column(DataType.STRING, values, values.length, null);
+	}
+	
+	public static Column ofChars(char[] values) {
+		return new Column(DataType.CHARACTER, values, values.length, null);
+	}
+	
+	/**
+	 * @param epochMillis 毫秒时间戳
+	 */
+	public static Column ofDates(long[] epochMillis) {
+		return new Column(DataType.DATE, epochMillis, epochMillis.length, null);
+	}
+	
+	/**
+	 * 带空值标志的列
+	 * @param column 值
+	 * @param nulls 空值标志
+	 */
+	public static Column withNulls(Column column, boolean[] nulls) {
+		return new Column(column.dataType, column.values, column.size, nulls);
+	}
+	
+	/**
+	 * 全部为空值的列
+	 * @param size
+	 */
+	public static Column ofNulls(int size) {
+		boolean[] nulls = new boolean[size];
+		Arrays.fill(nulls, true);
+		return new Column(DataType.ANY, null, size, nulls);
+	}
+	
+	public DataType getDataType() {
+		return dataType;
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public boolean hasNulls() {
+		return nulls != null;
+	}
+	
+	public boolean isNull(int row) {
+		return nulls != null && nulls[row];
+	}
+	
+	/**
+	 * @return 数值列是否以long[]保存
+	 */
+	public boolean isLongBacked() {
+		return values instanceof long[];
+	}
+	
+	public long[] getLongs() {
+		return (long[])values;
+	}
+	
+	public double[] getDoubles() {
+		return (double[])values;
+	}
+	
+	public boolean[] getBooleans() {
+		return (boolean[])values;
+	}
+	
+	public String[] getStrings() {
+		return (String[])values;
+	}
+	
+	public char[] getChars() {
+		return (char[])values;
+	}
+	
+	/**
+	 * @return 保存列值的数组
+	 */
+	public Object getValues() {
+		return values;
+	}
+	
+	/**
+	 * 取数值，long列转换为double
+	 * @param row
+	 * @return
+	 */
+	public double getDouble(int row) {
+		return isLongBacked() ? getLongs()[row] : getDoubles()[row];
+	}
+	
+	/**
+	 * 取某行的值，空值时返回null
+	 * @param row
+	 * @return
+	 */
+	public Valuable getValuable(int row) {
+		if(isNull(row))
+			return null;
+		switch(dataType) {
+		case NUMBER:
+			return TokenBuilder.buildRuntimeValue(isLongBacked()
+					? BigDecimal.valueOf(getLongs()[row]) : BigDecimal.valueOf(getDoubles()[row]));
+		case BOOLEAN:
+			return TokenBuilder.buildRuntimeValue(getBooleans()[row]);
+		case STRING:
+			return TokenBuilder.buildRuntimeValue(getStrings()[row]);
+		case CHARACTER:
+			return TokenBuilder.buildRuntimeValue(getChars()[row]);
+		case DATE:
+			Calendar date = Calendar.getInstance();
+			date.setTimeInMillis(getLongs()[row]);
+			return TokenBuilder.buildRuntimeValue(date);
+		default:
+			return null;
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package neu.sxc.expression.compile.vector;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 按列组织的一批输入，列名对应表达式中的变量名
+ * @author shanxuecheng
+ *
+ */
+public class ColumnBatch {
+	
+	private final int rowCount;
+	
+	private final Map<String, Column> columns = new LinkedHashMap<String, Column>();
+	
+	public ColumnBatch(int rowCount) {
+		this.rowCount = rowCount;
+	}
+	
+	public int getRowCount() {
+		return rowCount;
+	}
+	
+	/**
+	 * 添加列，列长度不能小于行数
+	 * @param name 变量名
+	 * @param column
+	 * @return this
+	 */
+	public ColumnBatch addColumn(String name, Column column) {
+		if(column.size() < rowCount)
+			throw new IllegalArgumentException("Column \"" + name + "\" is shorter than the batch: "
+					+ column.size() + " < " + rowCount + ".");
+		columns.put(name, column);
+		return this;
+	}
+	
+	public ColumnBatch addLongs(String name, long[] values) {
+		return addColumn(name, Column.ofLongs(values));
+	}
+	
+	public ColumnBatch addDoubles(String name, double[] values) {
+		return addColumn(name, Column.ofDoubles(values));
+	}
+	
+	public ColumnBatch addBooleans(String name, boolean[] values) {
+		return addColumn(name, Column.ofBooleans(values));
+	}
+	
+	public ColumnBatch addStrings(String name, String[] values) {
+		return addColumn(name, Column.ofStrings(values));
+	}
+	
+	public ColumnBatch addDates(String name, long[] epochMillis) {
+		return addColumn(name, Column.ofDates(epochMillis));
+	}
+	
+	public Column getColumn(String name) {
+		return columns.get(name);
+	}
+	
+	public Map<String, Column> getColumns() {
+		return Collections.unmodifiableMap(columns);
+	}
+}
@@ -0,0 +1,51 @@
+package neu.sxc.expression.compile.vector;
+
+import neu.sxc.expression.tokens.DataType;
+
+/**
+ * 比较运算，支持NUMBER、DATE、STRING。两个数值操作数的保存方式须相同，且都不是近似值
+ * @author shanxuecheng
+ *
+ */
+final class CompareVector extends VectorNode {
+	
+	/**
+	 * VectorKernels中的比较代码
+	 */
+	private final int compareCode;
+	
+	private final VectorNode left;
+	
+	private final VectorNode right;
+	
+	CompareVector(int compareCode, VectorNode left, VectorNode right, int register) {
+		super(DataType.BOOLEAN, register);
+		this.compareCode = compareCode;
+		this.left = left;
+		this.right = right;
+	}
+
+	@Override
+	void evaluate(VectorFrame frame, int[] sel, int n) {
+		left.evaluate(frame, sel, n);
+		right.evaluate(frame, sel, n);
+		boolean[] out = frame.booleans(register);
+		switch(left.dataType) {
+		case NUMBER:
+			if(left.isLong())
+				VectorKernels.NUMERIC.compare(frame.longs(left.register), frame.longs(right.register),
+						compareCode, out, sel, n);
+			else
+				VectorKernels.NUMERIC.compare(frame.doubles(left.register), frame.doubles(right.register),
+						compareCode, out, sel, n);
+			break;
+		case DATE:
+			VectorKernels.NUMERIC.compare(frame.longs(left.register), frame.longs(right.register),
+					compareCode, out, sel, n);
+			break;
+		default:
+			VectorKernels.compare(frame.strings(left.register), frame.strings(right.register),
+					compareCode, out, sel, n);
+		}
+	}
+}
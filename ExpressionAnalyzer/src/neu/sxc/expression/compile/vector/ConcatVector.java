@@ -0,0 +1,29 @@
+package neu.sxc.expression.compile.vector;
+
+import neu.sxc.expression.tokens.DataType;
+
+/**
+ * 字符串连接
+ * @author shanxuecheng
+ *
+ */
+final class ConcatVector extends VectorNode {
+	
+	private final VectorNode left;
+	
+	private final VectorNode right;
+	
+	ConcatVector(VectorNode left, VectorNode right, int register) {
+		super(DataType.STRING, register);
+		this.left = left;
+		this.right = right;
+	}
+
+	@Override
+	void evaluate(VectorFrame frame, int[] sel, int n) {
+		left.evaluate(frame, sel, n);
+		right.evaluate(frame, sel, n);
+		VectorKernels.concat(frame.strings(left.register), frame.strings(right.register),
+				frame.strings(register), sel, n);
+	}
+}
@@ -0,0 +1,19 @@
+package neu.sxc.expression.compile.vector;
+
+import neu.sxc.expression.tokens.DataType;
+
+/**
+ * 常量，寄存器在创建VectorFrame时填充，计算时无需操作
+ * @author shanxuecheng
+ *
+ */
+final class ConstVector extends VectorNode {
+	
+	ConstVector(DataType dataType, int register, int precision) {
+		super(dataType, register, precision);
+	}
+
+	@Override
+	void evaluate(VectorFrame frame, int[] sel, int n) {
+	}
+}
@@ -0,0 +1,43 @@
+package neu.sxc.expression.compile.vector;
+
+/**
+ * if-else语句。按条件将选中行划分为两个选择向量，再分别执行两个分支
+ * @author shanxuecheng
+ *
+ */
+final class IfVector extends VectorStatement {
+	
+	private final VectorNode condition;
+	
+	private final VectorStatement[] thenBlock;
+	
+	private final VectorStatement[] elseBlock;
+	
+	/**
+	 * 两个分支使用的选择向量编号
+	 */
+	private final int thenSelection;
+	
+	private final int elseSelection;
+	
+	IfVector(VectorNode condition, VectorStatement[] thenBlock, VectorStatement[] elseBlock,
+			int thenSelection, int elseSelection) {
+		this.condition = condition;
+		this.thenBlock = thenBlock;
+		this.elseBlock = elseBlock;
+		this.thenSelection = thenSelection;
+		this.elseSelection = elseSelection;
+	}
+
+	@Override
+	void execute(VectorFrame frame, int[] sel, int n) {
+		condition.evaluate(frame, sel, n);
+		int[] whenTrue = frame.selection(thenSelection);
+		int[] whenFalse = frame.selection(elseSelection);
+		int t = VectorKernels.split(frame.booleans(condition.register), sel, n, whenTrue, whenFalse);
+		if(t > 0 && thenBlock.length > 0)
+			executeBlock(thenBlock, frame, whenTrue, t);
+		if(n - t > 0 && elseBlock.length > 0)
+			executeBlock(elseBlock, frame, whenFalse, n - t);
+	}
+}
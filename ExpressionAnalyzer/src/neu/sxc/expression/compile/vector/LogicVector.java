@@ -0,0 +1,36 @@
+package neu.sxc.expression.compile.vector;
+
+import neu.sxc.expression.tokens.DataType;
+
+/**
+ * 逻辑与、逻辑或。与解释执行相同，两侧都会计算
+ * @author shanxuecheng
+ *
+ */
+final class LogicVector extends VectorNode {
+	
+	private final boolean and;
+	
+	private final VectorNode left;
+	
+	private final VectorNode right;
+	
+	LogicVector(boolean and, VectorNode left, VectorNode right, int register) {
+		super(DataType.BOOLEAN, register);
+		this.and = and;
+		this.left = left;
+		this.right = right;
+	}
+
+	@Override
+	void evaluate(VectorFrame frame, int[] sel, int n) {
+		left.evaluate(frame, sel, n);
+		right.evaluate(frame, sel, n);
+		boolean[] a = frame.booleans(left.register);
+		boolean[] b = frame.booleans(right.register);
+		if(and)
+			VectorKernels.NUMERIC.and(a, b, frame.booleans(register), sel, n);
+		else
+			VectorKernels.NUMERIC.or(a, b, frame.booleans(register), sel, n);
+	}
+}
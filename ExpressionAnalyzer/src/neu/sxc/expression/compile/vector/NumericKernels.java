@@ -0,0 +1,24 @@
+package neu.sxc.expression.compile.vector;
+
+/**
+ * 热点数值内核接口：算术、比较、逻辑运算。
+ * 参数约定与VectorKernels相同，sel为null时处理前n行，否则只处理sel中的行
+ * @author shanxuecheng
+ *
+ */
+interface NumericKernels {
+	
+	public void add(double[] a, double[] b, double[] out, int[] sel, int n);
+	
+	public void subtract(double[] a, double[] b, double[] out, int[] sel, int n);
+	
+	public void multiply(double[] a, double[] b, double[] out, int[] sel, int n);
+	
+	public void compare(double[] a, double[] b, int op, boolean[] out, int[] sel, int n);
+	
+	public void compare(long[] a, long[] b, int op, boolean[] out, int[] sel, int n);
+	
+	public void and(boolean[] a, boolean[] b, boolean[] out, int[] sel, int n);
+	
+	public void or(boolean[] a, boolean[] b, boolean[] out, int[] sel, int n);
+}
@@ -0,0 +1,16 @@
+package neu.sxc.expression.compile.vector;
+
+/**
+ * 列计算无法得到与逐行计算相同的值：long运算溢出，或超过2^53的整数需转换为double。
+ * 由VectorizedExpression捕获后改为逐行计算，不会抛出到调用方
+ * @author shanxuecheng
+ *
+ */
+@SuppressWarnings("serial")
+final class PrecisionLossException extends RuntimeException {
+	
+	PrecisionLossException() {
+		//作为控制流抛出，不记录调用栈
+		super("Vectorized evaluation loses precision.", null, false, false);
+	}
+}
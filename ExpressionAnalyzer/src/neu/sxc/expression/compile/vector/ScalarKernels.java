@@ -0,0 +1,37 @@
+package neu.sxc.expression.compile.vector;
+
+/**
+ * 标量实现，逐元素循环
+ * @author shanxuecheng
+ *
+ */
+class ScalarKernels implements NumericKernels {
+
+	public void add(double[] a, double[] b, double[] out, int[] sel, int n) {
+		VectorKernels.add(a, b, out, sel, n);
+	}
+
+	public void subtract(double[] a, double[] b, double[] out, int[] sel, int n) {
+		VectorKernels.subtract(a, b, out, sel, n);
+	}
+
+	public void multiply(double[] a, double[] b, double[] out, int[] sel, int n) {
+		VectorKernels.multiply(a, b, out, sel, n);
+	}
+
+	public void compare(double[] a, double[] b, int op, boolean[] out, int[] sel, int n) {
+		VectorKernels.compare(a, b, op, out, sel, n);
+	}
+
+	public void compare(long[] a, long[] b, int op, boolean[] out, int[] sel, int n) {
+		VectorKernels.compare(a, b, op, out, sel, n);
+	}
+
+	public void and(boolean[] a, boolean[] b, boolean[] out, int[] sel, int n) {
+		VectorKernels.and(a, b, out, sel, n);
+	}
+
+	public void or(boolean[] a, boolean[] b, boolean[] out, int[] sel, int n) {
+		VectorKernels.or(a, b, out, sel, n);
+	}
+}
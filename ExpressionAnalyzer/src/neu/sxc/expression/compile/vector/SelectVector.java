@@ -0,0 +1,32 @@
+package neu.sxc.expression.compile.vector;
+
+/**
+ * judge函数，按条件逐行选择两个参数之一。与解释执行相同，两个参数都会计算。
+ * 两个数值参数的保存方式须相同
+ * @author shanxuecheng
+ *
+ */
+final class SelectVector extends VectorNode {
+	
+	private final VectorNode condition;
+	
+	private final VectorNode whenTrue;
+	
+	private final VectorNode whenFalse;
+	
+	SelectVector(VectorNode condition, VectorNode whenTrue, VectorNode whenFalse, int register) {
+		super(whenTrue.dataType, register, Math.max(whenTrue.precision, whenFalse.precision));
+		this.condition = condition;
+		this.whenTrue = whenTrue;
+		this.whenFalse = whenFalse;
+	}
+
+	@Override
+	void evaluate(VectorFrame frame, int[] sel, int n) {
+		condition.evaluate(frame, sel, n);
+		whenTrue.evaluate(frame, sel, n);
+		whenFalse.evaluate(frame, sel, n);
+		VectorKernels.select(frame.booleans(condition.register), frame.register(whenTrue.register),
+				frame.register(whenFalse.register), frame.register(register), sel, n);
+	}
+}
@@ -0,0 +1,53 @@
+package neu.sxc.expression.compile.vector;
+
+/**
+ * 以分号结束的单条语句。语句的值写入对应类型的结果寄存器，并标记这些行的结果类型。
+ * 以long[]保存的数值在写入结果寄存器时转换为double
+ * @author shanxuecheng
+ *
+ */
+final class SentenceVector extends VectorStatement {
+	
+	private final VectorNode node;
+	
+	/**
+	 * 被赋值变量的寄存器，不是赋值语句时为-1
+	 */
+	private final int slotRegister;
+	
+	private final int resultRegister;
+	
+	/**
+	 * 结果类型标记
+	 */
+	private final byte resultTag;
+	
+	SentenceVector(VectorNode node, int slotRegister, int resultRegister, byte resultTag) {
+		this.node = node;
+		this.slotRegister = slotRegister;
+		this.resultRegister = resultRegister;
+		this.resultTag = resultTag;
+	}
+
+	@Override
+	void execute(VectorFrame frame, int[] sel, int n) {
+		node.evaluate(frame, sel, n);
+		Object value = frame.register(node.register);
+		if(slotRegister >= 0 && slotRegister != node.register)
+			VectorKernels.copy(value, frame.register(slotRegister), sel, n);
+		Object result = frame.register(resultRegister);
+		//NUMBER结果统一以double[]保存
+		if(value instanceof long[] && result instanceof double[])
+			VectorKernels.toDoubles((long[])value, (double[])result, sel, n);
+		else
+			VectorKernels.copy(value, result, sel, n);
+		byte[] tags = frame.tags();
+		if(sel == null) {
+			for(int i=0; i<n; i++)
+				tags[i] = resultTag;
+		} else {
+			for(int j=0; j<n; j++)
+				tags[sel[j]] = resultTag;
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package neu.sxc.expression.compile.vector;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * 基于jdk.incubator.vector的SIMD实现。
+ * 只重写比较运算：算术和逻辑运算的标量循环已由JIT自动向量化，手写向量代码并不更快。
+ * 只向量化全部行选中（sel为null）的情况，选择向量上的稀疏计算及尾部不足一个向量的行按标量计算。
+ * 运行时须以--add-modules jdk.incubator.vector启动，否则VectorKernels选择ScalarKernels
+ * @author shanxuecheng
+ *
+ */
+final class SimdKernels extends ScalarKernels {
+	
+	private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+	
+	private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+	
+	@Override
+	public void compare(double[] a, double[] b, int op, boolean[] out, int[] sel, int n) {
+		if(sel != null) {
+			VectorKernels.compare(a, b, op, out, sel, n);
+			return;
+		}
+		//比较操作须为常量，向量运算才能被编译为SIMD指令
+		int bound = DOUBLES.loopBound(n);
+		int i = 0;
+		switch(op) {
+		case VectorKernels.GREAT:
+			for(; i<bound; i+=DOUBLES.length())
+				DoubleVector.fromArray(DOUBLES, a, i).compare(VectorOperators.GT, DoubleVector.fromArray(DOUBLES, b, i))
+						.intoArray(out, i);
+			break;
+		case VectorKernels.GREATE:
+			for(; i<bound; i+=DOUBLES.length())
+				DoubleVector.fromArray(DOUBLES, a, i).compare(VectorOperators.GE, DoubleVector.fromArray(DOUBLES, b, i))
+						.intoArray(out, i);
+			break;
+		case VectorKernels.LESS:
+			for(; i<bound; i+=DOUBLES.length())
+				DoubleVector.fromArray(DOUBLES, a, i).compare(VectorOperators.LT, DoubleVector.fromArray(DOUBLES, b, i))
+						.intoArray(out, i);
+			break;
+		case VectorKernels.LESSE:
+			for(; i<bound; i+=DOUBLES.length())
+				DoubleVector.fromArray(DOUBLES, a, i).compare(VectorOperators.LE, DoubleVector.fromArray(DOUBLES, b, i))
+						.intoArray(out, i);
+			break;
+		case VectorKernels.EQUAL:
+			for(; i<bound; i+=DOUBLES.length())
+				DoubleVector.fromArray(DOUBLES, a, i).compare(VectorOperators.EQ, DoubleVector.fromArray(DOUBLES, b, i))
+						.intoArray(out, i);
+			break;
+		case VectorKernels.NOTEQUAL:
+			for(; i<bound; i+=DOUBLES.length())
+				DoubleVector.fromArray(DOUBLES, a, i).compare(VectorOperators.NE, DoubleVector.fromArray(DOUBLES, b, i))
+						.intoArray(out, i);
+			break;
+		}
+		for(; i<n; i++)
+			out[i] = compare(a[i], b[i], op);
+	}
+
+	@Override
+	public void compare(long[] a, long[] b, int op, boolean[] out, int[] sel, int n) {
+		if(sel != null) {
+			VectorKernels.compare(a, b, op, out, sel, n);
+			return;
+		}
+		int bound = LONGS.loopBound(n);
+		int i = 0;
+		switch(op) {
+		case VectorKernels.GREAT:
+			for(; i<bound; i+=LONGS.length())
+				LongVector.fromArray(LONGS, a, i).compare(VectorOperators.GT, LongVector.fromArray(LONGS, b, i))
+						.intoArray(out, i);
+			break;
+		case VectorKernels.GREATE:
+			for(; i<bound; i+=LONGS.length())
+				LongVector.fromArray(LONGS, a, i).compare(VectorOperators.GE, LongVector.fromArray(LONGS, b, i))
+						.intoArray(out, i);
+			break;
+		case VectorKernels.LESS:
+			for(; i<bound; i+=LONGS.length())
+				LongVector.fromArray(LONGS, a, i).compare(VectorOperators.LT, LongVector.fromArray(LONGS, b, i))
+						.intoArray(out, i);
+			break;
+		case VectorKernels.LESSE:
+			for(; i<bound; i+=LONGS.length())
+				LongVector.fromArray(LONGS, a, i).compare(VectorOperators.LE, LongVector.fromArray(LONGS, b, i))
+						.intoArray(out, i);
+			break;
+		case VectorKernels.EQUAL:
+			for(; i<bound; i+=LONGS.length())
+				LongVector.fromArray(LONGS, a, i).compare(VectorOperators.EQ, LongVector.fromArray(LONGS, b, i))
+						.intoArray(out, i);
+			break;
+		case VectorKernels.NOTEQUAL:
+			for(; i<bound; i+=LONGS.length())
+				LongVector.fromArray(LONGS, a, i).compare(VectorOperators.NE, LongVector.fromArray(LONGS, b, i))
+						.intoArray(out, i);
+			break;
+		}
+		for(; i<n; i++)
+			out[i] = compare(a[i], b[i], op);
+	}
+
+	
+	/**
+	 * 尾部不足一个向量的行按标量比较
+	 */
+	private static boolean compare(double x, double y, int op) {
+		switch(op) {
+		case VectorKernels.GREAT:
+			return x > y;
+		case VectorKernels.GREATE:
+			return x >= y;
+		case VectorKernels.LESS:
+			return x < y;
+		case VectorKernels.LESSE:
+			return x <= y;
+		case VectorKernels.EQUAL:
+			return x == y;
+		default:
+			return x != y;
+		}
+	}
+	
+	private static boolean compare(long x, long y, int op) {
+		switch(op) {
+		case VectorKernels.GREAT:
+			return x > y;
+		case VectorKernels.GREATE:
+			return x >= y;
+		case VectorKernels.LESS:
+			return x < y;
+		case VectorKernels.LESSE:
+			return x <= y;
+		case VectorKernels.EQUAL:
+			return x == y;
+		default:
+			return x != y;
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package neu.sxc.expression.compile.vector;
+
+import neu.sxc.expression.tokens.DataType;
+
+/**
+ * 变量，直接使用变量所在的寄存器
+ * @author shanxuecheng
+ *
+ */
+final class SlotVector extends VectorNode {
+	
+	SlotVector(DataType dataType, int register, int precision) {
+		super(dataType, register, precision);
+	}
+
+	@Override
+	void evaluate(VectorFrame frame, int[] sel, int n) {
+	}
+}
@@ -0,0 +1,52 @@
+package neu.sxc.expression.compile.vector;
+
+import neu.sxc.expression.tokens.DataType;
+
+/**
+ * 一元运算：取负、取绝对值、逻辑非，以及将long[]保存的整数转换为double
+ * @author shanxuecheng
+ *
+ */
+final class UnaryVector extends VectorNode {
+	
+	static final int NEGATIVE = 0;
+	static final int ABS = 1;
+	static final int NOT = 2;
+	static final int TO_DOUBLE = 3;
+	
+	private final int operation;
+	
+	private final VectorNode argument;
+	
+	UnaryVector(int operation, VectorNode argument, int register) {
+		super(operation == NOT ? DataType.BOOLEAN : DataType.NUMBER, register,
+				operation == TO_DOUBLE ? EXACT : argument.precision);
+		this.operation = operation;
+		this.argument = argument;
+	}
+
+	@Override
+	void evaluate(VectorFrame frame, int[] sel, int n) {
+		argument.evaluate(frame, sel, n);
+		switch(operation) {
+		case NEGATIVE:
+			if(isLong())
+				VectorKernels.negate(frame.longs(argument.register), frame.longs(register), sel, n);
+			else
+				VectorKernels.negate(frame.doubles(argument.register), frame.doubles(register), sel, n);
+			break;
+		case ABS:
+			if(isLong())
+				VectorKernels.abs(frame.longs(argument.register), frame.longs(register), sel, n);
+			else
+				VectorKernels.abs(frame.doubles(argument.register), frame.doubles(register), sel, n);
+			break;
+		case TO_DOUBLE:
+			VectorKernels.toDoubles(frame.longs(argument.register), frame.doubles(register), sel, n);
+			break;
+		case NOT:
+			VectorKernels.not(frame.booleans(argument.register), frame.booleans(register), sel, n);
+			break;
+		}
+	}
+}
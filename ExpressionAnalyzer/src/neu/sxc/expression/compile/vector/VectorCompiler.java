@@ -0,0 +1,442 @@
+package neu.sxc.expression.compile.vector;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import neu.sxc.expression.compile.AssignNode;
+import neu.sxc.expression.compile.CompiledExpression;
+import neu.sxc.expression.compile.ConstNode;
+import neu.sxc.expression.compile.FunctionNode;
+import neu.sxc.expression.compile.IfStatement;
+import neu.sxc.expression.compile.Node;
+import neu.sxc.expression.compile.OperatorNode;
+import neu.sxc.expression.compile.SentenceStatement;
+import neu.sxc.expression.compile.Statement;
+import neu.sxc.expression.compile.VariableNode;
+import neu.sxc.expression.syntax.function.Abs;
+import neu.sxc.expression.syntax.function.Function;
+import neu.sxc.expression.syntax.function.Judge;
+import neu.sxc.expression.syntax.function.Max;
+import neu.sxc.expression.syntax.function.SystemFunctions;
+import neu.sxc.expression.tokens.DataType;
+import neu.sxc.expression.tokens.Valuable;
+
+/**
+ * 将编译后的表达式按输入列类型编译为列计算程序。
+ * 编译时静态推导每个变量的类型，以下情况不支持列计算，返回null由调用方逐行计算：
+ * CHARACTER类型、用户函数、嵌套赋值、类型不匹配、使用未定义的变量、比较近似值。
+ * 逐行计算会在出错的行上抛出与解释执行相同的异常。
+ * 数值同时推导精度（见VectorNode）：long输入列和整数常量以long[]精确计算，
+ * 与double运算时转换为double；近似值不参与比较，因此过滤结果与逐行计算相同
+ * @author shanxuecheng
+ *
+ */
+final class VectorCompiler {
+	
+	private final CompiledExpression compiled;
+	
+	/**
+	 * 当前位置各变量的类型，为null表示未定义
+	 */
+	private DataType[] slotTypes;
+	
+	/**
+	 * 当前位置各NUMBER变量的精度
+	 */
+	private int[] slotPrecisions;
+	
+	/**
+	 * 以double[]保存的变量。变量先被赋予整数、后被赋予double时，需以double[]保存并重新编译
+	 */
+	private final BitSet doubleSlots;
+	
+	/**
+	 * 是否因变量的保存方式改变而需要重新编译
+	 */
+	private boolean retry = false;
+	
+	private final List<DataType> registerTypes = new ArrayList<DataType>();
+	
+	private final BitSet longRegisters = new BitSet();
+	
+	/**
+	 * 变量寄存器，同一变量在不同分支中可能被赋予不同类型的值，按(槽位, 类型, 是否以long[]保存)分配
+	 */
+	private final Map<Integer, Integer> slotRegisters = new HashMap<Integer, Integer>();
+	
+	private final List<Integer> constantRegisters = new ArrayList<Integer>();
+	
+	private final List<Valuable> constants = new ArrayList<Valuable>();
+	
+	private final List<String> inputNames = new ArrayList<String>();
+	
+	private final List<Integer> inputRegisters = new ArrayList<Integer>();
+	
+	private final List<DataType> resultTypes = new ArrayList<DataType>();
+	
+	private final List<Integer> resultRegisters = new ArrayList<Integer>();
+	
+	private int selectionCount = 0;
+	
+	/**
+	 * 是否有语句的值是近似值
+	 */
+	private boolean approximate = false;
+	
+	private VectorCompiler(CompiledExpression compiled, BitSet doubleSlots) {
+		this.compiled = compiled;
+		this.slotTypes = new DataType[compiled.getVariableNames().length];
+		this.slotPrecisions = new int[slotTypes.length];
+		this.doubleSlots = doubleSlots;
+	}
+	
+	/**
+	 * 编译
+	 * @param compiled
+	 * @param inputs 输入列名及输入列
+	 * @return 不支持列计算时返回null
+	 */
+	static VectorProgram compile(CompiledExpression compiled, Map<String, Column> inputs) {
+		BitSet doubleSlots = new BitSet();
+		while(true) {
+			VectorCompiler compiler = new VectorCompiler(compiled, doubleSlots);
+			if(!compiler.addInputs(inputs))
+				return null;
+			VectorStatement[] statements = compiler.compileBlock(compiled.getStatements());
+			if(statements != null)
+				return compiler.build(statements);
+			//每次重新编译至少多一个变量以double[]保存，因此循环会结束
+			if(!compiler.retry)
+				return null;
+		}
+	}
+	
+	private boolean addInputs(Map<String, Column> inputs) {
+		String[] variableNames = compiled.getVariableNames();
+		for(int slot=0; slot<variableNames.length; slot++) {
+			Column input = inputs.get(variableNames[slot]);
+			if(input == null)
+				continue;
+			DataType inputType = input.getDataType();
+			if(!isSupported(inputType))
+				return false;
+			slotTypes[slot] = inputType;
+			//long列以long[]保存，除非变量之后被赋予double值
+			boolean longBacked = inputType == DataType.NUMBER && input.isLongBacked() && !doubleSlots.get(slot);
+			slotPrecisions[slot] = longBacked ? VectorNode.LONG : VectorNode.EXACT;
+			inputNames.add(variableNames[slot]);
+			inputRegisters.add(slotRegister(slot, inputType, longBacked));
+		}
+		return true;
+	}
+	
+	private VectorProgram build(VectorStatement[] statements) {
+		int[] inputRegisterArray = new int[inputRegisters.size()];
+		for(int i=0; i<inputRegisterArray.length; i++)
+			inputRegisterArray[i] = inputRegisters.get(i);
+		int[] constantRegisterArray = new int[constantRegisters.size()];
+		for(int i=0; i<constantRegisterArray.length; i++)
+			constantRegisterArray[i] = constantRegisters.get(i);
+		int[] resultRegisterArray = new int[resultRegisters.size()];
+		for(int i=0; i<resultRegisterArray.length; i++)
+			resultRegisterArray[i] = resultRegisters.get(i);
+		boolean[] longRegisterArray = new boolean[registerTypes.size()];
+		for(int i=0; i<longRegisterArray.length; i++)
+			longRegisterArray[i] = longRegisters.get(i);
+		return new VectorProgram(statements, registerTypes.toArray(new DataType[registerTypes.size()]),
+				longRegisterArray, selectionCount, constantRegisterArray, constants.toArray(new Valuable[constants.size()]),
+				inputNames.toArray(new String[inputNames.size()]), inputRegisterArray,
+				resultTypes.toArray(new DataType[resultTypes.size()]), resultRegisterArray, approximate);
+	}
+	
+	private static boolean isSupported(DataType dataType) {
+		return dataType == DataType.NUMBER || dataType == DataType.BOOLEAN
+				|| dataType == DataType.STRING || dataType == DataType.DATE;
+	}
+	
+	private int newRegister(DataType dataType) {
+		registerTypes.add(dataType);
+		return registerTypes.size() - 1;
+	}
+	
+	/**
+	 * 为NUMBER结果分配寄存器
+	 * @param precision 结果精度，为LONG时以long[]保存
+	 */
+	private int newNumberRegister(int precision) {
+		int register = newRegister(DataType.NUMBER);
+		if(precision == VectorNode.LONG)
+			longRegisters.set(register);
+		return register;
+	}
+	
+	private int slotRegister(int slot, DataType dataType, boolean longBacked) {
+		Integer key = (slot * DataType.values().length + dataType.ordinal()) * 2 + (longBacked ? 1 : 0);
+		Integer register = slotRegisters.get(key);
+		if(register == null) {
+			register = longBacked ? newNumberRegister(VectorNode.LONG) : newRegister(dataType);
+			slotRegisters.put(key, register);
+		}
+		return register;
+	}
+	
+	/**
+	 * 以long[]保存的数值转换为double，其余节点不变
+	 */
+	private VectorNode toDouble(VectorNode node) {
+		if(!node.isLong())
+			return node;
+		return new UnaryVector(UnaryVector.TO_DOUBLE, node, newNumberRegister(VectorNode.EXACT));
+	}
+	
+	private byte resultTag(DataType dataType) {
+		int index = resultTypes.indexOf(dataType);
+		if(index < 0) {
+			resultTypes.add(dataType);
+			resultRegisters.add(newRegister(dataType));
+			index = resultTypes.size() - 1;
+		}
+		return (byte)(index + 1);
+	}
+	
+	private VectorStatement[] compileBlock(Statement[] block) {
+		VectorStatement[] result = new VectorStatement[block.length];
+		for(int i=0; i<block.length; i++) {
+			if(block[i] instanceof SentenceStatement)
+				result[i] = compileSentence(((SentenceStatement)block[i]).getNode());
+			else if(block[i] instanceof IfStatement)
+				result[i] = compileIf((IfStatement)block[i]);
+			if(result[i] == null)
+				return null;
+		}
+		return result;
+	}
+	
+	private VectorStatement compileSentence(Node node) {
+		if(node instanceof AssignNode) {
+			AssignNode assign = (AssignNode)node;
+			VectorNode value = compileNode(assign.getValue());
+			if(value == null)
+				return null;
+			int slot = assign.getSlot();
+			if(slotTypes[slot] != null && slotTypes[slot] != value.dataType)
+				return null;
+			if(value.dataType == DataType.NUMBER) {
+				if(doubleSlots.get(slot) || slotTypes[slot] == DataType.NUMBER
+						&& slotPrecisions[slot] != VectorNode.LONG) {
+					//以double[]保存的变量被赋予整数时转换为double
+					value = toDouble(value);
+				} else if(!value.isLong() && slotTypes[slot] == DataType.NUMBER
+						&& slotPrecisions[slot] == VectorNode.LONG) {
+					//已保存在long[]中的变量被赋予double值，改为以double[]保存后重新编译
+					doubleSlots.set(slot);
+					retry = true;
+					return null;
+				}
+			}
+			slotTypes[slot] = value.dataType;
+			slotPrecisions[slot] = value.precision;
+			return newSentence(value, slotRegister(slot, value.dataType, value.isLong()));
+		}
+		VectorNode value = compileNode(node);
+		if(value == null)
+			return null;
+		return newSentence(value, -1);
+	}
+	
+	private VectorStatement newSentence(VectorNode value, int slotRegister) {
+		approximate |= value.precision == VectorNode.APPROXIMATE;
+		byte tag = resultTag(value.dataType);
+		return new SentenceVector(value, slotRegister, resultRegisters.get(tag - 1), tag);
+	}
+	
+	private VectorStatement compileIf(IfStatement statement) {
+		VectorNode condition = compileNode(statement.getCondition());
+		if(condition == null || condition.dataType != DataType.BOOLEAN)
+			return null;
+		//分支中新定义的变量在分支结束后失效，因此每个分支结束后恢复变量类型
+		DataType[] before = slotTypes.clone();
+		int[] precisionsBefore = slotPrecisions.clone();
+		VectorStatement[] thenBlock = compileBlock(statement.getThenBlock());
+		int[] thenPrecisions = slotPrecisions;
+		slotTypes = before.clone();
+		slotPrecisions = precisionsBefore.clone();
+		VectorStatement[] elseBlock = thenBlock == null ? null : compileBlock(statement.getElseBlock());
+		int[] elsePrecisions = slotPrecisions;
+		slotTypes = before;
+		slotPrecisions = precisionsBefore;
+		if(elseBlock == null)
+			return null;
+		//分支中被重新赋值的变量取各分支中最低的精度
+		for(int slot=0; slot<slotTypes.length; slot++)
+			if(slotTypes[slot] == DataType.NUMBER)
+				slotPrecisions[slot] = Math.max(slotPrecisions[slot],
+						Math.max(thenPrecisions[slot], elsePrecisions[slot]));
+		return new IfVector(condition, thenBlock, elseBlock, selectionCount++, selectionCount++);
+	}
+	
+	private VectorNode compileNode(Node node) {
+		if(node instanceof ConstNode) {
+			Valuable constant = ((ConstNode)node).getConstant();
+			if(!isSupported(constant.getDataType()))
+				return null;
+			int precision = constant.getDataType() == DataType.NUMBER
+					? precisionOf(constant.getNumberValue()) : VectorNode.EXACT;
+			int register = constant.getDataType() == DataType.NUMBER
+					? newNumberRegister(precision) : newRegister(constant.getDataType());
+			constantRegisters.add(register);
+			constants.add(constant);
+			return new ConstVector(constant.getDataType(), register, precision);
+		} else if(node instanceof VariableNode) {
+			int slot = ((VariableNode)node).getSlot();
+			if(slotTypes[slot] == null)
+				return null;
+			boolean longBacked = slotTypes[slot] == DataType.NUMBER && slotPrecisions[slot] == VectorNode.LONG;
+			return new SlotVector(slotTypes[slot], slotRegister(slot, slotTypes[slot], longBacked),
+					slotTypes[slot] == DataType.NUMBER ? slotPrecisions[slot] : VectorNode.EXACT);
+		} else if(node instanceof OperatorNode) {
+			return compileOperator((OperatorNode)node);
+		} else if(node instanceof FunctionNode) {
+			return compileFunction((FunctionNode)node);
+		}
+		return null;
+	}
+	
+	/**
+	 * 常量的精度：可由long表示的整数为LONG，可由double精确表示的为EXACT，否则为APPROXIMATE
+	 */
+	private static int precisionOf(BigDecimal value) {
+		try {
+			value.longValueExact();
+			return VectorNode.LONG;
+		} catch(ArithmeticException e) {
+			double doubleValue = value.doubleValue();
+			if(!Double.isInfinite(doubleValue) && BigDecimal.valueOf(doubleValue).compareTo(value) == 0)
+				return VectorNode.EXACT;
+			return VectorNode.APPROXIMATE;
+		}
+	}
+	
+	private VectorNode[] compileArguments(Node[] arguments) {
+		VectorNode[] result = new VectorNode[arguments.length];
+		for(int i=0; i<arguments.length; i++) {
+			result[i] = compileNode(arguments[i]);
+			if(result[i] == null)
+				return null;
+		}
+		return result;
+	}
+	
+	private VectorNode compileOperator(OperatorNode node) {
+		VectorNode[] arguments = compileArguments(node.getArguments());
+		if(arguments == null)
+			return null;
+		String name = node.getOperator().getOperatorName();
+		if(arguments.length == 1) {
+			DataType type = arguments[0].dataType;
+			if("NEGATIVE".equals(name) && type == DataType.NUMBER)
+				return new UnaryVector(UnaryVector.NEGATIVE, arguments[0],
+						newNumberRegister(arguments[0].precision));
+			if("NOT".equals(name) && type == DataType.BOOLEAN)
+				return new UnaryVector(UnaryVector.NOT, arguments[0], newRegister(DataType.BOOLEAN));
+			return null;
+		}
+		VectorNode left = arguments[0], right = arguments[1];
+		if(left.dataType != right.dataType)
+			return null;
+		DataType type = left.dataType;
+		int compareCode = VectorKernels.compareCode(name);
+		if(compareCode >= 0) {
+			if(type == DataType.BOOLEAN)
+				return null;
+			if(type == DataType.NUMBER && !(left.isLong() && right.isLong())) {
+				//近似值的比较结果可能与逐行计算不同
+				if(left.precision == VectorNode.APPROXIMATE || right.precision == VectorNode.APPROXIMATE)
+					return null;
+				left = toDouble(left);
+				right = toDouble(right);
+			}
+			return new CompareVector(compareCode, left, right, newRegister(DataType.BOOLEAN));
+		}
+		if(type == DataType.BOOLEAN && ("AND".equals(name) || "OR".equals(name)))
+			return new LogicVector("AND".equals(name), left, right, newRegister(DataType.BOOLEAN));
+		if(type == DataType.STRING && "ADD".equals(name))
+			return new ConcatVector(left, right, newRegister(DataType.STRING));
+		if(type != DataType.NUMBER)
+			return null;
+		int operation;
+		if("ADD".equals(name))
+			operation = ArithmeticVector.ADD;
+		else if("MINUS".equals(name))
+			operation = ArithmeticVector.MINUS;
+		else if("MULTIPLY".equals(name))
+			operation = ArithmeticVector.MULTIPLY;
+		else if("DIVIDE".equals(name))
+			operation = ArithmeticVector.DIVIDE;
+		else if("MOD".equals(name))
+			operation = ArithmeticVector.MOD;
+		else
+			return null;
+		return newArithmetic(operation, left, right, node);
+	}
+	
+	/**
+	 * 两个整数除/外以long精确计算，其余以double计算，max的结果精度与操作数相同
+	 */
+	private VectorNode newArithmetic(int operation, VectorNode left, VectorNode right, Node node) {
+		int precision;
+		if(left.isLong() && right.isLong() && operation != ArithmeticVector.DIVIDE) {
+			precision = VectorNode.LONG;
+		} else {
+			left = toDouble(left);
+			right = toDouble(right);
+			precision = operation == ArithmeticVector.MAX
+					? Math.max(left.precision, right.precision) : VectorNode.APPROXIMATE;
+		}
+		return new ArithmeticVector(operation, left, right, node.getToken(), newNumberRegister(precision), precision);
+	}
+	
+	private VectorNode compileFunction(FunctionNode node) {
+		//只支持系统函数abs、max、judge，用户函数逐行计算
+		Function function = node.getFunction();
+		if(SystemFunctions.getFunction(function.getName()) != function)
+			return null;
+		VectorNode[] arguments = compileArguments(node.getArguments());
+		if(arguments == null)
+			return null;
+		if(function instanceof Abs) {
+			if(arguments.length != 1 || arguments[0].dataType != DataType.NUMBER)
+				return null;
+			return new UnaryVector(UnaryVector.ABS, arguments[0], newNumberRegister(arguments[0].precision));
+		} else if(function instanceof Max) {
+			if(arguments.length == 0)
+				return null;
+			VectorNode result = arguments[0];
+			if(result.dataType != DataType.NUMBER)
+				return null;
+			for(int i=1; i<arguments.length; i++) {
+				if(arguments[i].dataType != DataType.NUMBER)
+					return null;
+				result = newArithmetic(ArithmeticVector.MAX, result, arguments[i], node);
+			}
+			return result;
+		} else if(function instanceof Judge) {
+			if(arguments.length != 3 || arguments[0].dataType != DataType.BOOLEAN
+					|| arguments[1].dataType != arguments[2].dataType)
+				return null;
+			VectorNode whenTrue = arguments[1], whenFalse = arguments[2];
+			if(whenTrue.dataType == DataType.NUMBER && !(whenTrue.isLong() && whenFalse.isLong())) {
+				whenTrue = toDouble(whenTrue);
+				whenFalse = toDouble(whenFalse);
+			}
+			int precision = Math.max(whenTrue.precision, whenFalse.precision);
+			return new SelectVector(arguments[0], whenTrue, whenFalse, whenTrue.dataType == DataType.NUMBER
+					? newNumberRegister(precision) : newRegister(whenTrue.dataType));
+		}
+		return null;
+	}
+}
@@ -0,0 +1,70 @@
+package neu.sxc.expression.compile.vector;
+
+import neu.sxc.expression.tokens.DataType;
+
+/**
+ * 列计算帧，保存一个块的寄存器、选择向量和结果类型标记。
+ * 帧不是线程安全的，同一帧在各块间复用
+ * @author shanxuecheng
+ *
+ */
+final class VectorFrame {
+	
+	private final Object[] registers;
+	
+	private final int[][] selections;
+	
+	private final byte[] tags;
+	
+	VectorFrame(VectorProgram program, int chunkSize) {
+		DataType[] registerTypes = program.getRegisterTypes();
+		boolean[] longRegisters = program.getLongRegisters();
+		registers = new Object[registerTypes.length];
+		for(int i=0; i<registerTypes.length; i++)
+			registers[i] = longRegisters[i] ? new long[chunkSize] : newRegister(registerTypes[i], chunkSize);
+		selections = new int[program.getSelectionCount()][chunkSize];
+		tags = new byte[chunkSize];
+		program.fillConstants(this);
+	}
+	
+	static Object newRegister(DataType dataType, int size) {
+		switch(dataType) {
+		case NUMBER:
+			return new double[size];
+		case BOOLEAN:
+			return new boolean[size];
+		case DATE:
+			return new long[size];
+		default:
+			return new String[size];
+		}
+	}
+	
+	Object register(int register) {
+		return registers[register];
+	}
+	
+	double[] doubles(int register) {
+		return (double[])registers[register];
+	}
+	
+	long[] longs(int register) {
+		return (long[])registers[register];
+	}
+	
+	boolean[] booleans(int register) {
+		return (boolean[])registers[register];
+	}
+	
+	String[] strings(int register) {
+		return (String[])registers[register];
+	}
+	
+	int[] selection(int selection) {
+		return selections[selection];
+	}
+	
+	byte[] tags() {
+		return tags;
+	}
+}
@@ -0,0 +1,717 @@
+package neu.sxc.expression.compile.vector;
+
+/**
+ * 列计算内核。每个方法在一个块上执行同一运算：
+ * sel为null时处理[0, n)的所有行，否则只处理sel[0..n)中的行，结果写入out的对应行
+ * @author shanxuecheng
+ *
+ */
+final class VectorKernels {
+	
+	static final int GREAT = 0;
+	static final int GREATE = 1;
+	static final int LESS = 2;
+	static final int LESSE = 3;
+	static final int EQUAL = 4;
+	static final int NOTEQUAL = 5;
+	
+	/**
+	 * 热点数值内核，jdk.incubator.vector可用时为SIMD实现，否则为标量实现。
+	 * 可通过系统属性expression.simd=false强制使用标量实现
+	 */
+	static final NumericKernels NUMERIC = loadNumericKernels();
+	
+	private VectorKernels() {}
+	
+	private static NumericKernels loadNumericKernels() {
+		if(!"false".equalsIgnoreCase(System.getProperty("expression.simd"))) {
+			try {
+				return (NumericKernels)Class.forName(VectorKernels.class.getPackage().getName() + ".SimdKernels")
+						.getDeclaredConstructor().newInstance();
+			} catch(Throwable e) {
+				//未加载jdk.incubator.vector模块
+			}
+		}
+		return new ScalarKernels();
+	}
+	
+	/**
+	 * 比较操作符名对应的比较代码，非比较操作符返回-1
+	 * @param operatorName
+	 * @return
+	 */
+	static int compareCode(String operatorName) {
+		if("GREAT".equals(operatorName))
+			return GREAT;
+		else if("GREATE".equals(operatorName))
+			return GREATE;
+		else if("LESS".equals(operatorName))
+			return LESS;
+		else if("LESSE".equals(operatorName))
+			return LESSE;
+		else if("EQUAL".equals(operatorName))
+			return EQUAL;
+		else if("NOTEQUAL".equals(operatorName))
+			return NOTEQUAL;
+		return -1;
+	}
+	
+	static void add(double[] a, double[] b, double[] out, int[] sel, int n) {
+		if(sel == null) {
+			for(int i=0; i<n; i++)
+				out[i] = a[i] + b[i];
+		} else {
+			for(int j=0; j<n; j++) {
+				int i = sel[j];
+				out[i] = a[i] + b[i];
+			}
+		}
+	}
+	
+	static void subtract(double[] a, double[] b, double[] out, int[] sel, int n) {
+		if(sel == null) {
+			for(int i=0; i<n; i++)
+				out[i] = a[i] - b[i];
+		} else {
+			for(int j=0; j<n; j++) {
+				int i = sel[j];
+				out[i] = a[i] - b[i];
+			}
+		}
+	}
+	
+	static void multiply(double[] a, double[] b, double[] out, int[] sel, int n) {
+		if(sel == null) {
+			for(int i=0; i<n; i++)
+				out[i] = a[i] * b[i];
+		} else {
+			for(int j=0; j<n; j++) {
+				int i = sel[j];
+				out[i] = a[i] * b[i];
+			}
+		}
+	}
+	
+	/**
+	 * 除法，除数为零时抛出ArithmeticException
+	 */
+	static void divide(double[] a, double[] b, double[] out, int[] sel, int n) {
+		checkDivisor(b, sel, n);
+		if(sel == null) {
+			for(int i=0; i<n; i++)
+				out[i] = a[i] / b[i];
+		} else {
+			for(int j=0; j<n; j++) {
+				int i = sel[j];
+				out[i] = a[i] / b[i];
+			}
+		}
+	}
+	
+	/**
+	 * 取余，除数为零时抛出ArithmeticException
+	 */
+	static void mod(double[] a, double[] b, double[] out, int[] sel, int n) {
+		checkDivisor(b, sel, n);
+		if(sel == null) {
+			for(int i=0; i<n; i++)
+				out[i] = a[i] % b[i];
+		} else {
+			for(int j=0; j<n; j++) {
+				int i = sel[j];
+				out[i] = a[i] % b[i];
+			}
+		}
+	}
+	
+	private static void checkDivisor(double[] b, int[] sel, int n) {
+		boolean zero = false;
+		if(sel == null) {
+			for(int i=0; i<n; i++)
+				zero |= b[i] == 0;
+		} else {
+			for(int j=0; j<n; j++) {
+				int i = sel[j];
+				zero |= b[i] == 0;
+			}
+		}
+		if(zero)
+			throw new ArithmeticException("Divided by zero.");
+	}
+	
+	static void negate(double[] a, double[] out, int[] sel, int n) {
+		if(sel == null) {
+			for(int i=0; i<n; i++)
+				out[i] = -a[i];
+		} else {
+			for(int j=0; j<n; j++) {
+				int i = sel[j];
+				out[i] = -a[i];
+			}
+		}
+	}
+	
+	static void abs(double[] a, double[] out, int[] sel, int n) {
+		if(sel == null) {
+			for(int i=0; i<n; i++)
+				out[i] = Math.abs(a[i]);
+		} else {
+			for(int j=0; j<n; j++) {
+				int i = sel[j];
+				out[i] = Math.abs(a[i]);
+			}
+		}
+	}
+	
+	static void max(double[] a, double[] b, double[] out, int[] sel, int n) {
+		if(sel == null) {
+			for(int i=0; i<n; i++)
+				out[i] = Math.max(a[i], b[i]);
+		} else {
+			for(int j=0; j<n; j++) {
+				int i = sel[j];
+				out[i] = Math.max(a[i], b[i]);
+			}
+		}
+	}
+	
+	/**
+	 * long加法，溢出时抛出PrecisionLossException
+	 */
+	static void add(long[] a, long[] b, long[] out, int[] sel, int n) {
+		try {
+			if(sel == null) {
+				for(int i=0; i<n; i++)
+					out[i] = Math.addExact(a[i], b[i]);
+			} else {
+				for(int j=0; j<n; j++) {
+					int i = sel[j];
+					out[i] = Math.addExact(a[i], b[i]);
+				}
+			}
+		} catch(ArithmeticException e) {
+			throw new PrecisionLossException();
+		}
+	}
+	
+	static void subtract(long[] a, long[] b, long[] out, int[] sel, int n) {
+		try {
+			if(sel == null) {
+				for(int i=0; i<n; i++)
+					out[i] = Math.subtractExact(a[i], b[i]);
+			} else {
+				for(int j=0; j<n; j++) {
+					int i = sel[j];
+					out[i] = Math.subtractExact(a[i], b[i]);
+				}
+			}
+		} catch(ArithmeticException e) {
+			throw new PrecisionLossException();
+		}
+	}
+	
+	static void multiply(long[] a, long[] b, long[] out, int[] sel, int n) {
+		try {
+			if(sel == null) {
+				for(int i=0; i<n; i++)
+					out[i] = Math.multiplyExact(a[i], b[i]);
+			} else {
+				for(int j=0; j<n; j++) {
+					int i = sel[j];
+					out[i] = Math.multiplyExact(a[i], b[i]);
+				}
+			}
+		} catch(ArithmeticException e) {
+			throw new PrecisionLossException();
+		}
+	}
+	
+	/**
+	 * long取余，余数与被除数同号，与BigDecimal相同。除数为零时抛出ArithmeticException
+	 */
+	static void mod(long[] a, long[] b, long[] out, int[] sel, int n) {
+		boolean zero = false;
+		if(sel == null) {
+			for(int i=0; i<n; i++)
+				zero |= b[i] == 0;
+		} else {
+			for(int j=0; j<n; j++)
+				zero |= b[sel[j]] == 0;
+		}
+		if(zero)
+			throw new ArithmeticException("Divided by zero.");
+		if(sel == null) {
+			for(int i=0; i<n; i++)
+				out[i] = a[i] % b[i];
+		} else {
+			for(int j=0; j<n; j++) {
+				int i = sel[j];
+				out[i] = a[i] % b[i];
+			}
+		}
+	}
+	
+	static void negate(long[] a, long[] out, int[] sel, int n) {
+		try {
+			if(sel == null) {
+				for(int i=0; i<n; i++)
+					out[i] = Math.negateExact(a[i]);
+			} else {
+				for(int j=0; j<n; j++) {
+					int i = sel[j];
+					out[i] = Math.negateExact(a[i]);
+				}
+			}
+		} catch(ArithmeticException e) {
+			throw new PrecisionLossException();
+		}
+	}
+	
+	static void abs(long[] a, long[] out, int[] sel, int n) {
+		try {
+			if(sel == null) {
+				for(int i=0; i<n; i++)
+					out[i] = Math.absExact(a[i]);
+			} else {
+				for(int j=0; j<n; j++) {
+					int i = sel[j];
+					out[i] = Math.absExact(a[i]);
+				}
+			}
+		} catch(ArithmeticException e) {
+			throw new PrecisionLossException();
+		}
+	}
+	
+	static void max(long[] a, long[] b, long[] out, int[] sel, int n) {
+		if(sel == null) {
+			for(int i=0; i<n; i++)
+				out[i] = Math.max(a[i], b[i]);
+		} else {
+			for(int j=0; j<n; j++) {
+				int i = sel[j];
+				out[i] = Math.max(a[i], b[i]);
+			}
+		}
+	}
+	
+	static void compare(double[] a, double[] b, int op, boolean[] out, int[] sel, int n) {
+		switch(op) {
+		case GREAT:
+			if(sel == null) {
+				for(int i=0; i<n; i++)
+					out[i] = a[i] > b[i];
+			} else {
+				for(int j=0; j<n; j++) {
+					int i = sel[j];
+					out[i] = a[i] > b[i];
+				}
+			}
+			break;
+		case GREATE:
+			if(sel == null) {
+				for(int i=0; i<n; i++)
+					out[i] = a[i] >= b[i];
+			} else {
+				for(int j=0; j<n; j++) {
+					int i = sel[j];
+					out[i] = a[i] >= b[i];
+				}
+			}
+			break;
+		case LESS:
+			if(sel == null) {
+				for(int i=0; i<n; i++)
+					out[i] = a[i] < b[i];
+			} else {
+				for(int j=0; j<n; j++) {
+					int i = sel[j];
+					out[i] = a[i] < b[i];
+				}
+			}
+			break;
+		case LESSE:
+			if(sel == null) {
+				for(int i=0; i<n; i++)
+					out[i] = a[i] <= b[i];
+			} else {
+				for(int j=0; j<n; j++) {
+					int i = sel[j];
+					out[i] = a[i] <= b[i];
+				}
+			}
+			break;
+		case EQUAL:
+			if(sel == null) {
+				for(int i=0; i<n; i++)
+					out[i] = a[i] == b[i];
+			} else {
+				for(int j=0; j<n; j++) {
+					int i = sel[j];
+					out[i] = a[i] == b[i];
+				}
+			}
+			break;
+		case NOTEQUAL:
+			if(sel == null) {
+				for(int i=0; i<n; i++)
+					out[i] = a[i] != b[i];
+			} else {
+				for(int j=0; j<n; j++) {
+					int i = sel[j];
+					out[i] = a[i] != b[i];
+				}
+			}
+			break;
+		}
+	}
+	
+	static void compare(long[] a, long[] b, int op, boolean[] out, int[] sel, int n) {
+		switch(op) {
+		case GREAT:
+			if(sel == null) {
+				for(int i=0; i<n; i++)
+					out[i] = a[i] > b[i];
+			} else {
+				for(int j=0; j<n; j++) {
+					int i = sel[j];
+					out[i] = a[i] > b[i];
+				}
+			}
+			break;
+		case GREATE:
+			if(sel == null) {
+				for(int i=0; i<n; i++)
+					out[i] = a[i] >= b[i];
+			} else {
+				for(int j=0; j<n; j++) {
+					int i = sel[j];
+					out[i] = a[i] >= b[i];
+				}
+			}
+			break;
+		case LESS:
+			if(sel == null) {
+				for(int i=0; i<n; i++)
+					out[i] = a[i] < b[i];
+			} else {
+				for(int j=0; j<n; j++) {
+					int i = sel[j];
+					out[i] = a[i] < b[i];
+				}
+			}
+			break;
+		case LESSE:
+			if(sel == null) {
+				for(int i=0; i<n; i++)
+					out[i] = a[i] <= b[i];
+			} else {
+				for(int j=0; j<n; j++) {
+					int i = sel[j];
+					out[i] = a[i] <= b[i];
+				}
+			}
+			break;
+		case EQUAL:
+			if(sel == null) {
+				for(int i=0; i<n; i++)
+					out[i] = a[i] == b[i];
+			} else {
+				for(int j=0; j<n; j++) {
+					int i = sel[j];
+					out[i] = a[i] == b[i];
+				}
+			}
+			break;
+		case NOTEQUAL:
+			if(sel == null) {
+				for(int i=0; i<n; i++)
+					out[i] = a[i] != b[i];
+			} else {
+				for(int j=0; j<n; j++) {
+					int i = sel[j];
+					out[i] = a[i] != b[i];
+				}
+			}
+			break;
+		}
+	}
+	
+	static void compare(String[] a, String[] b, int op, boolean[] out, int[] sel, int n) {
+		switch(op) {
+		case GREAT:
+			if(sel == null) {
+				for(int i=0; i<n; i++)
+					out[i] = a[i].compareTo(b[i]) > 0;
+			} else {
+				for(int j=0; j<n; j++) {
+					int i = sel[j];
+					out[i] = a[i].compareTo(b[i]) > 0;
+				}
+			}
+			break;
+		case GREATE:
+			if(sel == null) {
+				for(int i=0; i<n; i++)
+					out[i] = a[i].compareTo(b[i]) >= 0;
+			} else {
+				for(int j=0; j<n; j++) {
+					int i = sel[j];
+					out[i] = a[i].compareTo(b[i]) >= 0;
+				}
+			}
+			break;
+		case LESS:
+			if(sel == null) {
+				for(int i=0; i<n; i++)
+					out[i] = a[i].compareTo(b[i]) < 0;
+			} else {
+				for(int j=0; j<n; j++) {
+					int i = sel[j];
+					out[i] = a[i].compareTo(b[i]) < 0;
+				}
+			}
+			break;
+		case LESSE:
+			if(sel == null) {
+				for(int i=0; i<n; i++)
+					out[i] = a[i].compareTo(b[i]) <= 0;
+			} else {
+				for(int j=0; j<n; j++) {
+					int i = sel[j];
+					out[i] = a[i].compareTo(b[i]) <= 0;
+				}
+			}
+			break;
+		case EQUAL:
+			if(sel == null) {
+				for(int i=0; i<n; i++)
+					out[i] = a[i].equals(b[i]);
+			} else {
+				for(int j=0; j<n; j++) {
+					int i = sel[j];
+					out[i] = a[i].equals(b[i]);
+				}
+			}
+			break;
+		case NOTEQUAL:
+			if(sel == null) {
+				for(int i=0; i<n; i++)
+					out[i] = !a[i].equals(b[i]);
+			} else {
+				for(int j=0; j<n; j++) {
+					int i = sel[j];
+					out[i] = !a[i].equals(b[i]);
+				}
+			}
+			break;
+		}
+	}
+	
+	static void and(boolean[] a, boolean[] b, boolean[] out, int[] sel, int n) {
+		if(sel == null) {
+			for(int i=0; i<n; i++)
+				out[i] = a[i] & b[i];
+		} else {
+			for(int j=0; j<n; j++) {
+				int i = sel[j];
+				out[i] = a[i] & b[i];
+			}
+		}
+	}
+	
+	static void or(boolean[] a, boolean[] b, boolean[] out, int[] sel, int n) {
+		if(sel == null) {
+			for(int i=0; i<n; i++)
+				out[i] = a[i] | b[i];
+		} else {
+			for(int j=0; j<n; j++) {
+				int i = sel[j];
+				out[i] = a[i] | b[i];
+			}
+		}
+	}
+	
+	static void not(boolean[] a, boolean[] out, int[] sel, int n) {
+		if(sel == null) {
+			for(int i=0; i<n; i++)
+				out[i] = !a[i];
+		} else {
+			for(int j=0; j<n; j++) {
+				int i = sel[j];
+				out[i] = !a[i];
+			}
+		}
+	}
+	
+	static void concat(String[] a, String[] b, String[] out, int[] sel, int n) {
+		if(sel == null) {
+			for(int i=0; i<n; i++)
+				out[i] = a[i] + b[i];
+		} else {
+			for(int j=0; j<n; j++) {
+				int i = sel[j];
+				out[i] = a[i] + b[i];
+			}
+		}
+	}
+	
+	/**
+	 * 按条件选择，条件为真取a，否则取b。a、b、out为同类型数组
+	 */
+	static void select(boolean[] condition, Object a, Object b, Object out, int[] sel, int n) {
+		if(out instanceof double[]) {
+			double[] x = (double[])a, y = (double[])b, o = (double[])out;
+			if(sel == null) {
+				for(int i=0; i<n; i++)
+					o[i] = condition[i] ? x[i] : y[i];
+			} else {
+				for(int j=0; j<n; j++) {
+					int i = sel[j];
+					o[i] = condition[i] ? x[i] : y[i];
+				}
+			}
+		} else if(out instanceof long[]) {
+			long[] x = (long[])a, y = (long[])b, o = (long[])out;
+			if(sel == null) {
+				for(int i=0; i<n; i++)
+					o[i] = condition[i] ? x[i] : y[i];
+			} else {
+				for(int j=0; j<n; j++) {
+					int i = sel[j];
+					o[i] = condition[i] ? x[i] : y[i];
+				}
+			}
+		} else if(out instanceof boolean[]) {
+			boolean[] x = (boolean[])a, y = (boolean[])b, o = (boolean[])out;
+			if(sel == null) {
+				for(int i=0; i<n; i++)
+					o[i] = condition[i] ? x[i] : y[i];
+			} else {
+				for(int j=0; j<n; j++) {
+					int i = sel[j];
+					o[i] = condition[i] ? x[i] : y[i];
+				}
+			}
+		} else {
+			Object[] x = (Object[])a, y = (Object[])b, o = (Object[])out;
+			if(sel == null) {
+				for(int i=0; i<n; i++)
+					o[i] = condition[i] ? x[i] : y[i];
+			} else {
+				for(int j=0; j<n; j++) {
+					int i = sel[j];
+					o[i] = condition[i] ? x[i] : y[i];
+				}
+			}
+		}
+	}
+	
+	/**
+	 * 复制选中行，src、dst为同类型数组
+	 */
+	static void copy(Object src, Object dst, int[] sel, int n) {
+		if(sel == null) {
+			System.arraycopy(src, 0, dst, 0, n);
+		} else if(dst instanceof double[]) {
+			double[] s = (double[])src, d = (double[])dst;
+			for(int j=0; j<n; j++)
+				d[sel[j]] = s[sel[j]];
+		} else if(dst instanceof long[]) {
+			long[] s = (long[])src, d = (long[])dst;
+			for(int j=0; j<n; j++)
+				d[sel[j]] = s[sel[j]];
+		} else if(dst instanceof boolean[]) {
+			boolean[] s = (boolean[])src, d = (boolean[])dst;
+			for(int j=0; j<n; j++)
+				d[sel[j]] = s[sel[j]];
+		} else {
+			Object[] s = (Object[])src, d = (Object[])dst;
+			for(int j=0; j<n; j++)
+				d[sel[j]] = s[sel[j]];
+		}
+	}
+	
+	/**
+	 * 可由double精确表示的最大整数
+	 */
+	private static final long MAX_EXACT_DOUBLE = 1L << 53;
+	
+	/**
+	 * 将long列的一段转换为double，绝对值超过2^53时抛出PrecisionLossException
+	 */
+	static void toDoubles(long[] src, int offset, double[] dst, int n) {
+		boolean inexact = false;
+		for(int i=0; i<n; i++) {
+			long value = src[offset + i];
+			inexact |= value > MAX_EXACT_DOUBLE || value < -MAX_EXACT_DOUBLE;
+			dst[i] = value;
+		}
+		if(inexact)
+			throw new PrecisionLossException();
+	}
+	
+	/**
+	 * 将选中行的long转换为double，绝对值超过2^53时抛出PrecisionLossException
+	 */
+	static void toDoubles(long[] a, double[] out, int[] sel, int n) {
+		boolean inexact = false;
+		if(sel == null) {
+			for(int i=0; i<n; i++) {
+				inexact |= a[i] > MAX_EXACT_DOUBLE || a[i] < -MAX_EXACT_DOUBLE;
+				out[i] = a[i];
+			}
+		} else {
+			for(int j=0; j<n; j++) {
+				int i = sel[j];
+				inexact |= a[i] > MAX_EXACT_DOUBLE || a[i] < -MAX_EXACT_DOUBLE;
+				out[i] = a[i];
+			}
+		}
+		if(inexact)
+			throw new PrecisionLossException();
+	}
+	
+	/**
+	 * 标记选中行
+	 */
+	static void mark(boolean[] flags, int[] sel, int n) {
+		if(sel == null) {
+			for(int i=0; i<n; i++)
+				flags[i] = true;
+		} else {
+			for(int j=0; j<n; j++)
+				flags[sel[j]] = true;
+		}
+	}
+	
+	/**
+	 * 按条件将行划分到两个选择向量，返回条件为真的行数。
+	 * 无分支写法：每行同时写入两个选择向量，仅推进对应的计数
+	 * @param condition 条件
+	 * @param whenTrue 条件为真的行
+	 * @param whenFalse 条件为假的行
+	 */
+	static int split(boolean[] condition, int[] sel, int n, int[] whenTrue, int[] whenFalse) {
+		int t = 0, f = 0;
+		if(sel == null) {
+			for(int i=0; i<n; i++) {
+				boolean c = condition[i];
+				whenTrue[t] = i;
+				whenFalse[f] = i;
+				t += c ? 1 : 0;
+				f += c ? 0 : 1;
+			}
+		} else {
+			for(int j=0; j<n; j++) {
+				int i = sel[j];
+				boolean c = condition[i];
+				whenTrue[t] = i;
+				whenFalse[f] = i;
+				t += c ? 1 : 0;
+				f += c ? 0 : 1;
+			}
+		}
+		return t;
+	}
+}
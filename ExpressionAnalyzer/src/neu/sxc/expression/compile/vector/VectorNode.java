@@ -0,0 +1,66 @@
+package neu.sxc.expression.compile.vector;
+
+import neu.sxc.expression.tokens.DataType;
+
+/**
+ * 列计算节点，结果写入VectorFrame中的寄存器
+ * @author shanxuecheng
+ *
+ */
+abstract class VectorNode {
+	
+	/**
+	 * NUMBER结果的精度：以long[]保存的整数，与解释执行的值相同
+	 */
+	static final int LONG = 0;
+	
+	/**
+	 * 以double[]保存，与解释执行的值相同：double输入列、可由double精确表示的常量及其比较结果
+	 */
+	static final int EXACT = 1;
+	
+	/**
+	 * 以double[]保存的近似值：含小数的算术运算结果
+	 */
+	static final int APPROXIMATE = 2;
+	
+	/**
+	 * 结果数据类型
+	 */
+	final DataType dataType;
+	
+	/**
+	 * 结果精度，非NUMBER结果为EXACT
+	 */
+	final int precision;
+	
+	/**
+	 * 结果寄存器编号
+	 */
+	final int register;
+	
+	VectorNode(DataType dataType, int register) {
+		this(dataType, register, EXACT);
+	}
+	
+	VectorNode(DataType dataType, int register, int precision) {
+		this.dataType = dataType;
+		this.register = register;
+		this.precision = precision;
+	}
+	
+	/**
+	 * @return 结果是否以long[]保存的NUMBER
+	 */
+	boolean isLong() {
+		return dataType == DataType.NUMBER && precision == LONG;
+	}
+	
+	/**
+	 * 计算选中行的值
+	 * @param frame
+	 * @param sel 选择向量，为null时表示前n行全部选中
+	 * @param n 选中行数
+	 */
+	abstract void evaluate(VectorFrame frame, int[] sel, int n);
+}
@@ -0,0 +1,323 @@
+package neu.sxc.expression.compile.vector;
+
+import java.util.Arrays;
+
+import neu.sxc.expression.compile.Aggregate;
+import neu.sxc.expression.compile.GroupedAggregate;
+import neu.sxc.expression.tokens.DataType;
+import neu.sxc.expression.tokens.Valuable;
+import neu.sxc.expression.utils.Bitmap;
+
+/**
+ * 针对一种输入列类型编译得到的列计算程序，不可变，可被多个线程同时执行
+ * @author shanxuecheng
+ *
+ */
+final class VectorProgram {
+	
+	private final VectorStatement[] statements;
+	
+	private final DataType[] registerTypes;
+	
+	/**
+	 * 以long[]保存整数的NUMBER寄存器
+	 */
+	private final boolean[] longRegisters;
+	
+	private final int selectionCount;
+	
+	/**
+	 * 常量寄存器及其值
+	 */
+	private final int[] constantRegisters;
+	
+	private final Valuable[] constants;
+	
+	/**
+	 * 输入列名及其寄存器
+	 */
+	private final String[] inputNames;
+	
+	private final int[] inputRegisters;
+	
+	/**
+	 * 结果类型，结果类型标记为下标加一，标记为0表示该行没有结果
+	 */
+	private final DataType[] resultTypes;
+	
+	private final int[] resultRegisters;
+	
+	/**
+	 * 是否有语句的值是近似值
+	 */
+	private final boolean approximate;
+	
+	VectorProgram(VectorStatement[] statements, DataType[] registerTypes, boolean[] longRegisters, int selectionCount,
+			int[] constantRegisters, Valuable[] constants, String[] inputNames, int[] inputRegisters,
+			DataType[] resultTypes, int[] resultRegisters, boolean approximate) {
+		this.statements = statements;
+		this.registerTypes = registerTypes;
+		this.longRegisters = longRegisters;
+		this.selectionCount = selectionCount;
+		this.constantRegisters = constantRegisters;
+		this.constants = constants;
+		this.inputNames = inputNames;
+		this.inputRegisters = inputRegisters;
+		this.resultTypes = resultTypes;
+		this.resultRegisters = resultRegisters;
+		this.approximate = approximate;
+	}
+	
+	DataType[] getRegisterTypes() {
+		return registerTypes;
+	}
+	
+	boolean[] getLongRegisters() {
+		return longRegisters;
+	}
+	
+	/**
+	 * @return 结果中是否可能有近似值，为true时精确聚合和分组键逐行计算
+	 */
+	boolean isApproximate() {
+		return approximate;
+	}
+	
+	int getSelectionCount() {
+		return selectionCount;
+	}
+	
+	void fillConstants(VectorFrame frame) {
+		for(int i=0; i<constants.length; i++) {
+			Object register = frame.register(constantRegisters[i]);
+			Valuable constant = constants[i];
+			switch(constant.getDataType()) {
+			case NUMBER:
+				if(register instanceof long[])
+					Arrays.fill((long[])register, constant.getNumberValue().longValueExact());
+				else
+					Arrays.fill((double[])register, constant.getNumberValue().doubleValue());
+				break;
+			case BOOLEAN:
+				Arrays.fill((boolean[])register, constant.getBooleanValue());
+				break;
+			case DATE:
+				Arrays.fill((long[])register, constant.getDateValue().getTimeInMillis());
+				break;
+			default:
+				Arrays.fill((String[])register, constant.getStringValue());
+			}
+		}
+	}
+	
+	/**
+	 * 创建结果数组，每种结果类型一个
+	 * @param rowCount
+	 * @return
+	 */
+	Object[] newOutputs(int rowCount) {
+		Object[] outputs = new Object[resultTypes.length];
+		for(int i=0; i<resultTypes.length; i++)
+			outputs[i] = VectorFrame.newRegister(resultTypes[i], rowCount);
+		return outputs;
+	}
+	
+	/**
+	 * 分块计算[from, to)中的行，结果写入outputs、tags的对应位置
+	 * @param batch
+	 * @param from
+	 * @param to
+	 * @param chunkSize 块大小
+	 * @param outputs 由newOutputs创建的结果数组
+	 * @param tags 各行的结果类型标记
+	 */
+	void execute(ColumnBatch batch, int from, int to, int chunkSize, Object[] outputs, byte[] tags) {
+		VectorFrame frame = new VectorFrame(this, chunkSize);
+		Column[] inputs = inputsOf(batch);
+		for(int offset=from; offset<to; offset+=chunkSize) {
+			int n = Math.min(chunkSize, to - offset);
+			executeChunk(frame, inputs, offset, n);
+			for(int i=0; i<resultTypes.length; i++)
+				System.arraycopy(frame.register(resultRegisters[i]), 0, outputs[i], offset, n);
+			System.arraycopy(frame.tags(), 0, tags, offset, n);
+		}
+	}
+	
+	/**
+	 * 分块过滤[from, to)中的行，结果为TRUE的行直接写入位图，不构造结果列。
+	 * 并行过滤时from须为64的倍数，以免多个线程写同一个long
+	 * @param batch
+	 * @param from
+	 * @param to
+	 * @param chunkSize
+	 * @param bitmap
+	 * @throws IllegalStateException 有行的结果不是BOOLEAN时
+	 */
+	void filter(ColumnBatch batch, int from, int to, int chunkSize, Bitmap bitmap) {
+		if(resultTypes.length == 0)
+			return;
+		byte booleanTag = tagOf(DataType.BOOLEAN);
+		long[] words = bitmap.getWords();
+		VectorFrame frame = new VectorFrame(this, chunkSize);
+		Column[] inputs = inputsOf(batch);
+		
+		for(int offset=from; offset<to; offset+=chunkSize) {
+			int n = Math.min(chunkSize, to - offset);
+			executeChunk(frame, inputs, offset, n);
+			byte[] tags = frame.tags();
+			checkTags(tags, n, booleanTag, "Predicate must produce BOOLEAN");
+			if(booleanTag == 0)
+				continue;
+			boolean[] values = frame.booleans(resultRegisters[booleanTag - 1]);
+			for(int i=0; i<n; i++) {
+				int row = offset + i;
+				long bit = tags[i] == booleanTag && values[i] ? 1L : 0L;
+				words[row >>> 6] |= bit << row;
+			}
+		}
+	}
+	
+	/**
+	 * 分块聚合[from, to)中的行，没有结果的行被跳过。
+	 * keyProgram不为null时按分组键聚合到groups，否则聚合到aggregate
+	 * @param batch
+	 * @param from
+	 * @param to
+	 * @param chunkSize
+	 * @param aggregate
+	 * @param keyProgram 分组键程序
+	 * @param groups
+	 * @throws IllegalStateException 有行的结果不是NUMBER，或分组键不是整数时
+	 */
+	void aggregate(ColumnBatch batch, int from, int to, int chunkSize, Aggregate aggregate,
+			VectorProgram keyProgram, GroupedAggregate groups) {
+		if(resultTypes.length == 0)
+			return;
+		byte numberTag = tagOf(DataType.NUMBER);
+		VectorFrame frame = new VectorFrame(this, chunkSize);
+		Column[] inputs = inputsOf(batch);
+		VectorFrame keyFrame = null;
+		Column[] keyInputs = null;
+		byte keyTag = 0;
+		if(keyProgram != null) {
+			keyFrame = new VectorFrame(keyProgram, chunkSize);
+			keyInputs = keyProgram.inputsOf(batch);
+			keyTag = keyProgram.tagOf(DataType.NUMBER);
+		}
+		
+		for(int offset=from; offset<to; offset+=chunkSize) {
+			int n = Math.min(chunkSize, to - offset);
+			executeChunk(frame, inputs, offset, n);
+			byte[] tags = frame.tags();
+			checkTags(tags, n, numberTag, "Aggregated expression must produce NUMBER");
+			if(numberTag == 0)
+				continue;
+			double[] values = frame.doubles(resultRegisters[numberTag - 1]);
+			if(keyProgram == null) {
+				for(int i=0; i<n; i++)
+					if(tags[i] == numberTag)
+						aggregate.add(values[i]);
+				continue;
+			}
+			keyProgram.executeChunk(keyFrame, keyInputs, offset, n);
+			byte[] keyTags = keyFrame.tags();
+			keyProgram.checkTags(keyTags, n, keyTag, "Group key must produce NUMBER");
+			if(keyTag == 0)
+				continue;
+			double[] keys = keyFrame.doubles(keyProgram.resultRegisters[keyTag - 1]);
+			for(int i=0; i<n; i++)
+				if(tags[i] == numberTag && keyTags[i] == keyTag)
+					groups.add(GroupedAggregate.toKey(keys[i]), values[i]);
+		}
+	}
+	
+	/**
+	 * @return 结果类型标记，程序不产生该类型的结果时返回0
+	 */
+	private byte tagOf(DataType dataType) {
+		return (byte)(Arrays.asList(resultTypes).indexOf(dataType) + 1);
+	}
+	
+	/**
+	 * 检查一块中各行的结果类型
+	 * @param expectedTag 期望的结果类型标记
+	 * @param message 错误信息
+	 */
+	private void checkTags(byte[] tags, int n, byte expectedTag, String message) {
+		//只有一种结果类型时无需逐行检查
+		if(expectedTag != 0 && resultTypes.length == 1)
+			return;
+		for(int i=0; i<n; i++)
+			if(tags[i] != 0 && tags[i] != expectedTag)
+				throw new IllegalStateException(message + ", but produced "
+						+ resultTypes[tags[i] - 1].name() + ".");
+	}
+	
+	private Column[] inputsOf(ColumnBatch batch) {
+		Column[] inputs = new Column[inputNames.length];
+		for(int i=0; i<inputNames.length; i++)
+			inputs[i] = batch.getColumn(inputNames[i]);
+		return inputs;
+	}
+	
+	/**
+	 * 载入一块输入并执行所有语句
+	 */
+	private void executeChunk(VectorFrame frame, Column[] inputs, int offset, int n) {
+		for(int i=0; i<inputs.length; i++) {
+			Object register = frame.register(inputRegisters[i]);
+			if(inputs[i].isLongBacked() && register instanceof double[])
+				VectorKernels.toDoubles(inputs[i].getLongs(), offset, (double[])register, n);
+			else
+				System.arraycopy(inputs[i].getValues(), offset, register, 0, n);
+		}
+		Arrays.fill(frame.tags(), 0, n, (byte)0);
+		VectorStatement.executeBlock(statements, frame, null, n);
+	}
+	
+	/**
+	 * 将结果数组转换为结果列
+	 * @param outputs
+	 * @param tags
+	 * @param rowCount
+	 * @return 没有结果的行为空值
+	 * @throws IllegalStateException 各行结果类型不一致时
+	 */
+	Column toColumn(Object[] outputs, byte[] tags, int rowCount) {
+		byte tag = 0;
+		boolean hasNulls = false;
+		for(int i=0; i<rowCount; i++) {
+			if(tags[i] == 0) {
+				hasNulls = true;
+			} else if(tag == 0) {
+				tag = tags[i];
+			} else if(tags[i] != tag) {
+				throw new IllegalStateException("Result type varies across rows: "
+						+ resultTypes[tag - 1].name() + " and " + resultTypes[tags[i] - 1].name() + ".");
+			}
+		}
+		if(tag == 0)
+			return Column.ofNulls(rowCount);
+		Object values = outputs[tag - 1];
+		Column column;
+		switch(resultTypes[tag - 1]) {
+		case NUMBER:
+			column = Column.ofDoubles((double[])values);
+			break;
+		case BOOLEAN:
+			column = Column.ofBooleans((boolean[])values);
+			break;
+		case DATE:
+			column = Column.ofDates((long[])values);
+			break;
+		default:
+			column = Column.ofStrings((String[])values);
+		}
+		if(!hasNulls)
+			return column;
+		boolean[] nulls = new boolean[rowCount];
+		for(int i=0; i<rowCount; i++)
+			nulls[i] = tags[i] == 0;
+		return Column.withNulls(column, nulls);
+	}
+}
@@ -0,0 +1,22 @@
+package neu.sxc.expression.compile.vector;
+
+/**
+ * 列计算语句
+ * @author shanxuecheng
+ *
+ */
+abstract class VectorStatement {
+	
+	/**
+	 * 对选中行执行语句
+	 * @param frame
+	 * @param sel 选择向量，为null时表示前n行全部选中
+	 * @param n 选中行数
+	 */
+	abstract void execute(VectorFrame frame, int[] sel, int n);
+	
+	static void executeBlock(VectorStatement[] block, VectorFrame frame, int[] sel, int n) {
+		for(VectorStatement statement : block)
+			statement.execute(frame, sel, n);
+	}
+}
@@ -0,0 +1,477 @@
+package neu.sxc.expression.compile.vector;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import neu.sxc.expression.compile.Aggregate;
+import neu.sxc.expression.compile.CompiledExpression;
+import neu.sxc.expression.compile.Frame;
+import neu.sxc.expression.compile.GroupedAggregate;
+import neu.sxc.expression.tokens.DataType;
+import neu.sxc.expression.tokens.Valuable;
+import neu.sxc.expression.utils.Bitmap;
+import neu.sxc.expression.utils.SegmentAction;
+import neu.sxc.expression.utils.SegmentTask;
+
+/**
+ * 列计算模式。输入按列组织，表达式以块为单位对整列执行，
+ * 每个运算是一个基本类型数组上的循环，if-else以选择向量实现，结果写入结果列。
+ * 列计算中整数以long精确计算，含小数的运算以double计算，NUMBER结果以double保存；
+ * 含小数的运算结果不参与比较，整数溢出或超过2^53时整批退回逐行计算，因此比较和过滤结果与逐行计算相同。
+ * 表达式或输入不支持列计算时（见VectorCompiler），自动退回到逐行计算。
+ * 对象不可变，可被多个线程同时使用
+ * @author shanxuecheng
+ *
+ */
+public class VectorizedExpression {
+	
+	public static final int DEFAULT_CHUNK_SIZE = 1024;
+	
+	/**
+	 * 表示不支持列计算的缓存值
+	 */
+	private static final Object UNSUPPORTED = new Object();
+	
+	private final CompiledExpression compiled;
+	
+	private final int chunkSize;
+	
+	/**
+	 * 按输入列类型缓存的列计算程序
+	 */
+	private final Map<String, Object> programs = new ConcurrentHashMap<String, Object>();
+	
+	public VectorizedExpression(CompiledExpression compiled) {
+		this(compiled, DEFAULT_CHUNK_SIZE);
+	}
+	
+	/**
+	 * @param compiled
+	 * @param chunkSize 块大小，即每次循环处理的行数
+	 */
+	public VectorizedExpression(CompiledExpression compiled, int chunkSize) {
+		if(chunkSize <= 0)
+			throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize + ".");
+		this.compiled = compiled;
+		this.chunkSize = chunkSize;
+	}
+	
+	/**
+	 * @return 数值内核是否使用SIMD实现，需以--add-modules jdk.incubator.vector启动
+	 */
+	public static boolean isSimdEnabled() {
+		return VectorKernels.NUMERIC.getClass() != ScalarKernels.class;
+	}
+	
+	public CompiledExpression getCompiledExpression() {
+		return compiled;
+	}
+	
+	public int getChunkSize() {
+		return chunkSize;
+	}
+	
+	/**
+	 * 判断对此输入是否以列计算模式执行
+	 * @param batch
+	 * @return
+	 */
+	public boolean isVectorized(ColumnBatch batch) {
+		return programFor(batch) != null;
+	}
+	
+	/**
+	 * 计算一批输入
+	 * @param batch 输入列，列名为变量名
+	 * @return 按行排列的结果，没有结果的行为空值。NUMBER结果以double[]保存
+	 * @throws IllegalStateException 各行结果类型不一致时
+	 */
+	public Column evaluate(ColumnBatch batch) {
+		return evaluate(batch, null);
+	}
+	
+	/**
+	 * 并行计算一批输入。行被分为若干段，在pool中并行计算，每段使用各自的帧，结果按行序写入结果列
+	 * @param batch 输入列，列名为变量名
+	 * @param pool
+	 * @return 与evaluate(batch)相同
+	 */
+	public Column evaluateParallel(ColumnBatch batch, ForkJoinPool pool) {
+		return evaluate(batch, pool);
+	}
+	
+	/**
+	 * 过滤，返回结果为TRUE的行。列计算时结果直接写入位图，不构造结果列
+	 * @param batch 输入列，列名为变量名
+	 * @return 第i位表示第i行是否匹配
+	 * @throws IllegalStateException 有行的结果不是BOOLEAN时
+	 */
+	public Bitmap filter(ColumnBatch batch) {
+		return filter(batch, null);
+	}
+	
+	/**
+	 * 并行过滤，各段大小为64的倍数，分别写入位图中不同的long
+	 * @param batch
+	 * @param pool
+	 * @return 与filter(batch)相同
+	 */
+	public Bitmap filterParallel(ColumnBatch batch, ForkJoinPool pool) {
+		return filter(batch, pool);
+	}
+	
+	/**
+	 * 聚合，计算与聚合融合进行，列计算时不构造结果列，不为每行分配对象。
+	 * 没有结果的行被跳过，如需只聚合满足条件的行，可写作“if(条件) 表达式; endif”。
+	 * 精确聚合时，结果可能为近似值的表达式逐行计算
+	 * @param batch 输入列，列名为变量名
+	 * @param aggregate 聚合结果，可在多个批次间累积
+	 * @return aggregate
+	 * @throws IllegalStateException 有行的结果不是NUMBER时
+	 */
+	public Aggregate aggregate(ColumnBatch batch, Aggregate aggregate) {
+		return aggregate(batch, aggregate, null);
+	}
+	
+	/**
+	 * 并行聚合，每段聚合到各自的Aggregate，最后按段号顺序合并到aggregate
+	 * @param batch
+	 * @param aggregate
+	 * @param pool
+	 * @return aggregate
+	 */
+	public Aggregate aggregateParallel(ColumnBatch batch, Aggregate aggregate, ForkJoinPool pool) {
+		return aggregate(batch, aggregate, pool);
+	}
+	
+	/**
+	 * 分组聚合，值或分组键没有结果的行被跳过
+	 * @param batch 输入列，列名为变量名
+	 * @param key 分组键表达式，结果须为整数
+	 * @param groups 分组聚合结果，可在多个批次间累积
+	 * @return groups
+	 * @throws IllegalStateException 有行的结果不是NUMBER，或分组键不是整数时
+	 */
+	public GroupedAggregate aggregate(ColumnBatch batch, VectorizedExpression key, GroupedAggregate groups) {
+		return aggregate(batch, key, groups, null);
+	}
+	
+	/**
+	 * 并行分组聚合，每段聚合到各自的GroupedAggregate，最后按段号顺序合并到groups
+	 * @param batch
+	 * @param key
+	 * @param groups
+	 * @param pool
+	 * @return groups
+	 */
+	public GroupedAggregate aggregateParallel(ColumnBatch batch, VectorizedExpression key,
+			GroupedAggregate groups, ForkJoinPool pool) {
+		return aggregate(batch, key, groups, pool);
+	}
+	
+	private Column evaluate(final ColumnBatch batch, ForkJoinPool pool) {
+		int rowCount = batch.getRowCount();
+		final VectorProgram program = programFor(batch);
+		if(program != null) {
+			final Object[] outputs = program.newOutputs(rowCount);
+			final byte[] tags = new byte[rowCount];
+			try {
+				forEachSegment(pool, rowCount, new SegmentAction() {
+					public void run(int segment, int from, int to) {
+						program.execute(batch, from, to, chunkSize, outputs, tags);
+					}
+				});
+				return program.toColumn(outputs, tags, rowCount);
+			} catch(PrecisionLossException e) {
+				//整数超出long或double的精确范围，逐行计算
+			}
+		}
+		final Column[] inputs = inputsOf(batch);
+		final Valuable[] results = new Valuable[rowCount];
+		forEachSegment(pool, rowCount, new SegmentAction() {
+			public void run(int segment, int from, int to) {
+				Frame frame = compiled.newFrame();
+				for(int row=from; row<to; row++) {
+					bindRow(frame, inputs, row);
+					results[row] = compiled.evaluate(frame);
+				}
+			}
+		});
+		return toColumn(results);
+	}
+	
+	private Bitmap filter(final ColumnBatch batch, ForkJoinPool pool) {
+		final VectorProgram program = programFor(batch);
+		if(program != null) {
+			final Bitmap bitmap = new Bitmap(batch.getRowCount());
+			try {
+				forEachSegment(pool, batch.getRowCount(), new SegmentAction() {
+					public void run(int segment, int from, int to) {
+						program.filter(batch, from, to, chunkSize, bitmap);
+					}
+				});
+				return bitmap;
+			} catch(PrecisionLossException e) {
+				//整数超出long或double的精确范围，逐行计算
+			}
+		}
+		final Bitmap bitmap = new Bitmap(batch.getRowCount());
+		final Column[] inputs = inputsOf(batch);
+		forEachSegment(pool, batch.getRowCount(), new SegmentAction() {
+			public void run(int segment, int from, int to) {
+				Frame frame = compiled.newFrame();
+				for(int row=from; row<to; row++) {
+					bindRow(frame, inputs, row);
+					if(compiled.matches(frame))
+						bitmap.set(row);
+				}
+			}
+		});
+		return bitmap;
+	}
+	
+	private Aggregate aggregate(final ColumnBatch batch, final Aggregate aggregate, ForkJoinPool pool) {
+		VectorProgram valueProgram = programFor(batch);
+		//近似值不参与精确聚合
+		final VectorProgram program = valueProgram != null && aggregate.isExact()
+				&& valueProgram.isApproximate() ? null : valueProgram;
+		final Aggregate[] partials = new Aggregate[segmentCount(pool, batch.getRowCount())];
+		if(program != null) {
+			//各段先聚合到各自的对象，退回逐行计算时aggregate不受影响
+			try {
+				forEachSegment(pool, batch.getRowCount(), new SegmentAction() {
+					public void run(int segment, int from, int to) {
+						partials[segment] = new Aggregate(aggregate.isExact());
+						program.aggregate(batch, from, to, chunkSize, partials[segment], null, null);
+					}
+				});
+				for(Aggregate partial : partials)
+					aggregate.merge(partial);
+				return aggregate;
+			} catch(PrecisionLossException e) {
+				//整数超出long或double的精确范围，逐行计算
+			}
+		}
+		final Column[] inputs = inputsOf(batch);
+		forEachSegment(pool, batch.getRowCount(), new SegmentAction() {
+			public void run(int segment, int from, int to) {
+				//只有一段时直接聚合到结果中
+				Aggregate partial = partials.length == 1 ? aggregate : new Aggregate(aggregate.isExact());
+				partials[segment] = partial;
+				Frame frame = compiled.newFrame();
+				for(int row=from; row<to; row++) {
+					bindRow(frame, inputs, row);
+					BigDecimal value = CompiledExpression.toNumber(compiled.evaluate(frame));
+					if(value != null)
+						partial.add(value);
+				}
+			}
+		});
+		if(partials.length > 1)
+			for(Aggregate partial : partials)
+				aggregate.merge(partial);
+		return aggregate;
+	}
+	
+	private GroupedAggregate aggregate(final ColumnBatch batch, final VectorizedExpression key,
+			final GroupedAggregate groups, ForkJoinPool pool) {
+		VectorProgram valueProgram = programFor(batch);
+		final VectorProgram keyProgram = key.programFor(batch);
+		//值和分组键都支持列计算、分组键不是近似值且精确聚合的值不是近似值时才以列计算模式执行
+		boolean vectorized = keyProgram != null && !keyProgram.isApproximate()
+				&& valueProgram != null && !(groups.isExact() && valueProgram.isApproximate());
+		final VectorProgram program = vectorized ? valueProgram : null;
+		final GroupedAggregate[] partials = new GroupedAggregate[segmentCount(pool, batch.getRowCount())];
+		if(program != null) {
+			try {
+				forEachSegment(pool, batch.getRowCount(), new SegmentAction() {
+					public void run(int segment, int from, int to) {
+						partials[segment] = new GroupedAggregate(groups.isExact(), groups.size());
+						program.aggregate(batch, from, to, chunkSize, null, keyProgram, partials[segment]);
+					}
+				});
+				for(GroupedAggregate partial : partials)
+					groups.merge(partial);
+				return groups;
+			} catch(PrecisionLossException e) {
+				//整数超出long或double的精确范围，逐行计算
+			}
+		}
+		final Column[] inputs = inputsOf(batch);
+		final Column[] keyInputs = key.inputsOf(batch);
+		forEachSegment(pool, batch.getRowCount(), new SegmentAction() {
+			public void run(int segment, int from, int to) {
+				GroupedAggregate partial = partials.length == 1 ? groups
+						: new GroupedAggregate(groups.isExact(), groups.size());
+				partials[segment] = partial;
+				Frame frame = compiled.newFrame();
+				Frame keyFrame = key.compiled.newFrame();
+				for(int row=from; row<to; row++) {
+					bindRow(frame, inputs, row);
+					BigDecimal value = CompiledExpression.toNumber(compiled.evaluate(frame));
+					if(value == null)
+						continue;
+					bindRow(keyFrame, keyInputs, row);
+					BigDecimal keyValue = CompiledExpression.toNumber(key.compiled.evaluate(keyFrame));
+					if(keyValue != null)
+						partial.add(GroupedAggregate.toKey(keyValue), value);
+				}
+			}
+		});
+		if(partials.length > 1)
+			for(GroupedAggregate partial : partials)
+				groups.merge(partial);
+		return groups;
+	}
+	
+	/**
+	 * 段大小，并行时为块大小和64的公倍数，以便各段按整块计算、写入位图中不同的long
+	 */
+	private int grainOf(ForkJoinPool pool, int rowCount) {
+		if(pool == null)
+			return Math.max(rowCount, 1);
+		int alignment = chunkSize;
+		while(alignment % 64 != 0)
+			alignment += chunkSize;
+		return SegmentTask.grainOf(pool, rowCount, alignment);
+	}
+	
+	private int segmentCount(ForkJoinPool pool, int rowCount) {
+		return SegmentTask.segmentCount(rowCount, grainOf(pool, rowCount));
+	}
+	
+	/**
+	 * 分段处理所有行，pool为null时在当前线程作为一段处理
+	 */
+	private void forEachSegment(ForkJoinPool pool, int rowCount, SegmentAction action) {
+		if(pool == null) {
+			if(rowCount > 0)
+				action.run(0, 0, rowCount);
+		} else {
+			SegmentTask.invoke(pool, action, rowCount, grainOf(pool, rowCount));
+		}
+	}
+	
+	private VectorProgram programFor(ColumnBatch batch) {
+		String[] variableNames = compiled.getVariableNames();
+		StringBuilder signature = new StringBuilder();
+		boolean hasNulls = false;
+		for(String variableName : variableNames) {
+			Column column = batch.getColumn(variableName);
+			if(column == null) {
+				signature.append('-');
+			} else {
+				signature.append(column.getDataType().name());
+				//long列与double列编译为不同的程序
+				if(column.getDataType() == DataType.NUMBER && column.isLongBacked())
+					signature.append("(long)");
+				hasNulls |= column.hasNulls();
+			}
+			signature.append(',');
+		}
+		//空值表示该行变量未定义，逐行计算
+		if(hasNulls)
+			return null;
+		Object program = programs.get(signature.toString());
+		if(program == null) {
+			Map<String, Column> inputs = new HashMap<String, Column>();
+			for(String variableName : variableNames) {
+				Column column = batch.getColumn(variableName);
+				if(column != null)
+					inputs.put(variableName, column);
+			}
+			program = VectorCompiler.compile(compiled, inputs);
+			if(program == null)
+				program = UNSUPPORTED;
+			programs.put(signature.toString(), program);
+		}
+		return program == UNSUPPORTED ? null : (VectorProgram)program;
+	}
+	
+	/**
+	 * @return 按槽位排列的输入列，变量没有对应的列时为null
+	 */
+	private Column[] inputsOf(ColumnBatch batch) {
+		String[] variableNames = compiled.getVariableNames();
+		Column[] inputs = new Column[variableNames.length];
+		for(int i=0; i<variableNames.length; i++)
+			inputs[i] = batch.getColumn(variableNames[i]);
+		return inputs;
+	}
+	
+	private static void bindRow(Frame frame, Column[] inputs, int row) {
+		frame.clear();
+		for(int slot=0; slot<inputs.length; slot++)
+			if(inputs[slot] != null)
+				frame.set(slot, inputs[slot].getValuable(row));
+	}
+	
+	/**
+	 * 将逐行计算的结果转换为结果列
+	 * @throws IllegalStateException 各行结果类型不一致时
+	 */
+	private static Column toColumn(Valuable[] results) {
+		int rowCount = results.length;
+		DataType resultType = null;
+		for(Valuable result : results) {
+			if(result == null)
+				continue;
+			if(resultType == null)
+				resultType = result.getDataType();
+			else if(resultType != result.getDataType())
+				throw new IllegalStateException("Result type varies across rows: "
+						+ resultType.name() + " and " + result.getDataType().name() + ".");
+		}
+		if(resultType == null)
+			return Column.ofNulls(rowCount);
+		boolean[] nulls = null;
+		Column column;
+		switch(resultType) {
+		case NUMBER:
+			double[] doubles = new double[rowCount];
+			for(int i=0; i<rowCount; i++)
+				if(results[i] != null)
+					doubles[i] = results[i].getNumberValue().doubleValue();
+			column = Column.ofDoubles(doubles);
+			break;
+		case BOOLEAN:
+			boolean[] booleans = new boolean[rowCount];
+			for(int i=0; i<rowCount; i++)
+				if(results[i] != null)
+					booleans[i] = results[i].getBooleanValue();
+			column = Column.ofBooleans(booleans);
+			break;
+		case CHARACTER:
+			char[] chars = new char[rowCount];
+			for(int i=0; i<rowCount; i++)
+				if(results[i] != null)
+					chars[i] = results[i].getCharValue();
+			column = Column.ofChars(chars);
+			break;
+		case DATE:
+			long[] dates = new long[rowCount];
+			for(int i=0; i<rowCount; i++)
+				if(results[i] != null)
+					dates[i] = results[i].getDateValue().getTimeInMillis();
+			column = Column.ofDates(dates);
+			break;
+		default:
+			String[] strings = new String[rowCount];
+			for(int i=0; i<rowCount; i++)
+				if(results[i] != null)
+					strings[i] = results[i].getStringValue();
+			column = Column.ofStrings(strings);
+		}
+		for(int i=0; i<rowCount; i++) {
+			if(results[i] == null) {
+				if(nulls == null)
+					nulls = new boolean[rowCount];
+				nulls[i] = true;
+			}
+		}
+		return nulls == null ? column : Column.withNulls(column, nulls);
+	}
+}
@@ -0,0 +1,53 @@
+package neu.sxc.expression.monitor;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 表达式编译事件（JFR），默认关闭，可通过jcmd JFR.start或配置文件开启
+ * @author shanxuecheng
+ *
+ */
+@Name("neu.sxc.expression.Compile")
+@Label("Expression Compile")
+@Category("Expression")
+@Description("Lexical analysis or compilation of an expression")
+@Enabled(false)
+@StackTrace(false)
+public class CompileEvent extends Event {
+	
+	/**
+	 * 表达式指纹
+	 */
+	@Label("Fingerprint")
+	private String fingerprint;
+	
+	/**
+	 * 编译阶段
+	 */
+	@Label("Phase")
+	private String phase;
+	
+	/**
+	 * Token个数
+	 */
+	@Label("Token Count")
+	private int tokenCount;
+
+	public void setFingerprint(String fingerprint) {
+		this.fingerprint = fingerprint;
+	}
+
+	public void setPhase(String phase) {
+		this.phase = phase;
+	}
+
+	public void setTokenCount(int tokenCount) {
+		this.tokenCount = tokenCount;
+	}
+}
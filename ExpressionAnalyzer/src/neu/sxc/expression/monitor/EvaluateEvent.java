@@ -0,0 +1,53 @@
+package neu.sxc.expression.monitor;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 表达式计算事件（JFR），默认关闭
+ * @author shanxuecheng
+ *
+ */
+@Name("neu.sxc.expression.Evaluate")
+@Label("Expression Evaluate")
+@Category("Expression")
+@Description("Evaluation of an expression")
+@Enabled(false)
+@StackTrace(false)
+public class EvaluateEvent extends Event {
+	
+	/**
+	 * 表达式指纹
+	 */
+	@Label("Fingerprint")
+	private String fingerprint;
+	
+	/**
+	 * 执行的语句数
+	 */
+	@Label("Statement Count")
+	private int statementCount;
+	
+	/**
+	 * 执行路径，格式为“行号:T|F”，以逗号分隔
+	 */
+	@Label("Branch Path")
+	private String branchPath;
+
+	public void setFingerprint(String fingerprint) {
+		this.fingerprint = fingerprint;
+	}
+
+	public void setStatementCount(int statementCount) {
+		this.statementCount = statementCount;
+	}
+
+	public void setBranchPath(String branchPath) {
+		this.branchPath = branchPath;
+	}
+}
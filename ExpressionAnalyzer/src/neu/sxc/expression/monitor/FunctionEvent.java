@@ -0,0 +1,43 @@
+package neu.sxc.expression.monitor;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * 慢函数调用事件（JFR），默认关闭，仅记录超过阈值的调用
+ * @author shanxuecheng
+ *
+ */
+@Name("neu.sxc.expression.Function")
+@Label("Slow Function Execute")
+@Category("Expression")
+@Description("Execution of a function that exceeded the threshold")
+@Enabled(false)
+@Threshold("1 ms")
+public class FunctionEvent extends Event {
+	
+	/**
+	 * 函数名
+	 */
+	@Label("Function Name")
+	private String functionName;
+	
+	/**
+	 * 参数个数
+	 */
+	@Label("Argument Count")
+	private int argumentCount;
+
+	public void setFunctionName(String functionName) {
+		this.functionName = functionName;
+	}
+
+	public void setArgumentCount(int argumentCount) {
+		this.argumentCount = argumentCount;
+	}
+}
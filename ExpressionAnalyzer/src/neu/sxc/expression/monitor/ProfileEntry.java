@@ -0,0 +1,70 @@
+package neu.sxc.expression.monitor;
+
+/**
+ * 性能剖析统计项
+ * @author shanxuecheng
+ *
+ */
+public class ProfileEntry {
+	
+	/**
+	 * 统计项名称（操作符名、函数名或行号）
+	 */
+	private final String name;
+	
+	/**
+	 * 行号，非行统计项时为-1
+	 */
+	private final int line;
+	
+	/**
+	 * 执行次数
+	 */
+	private long count;
+	
+	/**
+	 * 累计耗时（纳秒）
+	 */
+	private long totalNanos;
+	
+	public ProfileEntry(String name, int line) {
+		this.name = name;
+		this.line = line;
+	}
+	
+	ProfileEntry(ProfileEntry entry) {
+		this(entry.name, entry.line);
+		this.count = entry.count;
+		this.totalNanos = entry.totalNanos;
+	}
+	
+	void add(long nanos) {
+		count++;
+		totalNanos += nanos;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public int getLine() {
+		return line;
+	}
+	
+	public long getCount() {
+		return count;
+	}
+	
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+	
+	public long getAverageNanos() {
+		return count == 0 ? 0 : totalNanos / count;
+	}
+	
+	@Override
+	public String toString() {
+		return name + " count:" + count + ", total:" + totalNanos + "ns, avg:" + getAverageNanos() + "ns";
+	}
+}
@@ -0,0 +1,165 @@
+package neu.sxc.expression.monitor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 性能剖析器，按操作符、函数及源代码行统计执行次数和累计耗时。
+ * 可在多次计算、多个表达式间共享，统计结果持续累加直至调用reset()
+ * @author shanxuecheng
+ *
+ */
+public class Profiler {
+	
+	/**
+	 * 按耗时降序排列
+	 */
+	private static final Comparator<ProfileEntry> BY_TOTAL_NANOS = new Comparator<ProfileEntry>() {
+		public int compare(ProfileEntry e1, ProfileEntry e2) {
+			if(e1.getTotalNanos() != e2.getTotalNanos())
+				return e1.getTotalNanos() > e2.getTotalNanos() ? -1 : 1;
+			return e1.getName().compareTo(e2.getName());
+		}
+	};
+	
+	/**
+	 * 操作符统计，键为OperatorFactory中的操作符名
+	 */
+	private final Map<String, ProfileEntry> operators = new HashMap<String, ProfileEntry>();
+	
+	/**
+	 * 函数统计，键为函数名
+	 */
+	private final Map<String, ProfileEntry> functions = new HashMap<String, ProfileEntry>();
+	
+	/**
+	 * 行统计，键为行号
+	 */
+	private final Map<Integer, ProfileEntry> lines = new HashMap<Integer, ProfileEntry>();
+	
+	/**
+	 * 记录一次操作符执行
+	 * @param operatorName 操作符名
+	 * @param line 操作符所在行
+	 * @param nanos 耗时
+	 */
+	public synchronized void recordOperator(String operatorName, int line, long nanos) {
+		entry(operators, operatorName, -1).add(nanos);
+		lineEntry(line).add(nanos);
+	}
+	
+	/**
+	 * 记录一次函数执行
+	 * @param functionName 函数名
+	 * @param line 函数所在行
+	 * @param nanos 耗时
+	 */
+	public synchronized void recordFunction(String functionName, int line, long nanos) {
+		entry(functions, functionName, -1).add(nanos);
+		lineEntry(line).add(nanos);
+	}
+	
+	/**
+	 * @return 按耗时降序排列的操作符统计
+	 */
+	public synchronized List<ProfileEntry> getOperatorProfile() {
+		return sort(operators.values());
+	}
+	
+	/**
+	 * @return 按耗时降序排列的函数统计
+	 */
+	public synchronized List<ProfileEntry> getFunctionProfile() {
+		return sort(functions.values());
+	}
+	
+	/**
+	 * @return 按耗时降序排列的行统计，即热点行
+	 */
+	public synchronized List<ProfileEntry> getHotLines() {
+		return sort(lines.values());
+	}
+	
+	/**
+	 * 清除所有统计
+	 */
+	public synchronized void reset() {
+		operators.clear();
+		functions.clear();
+		lines.clear();
+	}
+	
+	/**
+	 * 生成热点报告
+	 * @param limit 每类最多列出的条目数
+	 * @return
+	 */
+	public String report(int limit) {
+		return report(null, limit);
+	}
+	
+	/**
+	 * 生成热点报告，热点行附带源代码
+	 * @param source 表达式源代码，可为null
+	 * @param limit 每类最多列出的条目数
+	 * @return
+	 */
+	public String report(String source, int limit) {
+		String[] sourceLines = source == null ? null : source.split("\r\n|\r|\n", -1);
+		StringBuilder report = new StringBuilder();
+		report.append("----------Hot Lines-----------\n");
+		for(ProfileEntry entry : limit(getHotLines(), limit)) {
+			report.append(entry);
+			int line = entry.getLine();
+			if(sourceLines != null && line >= 1 && line <= sourceLines.length)
+				report.append(" | ").append(sourceLines[line - 1].trim());
+			report.append('\n');
+		}
+		report.append("----------Operators-----------\n");
+		for(ProfileEntry entry : limit(getOperatorProfile(), limit))
+			report.append(entry).append('\n');
+		report.append("----------Functions-----------\n");
+		for(ProfileEntry entry : limit(getFunctionProfile(), limit))
+			report.append(entry).append('\n');
+		return report.toString();
+	}
+	
+	private ProfileEntry lineEntry(int line) {
+		ProfileEntry entry = lines.get(line);
+		if(entry == null) {
+			entry = new ProfileEntry("line " + line, line);
+			lines.put(line, entry);
+		}
+		return entry;
+	}
+	
+	private static ProfileEntry entry(Map<String, ProfileEntry> entries, String name, int line) {
+		ProfileEntry entry = entries.get(name);
+		if(entry == null) {
+			entry = new ProfileEntry(name, line);
+			entries.put(name, entry);
+		}
+		return entry;
+	}
+	
+	/**
+	 * 复制并排序，避免调用方持有内部可变对象
+	 */
+	private static List<ProfileEntry> sort(Iterable<ProfileEntry> entries) {
+		List<ProfileEntry> sorted = new ArrayList<ProfileEntry>();
+		for(ProfileEntry entry : entries)
+			sorted.add(new ProfileEntry(entry));
+		Collections.sort(sorted, BY_TOTAL_NANOS);
+		return sorted;
+	}
+	
+	private static List<ProfileEntry> limit(List<ProfileEntry> entries, int limit) {
+		if(limit < 0 || entries.size() <= limit)
+			return entries;
+		return entries.subList(0, limit);
+	}
+}
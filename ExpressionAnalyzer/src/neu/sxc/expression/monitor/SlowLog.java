@@ -0,0 +1,255 @@
+package neu.sxc.expression.monitor;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import neu.sxc.expression.utils.RingBuffer;
+
+/**
+ * 慢表达式日志。编译或计算耗时超过阈值的表达式被写入环形缓冲区，
+ * 由后台线程异步写入本地滚动文件，调用方线程不做任何IO。
+ * 开启采样后仅对部分计算做记录，可在生产环境中常开
+ * @author shanxuecheng
+ *
+ */
+public class SlowLog implements Closeable {
+	
+	/**
+	 * 阈值（纳秒）
+	 */
+	private final long thresholdNanos;
+	
+	/**
+	 * 日志文件
+	 */
+	private final File file;
+	
+	private final RingBuffer<SlowLogEntry> buffer;
+	
+	/**
+	 * 采样间隔，平均每sampleRate次计算记录一次，1表示全部记录
+	 */
+	private volatile int sampleRate = 1;
+	
+	/**
+	 * 单个日志文件最大字节数，超过后滚动
+	 */
+	private long maxFileSize = 64L * 1024 * 1024;
+	
+	/**
+	 * 最多保留的历史文件个数
+	 */
+	private int maxHistoryFiles = 5;
+	
+	/**
+	 * 后台线程空闲时的轮询间隔
+	 */
+	private long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(200);
+	
+	private final Thread writerThread;
+	
+	private volatile boolean closed = false;
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private static final byte[] LINE_SEPARATOR = System.getProperty("line.separator").getBytes(UTF8);
+	
+	private OutputStream out;
+	
+	private long fileSize;
+	
+	/**
+	 * @param file 日志文件
+	 * @param thresholdMicros 阈值（微秒）
+	 */
+	public SlowLog(File file, long thresholdMicros) {
+		this(file, thresholdMicros, 1024);
+	}
+	
+	/**
+	 * @param file 日志文件
+	 * @param thresholdMicros 阈值（微秒）
+	 * @param bufferCapacity 环形缓冲区容量，缓冲区满时新记录被丢弃
+	 */
+	public SlowLog(File file, long thresholdMicros, int bufferCapacity) {
+		this.file = file;
+		this.thresholdNanos = TimeUnit.MICROSECONDS.toNanos(thresholdMicros);
+		this.buffer = new RingBuffer<SlowLogEntry>(bufferCapacity);
+		writerThread = new Thread(new Runnable() {
+			public void run() {
+				writeLoop();
+			}
+		}, "expression-slow-log");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+	
+	/**
+	 * 设置采样间隔，平均每sampleRate次计算记录一次
+	 * @param sampleRate
+	 */
+	public void setSampleRate(int sampleRate) {
+		if(sampleRate < 1)
+			throw new IllegalArgumentException("Sample rate must be at least 1: " + sampleRate);
+		this.sampleRate = sampleRate;
+	}
+	
+	public int getSampleRate() {
+		return sampleRate;
+	}
+	
+	public void setMaxFileSize(long maxFileSize) {
+		this.maxFileSize = maxFileSize;
+	}
+	
+	public void setMaxHistoryFiles(int maxHistoryFiles) {
+		this.maxHistoryFiles = maxHistoryFiles;
+	}
+	
+	public long getThresholdNanos() {
+		return thresholdNanos;
+	}
+	
+	/**
+	 * @return 因缓冲区满而丢弃的记录数
+	 */
+	public long getDropped() {
+		return buffer.getDropped();
+	}
+	
+	/**
+	 * 决定本次计算是否采样
+	 * @return
+	 */
+	public boolean sample() {
+		int rate = sampleRate;
+		return rate == 1 || ThreadLocalRandom.current().nextInt(rate) == 0;
+	}
+	
+	/**
+	 * 判断耗时是否超过阈值
+	 * @param nanos
+	 * @return
+	 */
+	public boolean isSlow(long nanos) {
+		return nanos >= thresholdNanos;
+	}
+	
+	/**
+	 * 写入一条记录，不阻塞调用方
+	 * @param entry
+	 * @return 缓冲区满或日志已关闭时返回false
+	 */
+	public boolean record(SlowLogEntry entry) {
+		if(closed)
+			return false;
+		boolean offered = buffer.offer(entry);
+		if(offered)
+			LockSupport.unpark(writerThread);
+		return offered;
+	}
+	
+	/**
+	 * 关闭日志，写出缓冲区中的剩余记录
+	 */
+	public void close() throws IOException {
+		closed = true;
+		LockSupport.unpark(writerThread);
+		try {
+			writerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	private void writeLoop() {
+		try {
+			while(!closed) {
+				if(!drain())
+					LockSupport.parkNanos(this, flushIntervalNanos);
+			}
+			drain();
+		} catch (IOException e) {
+			//日志写入失败不影响表达式计算，停止写入
+			closed = true;
+		} finally {
+			closeOutput();
+		}
+	}
+	
+	/**
+	 * 写出缓冲区中的所有记录
+	 * @return 是否写出了记录
+	 * @throws IOException
+	 */
+	private boolean drain() throws IOException {
+		boolean written = false;
+		SlowLogEntry entry;
+		while((entry = buffer.poll()) != null) {
+			write(entry.toString());
+			written = true;
+		}
+		if(written)
+			out.flush();
+		return written;
+	}
+	
+	private void write(String line) throws IOException {
+		if(out == null)
+			openOutput();
+		else if(fileSize >= maxFileSize) {
+			closeOutput();
+			roll();
+			openOutput();
+		}
+		byte[] bytes = line.getBytes(UTF8);
+		out.write(bytes);
+		out.write(LINE_SEPARATOR);
+		fileSize += bytes.length + LINE_SEPARATOR.length;
+	}
+	
+	private void openOutput() throws IOException {
+		File parent = file.getAbsoluteFile().getParentFile();
+		if(parent != null && !parent.exists())
+			parent.mkdirs();
+		out = new BufferedOutputStream(new FileOutputStream(file, true));
+		fileSize = file.length();
+	}
+	
+	private void closeOutput() {
+		if(out == null)
+			return;
+		try {
+			out.close();
+		} catch (IOException e) {
+			//忽略
+		}
+		out = null;
+	}
+	
+	/**
+	 * 滚动日志文件：file.(n-1) -> file.n, ..., file -> file.1
+	 */
+	private void roll() {
+		File oldest = new File(file.getPath() + "." + maxHistoryFiles);
+		if(oldest.exists())
+			oldest.delete();
+		for(int i=maxHistoryFiles-1; i>=1; i--) {
+			File history = new File(file.getPath() + "." + i);
+			if(history.exists())
+				history.renameTo(new File(file.getPath() + "." + (i + 1)));
+		}
+		if(maxHistoryFiles > 0)
+			file.renameTo(new File(file.getPath() + ".1"));
+		else
+			file.delete();
+	}
+}
@@ -0,0 +1,115 @@
+package neu.sxc.expression.monitor;
+
+import java.text.SimpleDateFormat;
+import java.util.Collection;
+import java.util.Date;
+
+/**
+ * 慢日志记录。各阶段耗时只包含产生本记录的那次调用，未执行的阶段为0
+ * @author shanxuecheng
+ *
+ */
+public class SlowLogEntry {
+	
+	/**
+	 * 记录类型：编译
+	 */
+	public static final String COMPILE = "compile";
+	
+	/**
+	 * 记录类型：计算
+	 */
+	public static final String EVALUATE = "evaluate";
+	
+	private final long timestamp = System.currentTimeMillis();
+	
+	private final String kind;
+	
+	private final String fingerprint;
+	
+	/**
+	 * 已绑定的变量名
+	 */
+	private final Collection<String> variableNames;
+	
+	/**
+	 * 词法分析耗时（纳秒）
+	 */
+	private final long lexicalNanos;
+	
+	/**
+	 * 语法分析耗时（纳秒）
+	 */
+	private final long parseNanos;
+	
+	/**
+	 * 计算耗时（纳秒）
+	 */
+	private final long evaluateNanos;
+	
+	/**
+	 * 执行路径
+	 */
+	private final String branchPath;
+	
+	public SlowLogEntry(String kind, String fingerprint, Collection<String> variableNames,
+			long lexicalNanos, long parseNanos, long evaluateNanos, String branchPath) {
+		this.kind = kind;
+		this.fingerprint = fingerprint;
+		this.variableNames = variableNames;
+		this.lexicalNanos = lexicalNanos;
+		this.parseNanos = parseNanos;
+		this.evaluateNanos = evaluateNanos;
+		this.branchPath = branchPath;
+	}
+	
+	public long getTimestamp() {
+		return timestamp;
+	}
+	
+	public String getKind() {
+		return kind;
+	}
+	
+	public String getFingerprint() {
+		return fingerprint;
+	}
+	
+	public Collection<String> getVariableNames() {
+		return variableNames;
+	}
+	
+	public long getLexicalNanos() {
+		return lexicalNanos;
+	}
+	
+	public long getParseNanos() {
+		return parseNanos;
+	}
+	
+	public long getEvaluateNanos() {
+		return evaluateNanos;
+	}
+	
+	public String getBranchPath() {
+		return branchPath;
+	}
+	
+	/**
+	 * 格式化为一行日志，时间单位为微秒
+	 */
+	@Override
+	public String toString() {
+		StringBuilder line = new StringBuilder();
+		line.append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date(timestamp)))
+			.append(' ').append(kind)
+			.append(" fingerprint=").append(fingerprint)
+			.append(" lex=").append(lexicalNanos / 1000)
+			.append(" parse=").append(parseNanos / 1000)
+			.append(" eval=").append(evaluateNanos / 1000)
+			.append(" variables=").append(variableNames == null ? "[]" : variableNames.toString());
+		if(branchPath != null)
+			line.append(" path=").append(branchPath);
+		return line.toString();
+	}
+}
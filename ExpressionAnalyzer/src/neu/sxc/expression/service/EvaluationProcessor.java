@@ -0,0 +1,367 @@
+package neu.sxc.expression.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import neu.sxc.expression.compile.CompiledExpression;
+
+/**
+ * 流式计算。订阅记录流，逐条计算表达式并向下游发布结果，每条记录的异常随其结果发布，不中止流。
+ * 记录在工作线程空闲时组成批交给executor计算，至多parallelism个批同时计算，
+ * 工作线程繁忙时到达的记录累积成批，每批至多batchSize条。
+ * 已向上游请求但未向下游发布的记录数不超过capacity，下游不请求时上游也不再被请求，内存占用有界。
+ * ordered为true时按输入顺序发布结果，否则按计算完成的顺序发布
+ * @author shanxuecheng
+ *
+ */
+public class EvaluationProcessor implements Flow.Processor<Map<String, ?>, EvaluationResult> {
+	
+	private final CompiledExpression expression;
+	
+	private final Executor executor;
+	
+	private final int parallelism;
+	
+	private final int batchSize;
+	
+	private final boolean ordered;
+	
+	private final int capacity;
+	
+	private Flow.Subscription upstream;
+	
+	private Flow.Subscriber<? super EvaluationResult> downstream;
+	
+	/**
+	 * 已向上游请求但未向下游发布的记录数
+	 */
+	private long outstanding = 0;
+	
+	/**
+	 * 下游请求但尚未发布的结果数
+	 */
+	private long demand = 0;
+	
+	/**
+	 * 下一条记录的序号
+	 */
+	private long nextSequence = 0;
+	
+	/**
+	 * 正在累积的批
+	 */
+	private List<Map<String, ?>> collecting;
+	
+	private long collectingBatch;
+	
+	private long collectingStart;
+	
+	private long nextBatch = 0;
+	
+	/**
+	 * 已满、等待计算的批
+	 */
+	private final ArrayDeque<RecordBatch> ready = new ArrayDeque<RecordBatch>();
+	
+	private int inFlight = 0;
+	
+	/**
+	 * 有序输出时，已完成但前面还有批未完成的结果，按批号保存
+	 */
+	private final Map<Long, List<EvaluationResult>> completed = new HashMap<Long, List<EvaluationResult>>();
+	
+	private long nextEmitBatch = 0;
+	
+	/**
+	 * 可以发布的结果
+	 */
+	private final ArrayDeque<EvaluationResult> output = new ArrayDeque<EvaluationResult>();
+	
+	private boolean upstreamDone = false;
+	
+	private Throwable upstreamError;
+	
+	/**
+	 * 须立即发给下游的错误
+	 */
+	private Throwable failure;
+	
+	private boolean cancelled = false;
+	
+	private boolean terminated = false;
+	
+	private final AtomicInteger wip = new AtomicInteger();
+	
+	/**
+	 * @param expression
+	 * @param executor 计算批的执行器
+	 * @param parallelism 同时计算的批数上限
+	 * @param batchSize 批大小上限
+	 * @param ordered 是否按输入顺序发布结果
+	 */
+	public EvaluationProcessor(CompiledExpression expression, Executor executor, 
+			int parallelism, int batchSize, boolean ordered) {
+		this(expression, executor, parallelism, batchSize, ordered, 2 * parallelism * batchSize);
+	}
+	
+	/**
+	 * @param expression
+	 * @param executor 计算批的执行器
+	 * @param parallelism 同时计算的批数上限
+	 * @param batchSize 批大小上限
+	 * @param ordered 是否按输入顺序发布结果
+	 * @param capacity 已向上游请求但未向下游发布的记录数上限
+	 */
+	public EvaluationProcessor(CompiledExpression expression, Executor executor, 
+			int parallelism, int batchSize, boolean ordered, int capacity) {
+		if(parallelism <= 0 || batchSize <= 0 || capacity <= 0)
+			throw new IllegalArgumentException("Parallelism, batch size and capacity must be positive.");
+		this.expression = expression;
+		this.executor = executor;
+		this.parallelism = parallelism;
+		this.batchSize = batchSize;
+		this.ordered = ordered;
+		this.capacity = capacity;
+	}
+	
+	@Override
+	public void subscribe(Flow.Subscriber<? super EvaluationResult> subscriber) {
+		synchronized(this) {
+			if(downstream == null) {
+				downstream = subscriber;
+				subscriber = null;
+			}
+		}
+		if(subscriber != null) {
+			subscriber.onSubscribe(new Flow.Subscription() {
+				@Override
+				public void request(long n) {
+				}
+				
+				@Override
+				public void cancel() {
+				}
+			});
+			subscriber.onError(new IllegalStateException("Processor supports only one subscriber."));
+			return;
+		}
+		downstream.onSubscribe(new Flow.Subscription() {
+			@Override
+			public void request(long n) {
+				synchronized(EvaluationProcessor.this) {
+					if(n <= 0) {
+						if(failure == null)
+							failure = new IllegalArgumentException("Request must be positive: " + n + ".");
+					} else {
+						demand += n;
+						if(demand < 0)
+							demand = Long.MAX_VALUE;
+					}
+				}
+				drain();
+			}
+			
+			@Override
+			public void cancel() {
+				Flow.Subscription subscription;
+				synchronized(EvaluationProcessor.this) {
+					cancelled = true;
+					subscription = upstream;
+					clear();
+				}
+				if(subscription != null)
+					subscription.cancel();
+			}
+		});
+		drain();
+	}
+	
+	@Override
+	public void onSubscribe(Flow.Subscription subscription) {
+		synchronized(this) {
+			if(upstream == null && !cancelled) {
+				upstream = subscription;
+				subscription = null;
+			}
+		}
+		if(subscription != null)
+			subscription.cancel();
+		else
+			drain();
+	}
+	
+	@Override
+	public void onNext(Map<String, ?> record) {
+		synchronized(this) {
+			if(cancelled || upstreamDone)
+				return;
+			if(collecting == null) {
+				collecting = new ArrayList<Map<String, ?>>(batchSize);
+				collectingBatch = nextBatch++;
+				collectingStart = nextSequence;
+			}
+			collecting.add(record);
+			nextSequence++;
+			if(collecting.size() >= batchSize) {
+				ready.add(new RecordBatch(collectingBatch, collectingStart, collecting));
+				collecting = null;
+			}
+		}
+		dispatch();
+	}
+	
+	@Override
+	public void onError(Throwable throwable) {
+		synchronized(this) {
+			upstreamDone = true;
+			upstreamError = throwable;
+		}
+		dispatch();
+	}
+	
+	@Override
+	public void onComplete() {
+		synchronized(this) {
+			upstreamDone = true;
+		}
+		dispatch();
+	}
+	
+	private void clear() {
+		collecting = null;
+		ready.clear();
+		completed.clear();
+		output.clear();
+	}
+	
+	/**
+	 * 在并行度允许时开始计算等待中的批，工作线程空闲时未满的批也被计算
+	 */
+	private void dispatch() {
+		List<RecordBatch> launching = new ArrayList<RecordBatch>();
+		synchronized(this) {
+			while(!cancelled && failure == null && inFlight < parallelism) {
+				RecordBatch batch = ready.poll();
+				if(batch == null && collecting != null) {
+					batch = new RecordBatch(collectingBatch, collectingStart, collecting);
+					collecting = null;
+				}
+				if(batch == null)
+					break;
+				inFlight++;
+				launching.add(batch);
+			}
+		}
+		for(final RecordBatch batch : launching) {
+			try {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						complete(batch, batch.evaluate(expression));
+					}
+				});
+			} catch (RuntimeException e) {
+				synchronized(this) {
+					inFlight--;
+					if(failure == null)
+						failure = e;
+				}
+			}
+		}
+		drain();
+	}
+	
+	/**
+	 * 批计算完成
+	 * @param batch
+	 * @param results
+	 */
+	private void complete(RecordBatch batch, List<EvaluationResult> results) {
+		synchronized(this) {
+			inFlight--;
+			if(cancelled)
+				return;
+			if(ordered) {
+				completed.put(batch.number, results);
+				List<EvaluationResult> next;
+				while((next = completed.remove(nextEmitBatch)) != null) {
+					output.addAll(next);
+					nextEmitBatch++;
+				}
+			} else {
+				output.addAll(results);
+			}
+		}
+		dispatch();
+	}
+	
+	/**
+	 * 向下游发布结果、向上游请求记录。同一时刻只有一个线程在此发出信号，其余线程的调用使其再循环一次
+	 */
+	private void drain() {
+		if(wip.getAndIncrement() != 0)
+			return;
+		do {
+			while(true) {
+				Flow.Subscriber<? super EvaluationResult> subscriber;
+				Flow.Subscription subscription;
+				EvaluationResult result = null;
+				long request = 0;
+				boolean terminate = false;
+				boolean cancelUpstream = false;
+				Throwable error = null;
+				synchronized(this) {
+					subscriber = downstream;
+					subscription = upstream;
+					if(cancelled || terminated || subscriber == null)
+						break;
+					if(failure != null) {
+						terminate = true;
+						error = failure;
+						cancelUpstream = true;
+						cancelled = true;
+						clear();
+					} else {
+						//未发布的记录降到容量一半以下时补足请求
+						if(subscription != null && !upstreamDone && outstanding <= capacity / 2) {
+							request = capacity - outstanding;
+							outstanding = capacity;
+						}
+						if(demand > 0 && !output.isEmpty()) {
+							result = output.poll();
+							demand--;
+							outstanding--;
+						} else if(upstreamDone && output.isEmpty() && inFlight == 0
+								&& ready.isEmpty() && collecting == null) {
+							terminate = true;
+							error = upstreamError;
+						} else if(request == 0) {
+							break;
+						}
+					}
+					if(terminate)
+						terminated = true;
+				}
+				if(terminate) {
+					if(cancelUpstream && subscription != null)
+						subscription.cancel();
+					if(error == null)
+						subscriber.onComplete();
+					else
+						subscriber.onError(error);
+					break;
+				}
+				if(request > 0)
+					subscription.request(request);
+				if(result != null)
+					subscriber.onNext(result);
+			}
+		} while(wip.decrementAndGet() != 0);
+	}
+}
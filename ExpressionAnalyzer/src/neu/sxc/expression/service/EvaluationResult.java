@@ -0,0 +1,62 @@
+package neu.sxc.expression.service;
+
+import java.util.Map;
+
+import neu.sxc.expression.tokens.Valuable;
+
+/**
+ * 流式计算中一条记录的计算结果
+ * @author shanxuecheng
+ *
+ */
+public class EvaluationResult {
+	
+	/**
+	 * 记录在输入流中的序号，从0开始
+	 */
+	private final long sequence;
+	
+	private final Map<String, ?> record;
+	
+	private final Valuable value;
+	
+	private final RuntimeException error;
+	
+	public EvaluationResult(long sequence, Map<String, ?> record, Valuable value, RuntimeException error) {
+		this.sequence = sequence;
+		this.record = record;
+		this.value = value;
+		this.error = error;
+	}
+	
+	public long getSequence() {
+		return sequence;
+	}
+	
+	public Map<String, ?> getRecord() {
+		return record;
+	}
+	
+	/**
+	 * @return 计算结果，计算失败或没有语句产生值时为null
+	 */
+	public Valuable getValue() {
+		return value;
+	}
+	
+	/**
+	 * @return 计算抛出的异常，成功时为null
+	 */
+	public RuntimeException getError() {
+		return error;
+	}
+	
+	public boolean isSuccess() {
+		return error == null;
+	}
+	
+	@Override
+	public String toString() {
+		return "#" + sequence + (error == null ? ": " + value : ": " + error);
+	}
+}
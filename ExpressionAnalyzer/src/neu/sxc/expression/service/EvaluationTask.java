@@ -0,0 +1,74 @@
+package neu.sxc.expression.service;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import neu.sxc.expression.tokens.Valuable;
+
+/**
+ * 服务中的一次计算请求。
+ * 无论正常结束、异常还是被取消，done()都恰好被调用一次，在此移出租户队列并撤销期限定时器。
+ * 排队名额在计算线程真正退出时归还：已提交给执行器的请求被取消时，被中断的线程可能仍在用户函数中，
+ * 由执行器中的包装在run()返回后归还；只有在租户队列中等待时被取消的请求在done()中归还
+ * @author shanxuecheng
+ *
+ */
+class EvaluationTask extends FutureTask<Valuable> {
+	
+	private final ExpressionService service;
+	
+	private final TenantQueue queue;
+	
+	private volatile ScheduledFuture<?> deadlineTimer;
+	
+	/**
+	 * 是否已提交给执行器
+	 */
+	private volatile boolean dispatched = false;
+	
+	private final AtomicBoolean released = new AtomicBoolean();
+	
+	EvaluationTask(Callable<Valuable> callable, ExpressionService service, TenantQueue queue) {
+		super(callable);
+		this.service = service;
+		this.queue = queue;
+	}
+	
+	TenantQueue getQueue() {
+		return queue;
+	}
+	
+	/**
+	 * 标记已提交给执行器，此后由执行器中的包装归还排队名额
+	 */
+	void setDispatched() {
+		dispatched = true;
+	}
+	
+	/**
+	 * 归还排队名额，多次调用只归还一次
+	 */
+	void release() {
+		if(released.compareAndSet(false, true))
+			service.finished();
+	}
+	
+	void setDeadlineTimer(ScheduledFuture<?> deadlineTimer) {
+		this.deadlineTimer = deadlineTimer;
+		//定时器设置前任务可能已结束
+		if(isDone())
+			deadlineTimer.cancel(false);
+	}
+	
+	@Override
+	protected void done() {
+		queue.remove(this);
+		ScheduledFuture<?> timer = deadlineTimer;
+		if(timer != null)
+			timer.cancel(false);
+		if(!dispatched)
+			release();
+	}
+}
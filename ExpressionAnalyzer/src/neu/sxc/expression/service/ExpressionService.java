@@ -0,0 +1,390 @@
+package neu.sxc.expression.service;
+
+import java.io.Closeable;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import neu.sxc.expression.compile.CompiledExpression;
+import neu.sxc.expression.compile.Frame;
+import neu.sxc.expression.tokens.Valuable;
+
+/**
+ * 表达式计算服务。按id注册编译后的表达式，接受（租户，表达式id，变量值）形式的计算请求并异步执行。
+ * 计算中的请求占用一个线程，运行时支持虚拟线程（JDK 21及以上）时使用虚拟线程，
+ * 用户函数中的阻塞操作（查库、读文件）不会占住平台线程；否则退化为有界的平台线程池。
+ * 每个租户同时计算的请求数受限，超出的请求在租户队列中等待，不占用线程，
+ * 前一个请求结束时才被提交给执行器；
+ * 已接受但未结束的请求总数受限，超出时提交方收到RejectedExecutionException。
+ * 请求可设置期限，到期未结束的请求被取消（在队列中等待的直接移出，计算中的中断计算线程），get()抛出CancellationException。
+ * 开启微批后，对同一表达式的并发请求被合并为批量计算，见MicroBatcher
+ * @author shanxuecheng
+ *
+ */
+public class ExpressionService implements Closeable {
+	
+	/**
+	 * 已接受但未结束的请求数上限
+	 */
+	private final int maxPending;
+	
+	/**
+	 * 未单独设置的租户的并发上限
+	 */
+	private final int defaultTenantLimit;
+	
+	private final AtomicInteger pending = new AtomicInteger();
+	
+	private final Map<String, CompiledExpression> expressions = new ConcurrentHashMap<String, CompiledExpression>();
+	
+	private final Map<String, TenantQueue> tenantQueues = new ConcurrentHashMap<String, TenantQueue>();
+	
+	private final ExecutorService executor;
+	
+	private final boolean virtualThreads;
+	
+	/**
+	 * 期限定时器
+	 */
+	private final ScheduledThreadPoolExecutor timer;
+	
+	/**
+	 * 微批大小上限，小于等于1表示不合并请求
+	 */
+	private volatile int batchSize = 1;
+	
+	private volatile long batchWaitNanos;
+	
+	private volatile boolean columnarBatching = false;
+	
+	/**
+	 * 按表达式id保存的微批
+	 */
+	private final Map<String, MicroBatcher> batchers = new ConcurrentHashMap<String, MicroBatcher>();
+	
+	private volatile boolean closed = false;
+	
+	/**
+	 * 不支持虚拟线程时，平台线程数为maxPending与处理器数的8倍中的较小者
+	 * @param maxPending 已接受但未结束的请求数上限
+	 * @param defaultTenantLimit 每个租户同时计算的请求数上限
+	 */
+	public ExpressionService(int maxPending, int defaultTenantLimit) {
+		this(maxPending, defaultTenantLimit, Math.min(maxPending, Runtime.getRuntime().availableProcessors() * 8));
+	}
+	
+	/**
+	 * @param maxPending 已接受但未结束的请求数上限
+	 * @param defaultTenantLimit 每个租户同时计算的请求数上限
+	 * @param maxThreads 不支持虚拟线程时的平台线程数上限，超出的请求在执行器队列中等待
+	 */
+	public ExpressionService(int maxPending, int defaultTenantLimit, int maxThreads) {
+		if(maxPending <= 0 || defaultTenantLimit <= 0 || maxThreads <= 0)
+			throw new IllegalArgumentException("Limits must be positive.");
+		this.maxPending = maxPending;
+		this.defaultTenantLimit = defaultTenantLimit;
+		ExecutorService virtualExecutor = newVirtualThreadExecutor();
+		this.virtualThreads = virtualExecutor != null;
+		if(virtualThreads) {
+			this.executor = virtualExecutor;
+		} else {
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), newThreadFactory("expression-service-"));
+			pool.allowCoreThreadTimeOut(true);
+			this.executor = pool;
+		}
+		this.timer = new ScheduledThreadPoolExecutor(1, newThreadFactory("expression-service-timer-"));
+		this.timer.setRemoveOnCancelPolicy(true);
+	}
+	
+	/**
+	 * 通过反射创建虚拟线程执行器，使代码在JDK 21以前的运行时上也能编译运行
+	 * @return 运行时不支持虚拟线程时返回null
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+	
+	private static ThreadFactory newThreadFactory(final String prefix) {
+		return new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+	
+	/**
+	 * @return 是否使用虚拟线程
+	 */
+	public boolean isUsingVirtualThreads() {
+		return virtualThreads;
+	}
+	
+	/**
+	 * 注册表达式，同id的表达式被替换，已提交的请求仍使用提交时的表达式
+	 * @param id
+	 * @param expression
+	 */
+	public void register(String id, CompiledExpression expression) {
+		if(id == null || expression == null)
+			throw new IllegalArgumentException("Expression id and expression can not be null.");
+		expressions.put(id, expression);
+	}
+	
+	/**
+	 * 编译并注册表达式
+	 * @param id
+	 * @param source 表达式源码
+	 * @return 编译结果
+	 */
+	public CompiledExpression register(String id, String source) {
+		CompiledExpression compiled = CompiledExpression.compile(source);
+		register(id, compiled);
+		return compiled;
+	}
+	
+	public void unregister(String id) {
+		expressions.remove(id);
+		batchers.remove(id);
+	}
+	
+	public CompiledExpression getExpression(String id) {
+		return expressions.get(id);
+	}
+	
+	/**
+	 * 设置租户并发上限。已提交的请求仍在原队列中按原上限执行
+	 * @param tenant
+	 * @param limit
+	 */
+	public void setTenantLimit(String tenant, int limit) {
+		if(limit <= 0)
+			throw new IllegalArgumentException("Tenant limit must be positive.");
+		tenantQueues.put(tenant, new TenantQueue(limit));
+	}
+	
+	private TenantQueue getQueue(String tenant) {
+		TenantQueue queue = tenantQueues.get(tenant);
+		if(queue == null) {
+			TenantQueue created = new TenantQueue(defaultTenantLimit);
+			queue = tenantQueues.putIfAbsent(tenant, created);
+			if(queue == null)
+				queue = created;
+		}
+		return queue;
+	}
+	
+	/**
+	 * 开启微批，对同一表达式的并发请求在maxWait内被合并为一次批量计算
+	 * @param maxBatchSize 批大小上限，小于等于1时关闭微批
+	 * @param maxWait 批中第一个请求最长等待时间
+	 * @param unit
+	 * @param columnar 是否尝试以列计算模式计算整批，见MicroBatcher.setColumnar
+	 */
+	public void setBatching(int maxBatchSize, long maxWait, TimeUnit unit, boolean columnar) {
+		this.batchWaitNanos = unit.toNanos(maxWait);
+		this.columnarBatching = columnar;
+		this.batchSize = maxBatchSize;
+		batchers.clear();
+	}
+	
+	/**
+	 * 获取表达式对应的微批，表达式被重新注册或微批设置改变后重新创建
+	 * @param id
+	 * @param expression
+	 * @return 未开启微批时返回null
+	 */
+	private MicroBatcher getBatcher(String id, CompiledExpression expression) {
+		int size = batchSize;
+		if(size <= 1)
+			return null;
+		MicroBatcher batcher = batchers.get(id);
+		if(batcher == null || batcher.getExpression() != expression 
+				|| batcher.getMaxBatchSize() != size || batcher.getMaxWaitNanos() != batchWaitNanos) {
+			batcher = new MicroBatcher(expression, size, batchWaitNanos, TimeUnit.NANOSECONDS);
+			batcher.setColumnar(columnarBatching);
+			batchers.put(id, batcher);
+		}
+		return batcher;
+	}
+	
+	/**
+	 * @return 已接受但未结束的请求数，被取消但计算线程尚未退出的请求也计入
+	 */
+	public int getPendingCount() {
+		return pending.get();
+	}
+	
+	/**
+	 * 提交不设期限的计算请求
+	 * @param tenant
+	 * @param expressionId
+	 * @param bindings 变量值
+	 * @return
+	 */
+	public Future<Valuable> submit(String tenant, String expressionId, Map<String, ?> bindings) {
+		return submit(tenant, expressionId, bindings, 0, TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * 提交计算请求
+	 * @param tenant
+	 * @param expressionId
+	 * @param bindings 变量值
+	 * @param timeout 期限，小于等于0表示不设期限
+	 * @param unit
+	 * @return 调用cancel(true)可取消请求
+	 * @throws RejectedExecutionException 服务已关闭或未结束的请求过多
+	 */
+	public Future<Valuable> submit(String tenant, final String expressionId, 
+			final Map<String, ?> bindings, long timeout, TimeUnit unit) {
+		if(tenant == null)
+			throw new IllegalArgumentException("Tenant can not be null.");
+		final CompiledExpression expression = expressions.get(expressionId);
+		if(expression == null)
+			throw new IllegalArgumentException("Unknown expression:" + expressionId + ".");
+		if(closed)
+			throw new RejectedExecutionException("Expression service is closed.");
+		if(pending.incrementAndGet() > maxPending) {
+			pending.decrementAndGet();
+			throw new RejectedExecutionException("Too many pending evaluations:" + maxPending + ".");
+		}
+		
+		final long deadline = timeout > 0 ? System.nanoTime() + unit.toNanos(timeout) : 0;
+		final EvaluationTask task = new EvaluationTask(new Callable<Valuable>() {
+			@Override
+			public Valuable call() throws Exception {
+				MicroBatcher batcher = getBatcher(expressionId, expression);
+				if(batcher != null)
+					return batcher.evaluate(bindings);
+				Frame frame = expression.newFrame();
+				expression.bind(frame, bindings);
+				return expression.evaluate(frame);
+			}
+		}, this, getQueue(tenant));
+		
+		if(task.getQueue().offer(task)) {
+			try {
+				dispatch(task);
+			} catch (RejectedExecutionException e) {
+				//执行器已关闭，任务不会再运行
+				task.cancel(false);
+				task.release();
+				throw e;
+			}
+		}
+		if(deadline != 0) {
+			try {
+				task.setDeadlineTimer(timer.schedule(new Runnable() {
+					@Override
+					public void run() {
+						task.cancel(true);
+					}
+				}, deadline - System.nanoTime(), TimeUnit.NANOSECONDS));
+			} catch (RejectedExecutionException e) {
+				//提交期间服务被关闭，无法保证期限
+				task.cancel(true);
+				throw e;
+			}
+		}
+		return task;
+	}
+	
+	/**
+	 * 将已取得租户名额的请求提交给执行器，请求结束后名额转给租户队列中的下一个请求。
+	 * 被取消的请求在计算线程退出后才归还排队名额，未结束的计算不会超出maxPending
+	 * @param task
+	 */
+	private void dispatch(final EvaluationTask task) {
+		task.setDispatched();
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					task.run();
+				} finally {
+					task.release();
+					EvaluationTask next = task.getQueue().next();
+					if(next != null)
+						dispatch(next);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * 请求的计算线程退出或请求在队列中被取消时由EvaluationTask调用。服务已关闭且所有请求都已结束时关闭执行器
+	 */
+	void finished() {
+		if(pending.decrementAndGet() == 0 && closed)
+			executor.shutdown();
+	}
+	
+	/**
+	 * 提交计算请求并等待结果，超时后取消请求
+	 * @param tenant
+	 * @param expressionId
+	 * @param bindings
+	 * @param timeout 期限，须大于0
+	 * @param unit
+	 * @return
+	 * @throws InterruptedException
+	 * @throws ExecutionException 计算抛出的异常被包装在其中
+	 * @throws TimeoutException
+	 */
+	public Valuable evaluate(String tenant, String expressionId, Map<String, ?> bindings, 
+			long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		Future<Valuable> future = submit(tenant, expressionId, bindings, timeout, unit);
+		try {
+			return future.get(timeout, unit);
+		} finally {
+			future.cancel(true);
+		}
+	}
+	
+	/**
+	 * 关闭服务，不再接受新请求，已接受的请求（含在租户队列中等待的）继续执行，全部结束后关闭执行器
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		if(pending.get() == 0)
+			executor.shutdown();
+		timer.shutdown();
+	}
+	
+	/**
+	 * 关闭服务并等待已接受的请求结束
+	 * @param timeout
+	 * @param unit
+	 * @return 请求是否在超时前全部结束
+	 * @throws InterruptedException
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		close();
+		return executor.awaitTermination(timeout, unit);
+	}
+}
@@ -0,0 +1,253 @@
+package neu.sxc.expression.service;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import neu.sxc.expression.compile.CompiledExpression;
+import neu.sxc.expression.compile.Frame;
+import neu.sxc.expression.compile.vector.Column;
+import neu.sxc.expression.compile.vector.ColumnBatch;
+import neu.sxc.expression.compile.vector.VectorizedExpression;
+import neu.sxc.expression.tokens.Valuable;
+
+/**
+ * 微批。将短时间窗口内对同一表达式的并发单条计算合并为一次批量计算，
+ * 批的准备开销（分配帧、编译列计算程序）由整批分摊，每个调用方仍得到自己那一行的结果或异常。
+ * 窗口内第一个请求的线程等待至多maxWait，或直到批满，随后在自己的线程中计算整批；
+ * 其余请求的线程阻塞等待，因此宜在虚拟线程或ExpressionService中使用。
+ * 对象线程安全
+ * @author shanxuecheng
+ *
+ */
+public class MicroBatcher {
+	
+	private final CompiledExpression expression;
+	
+	private final VectorizedExpression vectorized;
+	
+	private final int maxBatchSize;
+	
+	private final long maxWaitNanos;
+	
+	/**
+	 * 是否尝试以列计算模式计算整批
+	 */
+	private volatile boolean columnar = false;
+	
+	/**
+	 * 正在收集请求的批
+	 */
+	private PendingBatch current;
+	
+	private final Object lock = new Object();
+	
+	/**
+	 * @param expression
+	 * @param maxBatchSize 批大小上限
+	 * @param maxWait 第一个请求最长等待时间
+	 * @param unit
+	 */
+	public MicroBatcher(CompiledExpression expression, int maxBatchSize, long maxWait, TimeUnit unit) {
+		if(maxBatchSize <= 0)
+			throw new IllegalArgumentException("Batch size must be positive: " + maxBatchSize + ".");
+		this.expression = expression;
+		this.vectorized = new VectorizedExpression(expression);
+		this.maxBatchSize = maxBatchSize;
+		this.maxWaitNanos = unit.toNanos(maxWait);
+	}
+	
+	public CompiledExpression getExpression() {
+		return expression;
+	}
+	
+	public int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+	
+	public long getMaxWaitNanos() {
+		return maxWaitNanos;
+	}
+	
+	/**
+	 * 设置是否以列计算模式计算整批。
+	 * 列计算中数值以double计算，与逐行计算的BigDecimal结果可能有精度差异，默认关闭。
+	 * 变量值类型不一致或不支持列计算时仍逐行计算
+	 * @param columnar
+	 */
+	public void setColumnar(boolean columnar) {
+		this.columnar = columnar;
+	}
+	
+	public boolean isColumnar() {
+		return columnar;
+	}
+	
+	/**
+	 * 计算一条请求，与并发到达的其他请求合并计算
+	 * @param bindings 变量值
+	 * @return 该请求的结果
+	 * @throws InterruptedException 等待批结果时被中断
+	 */
+	public Valuable evaluate(Map<String, ?> bindings) throws InterruptedException {
+		PendingBatch batch;
+		int index;
+		boolean leader;
+		synchronized(lock) {
+			leader = current == null;
+			if(leader)
+				current = new PendingBatch(Thread.currentThread(), maxBatchSize);
+			batch = current;
+			index = batch.rows.size();
+			batch.rows.add(bindings);
+			if(batch.rows.size() >= maxBatchSize) {
+				seal(batch);
+				if(!leader)
+					LockSupport.unpark(batch.leader);
+			}
+		}
+		
+		if(leader) {
+			long deadline = System.nanoTime() + maxWaitNanos;
+			long remaining;
+			//被中断时提前封闭，该批仍须计算完成以免其余请求一直等待
+			while(!batch.sealed && (remaining = deadline - System.nanoTime()) > 0
+					&& !Thread.currentThread().isInterrupted())
+				LockSupport.parkNanos(this, remaining);
+			synchronized(lock) {
+				seal(batch);
+			}
+			run(batch);
+		} else {
+			batch.await();
+		}
+		return batch.get(index);
+	}
+	
+	private void seal(PendingBatch batch) {
+		batch.sealed = true;
+		if(current == batch)
+			current = null;
+	}
+	
+	/**
+	 * 计算整批，各行的异常互不影响
+	 * @param batch
+	 */
+	private void run(PendingBatch batch) {
+		List<Map<String, ?>> rows = batch.rows;
+		int rowCount = rows.size();
+		Valuable[] results = new Valuable[rowCount];
+		RuntimeException[] errors = new RuntimeException[rowCount];
+		try {
+			if(!columnar || rowCount == 1 || !evaluateColumnar(rows, results)) {
+				Frame frame = expression.newFrame();
+				for(int i=0; i<rowCount; i++) {
+					try {
+						expression.bind(frame, rows.get(i));
+						results[i] = expression.evaluate(frame);
+					} catch (RuntimeException e) {
+						errors[i] = e;
+					}
+				}
+			}
+		} finally {
+			batch.finish(results, errors);
+		}
+	}
+	
+	/**
+	 * 以列计算模式计算整批
+	 * @param rows
+	 * @param results
+	 * @return 变量值无法组成列、表达式不支持列计算或计算出错时返回false，由调用方逐行计算
+	 */
+	private boolean evaluateColumnar(List<Map<String, ?>> rows, Valuable[] results) {
+		ColumnBatch batch = toColumnBatch(rows);
+		if(batch == null || !vectorized.isVectorized(batch))
+			return false;
+		Column column;
+		try {
+			column = vectorized.evaluate(batch);
+		} catch (RuntimeException e) {
+			return false;
+		}
+		for(int i=0; i<results.length; i++)
+			results[i] = column.getValuable(i);
+		return true;
+	}
+	
+	/**
+	 * 将各行变量值转换为列，同一变量在各行中的值须为同一种类型且不为空。
+	 * 只接受按行计算也接受的类型，BigDecimal须能用double精确表示，否则按行计算
+	 * @param rows
+	 * @return 无法转换时返回null
+	 */
+	private ColumnBatch toColumnBatch(List<Map<String, ?>> rows) {
+		int rowCount = rows.size();
+		ColumnBatch batch = new ColumnBatch(rowCount);
+		for(String name : expression.getVariableNames()) {
+			Object first = rows.get(0).get(name);
+			if(first == null)
+				continue;	//可能是表达式中赋值的变量
+			if(first instanceof Integer) {
+				long[] values = new long[rowCount];
+				for(int i=0; i<rowCount; i++) {
+					Object value = rows.get(i).get(name);
+					if(!(value instanceof Integer))
+						return null;
+					values[i] = (Integer)value;
+				}
+				batch.addLongs(name, values);
+			} else if(first instanceof Double || first instanceof BigDecimal) {
+				double[] values = new double[rowCount];
+				for(int i=0; i<rowCount; i++) {
+					Object value = rows.get(i).get(name);
+					if(value instanceof Double) {
+						values[i] = (Double)value;
+					} else if(value instanceof BigDecimal) {
+						BigDecimal decimal = (BigDecimal)value;
+						values[i] = decimal.doubleValue();
+						if(Double.isInfinite(values[i]) 
+								|| new BigDecimal(values[i]).compareTo(decimal) != 0)
+							return null;
+					} else {
+						return null;
+					}
+				}
+				batch.addDoubles(name, values);
+			} else if(first instanceof Boolean) {
+				boolean[] values = new boolean[rowCount];
+				for(int i=0; i<rowCount; i++) {
+					Object value = rows.get(i).get(name);
+					if(!(value instanceof Boolean))
+						return null;
+					values[i] = (Boolean)value;
+				}
+				batch.addBooleans(name, values);
+			} else if(first instanceof String) {
+				String[] values = new String[rowCount];
+				for(int i=0; i<rowCount; i++) {
+					Object value = rows.get(i).get(name);
+					if(!(value instanceof String))
+						return null;
+					values[i] = (String)value;
+				}
+				batch.addStrings(name, values);
+			} else {
+				return null;
+			}
+		}
+		//首行为空的变量在其余行中也须为空
+		for(String name : expression.getVariableNames()) {
+			if(batch.getColumn(name) != null)
+				continue;
+			for(int i=1; i<rowCount; i++)
+				if(rows.get(i).get(name) != null)
+					return null;
+		}
+		return batch;
+	}
+}
@@ -0,0 +1,61 @@
+package neu.sxc.expression.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import neu.sxc.expression.tokens.Valuable;
+
+/**
+ * 微批中正在收集或计算的一批请求。
+ * 第一个请求的线程为批的领头线程，负责在批封闭后计算整批，其余线程等待计算结束
+ * @author shanxuecheng
+ *
+ */
+class PendingBatch {
+	
+	final Thread leader;
+	
+	final List<Map<String, ?>> rows;
+	
+	/**
+	 * 封闭后不再接受请求
+	 */
+	volatile boolean sealed = false;
+	
+	Valuable[] results;
+	
+	/**
+	 * 各行计算抛出的异常
+	 */
+	RuntimeException[] errors;
+	
+	private final CountDownLatch finished = new CountDownLatch(1);
+	
+	PendingBatch(Thread leader, int capacity) {
+		this.leader = leader;
+		this.rows = new ArrayList<Map<String, ?>>(capacity);
+	}
+	
+	void finish(Valuable[] results, RuntimeException[] errors) {
+		this.results = results;
+		this.errors = errors;
+		finished.countDown();
+	}
+	
+	void await() throws InterruptedException {
+		finished.await();
+	}
+	
+	/**
+	 * 取某行的结果，该行计算失败时抛出其异常
+	 * @param index
+	 * @return
+	 */
+	Valuable get(int index) {
+		if(errors[index] != null)
+			throw errors[index];
+		return results[index];
+	}
+}
@@ -0,0 +1,50 @@
+package neu.sxc.expression.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import neu.sxc.expression.compile.CompiledExpression;
+import neu.sxc.expression.compile.Frame;
+import neu.sxc.expression.tokens.Valuable;
+
+/**
+ * 流式计算中的一批记录
+ * @author shanxuecheng
+ *
+ */
+class RecordBatch {
+	
+	final long number;
+	
+	/**
+	 * 第一条记录的序号
+	 */
+	final long start;
+	
+	final List<Map<String, ?>> records;
+	
+	RecordBatch(long number, long start, List<Map<String, ?>> records) {
+		this.number = number;
+		this.start = start;
+		this.records = records;
+	}
+	
+	List<EvaluationResult> evaluate(CompiledExpression expression) {
+		List<EvaluationResult> results = new ArrayList<EvaluationResult>(records.size());
+		Frame frame = expression.newFrame();
+		for(int i=0; i<records.size(); i++) {
+			Map<String, ?> record = records.get(i);
+			Valuable value = null;
+			RuntimeException error = null;
+			try {
+				expression.bind(frame, record);
+				value = expression.evaluate(frame);
+			} catch (RuntimeException e) {
+				error = e;
+			}
+			results.add(new EvaluationResult(start + i, record, value, error));
+		}
+		return results;
+	}
+}
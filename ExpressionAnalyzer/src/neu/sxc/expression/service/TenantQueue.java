@@ -0,0 +1,60 @@
+package neu.sxc.expression.service;
+
+import java.util.ArrayDeque;
+
+/**
+ * 租户的请求队列。同时计算的请求数不超过上限，超出的请求在队列中等待，不占用线程；
+ * 一个请求结束时从队列中取出下一个请求，计算名额直接转给它
+ * @author shanxuecheng
+ *
+ */
+final class TenantQueue {
+	
+	private final int limit;
+	
+	/**
+	 * 已提交给执行器的请求数
+	 */
+	private int running = 0;
+	
+	private final ArrayDeque<EvaluationTask> waiting = new ArrayDeque<EvaluationTask>();
+	
+	TenantQueue(int limit) {
+		this.limit = limit;
+	}
+	
+	/**
+	 * 加入请求
+	 * @param task
+	 * @return 有空闲名额、可立即提交给执行器时返回true，否则请求进入队列
+	 */
+	synchronized boolean offer(EvaluationTask task) {
+		if(running < limit) {
+			running++;
+			return true;
+		}
+		waiting.add(task);
+		return false;
+	}
+	
+	/**
+	 * 一个请求结束，取出下一个未结束的请求
+	 * @return 没有等待的请求时返回null，名额被归还
+	 */
+	synchronized EvaluationTask next() {
+		EvaluationTask task;
+		while((task = waiting.poll()) != null)
+			if(!task.isDone())
+				return task;
+		running--;
+		return null;
+	}
+	
+	/**
+	 * 移除在队列中被取消的请求
+	 * @param task
+	 */
+	synchronized void remove(EvaluationTask task) {
+		waiting.remove(task);
+	}
+}
@@ -0,0 +1,79 @@
+package neu.sxc.expression.syntax;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * 值尚未加载完成。
+ * 函数或变量解析器返回未完成的CompletableFuture时抛出，AsyncEvaluator捕获后挂起语句，
+ * 值加载完成后重新执行；同步计算时作为错误抛出。
+ * 节点的一个参数挂起时仍计算其余参数，合并它们等待的值后再挂起，使同一语句中互不依赖的值在同一轮中加载
+ * @author shanxuecheng
+ *
+ */
+@SuppressWarnings("serial")
+public class PendingValueException extends RuntimeException {
+	
+	/**
+	 * 等待的值，至少一个
+	 */
+	private final List<CompletableFuture<?>> futures = new ArrayList<CompletableFuture<?>>(2);
+	
+	public PendingValueException(CompletableFuture<?> future) {
+		//作为控制流频繁抛出，不记录调用栈
+		super("Value is not loaded yet, evaluate with AsyncEvaluator.", null, false, false);
+		futures.add(future);
+	}
+	
+	/**
+	 * @return 第一个等待的值
+	 */
+	public CompletableFuture<?> getFuture() {
+		return futures.get(0);
+	}
+	
+	/**
+	 * @return 所有等待的值
+	 */
+	public List<CompletableFuture<?>> getFutures() {
+		return futures;
+	}
+	
+	/**
+	 * 合并同一节点中多个参数的挂起
+	 * @param pending 之前的参数的挂起，可为null
+	 * @param next
+	 * @return
+	 */
+	public static PendingValueException combine(PendingValueException pending, PendingValueException next) {
+		if(pending == null)
+			return next;
+		pending.futures.addAll(next.futures);
+		return pending;
+	}
+	
+	/**
+	 * 取已完成的值
+	 * @param future
+	 * @return
+	 * @throws PendingValueException 尚未完成时
+	 * @throws RuntimeException 加载失败时抛出失败原因
+	 */
+	public static Object getNow(CompletableFuture<?> future) {
+		if(!future.isDone())
+			throw new PendingValueException(future);
+		try {
+			return future.join();
+		} catch(CompletionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			throw new RuntimeException("Failed to load value: " + cause, cause);
+		} catch(CancellationException e) {
+			throw new RuntimeException("Loading was cancelled.", e);
+		}
+	}
+}
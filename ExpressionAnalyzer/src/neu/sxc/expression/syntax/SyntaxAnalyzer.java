@@ -5,6 +5,7 @@ import java.util.List;
 import java.util.Map;
 
 import neu.sxc.expression.lexical.LexicalConstants;
+import neu.sxc.expression.monitor.Profiler;
 import neu.sxc.expression.syntax.function.Function;
 import neu.sxc.expression.syntax.operator.AssignOperator;
 import neu.sxc.expression.syntax.operator.Operator;
@@ -73,8 +74,60 @@ public class SyntaxAnalyzer {
 	 */
 	private Stack<Boolean> conditionStack = new Stack<Boolean>();
 	
+	/**
+	 * 本次解析实际执行的语句数
+	 */
+	private int sentenceCount;
+	
+	/**
+	 * 是否记录执行路径
+	 */
+	private boolean branchRecording = false;
+	
+	/**
+	 * 执行路径，仅在branchRecording为true时记录
+	 */
+	private StringBuilder branchPath;
+	
+	/**
+	 * 性能剖析器，为null时不做统计
+	 */
+	private Profiler profiler;
+	
 	public SyntaxAnalyzer() {}
 	
+	/**
+	 * 设置性能剖析器，设为null时关闭剖析
+	 * @param profiler
+	 */
+	public void setProfiler(Profiler profiler) {
+		this.profiler = profiler;
+	}
+	
+	/**
+	 * 设置是否记录执行路径，默认不记录
+	 * @param branchRecording
+	 */
+	public void setBranchRecording(boolean branchRecording) {
+		this.branchRecording = branchRecording;
+	}
+	
+	/**
+	 * 获取最近一次解析的执行路径，格式为“行号:T|F”，以逗号分隔；未记录时返回null
+	 * @return
+	 */
+	public String getBranchPath() {
+		return branchPath == null ? null : branchPath.toString();
+	}
+	
+	/**
+	 * 获取最近一次解析执行的语句数
+	 * @return
+	 */
+	public int getSentenceCount() {
+		return sentenceCount;
+	}
+	
 	/**
 	 * 获取所有参数
 	 * @return
@@ -105,6 +158,8 @@ public class SyntaxAnalyzer {
 	public Valuable analysis(List<TerminalToken> tokens, Map<String, Valuable> variableInitialValues)
 				throws SyntaxException {
 		this.finalResult = null;
+		this.sentenceCount = 0;
+		this.branchPath = branchRecording ? new StringBuilder() : null;
 		
 		//构造初始上下文，并压入上下文栈
 		conditionStack.push(true);
@@ -153,7 +208,7 @@ public class SyntaxAnalyzer {
 			case CONTEXT_OPERATION:
 				try {
 					//上下文操作
-					contextOperate((ContextOperationToken)syntaxStackTop);
+					contextOperate((ContextOperationToken)syntaxStackTop, currentToken);
 				} catch (SyntaxException e) {
 					throw new SyntaxException(e.getMessage(), currentToken, e);
 				}
@@ -196,6 +251,8 @@ public class SyntaxAnalyzer {
 		case DELIMITER:
 			if(LexicalConstants.OPERATORS.contains(currentToken.getText()))
 				operatorTokenStack.push((DelimiterToken)currentToken);
+			else if(conditionStack.top() && currentToken.equalsInGrammar(grammar.getGrammarEnd()))
+				sentenceCount++;	//分支有效时，语句结束
 			break;
 		case FUNCTION:
 			functionTokenStack.push((FunctionToken)currentToken);	//压入函数栈
@@ -237,7 +294,11 @@ public class SyntaxAnalyzer {
 		//弹出操作符，如果发生错误，记录错误位置
 		DelimiterToken operatorToken = operatorTokenStack.pop();
 		try {
+			long start = profiler == null ? 0 : System.nanoTime();
 			Valuable result = operator.execute(arguments);
+			if(profiler != null)
+				profiler.recordOperator(operator.getOperatorName(), operatorToken.getLine(),
+						System.nanoTime() - start);
 			//如果是赋值操作，则需要更新被赋值变量到variableTable
 			if(operator instanceof AssignOperator){
 				VariableToken variable = (VariableToken)arguments[0];
@@ -264,7 +325,11 @@ public class SyntaxAnalyzer {
 		//弹出函数符号，如果发生错误，记录错误位置
 		FunctionToken functionToken = functionTokenStack.pop();
 		try {
+			long start = profiler == null ? 0 : System.nanoTime();
 			Valuable result = function.execute(arguments);
+			if(profiler != null)
+				profiler.recordFunction(function.getName(), functionToken.getLine(),
+						System.nanoTime() - start);
 			return result;
 		} catch(ArgumentsMismatchException e) {
 			throw new ArgumentsMismatchException(e.getMessage(), functionToken, e);
@@ -304,9 +369,11 @@ public class SyntaxAnalyzer {
 	/**
 	 * 上下文操作
 	 * @param contextOperationToken
+	 * @param currentToken 当前Token，用于记录执行路径的位置
 	 * @throws SyntaxException
 	 */
-	private void contextOperate(ContextOperationToken contextOperationToken) throws SyntaxException {
+	private void contextOperate(ContextOperationToken contextOperationToken, TerminalToken currentToken)
+				throws SyntaxException {
 		switch(contextOperationToken.getContextOperation()) {
 		case IF_CONDITION:
 			//取if后的条件，并压入条件栈
@@ -314,8 +381,12 @@ public class SyntaxAnalyzer {
 			if(condition.getDataType() != DataType.BOOLEAN)
 				throw new SyntaxException("Type mismatch: cannot convert from " +
 						condition.getDataType().name() + " to BOOLEAN.");
-			else
+			else {
+				//仅记录所在分支有效的if条件
+				if(branchPath != null && conditionStack.top())
+					recordBranch(currentToken.getLine(), condition.getBooleanValue());
 				conditionStack.push(condition.getBooleanValue());
+			}
 			break;
 		case ELSE_CONDITION:
 			//设置else部分的条件，即从条件栈中弹出其对应的if部分的条件，取反重新压入
@@ -348,6 +419,12 @@ public class SyntaxAnalyzer {
 		}
 	}
 	
+	private void recordBranch(int line, boolean taken) {
+		if(branchPath.length() > 0)
+			branchPath.append(',');
+		branchPath.append(line).append(':').append(taken ? 'T' : 'F');
+	}
+	
 	private Valuable getVariableValue(String variableName) {
 		Context currentContext = contextStack.top();
 		return currentContext.getVariableValue(variableName);
@@ -1,6 +1,10 @@
 package neu.sxc.expression.syntax.function;
 
+import java.util.concurrent.CompletableFuture;
+
+import neu.sxc.expression.monitor.FunctionEvent;
 import neu.sxc.expression.syntax.ArgumentsMismatchException;
+import neu.sxc.expression.syntax.PendingValueException;
 import neu.sxc.expression.syntax.Executable;
 import neu.sxc.expression.tokens.DataType;
 import neu.sxc.expression.tokens.TokenBuilder;
@@ -65,13 +69,24 @@ public abstract class Function implements Executable{
 		} else {
 			throw new ArgumentsMismatchException(arguments, toString());
 		}
-		//执行函数
+		//执行函数，耗时超过阈值时记录JFR事件
+		FunctionEvent event = new FunctionEvent();
+		event.begin();
 		Object result = executeFunction(arguments);
+		event.end();
+		if(event.shouldCommit()) {
+			event.setFunctionName(functionName);
+			event.setArgumentCount(arguments.length);
+			event.commit();
+		}
+		//异步函数返回CompletableFuture，未完成时抛出PendingValueException
+		if(result instanceof CompletableFuture)
+			result = PendingValueException.getNow((CompletableFuture<?>)result);
 		return TokenBuilder.buildRuntimeValue(result);
 	}
 
 	/**
-	 * 函数执行逻辑
+	 * 函数执行逻辑。需要远程加载的函数可返回CompletableFuture，由AsyncEvaluator批量加载
 	 * @param arguments
 	 * @return
 	 */
@@ -0,0 +1,21 @@
+package neu.sxc.expression.utils;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 批量加载函数，一次加载一组键的值
+ * @author shanxuecheng
+ *
+ * @param <K> 键类型
+ * @param <V> 值类型
+ */
+public interface BatchLoadFunction<K, V> {
+	/**
+	 * 加载一组键
+	 * @param keys 去重后的键，按请求顺序排列
+	 * @return 键及其值，不含的键的值为null
+	 */
+	public CompletableFuture<Map<K, V>> load(Set<K> keys);
+}
@@ -0,0 +1,141 @@
+package neu.sxc.expression.utils;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * 定长位图，以long[]保存，第i位表示第i行是否匹配。
+ * and、or、andNot在原位图上修改并返回this，以便链式组合多个规则的结果
+ * @author shanxuecheng
+ *
+ */
+public class Bitmap {
+	
+	private final long[] words;
+	
+	/**
+	 * 位数
+	 */
+	private final int size;
+	
+	public Bitmap(int size) {
+		if(size < 0)
+			throw new IllegalArgumentException("Size must not be negative: " + size);
+		this.size = size;
+		this.words = new long[(size + 63) >>> 6];
+	}
+	
+	private Bitmap(long[] words, int size) {
+		this.words = words;
+		this.size = size;
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * @return 保存位图的数组，第i位位于words[i >>> 6]的第(i & 63)位
+	 */
+	public long[] getWords() {
+		return words;
+	}
+	
+	public boolean get(int index) {
+		checkIndex(index);
+		return (words[index >>> 6] & (1L << index)) != 0;
+	}
+	
+	public void set(int index) {
+		checkIndex(index);
+		words[index >>> 6] |= 1L << index;
+	}
+	
+	public void clear(int index) {
+		checkIndex(index);
+		words[index >>> 6] &= ~(1L << index);
+	}
+	
+	/**
+	 * @return 置位的个数
+	 */
+	public int cardinality() {
+		int count = 0;
+		for(long word : words)
+			count += Long.bitCount(word);
+		return count;
+	}
+	
+	/**
+	 * 返回从from开始的下一个置位的下标
+	 * @param from
+	 * @return 没有时返回-1
+	 */
+	public int nextSetBit(int from) {
+		if(from >= size)
+			return -1;
+		int index = from >>> 6;
+		long word = words[index] & (-1L << from);
+		while(true) {
+			if(word != 0)
+				return (index << 6) + Long.numberOfTrailingZeros(word);
+			if(++index == words.length)
+				return -1;
+			word = words[index];
+		}
+	}
+	
+	public Bitmap and(Bitmap other) {
+		checkSize(other);
+		for(int i=0; i<words.length; i++)
+			words[i] &= other.words[i];
+		return this;
+	}
+	
+	public Bitmap or(Bitmap other) {
+		checkSize(other);
+		for(int i=0; i<words.length; i++)
+			words[i] |= other.words[i];
+		return this;
+	}
+	
+	public Bitmap andNot(Bitmap other) {
+		checkSize(other);
+		for(int i=0; i<words.length; i++)
+			words[i] &= ~other.words[i];
+		return this;
+	}
+	
+	public Bitmap copy() {
+		return new Bitmap(words.clone(), size);
+	}
+	
+	public BitSet toBitSet() {
+		return BitSet.valueOf(words);
+	}
+	
+	private void checkIndex(int index) {
+		if(index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+	}
+	
+	private void checkSize(Bitmap other) {
+		if(other.size != size)
+			throw new IllegalArgumentException("Bitmap sizes differ: " + size + " != " + other.size + ".");
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if(this == obj)
+			return true;
+		if(!(obj instanceof Bitmap))
+			return false;
+		Bitmap other = (Bitmap)obj;
+		return size == other.size && Arrays.equals(words, other.words);
+	}
+	
+	@Override
+	public int hashCode() {
+		return 31 * size + Arrays.hashCode(words);
+	}
+}
@@ -0,0 +1,105 @@
+package neu.sxc.expression.utils;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+/**
+ * 批量加载器。
+ * load只登记键并返回值的Future，dispatch时将登记的键合并为一次批量加载。
+ * 同一个键只加载一次，值缓存到clear为止。线程安全
+ * @author shanxuecheng
+ *
+ * @param <K> 键类型
+ * @param <V> 值类型
+ */
+public class DataLoader<K, V> {
+	
+	private final BatchLoadFunction<K, V> batchFunction;
+	
+	/**
+	 * 已请求的键及其值
+	 */
+	private final Map<K, CompletableFuture<V>> cache = new LinkedHashMap<K, CompletableFuture<V>>();
+	
+	/**
+	 * 尚未加载的键
+	 */
+	private Map<K, CompletableFuture<V>> queue = new LinkedHashMap<K, CompletableFuture<V>>();
+	
+	/**
+	 * 已发起的批量加载次数
+	 */
+	private int dispatchCount = 0;
+	
+	public DataLoader(BatchLoadFunction<K, V> batchFunction) {
+		this.batchFunction = batchFunction;
+	}
+	
+	/**
+	 * 请求键的值，值在dispatch后加载
+	 * @param key
+	 * @return
+	 */
+	public synchronized CompletableFuture<V> load(K key) {
+		CompletableFuture<V> future = cache.get(key);
+		if(future == null) {
+			future = new CompletableFuture<V>();
+			cache.put(key, future);
+			queue.put(key, future);
+		}
+		return future;
+	}
+	
+	/**
+	 * 将登记的键合并为一次批量加载
+	 * @return 是否发起了加载
+	 */
+	public boolean dispatch() {
+		final Map<K, CompletableFuture<V>> batch;
+		synchronized(this) {
+			if(queue.isEmpty())
+				return false;
+			batch = queue;
+			queue = new LinkedHashMap<K, CompletableFuture<V>>();
+			dispatchCount++;
+		}
+		Set<K> keys = new LinkedHashSet<K>(batch.keySet());
+		CompletableFuture<Map<K, V>> loaded;
+		try {
+			loaded = batchFunction.load(keys);
+		} catch(RuntimeException e) {
+			loaded = new CompletableFuture<Map<K, V>>();
+			loaded.completeExceptionally(e);
+		}
+		loaded.whenComplete(new BiConsumer<Map<K, V>, Throwable>() {
+			public void accept(Map<K, V> values, Throwable error) {
+				for(Map.Entry<K, CompletableFuture<V>> entry : batch.entrySet()) {
+					if(error != null)
+						entry.getValue().completeExceptionally(error);
+					else
+						entry.getValue().complete(values == null ? null : values.get(entry.getKey()));
+				}
+			}
+		});
+		return true;
+	}
+	
+	/**
+	 * @return 已发起的批量加载次数
+	 */
+	public synchronized int getDispatchCount() {
+		return dispatchCount;
+	}
+	
+	/**
+	 * 清除缓存的值，尚未加载的键保留
+	 */
+	public synchronized void clear() {
+		cache.clear();
+		cache.putAll(queue);
+	}
+}
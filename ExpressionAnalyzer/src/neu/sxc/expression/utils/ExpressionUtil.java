@@ -53,4 +53,24 @@ public class ExpressionUtil {
 		target = target.replaceAll("\\\\\"", "\"");
 		return target;
 	}
+
+	/**
+	 * 计算表达式指纹（FNV-1a 64位哈希），用于在监控数据中标识表达式
+	 * @param expression
+	 * @return 16位十六进制字符串
+	 */
+	public static String fingerprint(String expression) {
+		long hash = 0xcbf29ce484222325L;
+		if(expression != null) {
+			for(int i=0; i<expression.length(); i++) {
+				hash ^= expression.charAt(i);
+				hash *= 0x100000001b3L;
+			}
+		}
+		String hex = Long.toHexString(hash);
+		StringBuilder sb = new StringBuilder(16);
+		for(int i=hex.length(); i<16; i++)
+			sb.append('0');
+		return sb.append(hex).toString();
+	}
 }
@@ -0,0 +1,89 @@
+package neu.sxc.expression.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 有界无锁环形缓冲区，支持多生产者、单消费者。缓冲区满时新元素被丢弃
+ * @author shanxuecheng
+ *
+ * @param <T>
+ */
+public class RingBuffer<T> {
+	
+	private final AtomicReferenceArray<T> buffer;
+	
+	private final int mask;
+	
+	/**
+	 * 下一个写入位置，由生产者通过CAS推进
+	 */
+	private final AtomicLong tail = new AtomicLong();
+	
+	/**
+	 * 下一个读取位置，仅由消费者推进
+	 */
+	private final AtomicLong head = new AtomicLong();
+	
+	/**
+	 * 因缓冲区满而丢弃的元素个数
+	 */
+	private final AtomicLong dropped = new AtomicLong();
+	
+	/**
+	 * @param capacity 容量，向上取整为2的幂
+	 */
+	public RingBuffer(int capacity) {
+		if(capacity <= 0)
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		int size = Integer.highestOneBit(capacity);
+		if(size < capacity)
+			size <<= 1;
+		buffer = new AtomicReferenceArray<T>(size);
+		mask = size - 1;
+	}
+	
+	/**
+	 * 写入元素，缓冲区满时返回false
+	 * @param e
+	 * @return
+	 */
+	public boolean offer(T e) {
+		if(e == null)
+			throw new NullPointerException();
+		for(;;) {
+			long t = tail.get();
+			if(t - head.get() >= buffer.length()) {
+				dropped.incrementAndGet();
+				return false;
+			}
+			if(tail.compareAndSet(t, t + 1)) {
+				buffer.lazySet((int)(t & mask), e);
+				return true;
+			}
+		}
+	}
+	
+	/**
+	 * 读取元素，仅允许单个消费者线程调用。缓冲区为空或下一元素尚未写入完成时返回null
+	 * @return
+	 */
+	public T poll() {
+		long h = head.get();
+		int index = (int)(h & mask);
+		T e = buffer.get(index);
+		if(e == null)
+			return null;
+		buffer.lazySet(index, null);
+		head.lazySet(h + 1);
+		return e;
+	}
+	
+	public int capacity() {
+		return buffer.length();
+	}
+	
+	public long getDropped() {
+		return dropped.get();
+	}
+}
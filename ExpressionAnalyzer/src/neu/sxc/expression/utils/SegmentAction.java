@@ -0,0 +1,16 @@
+package neu.sxc.expression.utils;
+
+/**
+ * 处理一段连续行的动作
+ * @author shanxuecheng
+ *
+ */
+public interface SegmentAction {
+	/**
+	 * 处理[from, to)中的行
+	 * @param segment 段号，从0开始
+	 * @param from
+	 * @param to
+	 */
+	public void run(int segment, int from, int to);
+}
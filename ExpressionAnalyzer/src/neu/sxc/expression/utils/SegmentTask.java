@@ -0,0 +1,89 @@
+package neu.sxc.expression.utils;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 将行按固定大小分段，在ForkJoinPool中二分递归并行处理各段。
+ * 分段只取决于行数和段大小，与线程调度无关，因此按段号合并的结果是确定的
+ * @author shanxuecheng
+ *
+ */
+@SuppressWarnings("serial")
+public class SegmentTask extends RecursiveAction {
+	
+	/**
+	 * 每个工作线程平均分到的段数，多分几段以便工作窃取时负载均衡
+	 */
+	private static final int SEGMENTS_PER_WORKER = 4;
+	
+	private final SegmentAction action;
+	
+	private final int rowCount;
+	
+	/**
+	 * 段大小
+	 */
+	private final int grain;
+	
+	/**
+	 * 本任务处理的段号范围[low, high)
+	 */
+	private final int low;
+	
+	private final int high;
+	
+	private SegmentTask(SegmentAction action, int rowCount, int grain, int low, int high) {
+		this.action = action;
+		this.rowCount = rowCount;
+		this.grain = grain;
+		this.low = low;
+		this.high = high;
+	}
+	
+	/**
+	 * 计算段大小
+	 * @param pool
+	 * @param rowCount 行数
+	 * @param alignment 段大小须为其倍数
+	 * @return
+	 */
+	public static int grainOf(ForkJoinPool pool, int rowCount, int alignment) {
+		long target = (long)rowCount / ((long)pool.getParallelism() * SEGMENTS_PER_WORKER) + 1;
+		long grain = (target + alignment - 1) / alignment * alignment;
+		return (int)Math.min(Math.max(grain, alignment), Integer.MAX_VALUE / 2);
+	}
+	
+	/**
+	 * @return 段数
+	 */
+	public static int segmentCount(int rowCount, int grain) {
+		return (int)(((long)rowCount + grain - 1) / grain);
+	}
+	
+	/**
+	 * 在pool中并行处理所有段，返回时所有段都已处理完毕。
+	 * 任一段抛出的异常在调用线程中重新抛出
+	 * @param pool
+	 * @param action
+	 * @param rowCount
+	 * @param grain 段大小
+	 */
+	public static void invoke(ForkJoinPool pool, SegmentAction action, int rowCount, int grain) {
+		int segments = segmentCount(rowCount, grain);
+		if(segments == 0)
+			return;
+		pool.invoke(new SegmentTask(action, rowCount, grain, 0, segments));
+	}
+
+	@Override
+	protected void compute() {
+		if(high - low == 1) {
+			action.run(low, low * grain, (int)Math.min((long)(low + 1) * grain, rowCount));
+		} else {
+			int middle = (low + high) >>> 1;
+			invokeAll(new SegmentTask(action, rowCount, grain, low, middle),
+					new SegmentTask(action, rowCount, grain, middle, high));
+		}
+	}
+}
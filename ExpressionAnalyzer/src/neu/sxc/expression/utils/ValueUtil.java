@@ -1,13 +1,28 @@
 package neu.sxc.expression.utils;
 
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Calendar;
 
 import neu.sxc.expression.tokens.DataType;
+import neu.sxc.expression.tokens.TokenBuilder;
 import neu.sxc.expression.tokens.Valuable;
 
 
 public class ValueUtil {
+	
+	private static final Valuable TRUE = TokenBuilder.getBuilder()
+			.dataType(DataType.BOOLEAN).value(Boolean.TRUE).buildRuntimeValue();
+	
+	private static final Valuable FALSE = TokenBuilder.getBuilder()
+			.dataType(DataType.BOOLEAN).value(Boolean.FALSE).buildRuntimeValue();
+	
+	/**
+	 * 不超过该位数的有效数字可以用long表示
+	 */
+	private static final int MAX_LONG_DIGITS = 18;
+	
 	public static BigDecimal getNumberValue(Valuable valuable) {
 		if(valuable.getDataType() == DataType.NUMBER
 				&& valuable.getValue() != null)
@@ -42,5 +57,76 @@ public class ValueUtil {
 			return (Boolean) valuable.getValue();
 		return null;
 	}
+	
+	/**
+	 * 布尔值，true和false各共用一个实例
+	 */
+	public static Valuable booleanValue(boolean value) {
+		return value ? TRUE : FALSE;
+	}
+	
+	public static Valuable numberValue(BigDecimal value) {
+		return TokenBuilder.getBuilder().dataType(DataType.NUMBER).value(value).buildRuntimeValue();
+	}
+	
+	public static Valuable stringValue(String value) {
+		return TokenBuilder.getBuilder().dataType(DataType.STRING).value(value).buildRuntimeValue();
+	}
+	
+	/**
+	 * 解析buffer中[start, end)的数字：可选的正负号、带一个可选小数点的数字、可选的指数。
+	 * 不超过18位有效数字且没有指数时不经过字符串
+	 * @return 不符合数字格式时返回null
+	 */
+	public static BigDecimal parseNumber(ByteBuffer buffer, int start, int end) {
+		int i = start;
+		if(i == end)
+			return null;
+		boolean negative = false;
+		if(buffer.get(i) == '-' || buffer.get(i) == '+') {
+			negative = buffer.get(i) == '-';
+			i++;
+		}
+		long unscaled = 0;
+		int digits = 0;
+		int scale = 0;
+		boolean fraction = false;
+		for(; i<end; i++) {
+			byte b = buffer.get(i);
+			if(b >= '0' && b <= '9') {
+				unscaled = unscaled * 10 + (b - '0');
+				digits++;
+				if(fraction)
+					scale++;
+			} else if(b == '.' && !fraction) {
+				fraction = true;
+			} else {
+				break;
+			}
+		}
+		if(digits == 0 || fraction && scale == 0)
+			return null;
+		if(i == end)
+			return digits <= MAX_LONG_DIGITS ? BigDecimal.valueOf(negative ? -unscaled : unscaled, scale)
+					: new BigDecimal(ascii(buffer, start, end));
+		byte b = buffer.get(i);
+		if(b != 'e' && b != 'E')
+			return null;
+		i++;
+		if(i < end && (buffer.get(i) == '-' || buffer.get(i) == '+'))
+			i++;
+		if(i == end)
+			return null;
+		for(; i<end; i++)
+			if(buffer.get(i) < '0' || buffer.get(i) > '9')
+				return null;
+		return new BigDecimal(ascii(buffer, start, end));
+	}
+	
+	private static String ascii(ByteBuffer buffer, int start, int end) {
+		byte[] bytes = new byte[end - start];
+		buffer.get(start, bytes);
+		return new String(bytes, StandardCharsets.US_ASCII);
+	}
 
 }
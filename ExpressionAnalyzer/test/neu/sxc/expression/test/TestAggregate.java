@@ -0,0 +1,142 @@
+package neu.sxc.expression.test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import neu.sxc.expression.ExpressionFactory;
+import neu.sxc.expression.compile.Aggregate;
+import neu.sxc.expression.compile.CompiledExpression;
+import neu.sxc.expression.compile.GroupedAggregate;
+import neu.sxc.expression.compile.vector.ColumnBatch;
+import neu.sxc.expression.compile.vector.VectorizedExpression;
+
+public class TestAggregate extends TestCase {
+	
+	private static final int ROWS = 1000;
+	
+	private ColumnBatch newBatch() {
+		long[] a = new long[ROWS];
+		for(int i=0; i<ROWS; i++)
+			a[i] = i;
+		return new ColumnBatch(ROWS).addLongs("a", a);
+	}
+	
+	private List<Map<String, Object>> newRows() {
+		List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+		for(int i=0; i<ROWS; i++) {
+			Map<String, Object> row = new HashMap<String, Object>();
+			row.put("a", i);
+			rows.add(row);
+		}
+		return rows;
+	}
+	
+	public void testAggregate() {
+		//只聚合偶数行
+		CompiledExpression compiled = CompiledExpression.compile("if(a % 2 == 0) a * 2; endif");
+		Aggregate aggregate = new VectorizedExpression(compiled, 100).aggregate(newBatch(), new Aggregate());
+		assertEquals(500, aggregate.getCount());
+		assertEquals(499000.0, aggregate.getSum(), 0);
+		assertEquals(0.0, aggregate.getMin(), 0);
+		assertEquals(1996.0, aggregate.getMax(), 0);
+		assertEquals(998.0, aggregate.getAverage(), 0);
+		
+		Aggregate rows = compiled.aggregate(newRows(), new Aggregate(true));
+		assertEquals(500, rows.getCount());
+		assertEquals(0, new BigDecimal("499000").compareTo(rows.getExactSum()));
+		assertEquals(1996.0, rows.getMax(), 0);
+		
+		assertTrue(Double.isNaN(new Aggregate().getAverage()));
+	}
+	
+	public void testCompensatedSum() {
+		Aggregate aggregate = new Aggregate();
+		double naive = 0;
+		for(int i=0; i<1000000; i++) {
+			aggregate.add(0.1);
+			naive += 0.1;
+		}
+		assertEquals(100000.0, aggregate.getSum(), 1e-9);
+		assertTrue(Math.abs(naive - 100000.0) > 1e-9);
+		
+		Aggregate exact = new Aggregate(true);
+		exact.add(new BigDecimal("0.1"));
+		exact.add(new BigDecimal("0.2"));
+		assertEquals(0, new BigDecimal("0.3").compareTo(exact.getExactSum()));
+	}
+	
+	public void testGroupBy() {
+		CompiledExpression value = CompiledExpression.compile("a;");
+		CompiledExpression key = CompiledExpression.compile("a % 7;");
+		GroupedAggregate groups = new VectorizedExpression(value).aggregate(newBatch(),
+				new VectorizedExpression(key), new GroupedAggregate());
+		GroupedAggregate expected = value.aggregate(newRows(), key, new GroupedAggregate(false, 2));
+		assertEquals(7, groups.size());
+		assertEquals(expected.toMap().keySet(), groups.toMap().keySet());
+		for(long k=0; k<7; k++) {
+			assertEquals(expected.get(k).getCount(), groups.get(k).getCount());
+			assertEquals(expected.get(k).getSum(), groups.get(k).getSum(), 0);
+		}
+		assertNull(groups.get(7));
+		
+		//合并两个批次的结果
+		groups.merge(expected);
+		assertEquals(2 * expected.get(3).getCount(), groups.get(3).getCount());
+		assertEquals(2 * expected.get(3).getSum(), groups.get(3).getSum(), 0);
+		
+		try {
+			new VectorizedExpression(value).aggregate(newBatch(),
+					new VectorizedExpression(CompiledExpression.compile("a / 3;")), new GroupedAggregate());
+			fail();
+		} catch(IllegalStateException e) {
+		}
+	}
+	
+	public void testManyGroups() {
+		GroupedAggregate groups = new GroupedAggregate();
+		for(int i=0; i<10000; i++)
+			groups.add(i * 31L, 1);
+		assertEquals(10000, groups.size());
+		assertEquals(1, groups.get(31L * 9999).getCount());
+	}
+	
+	/**
+	 * 精确聚合的结果与执行路径无关
+	 */
+	public void testExactSameAsRows() {
+		double[] price = new double[ROWS];
+		List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+		for(int i=0; i<ROWS; i++) {
+			price[i] = 0.1 * (i % 3 + 1);
+			Map<String, Object> row = new HashMap<String, Object>();
+			row.put("price", BigDecimal.valueOf(price[i]));
+			rows.add(row);
+		}
+		ColumnBatch batch = new ColumnBatch(ROWS).addDoubles("price", price);
+		for(String source : new String[]{"price;", "price * 3;", "price / 7;"}) {
+			CompiledExpression compiled = CompiledExpression.compile(source);
+			Aggregate expected = compiled.aggregate(rows, new Aggregate(true));
+			Aggregate actual = new VectorizedExpression(compiled).aggregate(batch, new Aggregate(true));
+			assertEquals(source, expected.getExactSum(), actual.getExactSum());
+			assertEquals(source, expected.getExactMin(), actual.getExactMin());
+			assertEquals(source, expected.getExactMax(), actual.getExactMax());
+		}
+		Aggregate aggregate = new Aggregate(true);
+		aggregate.add(0.1);
+		aggregate.add(new BigDecimal("0.2"));
+		assertEquals(new BigDecimal("0.3"), aggregate.getExactSum());
+		
+		//最小值、最大值以BigDecimal保存
+		aggregate = new Aggregate(true);
+		aggregate.add(new BigDecimal("12345678901234567.1"));
+		aggregate.add(new BigDecimal("12345678901234567.2"));
+		Aggregate merged = new Aggregate(true).merge(aggregate);
+		assertEquals(new BigDecimal("12345678901234567.1"), merged.getExactMin());
+		assertEquals(new BigDecimal("12345678901234567.2"), merged.getExactMax());
+		assertNull(new Aggregate(true).getExactMin());
+	}
+}
@@ -0,0 +1,66 @@
+package neu.sxc.expression.test;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import neu.sxc.expression.Expression;
+import neu.sxc.expression.ExpressionFactory;
+import neu.sxc.expression.compile.CompiledExpression;
+import neu.sxc.expression.compile.ExpressionAnalysis;
+
+public class TestAnalysis extends TestCase {
+	
+	private ExpressionAnalysis analyze(String source) {
+		Expression expression = ExpressionFactory.getInstance().getExpression(source);
+		expression.addFunction(new CurrentDate());
+		expression.lexicalAnalysis();
+		CompiledExpression compiled = expression.compile();
+		return compiled.analyze();
+	}
+	
+	private static Set<String> set(String... names) {
+		return new LinkedHashSet<String>(Arrays.asList(names));
+	}
+	
+	public void testInputsAndOutputs() {
+		ExpressionAnalysis analysis = analyze(
+				"t = price * quantity;\n" +
+				"if(vip) t = t * discount; endif\n" +
+				"total = t + fee;");
+		assertEquals(set("price", "quantity", "vip", "discount", "fee"), analysis.getRequiredInputs());
+		assertEquals(set("t", "total"), analysis.getAssignedVariables());
+		assertEquals(3, analysis.getStatementCount());
+		assertEquals(set("vip", "t", "discount"), analysis.getReads(1));
+		assertEquals(set("t"), analysis.getWrites(1));
+		assertEquals(2, analysis.getLine(1));
+	}
+	
+	public void testReadBeforeWrite() {
+		//x在赋值前被读取，是输入
+		ExpressionAnalysis analysis = analyze("x = x + 1; y = x;");
+		assertEquals(set("x"), analysis.getRequiredInputs());
+		assertEquals(set("x", "y"), analysis.getAssignedVariables());
+	}
+	
+	public void testBranchScope() {
+		//分支中新定义的tmp在分支结束后失效，之后读取的tmp是输入
+		ExpressionAnalysis analysis = analyze(
+				"if(a > 1) tmp = 1; b = tmp; endif\n" +
+				"c = tmp;");
+		assertEquals(set("a", "tmp"), analysis.getRequiredInputs());
+		//只在一个分支中赋值的变量，在另一条路径上未赋值
+		analysis = analyze("if(a > 1) v = 1; w = v; else w = v; endif");
+		assertEquals(set("a", "v"), analysis.getRequiredInputs());
+	}
+	
+	public void testDeadBranchAndFunctions() {
+		ExpressionAnalysis analysis = analyze(
+				"if(false) unused + 1; else d = getDate(); endif\n" +
+				"if(true) n = 1; else m = other; endif");
+		assertEquals(set(), analysis.getRequiredInputs());
+		assertEquals(set("d", "n"), analysis.getAssignedVariables());
+		assertEquals(set("getDate"), analysis.getFunctions());
+	}
+}
@@ -0,0 +1,229 @@
+package neu.sxc.expression.test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import junit.framework.TestCase;
+import neu.sxc.expression.Expression;
+import neu.sxc.expression.ExpressionFactory;
+import neu.sxc.expression.compile.AsyncEvaluator;
+import neu.sxc.expression.compile.CompiledExpression;
+import neu.sxc.expression.compile.VariableResolver;
+import neu.sxc.expression.syntax.PendingValueException;
+import neu.sxc.expression.syntax.VariableNotInitializedException;
+import neu.sxc.expression.syntax.function.Function;
+import neu.sxc.expression.tokens.DataType;
+import neu.sxc.expression.tokens.Valuable;
+import neu.sxc.expression.utils.BatchLoadFunction;
+import neu.sxc.expression.utils.DataLoader;
+
+public class TestAsync extends TestCase {
+	
+	private static int score(int key) {
+		return key * 3 % 7;
+	}
+	
+	/**
+	 * 进程内的批量加载，记录每批的键
+	 */
+	private static class FakeStore implements BatchLoadFunction<Integer, Integer> {
+		
+		final List<Set<Integer>> batches = new ArrayList<Set<Integer>>();
+		
+		boolean failing = false;
+		
+		public CompletableFuture<Map<Integer, Integer>> load(Set<Integer> keys) {
+			batches.add(keys);
+			CompletableFuture<Map<Integer, Integer>> future = new CompletableFuture<Map<Integer, Integer>>();
+			if(failing) {
+				future.completeExceptionally(new IllegalStateException("store is down"));
+				return future;
+			}
+			Map<Integer, Integer> values = new HashMap<Integer, Integer>();
+			for(Integer key : keys)
+				values.put(key, score(key));
+			future.complete(values);
+			return future;
+		}
+	}
+	
+	/**
+	 * score(n)，async为true时通过加载器取值
+	 */
+	private static class Score extends Function {
+		
+		private final DataLoader<Integer, Integer> loader;
+		
+		Score(DataLoader<Integer, Integer> loader) {
+			this.loader = loader;
+		}
+		
+		@Override
+		public String getName() {
+			return "score";
+		}
+		
+		@Override
+		public int getArgumentNum() {
+			return 1;
+		}
+		
+		@Override
+		public DataType[] getArgumentsDataType() {
+			return new DataType[]{DataType.NUMBER};
+		}
+		
+		@Override
+		protected Object executeFunction(Valuable[] arguments) {
+			int key = arguments[0].getNumberValue().intValue();
+			if(loader == null)
+				return score(key);
+			return loader.load(key);
+		}
+	}
+	
+	private static CompiledExpression compile(String source, DataLoader<Integer, Integer> loader) {
+		Expression expression = ExpressionFactory.getInstance().getExpression(source);
+		expression.addFunction(new Score(loader));
+		expression.lexicalAnalysis();
+		return expression.compile();
+	}
+	
+	private static Map<String, Object> row(int x, int y) {
+		Map<String, Object> row = new HashMap<String, Object>();
+		row.put("x", x);
+		row.put("y", y);
+		return row;
+	}
+	
+	private static final String SOURCE =
+			"a = score(x); b = score(y);\n" +
+			"r = 0;\n" +
+			"if(a > b) r = score(a + b + 100); endif\n" +
+			"r + a;";
+	
+	public void testOneBatchPerLevel() throws Exception {
+		FakeStore store = new FakeStore();
+		DataLoader<Integer, Integer> loader = new DataLoader<Integer, Integer>(store);
+		CompiledExpression async = compile(SOURCE, loader);
+		CompiledExpression sync = compile(SOURCE, null);
+		AsyncEvaluator evaluator = new AsyncEvaluator();
+		evaluator.addLoader(loader);
+		List<CompletableFuture<Valuable>> results = new ArrayList<CompletableFuture<Valuable>>();
+		for(int i=0; i<20; i++)
+			results.add(evaluator.submit(async, row(i, 19 - i)));
+		evaluator.run().get();
+		for(int i=0; i<20; i++) {
+			Valuable expected = sync.evaluate(row(i, 19 - i));
+			assertEquals(0, expected.getNumberValue().compareTo(results.get(i).get().getNumberValue()));
+		}
+		//第一批为所有x、y，第二批为a + b
+		assertEquals(2, store.batches.size());
+		assertEquals(20, store.batches.get(0).size());
+		assertEquals(2, loader.getDispatchCount());
+		assertEquals(3, evaluator.getRoundCount());
+	}
+	
+	public void testSiblingsInOneStatement() throws Exception {
+		//同一语句中互不依赖的调用在同一批中加载
+		FakeStore store = new FakeStore();
+		DataLoader<Integer, Integer> loader = new DataLoader<Integer, Integer>(store);
+		CompiledExpression compiled = compile("score(x) + score(y) + score(x + y) * max(score(y + 1), 0);", loader);
+		AsyncEvaluator evaluator = new AsyncEvaluator();
+		evaluator.addLoader(loader);
+		CompletableFuture<Valuable> result = evaluator.submit(compiled, row(1, 2));
+		evaluator.run().get();
+		assertEquals(score(1) + score(2) + score(3) * score(3), result.get().getNumberValue().intValue());
+		assertEquals(1, store.batches.size());
+		assertEquals(3, store.batches.get(0).size());
+		assertEquals(2, evaluator.getRoundCount());
+	}
+	
+	public void testSynchronousEvaluationFails() {
+		DataLoader<Integer, Integer> loader = new DataLoader<Integer, Integer>(new FakeStore());
+		try {
+			compile(SOURCE, loader).evaluate(row(1, 2));
+			fail();
+		} catch(PendingValueException e) {
+		}
+	}
+	
+	public void testSuspendedStatementIsRestored() throws Exception {
+		//分支先对x赋值再挂起，重新执行时x不能被加两次
+		FakeStore store = new FakeStore();
+		DataLoader<Integer, Integer> loader = new DataLoader<Integer, Integer>(store);
+		CompiledExpression compiled = compile("if(true) x = x + 1; y = score(x); endif\nx;", loader);
+		AsyncEvaluator evaluator = new AsyncEvaluator();
+		evaluator.addLoader(loader);
+		Map<String, Object> row = new HashMap<String, Object>();
+		row.put("x", 1);
+		CompletableFuture<Valuable> result = evaluator.submit(compiled, row);
+		evaluator.run().get();
+		assertEquals(2, result.get().getNumberValue().intValue());
+	}
+	
+	public void testAsyncVariables() throws Exception {
+		//变量按名称批量加载，与score无关的语句在第一轮执行
+		final List<Set<String>> batches = new ArrayList<Set<String>>();
+		final DataLoader<String, Object> variables = new DataLoader<String, Object>(
+				new BatchLoadFunction<String, Object>() {
+					public CompletableFuture<Map<String, Object>> load(Set<String> keys) {
+						batches.add(keys);
+						Map<String, Object> values = new HashMap<String, Object>();
+						for(String key : keys)
+							values.put(key, key.length());
+						return CompletableFuture.completedFuture(values);
+					}
+				});
+		FakeStore store = new FakeStore();
+		DataLoader<Integer, Integer> loader = new DataLoader<Integer, Integer>(store);
+		CompiledExpression compiled = compile("a = score(abc); b = 10; d = xy; b * 2 + a + d;", loader);
+		AsyncEvaluator evaluator = new AsyncEvaluator();
+		evaluator.addLoader(variables);
+		evaluator.addLoader(loader);
+		CompletableFuture<Valuable> result = evaluator.submit(compiled, new VariableResolver() {
+			public Object resolve(String name, int slot) {
+				return variables.load(name);
+			}
+		});
+		evaluator.run().get();
+		//abc和xy在同一批中加载
+		assertEquals(20 + score(3) + 2, result.get().getNumberValue().intValue());
+		assertEquals(1, store.batches.size());
+		assertTrue(batches.get(0).contains("abc"));
+		assertTrue(batches.get(0).contains("xy"));
+	}
+	
+	public void testErrors() throws Exception {
+		FakeStore store = new FakeStore();
+		DataLoader<Integer, Integer> loader = new DataLoader<Integer, Integer>(store);
+		AsyncEvaluator evaluator = new AsyncEvaluator();
+		evaluator.addLoader(loader);
+		//后面的语句先出错，等前面的语句完成后才报告
+		CompletableFuture<Valuable> undefined = evaluator.submit(
+				compile("a = score(x); missing + 1;", loader), row(1, 2));
+		evaluator.run().get();
+		try {
+			undefined.get();
+			fail();
+		} catch(ExecutionException e) {
+			assertTrue(e.getCause() instanceof VariableNotInitializedException);
+		}
+		
+		store.failing = true;
+		loader.clear();
+		CompletableFuture<Valuable> failed = evaluator.submit(compile("score(x + 100);", loader), row(1, 2));
+		evaluator.run().get();
+		try {
+			failed.get();
+			fail();
+		} catch(ExecutionException e) {
+			assertEquals("store is down", e.getCause().getMessage());
+		}
+	}
+}
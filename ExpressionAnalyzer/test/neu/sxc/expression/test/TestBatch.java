@@ -0,0 +1,173 @@
+package neu.sxc.expression.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import neu.sxc.expression.batch.BatchRunner;
+import neu.sxc.expression.batch.BatchSummary;
+import neu.sxc.expression.batch.InputFormat;
+import neu.sxc.expression.compile.CompiledExpression;
+import neu.sxc.expression.compile.binary.FieldType;
+import neu.sxc.expression.compile.binary.RecordSchema;
+import neu.sxc.expression.compile.binary.RecordWriter;
+import neu.sxc.expression.compile.rule.RuleSetBuilder;
+import neu.sxc.expression.tokens.Valuable;
+
+public class TestBatch extends TestCase {
+	
+	private Path directory;
+	
+	@Override
+	protected void setUp() throws Exception {
+		directory = Files.createTempDirectory("batch");
+	}
+	
+	@Override
+	protected void tearDown() throws Exception {
+		for(File file : directory.toFile().listFiles())
+			file.delete();
+		Files.delete(directory);
+	}
+	
+	private Path writeCsv(int count) throws Exception {
+		StringBuilder csv = new StringBuilder("id,amount,city,vip\r\n");
+		for(int i=0; i<count; i++) {
+			csv.append(i).append(',').append(i * 1.5).append(',');
+			csv.append(i % 3 == 0 ? "\"Shen, yang\"" : "beijing").append(',');
+			csv.append(i % 2 == 0).append("\r\n");
+			if(i % 50 == 0)
+				csv.append("\r\n");
+		}
+		Path input = directory.resolve("input.csv");
+		Files.write(input, csv.toString().getBytes(StandardCharsets.UTF_8));
+		return input;
+	}
+	
+	public void testEvaluateCsv() throws Exception {
+		CompiledExpression compiled = CompiledExpression.compile(
+				"r = id - 1; if(city == \"Shen, yang\") r = amount * 2; endif r;");
+		Path input = writeCsv(500);
+		Path output = directory.resolve("output.txt");
+		BatchSummary summary = new BatchRunner(compiled).setParallelism(4).setChunkSize(256)
+				.evaluate(input, InputFormat.CSV, output);
+		assertEquals(500, summary.getRecordCount());
+		assertEquals(0, summary.getErrorCount());
+		assertTrue(summary.getChunkCount() > 1);
+		
+		List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+		assertEquals(500, lines.size());
+		for(int i=0; i<500; i++) {
+			Map<String, Object> row = new HashMap<String, Object>();
+			row.put("id", i);
+			row.put("amount", new BigDecimal(String.valueOf(i * 1.5)));
+			row.put("city", i % 3 == 0 ? "Shen, yang" : "beijing");
+			Valuable expected = compiled.evaluate(row);
+			assertEquals(0, expected.getNumberValue().compareTo(new BigDecimal(lines.get(i))));
+		}
+	}
+	
+	public void testErrorLines() throws Exception {
+		Path input = directory.resolve("input.csv");
+		Files.write(input, "a,b\n1,2\n3,0\n5,\n".getBytes(StandardCharsets.UTF_8));
+		Path output = directory.resolve("output.txt");
+		BatchSummary summary = new BatchRunner(CompiledExpression.compile("a / b;")).setParallelism(2)
+				.evaluate(input, InputFormat.CSV, output);
+		assertEquals(3, summary.getRecordCount());
+		List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+		assertEquals(2, summary.getErrorCount());
+		assertEquals(0, new BigDecimal("0.5").compareTo(new BigDecimal(lines.get(0))));
+		assertTrue(lines.get(1).startsWith("ERROR: "));
+		assertTrue(lines.get(2).startsWith("ERROR: "));
+	}
+	
+	public void testFilterBinary() throws Exception {
+		RecordSchema schema = new RecordSchema(new String[]{"id", "amount", "vip", "city"},
+				new FieldType[]{FieldType.LONG, FieldType.DOUBLE, FieldType.BOOLEAN, FieldType.STRING});
+		int count = 1003;
+		ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+		schema.writeHeader(buffer);
+		RecordWriter writer = new RecordWriter(schema);
+		for(int i=0; i<count; i++) {
+			Map<String, Object> row = new HashMap<String, Object>();
+			row.put("id", i);
+			row.put("amount", i * 0.5);
+			row.put("vip", i % 7 == 0);
+			row.put("city", i % 5 == 0 ? "沈阳" : "beijing");
+			writer.write(buffer, row);
+		}
+		Path input = directory.resolve("input.bin");
+		Files.write(input, Arrays.copyOf(buffer.array(), buffer.position()));
+		Path output = directory.resolve("output.bitmap");
+		BatchSummary summary = new BatchRunner(CompiledExpression.compile("vip || city == \"沈阳\" && amount > 100;"))
+				.setParallelism(4).setChunkSize(1024).filter(input, InputFormat.BINARY, output);
+		assertEquals(count, summary.getRecordCount());
+		assertTrue(summary.getChunkCount() > 1);
+		
+		byte[] bitmap = Files.readAllBytes(output);
+		assertEquals((count + 7) / 8, bitmap.length);
+		int matched = 0;
+		for(int i=0; i<count; i++) {
+			boolean expected = i % 7 == 0 || i % 5 == 0 && i * 0.5 > 100;
+			boolean actual = (bitmap[i >>> 3] & (1 << (i & 7))) != 0;
+			assertEquals("record " + i, expected, actual);
+			if(expected)
+				matched++;
+		}
+		assertEquals(matched, summary.getMatchedCount());
+	}
+	
+	public void testRuleErrors() throws Exception {
+		//出错的规则不影响同一记录的其余规则
+		Path input = directory.resolve("input.csv");
+		Files.write(input, "a\n2\n0\n20\n".getBytes(StandardCharsets.UTF_8));
+		Path output = directory.resolve("output.txt");
+		BatchRunner runner = new BatchRunner(new RuleSetBuilder()
+				.addRule("small", "a < 10;").addRule("ratio", "10 / a > 1;").build());
+		BatchSummary summary = runner.evaluate(input, InputFormat.CSV, output);
+		assertEquals(1, summary.getErrorCount());
+		List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+		assertEquals("small,ratio", lines.get(0));
+		assertTrue(lines.get(1).startsWith("small ERROR: Rule ratio failed"));
+		assertEquals("", lines.get(2));
+		
+		Path bitmap = directory.resolve("bitmap");
+		summary = runner.filter(input, InputFormat.CSV, bitmap);
+		assertEquals(2, summary.getMatchedCount());
+		assertEquals(1, summary.getErrorCount());
+		assertEquals(3, Files.readAllBytes(bitmap)[0]);
+	}
+	
+	public void testRuleCommand() throws Exception {
+		Path input = writeCsv(100);
+		Path rules = directory.resolve("rules.txt");
+		Files.write(rules, ("# rules\nvip: vip;\nbig: amount > 120;\n\nlocal: city == \"Shen, yang\";\n")
+				.getBytes(StandardCharsets.UTF_8));
+		Path output = directory.resolve("output.txt");
+		ByteArrayOutputStream console = new ByteArrayOutputStream();
+		int code = BatchRunner.runCommand(new String[]{"-r", rules.toString(), "-i", input.toString(),
+				"-o", output.toString(), "-p", "2"}, new PrintStream(console, true, "UTF-8"));
+		assertEquals(0, code);
+		assertTrue(console.toString("UTF-8").contains("records=100"));
+		List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+		assertEquals(100, lines.size());
+		assertEquals("vip,local", lines.get(0));
+		assertEquals("", lines.get(1));
+		assertEquals("vip", lines.get(2));
+		assertEquals("big", lines.get(97));
+		assertEquals("vip,big,local", lines.get(96));
+		
+		assertEquals(2, BatchRunner.runCommand(new String[]{"-i", input.toString()},
+				new PrintStream(new ByteArrayOutputStream())));
+	}
+}
@@ -0,0 +1,157 @@
+package neu.sxc.expression.test;
+
+import java.math.BigDecimal;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import neu.sxc.expression.compile.CompiledExpression;
+import neu.sxc.expression.compile.Frame;
+import neu.sxc.expression.compile.binary.FieldType;
+import neu.sxc.expression.compile.binary.RecordBinder;
+import neu.sxc.expression.compile.binary.RecordSchema;
+import neu.sxc.expression.compile.binary.RecordWriter;
+import neu.sxc.expression.syntax.VariableNotInitializedException;
+
+public class TestBinary extends TestCase {
+	
+	private static final RecordSchema SCHEMA = new RecordSchema(
+			new String[]{"id", "amount", "vip", "grade", "created", "city"},
+			new FieldType[]{FieldType.LONG, FieldType.DOUBLE, FieldType.BOOLEAN,
+					FieldType.CHARACTER, FieldType.DATE, FieldType.STRING});
+	
+	private static List<Map<String, Object>> rows(int count) {
+		List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+		for(int i=0; i<count; i++) {
+			Map<String, Object> row = new HashMap<String, Object>();
+			row.put("id", i);
+			row.put("amount", i * 1.25);
+			row.put("vip", i % 3 == 0);
+			row.put("grade", i % 2 == 0 ? 'A' : 'B');
+			Calendar created = Calendar.getInstance();
+			created.add(Calendar.DAY_OF_MONTH, -i);
+			row.put("created", created);
+			row.put("city", i % 4 == 0 ? "沈阳" : "beijing");
+			rows.add(row);
+		}
+		return rows;
+	}
+	
+	public void testRoundTrip() {
+		CompiledExpression compiled = CompiledExpression.compile(
+				"(vip || grade == 'A') && amount + id > 10 && city == \"沈阳\" && created < getDate();", new CurrentDate());
+		List<Map<String, Object>> rows = rows(50);
+		ByteBuffer buffer = ByteBuffer.allocate(8192);
+		SCHEMA.writeHeader(buffer);
+		RecordWriter writer = new RecordWriter(SCHEMA);
+		for(Map<String, Object> row : rows)
+			writer.write(buffer, row);
+		buffer.flip();
+		
+		RecordSchema schema = RecordSchema.readHeader(buffer);
+		assertEquals(6, schema.getFieldCount());
+		assertEquals(FieldType.STRING, schema.getType(5));
+		RecordBinder binder = new RecordBinder(schema, compiled);
+		Frame frame = compiled.newFrame();
+		int record = buffer.position();
+		int matched = 0;
+		for(Map<String, Object> row : rows) {
+			binder.bind(frame, buffer, record);
+			boolean expected = compiled.evaluate(row).getBooleanValue();
+			assertEquals(expected, compiled.evaluate(frame).getBooleanValue().booleanValue());
+			if(expected)
+				matched++;
+			record += RecordSchema.recordLength(buffer, record);
+		}
+		assertEquals(buffer.limit(), record);
+		assertTrue(matched > 0);
+	}
+	
+	public void testMissingValue() {
+		ByteBuffer buffer = ByteBuffer.allocate(256);
+		RecordWriter writer = new RecordWriter(SCHEMA);
+		writer.setLong(0, 5).setString(5, "x");
+		int size = writer.write(buffer);
+		assertEquals(SCHEMA.getFixedSize() + 1, size);
+		RecordBinder binder = new RecordBinder(SCHEMA, CompiledExpression.compile("id * 2;"));
+		assertEquals(10, binder.evaluate(buffer, 0).getNumberValue().intValue());
+		binder = new RecordBinder(SCHEMA, CompiledExpression.compile("amount + 1;"));
+		try {
+			binder.evaluate(buffer, 0);
+			fail();
+		} catch(VariableNotInitializedException e) {
+		}
+	}
+	
+	public void testErrors() {
+		RecordWriter writer = new RecordWriter(SCHEMA);
+		try {
+			writer.setDouble(0, 1.0);
+			fail();
+		} catch(IllegalArgumentException e) {
+		}
+		try {
+			writer.set("city", 3);
+			fail();
+		} catch(IllegalArgumentException e) {
+		}
+		try {
+			new RecordBinder(SCHEMA, CompiledExpression.compile("id > limit;"));
+			fail();
+		} catch(IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("limit"));
+		}
+		ByteBuffer small = ByteBuffer.allocate(8);
+		try {
+			writer.setLong(0, 1).write(small);
+			fail();
+		} catch(BufferOverflowException e) {
+			assertEquals(0, small.position());
+		}
+	}
+	
+	public void testLongField() {
+		RecordWriter writer = new RecordWriter(SCHEMA);
+		Object[] rejected = {new BigDecimal("1.5"), new BigDecimal("1e30"), 2.5, 1e30, Double.NaN, 0.5f};
+		for(Object value : rejected) {
+			try {
+				writer.set("id", value);
+				fail(String.valueOf(value));
+			} catch(IllegalArgumentException e) {
+			}
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(256);
+		writer.set("id", new BigDecimal("7.00")).write(buffer);
+		writer.set("id", 8.0).write(buffer);
+		RecordBinder binder = new RecordBinder(SCHEMA, CompiledExpression.compile("id;"));
+		assertEquals(7, binder.evaluate(buffer, 0).getNumberValue().intValue());
+		assertEquals(8, binder.evaluate(buffer, RecordSchema.recordLength(buffer, 0)).getNumberValue().intValue());
+	}
+	
+	public void testFailedWriteClearsRecord() {
+		RecordWriter writer = new RecordWriter(SCHEMA);
+		Map<String, Object> row = new LinkedHashMap<String, Object>();
+		row.put("id", 1);
+		row.put("city", 3);
+		ByteBuffer buffer = ByteBuffer.allocate(256);
+		try {
+			writer.write(buffer, row);
+			fail();
+		} catch(IllegalArgumentException e) {
+		}
+		//失败记录的id不能带入下一条记录
+		writer.setString(5, "x").write(buffer);
+		RecordBinder binder = new RecordBinder(SCHEMA, CompiledExpression.compile("id;"));
+		try {
+			binder.evaluate(buffer, 0);
+			fail();
+		} catch(VariableNotInitializedException e) {
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package neu.sxc.expression.test;
+
+import java.lang.invoke.MethodHandles;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import junit.framework.TestCase;
+import neu.sxc.expression.compile.CompiledExpression;
+import neu.sxc.expression.compile.Frame;
+import neu.sxc.expression.compile.stream.ExpressionAdapter;
+import neu.sxc.expression.compile.stream.ObjectBinder;
+import neu.sxc.expression.syntax.VariableNotInitializedException;
+import neu.sxc.expression.tokens.Valuable;
+
+public class TestBinder extends TestCase {
+	
+	public static class Account {
+		
+		public char level = 'A';
+		
+		private final long balance;
+		
+		private final boolean active;
+		
+		private final Integer limit;
+		
+		public Account(long balance, boolean active, Integer limit) {
+			this.balance = balance;
+			this.active = active;
+			this.limit = limit;
+		}
+		
+		public long getBalance() {
+			return balance;
+		}
+		
+		public boolean isActive() {
+			return active;
+		}
+		
+		public Integer getLimit() {
+			return limit;
+		}
+	}
+	
+	private record Trade(int quantity, double price, String side, BigDecimal fee) {
+	}
+	
+	private record Rate(float value, Float boxed) {
+	}
+	
+	private static void assertNumber(double expected, Valuable value) {
+		assertEquals(0, BigDecimal.valueOf(expected).compareTo(value.getNumberValue()));
+	}
+	
+	public void testPojo() {
+		CompiledExpression compiled = CompiledExpression.compile("if(active && level == 'A') balance + limit; else 0; endif");
+		ObjectBinder<Account> binder = new ObjectBinder<Account>(Account.class, compiled);
+		assertNumber(150, binder.evaluate(new Account(100, true, 50)));
+		assertNumber(0, binder.evaluate(new Account(100, false, 50)));
+		//值为null的属性视为未定义
+		try {
+			binder.evaluate(new Account(100, true, null));
+			fail();
+		} catch(VariableNotInitializedException e) {
+		}
+	}
+	
+	public void testFloat() {
+		//float按十进制表示绑定，与Map中的0.1结果相同
+		CompiledExpression compiled = CompiledExpression.compile("value == 0.1 && boxed == 0.1;");
+		ObjectBinder<Rate> binder = new ObjectBinder<Rate>(Rate.class, compiled, MethodHandles.lookup());
+		assertTrue(binder.evaluate(new Rate(0.1f, 0.1f)).getBooleanValue());
+	}
+	
+	public void testRecordMatchesMapBinding() {
+		CompiledExpression compiled = CompiledExpression.compile("total = quantity * price + fee; side == \"buy\" && total > 10;");
+		ObjectBinder<Trade> binder = new ObjectBinder<Trade>(Trade.class, compiled, MethodHandles.lookup());
+		Frame frame = compiled.newFrame();
+		for(int i=0; i<20; i++) {
+			Trade trade = new Trade(i, i * 0.25, i % 2 == 0 ? "buy" : "sell", new BigDecimal("1.5"));
+			Map<String, Object> map = new HashMap<String, Object>();
+			map.put("quantity", trade.quantity());
+			map.put("price", trade.price());
+			map.put("side", trade.side());
+			map.put("fee", trade.fee());
+			binder.bind(frame, trade);
+			assertEquals(compiled.evaluate(map).getBooleanValue(), compiled.evaluate(frame).getBooleanValue());
+		}
+	}
+	
+	public void testAdapter() {
+		CompiledExpression compiled = CompiledExpression.compile("quantity >= 5 && side == \"sell\";");
+		Predicate<Trade> predicate = ExpressionAdapter.of(
+				new ObjectBinder<Trade>(Trade.class, compiled, MethodHandles.lookup())).toPredicate();
+		List<Trade> trades = new ArrayList<Trade>();
+		for(int i=0; i<10; i++)
+			trades.add(new Trade(i, 1, i % 2 == 0 ? "buy" : "sell", BigDecimal.ZERO));
+		assertEquals(3, trades.parallelStream().filter(predicate).count());
+	}
+	
+	public void testMissingProperty() {
+		try {
+			new ObjectBinder<Account>(Account.class, CompiledExpression.compile("balance > threshold;"));
+			fail();
+		} catch(IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("threshold"));
+		}
+		//只被赋值的变量不需要属性
+		new ObjectBinder<Account>(Account.class, CompiledExpression.compile("x = balance; x > 0;"));
+	}
+}
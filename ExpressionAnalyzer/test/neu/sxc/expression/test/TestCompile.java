@@ -0,0 +1,126 @@
+package neu.sxc.expression.test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import junit.framework.TestCase;
+import neu.sxc.expression.Expression;
+import neu.sxc.expression.ExpressionFactory;
+import neu.sxc.expression.compile.CompiledExpression;
+import neu.sxc.expression.compile.Frame;
+import neu.sxc.expression.syntax.ArgumentsMismatchException;
+import neu.sxc.expression.syntax.VariableNotInitializedException;
+import neu.sxc.expression.tokens.TokenBuilder;
+import neu.sxc.expression.tokens.Valuable;
+
+public class TestCompile extends TestCase {
+	
+	private ExpressionFactory factory = ExpressionFactory.getInstance();
+	
+	public void testSameResultAsInterpreter() {
+		String[] sources = {
+			"1 + max(1,abs(-2)) + abs(-1);",
+			"(1+2)>2 && !(2>1) || TRUE;",
+			"a=1<2 && 2>=3; b='a'<='b'; c=[2011-01-01]<=[2011-01-02]; d='a'!='a';",
+			"x=10; y=x%3; z=x/4; \"s\" + 'c';",
+			"a=3; if(a>2) a=a*2; if(a>5) a=a+1; else a=0; endif endif a;"
+		};
+		for(String source : sources) {
+			Expression expression = factory.getExpression(source);
+			Valuable expected = expression.reParseAndEvaluate();
+			CompiledExpression compiled = expression.compile();
+			Frame frame = compiled.newFrame();
+			Valuable actual = compiled.evaluate(frame);
+			assertEquals(source, expected.getValue(), actual.getValue());
+			for(Map.Entry<String, Valuable> variable : expression.getAllVariableValueAfterEvaluate().entrySet())
+				assertEquals(source, variable.getValue().getValue(),
+						compiled.getVariables(frame).get(variable.getKey()).getValue());
+		}
+	}
+	
+	public void testBranchScope() {
+		Expression expression = factory.getExpression("if(a>0) b=1; a=a+b; endif a;");
+		expression.lexicalAnalysis();
+		CompiledExpression compiled = expression.compile();
+		Frame frame = compiled.newFrame();
+		frame.set(compiled.getSlot("a"), TokenBuilder.buildRuntimeValue(5));
+		assertEquals("6", compiled.evaluate(frame).getNumberValue().toPlainString());
+		//分支中新定义的变量在分支结束后失效
+		assertNull(frame.get(compiled.getSlot("b")));
+	}
+	
+	public void testNestedIfInSkippedBranch() {
+		Expression expression = factory.getExpression("a=0;\nif(false)\n if(a>1)\n a=1;\n endif\nelse\n a=2;\nendif");
+		expression.lexicalAnalysis();
+		assertEquals("2", expression.compile().evaluate(new HashMap<String, Object>()).getNumberValue().toPlainString());
+	}
+	
+	public void testEvaluateBatch() {
+		Expression expression = factory.getExpression("risk = 0; if(amount > limit) risk = amount - limit; endif risk * 2;");
+		expression.lexicalAnalysis();
+		CompiledExpression compiled = expression.compile();
+		
+		List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+		for(int i=0; i<100; i++) {
+			Map<String, Object> row = new HashMap<String, Object>();
+			row.put("amount", i);
+			row.put("limit", 50);
+			row.put("unused", "ignored");
+			rows.add(row);
+		}
+		Valuable[] results = new Valuable[rows.size()];
+		assertSame(results, compiled.evaluateBatch(rows, results));
+		for(int i=0; i<100; i++)
+			assertEquals(Math.max(0, i - 50) * 2, results[i].getNumberValue().intValue());
+		
+		Iterator<Valuable> iterator = compiled.evaluate(rows.iterator());
+		int i = 0;
+		while(iterator.hasNext())
+			assertEquals(results[i++].getValue(), iterator.next().getValue());
+		assertEquals(100, i);
+		
+		List<Valuable> streamed = compiled.evaluate(rows.parallelStream()).collect(Collectors.<Valuable>toList());
+		assertEquals(100, streamed.size());
+		for(i=0; i<100; i++)
+			assertEquals(results[i].getValue(), streamed.get(i).getValue());
+	}
+	
+	public void testUndefinedVariableStatement() {
+		//解释执行时单独读取未定义的变量没有值，编译后的计算抛出异常
+		Expression expression = factory.getExpression("1; q;");
+		expression.lexicalAnalysis();
+		Valuable interpreted = expression.evaluate();
+		assertTrue(interpreted == null || interpreted.getValue() == null);
+		try {
+			expression.compile().evaluate(new HashMap<String, Object>());
+			fail();
+		} catch(VariableNotInitializedException e) {
+			assertTrue(e.getMessage().contains("\"q\""));
+		}
+	}
+	
+	public void testErrors() {
+		Expression expression = factory.getExpression("a = b + 1;");
+		expression.lexicalAnalysis();
+		CompiledExpression compiled = expression.compile();
+		try {
+			compiled.evaluate(new HashMap<String, Object>());
+			fail();
+		} catch(VariableNotInitializedException e) {
+			assertTrue(e.getMessage().contains("\"b\""));
+		}
+		Map<String, Object> variables = new HashMap<String, Object>();
+		variables.put("a", "text");
+		variables.put("b", 1);
+		try {
+			compiled.evaluate(variables);
+			fail();
+		} catch(ArgumentsMismatchException e) {
+			assertTrue(e.getMessage().contains("line:1, column:3"));
+		}
+	}
+}
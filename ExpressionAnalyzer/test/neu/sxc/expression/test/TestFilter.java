@@ -0,0 +1,132 @@
+package neu.sxc.expression.test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.TestCase;
+import neu.sxc.expression.ExpressionFactory;
+import neu.sxc.expression.compile.CompiledExpression;
+import neu.sxc.expression.compile.vector.Column;
+import neu.sxc.expression.compile.vector.ColumnBatch;
+import neu.sxc.expression.compile.vector.VectorizedExpression;
+import neu.sxc.expression.utils.Bitmap;
+
+public class TestFilter extends TestCase {
+	
+	private static final int ROWS = 200;
+	
+	private ColumnBatch newBatch() {
+		long[] a = new long[ROWS];
+		double[] b = new double[ROWS];
+		for(int i=0; i<ROWS; i++) {
+			a[i] = i;
+			b[i] = (i % 10) / 10.0;
+		}
+		return new ColumnBatch(ROWS).addLongs("a", a).addDoubles("b", b);
+	}
+	
+	public void testFilterSameAsRows() {
+		String[] sources = {
+			"a > 100 && b < 0.5;",
+			"if(a % 3 == 0) a > 50; else b == 0.2; endif",
+			//没有结果的行不匹配
+			"if(a < 150) a >= 10; endif"
+		};
+		ColumnBatch batch = newBatch();
+		List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+		for(int i=0; i<ROWS; i++) {
+			Map<String, Object> row = new HashMap<String, Object>();
+			row.put("a", batch.getColumn("a").getValuable(i));
+			row.put("b", batch.getColumn("b").getValuable(i));
+			rows.add(row);
+		}
+		for(String source : sources) {
+			CompiledExpression compiled = CompiledExpression.compile(source);
+			Bitmap expected = compiled.filter(rows);
+			//块大小不是64的倍数时，块边界落在同一个long中
+			assertEquals(source, expected, new VectorizedExpression(compiled, 100).filter(batch));
+			assertEquals(source, expected, new VectorizedExpression(compiled).filter(batch));
+		}
+		assertEquals(49, CompiledExpression.compile(sources[0]).filter(rows).cardinality());
+	}
+	
+	/**
+	 * 小数数据上的过滤结果与逐行计算相同，与是否带空值标志无关
+	 */
+	public void testDecimalSameAsRows() {
+		double[] price = new double[ROWS];
+		long[] quantity = new long[ROWS];
+		double[] total = new double[ROWS];
+		for(int i=0; i<ROWS; i++) {
+			BigDecimal exactPrice = BigDecimal.valueOf(1990 + i % 20, 2);
+			price[i] = exactPrice.doubleValue();
+			quantity[i] = i % 7;
+			total[i] = exactPrice.multiply(BigDecimal.valueOf(quantity[i])).doubleValue();
+		}
+		ColumnBatch batch = new ColumnBatch(ROWS).addDoubles("price", price)
+				.addLongs("quantity", quantity).addDoubles("total", total);
+		ColumnBatch masked = new ColumnBatch(ROWS);
+		for(Map.Entry<String, Column> entry : batch.getColumns().entrySet())
+			masked.addColumn(entry.getKey(), Column.withNulls(entry.getValue(), new boolean[ROWS]));
+		List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+		for(int i=0; i<ROWS; i++) {
+			Map<String, Object> row = new HashMap<String, Object>();
+			for(Map.Entry<String, Column> entry : batch.getColumns().entrySet())
+				row.put(entry.getKey(), entry.getValue().getValuable(i));
+			rows.add(row);
+		}
+		String[] sources = {
+			"price * quantity == total;",
+			"price + 0.1 == 20.1;",
+			"price > 20.3 && quantity != 3;",
+			"price == 20.1 || total >= 40.2;",
+			"price * 3 > 60.3;"
+		};
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			for(String source : sources) {
+				CompiledExpression compiled = CompiledExpression.compile(source);
+				Bitmap expected = compiled.filter(rows);
+				VectorizedExpression vectorized = new VectorizedExpression(compiled, 64);
+				assertEquals(source, expected, vectorized.filter(batch));
+				assertEquals(source, expected, vectorized.filter(masked));
+				assertEquals(source, expected, vectorized.filterParallel(batch, pool));
+			}
+		} finally {
+			pool.shutdown();
+		}
+		assertEquals(ROWS, CompiledExpression.compile(sources[0]).filter(rows).cardinality());
+		assertEquals(10, CompiledExpression.compile(sources[1]).filter(rows).cardinality());
+	}
+	
+	public void testNonBooleanResult() {
+		try {
+			new VectorizedExpression(CompiledExpression.compile("if(a > 100) a; else a > 5; endif")).filter(newBatch());
+			fail();
+		} catch(IllegalStateException e) {
+		}
+	}
+	
+	public void testCombine() {
+		ColumnBatch batch = newBatch();
+		Bitmap large = new VectorizedExpression(CompiledExpression.compile("a >= 100;")).filter(batch);
+		Bitmap even = new VectorizedExpression(CompiledExpression.compile("a % 2 == 0;")).filter(batch);
+		assertEquals(100, large.cardinality());
+		assertEquals(50, large.copy().and(even).cardinality());
+		assertEquals(150, large.copy().or(even).cardinality());
+		assertEquals(50, large.copy().andNot(even).cardinality());
+		assertEquals(100, large.nextSetBit(0));
+		assertEquals(101, large.copy().andNot(even).nextSetBit(0));
+		assertEquals(-1, large.nextSetBit(ROWS));
+		assertEquals(large.cardinality(), large.toBitSet().cardinality());
+		try {
+			large.and(new Bitmap(ROWS + 1));
+			fail();
+		} catch(IllegalArgumentException e) {
+		}
+	}
+}
@@ -0,0 +1,191 @@
+package neu.sxc.expression.test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+import neu.sxc.expression.Expression;
+import neu.sxc.expression.compile.CompiledExpression;
+import neu.sxc.expression.service.EvaluationProcessor;
+import neu.sxc.expression.service.EvaluationResult;
+
+public class TestFlow extends TestCase {
+	
+	private static final int RECORDS = 2000;
+	
+	private ForkJoinPool pool = new ForkJoinPool(4);
+	
+	@Override
+	protected void tearDown() throws Exception {
+		pool.shutdown();
+	}
+	
+	private Map<String, Object> record(int a) {
+		Map<String, Object> record = new HashMap<String, Object>();
+		record.put("a", a);
+		return record;
+	}
+	
+	/**
+	 * 每次请求少量结果的下游
+	 */
+	private static class Collector implements Flow.Subscriber<EvaluationResult> {
+		
+		final List<EvaluationResult> results = Collections.synchronizedList(new ArrayList<EvaluationResult>());
+		
+		final CountDownLatch done = new CountDownLatch(1);
+		
+		volatile Throwable error;
+		
+		volatile boolean completed;
+		
+		private Flow.Subscription subscription;
+		
+		private int received = 0;
+		
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			subscription.request(7);
+		}
+		
+		@Override
+		public void onNext(EvaluationResult item) {
+			results.add(item);
+			if(++received % 7 == 0)
+				subscription.request(7);
+		}
+		
+		@Override
+		public void onError(Throwable throwable) {
+			error = throwable;
+			done.countDown();
+		}
+		
+		@Override
+		public void onComplete() {
+			completed = true;
+			done.countDown();
+		}
+	}
+	
+	private Collector run(boolean ordered) throws Exception {
+		EvaluationProcessor processor = new EvaluationProcessor(
+				CompiledExpression.compile("10 / (a % 100);"), pool, 4, 16, ordered);
+		Collector collector = new Collector();
+		processor.subscribe(collector);
+		SubmissionPublisher<Map<String, ?>> publisher = new SubmissionPublisher<Map<String, ?>>(pool, 32);
+		publisher.subscribe(processor);
+		for(int i=0; i<RECORDS; i++)
+			publisher.submit(record(i));
+		publisher.close();
+		assertTrue(collector.done.await(10, TimeUnit.SECONDS));
+		assertTrue(collector.completed);
+		assertEquals(RECORDS, collector.results.size());
+		return collector;
+	}
+	
+	private void assertResult(EvaluationResult result) {
+		int a = (Integer)result.getRecord().get("a");
+		assertEquals(a, result.getSequence());
+		if(a % 100 == 0) {
+			assertFalse(result.isSuccess());
+			assertTrue(result.getError() instanceof ArithmeticException);
+		} else {
+			assertTrue(result.isSuccess());
+			BigDecimal expected = new BigDecimal(10).divide(new BigDecimal(a % 100),
+					Expression.DEFAULT_DIVISION_SCALE, Expression.DEFAULT_DIVISION_ROUNDING_MODE);
+			assertEquals(0, expected.compareTo(result.getValue().getNumberValue()));
+		}
+	}
+	
+	public void testOrdered() throws Exception {
+		Collector collector = run(true);
+		for(int i=0; i<RECORDS; i++) {
+			assertEquals(i, collector.results.get(i).getSequence());
+			assertResult(collector.results.get(i));
+		}
+	}
+	
+	public void testUnordered() throws Exception {
+		Collector collector = run(false);
+		boolean[] seen = new boolean[RECORDS];
+		for(EvaluationResult result : collector.results) {
+			assertResult(result);
+			assertFalse(seen[(int)result.getSequence()]);
+			seen[(int)result.getSequence()] = true;
+		}
+	}
+	
+	public void testBackPressure() throws Exception {
+		EvaluationProcessor processor = new EvaluationProcessor(
+				CompiledExpression.compile("a + 1;"), pool, 2, 4, true, 20);
+		final AtomicLong upstreamRequested = new AtomicLong();
+		processor.onSubscribe(new Flow.Subscription() {
+			@Override
+			public void request(long n) {
+				upstreamRequested.addAndGet(n);
+			}
+			
+			@Override
+			public void cancel() {
+			}
+		});
+		final List<EvaluationResult> results = Collections.synchronizedList(new ArrayList<EvaluationResult>());
+		final Flow.Subscription[] downstream = new Flow.Subscription[1];
+		processor.subscribe(new Flow.Subscriber<EvaluationResult>() {
+			@Override
+			public void onSubscribe(Flow.Subscription subscription) {
+				downstream[0] = subscription;
+			}
+			
+			@Override
+			public void onNext(EvaluationResult item) {
+				results.add(item);
+			}
+			
+			@Override
+			public void onError(Throwable throwable) {
+			}
+			
+			@Override
+			public void onComplete() {
+			}
+		});
+		//下游未请求时，上游至多被请求capacity条
+		assertEquals(20, upstreamRequested.get());
+		for(int i=0; i<20; i++)
+			processor.onNext(record(i));
+		Thread.sleep(100);
+		assertEquals(0, results.size());
+		assertEquals(20, upstreamRequested.get());
+		
+		downstream[0].request(5);
+		long deadline = System.currentTimeMillis() + 5000;
+		while(results.size() < 5 && System.currentTimeMillis() < deadline)
+			Thread.sleep(5);
+		assertEquals(5, results.size());
+		//未发布的记录仍多于容量一半，不补充请求
+		assertEquals(20, upstreamRequested.get());
+		
+		downstream[0].request(10);
+		deadline = System.currentTimeMillis() + 5000;
+		while(results.size() < 15 && System.currentTimeMillis() < deadline)
+			Thread.sleep(5);
+		assertEquals(15, results.size());
+		//发布第10条后未发布的记录降到一半，补足10条
+		assertEquals(30, upstreamRequested.get());
+		for(int i=0; i<15; i++)
+			assertEquals(i, results.get(i).getSequence());
+	}
+}
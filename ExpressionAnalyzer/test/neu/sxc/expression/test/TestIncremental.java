@@ -0,0 +1,115 @@
+package neu.sxc.expression.test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import neu.sxc.expression.compile.CompiledExpression;
+import neu.sxc.expression.compile.Frame;
+import neu.sxc.expression.compile.IncrementalEvaluator;
+import neu.sxc.expression.compile.StatementGraph;
+import neu.sxc.expression.tokens.Valuable;
+
+public class TestIncremental extends TestCase {
+	
+	private static final String SCRIPT = 
+		"x = a * 2;\n" +
+		"y = x + b;\n" +
+		"z = 0;\n" +
+		"if(y > 10) z = y - 10; else z = 1; endif\n" +
+		"w = c + 1;\n" +
+		"q = 0;\n" +
+		"if(b > 5) tmp = 1; q = tmp + b; endif\n" +
+		"if(a > 3) x = x + 100; endif\n" +
+		"r = x + z + q + 10 / (b - 7);\n" +
+		"r;";
+	
+	public void testGraph() {
+		CompiledExpression compiled = CompiledExpression.compile(SCRIPT);
+		StatementGraph graph = new StatementGraph(compiled);
+		assertEquals(10, graph.getStatementCount());
+		//y = x + b依赖x = a * 2
+		assertEquals(1, graph.getDependents(0)[0]);
+		//w = c + 1没有下游语句
+		assertEquals(0, graph.getDependents(4).length);
+		//可能赋值的变量也算作读取：if(a > 3) x = x + 100依赖x = a * 2
+		int[] dependents = graph.getDependents(0);
+		assertEquals(7, dependents[dependents.length - 1]);
+		assertEquals(4, graph.getInputReaders(compiled.getSlot("c"))[0]);
+	}
+	
+	public void testMatchesFullEvaluation() {
+		CompiledExpression compiled = CompiledExpression.compile(SCRIPT);
+		IncrementalEvaluator evaluator = new IncrementalEvaluator(compiled);
+		Map<String, Object> input = new HashMap<String, Object>();
+		input.put("a", 1);
+		input.put("b", 2);
+		input.put("c", 3);
+		assertResult(input, evaluator.bind(input), compiled);
+		assertEquals(10, evaluator.getExecutedCount());
+		
+		Random random = new Random(23);
+		String[] variables = {"a", "b", "c"};
+		for(int n=0; n<500; n++) {
+			String variable = variables[random.nextInt(3)];
+			int value = random.nextInt(12);
+			input.put(variable, value);
+			Valuable result;
+			try {
+				result = evaluator.update(variable, value);
+			} catch (ArithmeticException e) {
+				//b为7时除零
+				assertEquals(7, input.get("b"));
+				try {
+					compiled.evaluate(input);
+					fail();
+				} catch (ArithmeticException expected) {
+				}
+				continue;
+			}
+			assertResult(input, result, compiled);
+			assertValues(input, evaluator, compiled);
+		}
+	}
+	
+	public void testOnlyDownstreamExecuted() {
+		IncrementalEvaluator evaluator = new IncrementalEvaluator(CompiledExpression.compile(SCRIPT));
+		Map<String, Object> input = new HashMap<String, Object>();
+		input.put("a", 1);
+		input.put("b", 2);
+		input.put("c", 3);
+		evaluator.bind(input);
+		evaluator.update("c", 4);
+		assertEquals(1, evaluator.getExecutedCount());
+		assertEquals(5, evaluator.getValue("w").getNumberValue().intValue());
+		//值不变时不执行
+		evaluator.update("c", 4);
+		assertEquals(0, evaluator.getExecutedCount());
+		//a改变时只执行读取a的语句及其下游，w = c + 1等不执行
+		evaluator.update("a", 2);
+		assertTrue(evaluator.getExecutedCount() < 10);
+		//分支中新定义的变量在分支结束后失效
+		assertNull(evaluator.getValue("tmp"));
+	}
+	
+	private static void assertResult(Map<String, Object> input, Valuable result, CompiledExpression compiled) {
+		Valuable expected = compiled.evaluate(input);
+		assertEquals(0, expected.getNumberValue().compareTo(result.getNumberValue()));
+	}
+	
+	private static void assertValues(Map<String, Object> input, IncrementalEvaluator evaluator, 
+			CompiledExpression compiled) {
+		Frame frame = compiled.newFrame();
+		compiled.bind(frame, input);
+		compiled.evaluate(frame);
+		for(String name : compiled.getVariableNames()) {
+			Valuable expected = frame.get(compiled.getSlot(name));
+			Valuable actual = evaluator.getValue(name);
+			if(expected == null)
+				assertNull(name, actual);
+			else
+				assertEquals(name, expected.getValue(), actual.getValue());
+		}
+	}
+}
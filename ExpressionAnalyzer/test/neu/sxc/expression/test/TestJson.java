@@ -0,0 +1,98 @@
+package neu.sxc.expression.test;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import junit.framework.TestCase;
+import neu.sxc.expression.compile.CompiledExpression;
+import neu.sxc.expression.compile.Frame;
+import neu.sxc.expression.compile.json.JsonBinder;
+import neu.sxc.expression.compile.json.JsonFormatException;
+import neu.sxc.expression.syntax.VariableNotInitializedException;
+import neu.sxc.expression.tokens.Valuable;
+
+public class TestJson extends TestCase {
+	
+	private static byte[] json(String text) {
+		return text.replace('\'', '"').getBytes(StandardCharsets.UTF_8);
+	}
+	
+	public void testTopLevelAndPaths() {
+		JsonBinder binder = new JsonBinder(CompiledExpression.compile("amount * rate > 100 && country == \"CN\" && vip;"))
+				.alias("country", "customer.address.country")
+				.alias("vip", "customer.vip");
+		byte[] event = json("{'id': 7, 'tags': ['a', {'x': '}]'}], 'amount': 250, 'rate': 0.5,"
+				+ " 'customer': {'name': 'li', 'address': {'city': 'sy', 'country': 'CN'}, 'vip': true}}");
+		assertTrue(binder.evaluate(event).getBooleanValue());
+		event = json("{'customer': {'vip': false, 'address': {'country': 'CN'}}, 'amount': 250, 'rate': 1}");
+		assertFalse(binder.evaluate(event).getBooleanValue());
+	}
+	
+	public void testNumbers() {
+		CompiledExpression compiled = CompiledExpression.compile("a + b + c + d;");
+		JsonBinder binder = new JsonBinder(compiled);
+		Frame frame = compiled.newFrame();
+		binder.bind(frame, json("{'a': -12, 'b': 3.25, 'c': 1.5e2, 'd': 123456789012345678901234}"));
+		assertEquals(0, new BigDecimal(-12).compareTo(frame.get(compiled.getSlot("a")).getNumberValue()));
+		assertEquals(0, new BigDecimal("3.25").compareTo(frame.get(compiled.getSlot("b")).getNumberValue()));
+		assertEquals(0, new BigDecimal(150).compareTo(frame.get(compiled.getSlot("c")).getNumberValue()));
+		assertEquals(0, new BigDecimal("123456789012345678901234").compareTo(
+				frame.get(compiled.getSlot("d")).getNumberValue()));
+	}
+	
+	public void testStrings() {
+		JsonBinder binder = new JsonBinder(CompiledExpression.compile("name + \"|\" + note;")).alias("note", "näme2");
+		Valuable result = binder.evaluate(
+				"{\"na\\u006de\": \"a\\\"b\\\\c\\n\\u4e2d\", \"näme2\": \"文\"}".getBytes(StandardCharsets.UTF_8));
+		assertEquals("a\"b\\c\n中|文", result.getStringValue());
+	}
+	
+	public void testMissingAndNull() {
+		JsonBinder binder = new JsonBinder(CompiledExpression.compile("a + b;"));
+		try {
+			binder.evaluate(json("{'a': 1, 'b': null}"));
+			fail();
+		} catch(VariableNotInitializedException e) {
+		}
+		try {
+			binder.evaluate(json("{'a': 1, 'b': {'c': 2}}"));
+			fail();
+		} catch(VariableNotInitializedException e) {
+		}
+	}
+	
+	public void testBufferAndEarlyStop() {
+		JsonBinder binder = new JsonBinder(CompiledExpression.compile("a * 2;"));
+		byte[] bytes = json("xx{'a': 21, 'rest': ");
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		buffer.position(2);
+		//取到所有变量后不再扫描，之后的内容不影响结果
+		assertEquals(42, binder.evaluate(buffer).getNumberValue().intValue());
+		assertEquals(2, buffer.position());
+		
+		ByteBuffer direct = ByteBuffer.allocateDirect(64);
+		direct.put(json("{'b': [1, 2], 'a': 4}")).flip();
+		assertEquals(8, binder.evaluate(direct).getNumberValue().intValue());
+	}
+	
+	public void testErrors() {
+		JsonBinder binder = new JsonBinder(CompiledExpression.compile("a;"));
+		try {
+			binder.evaluate(json("{'b': 1 'a': 2}"));
+			fail();
+		} catch(JsonFormatException e) {
+			assertEquals(8, e.getOffset());
+		}
+		try {
+			binder.evaluate(json("{'a': tru}"));
+			fail();
+		} catch(JsonFormatException e) {
+		}
+		try {
+			new JsonBinder(CompiledExpression.compile("a + b;")).alias("a", "x.y").alias("b", "x");
+			fail();
+		} catch(IllegalArgumentException e) {
+		}
+	}
+}
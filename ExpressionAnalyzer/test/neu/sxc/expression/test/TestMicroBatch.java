@@ -0,0 +1,136 @@
+package neu.sxc.expression.test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+import neu.sxc.expression.compile.CompiledExpression;
+import neu.sxc.expression.service.ExpressionService;
+import neu.sxc.expression.service.MicroBatcher;
+import neu.sxc.expression.tokens.Valuable;
+
+public class TestMicroBatch extends TestCase {
+	
+	private static final int THREADS = 8;
+	
+	private ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+	
+	@Override
+	protected void tearDown() throws Exception {
+		executor.shutdownNow();
+	}
+	
+	/**
+	 * 多个线程同时提交，每个线程取回自己的结果
+	 */
+	private List<Future<Valuable>> submitConcurrently(final MicroBatcher batcher) {
+		final CyclicBarrier barrier = new CyclicBarrier(THREADS);
+		List<Future<Valuable>> futures = new ArrayList<Future<Valuable>>();
+		for(int i=0; i<THREADS; i++) {
+			final Map<String, Object> bindings = new HashMap<String, Object>();
+			bindings.put("a", i);
+			futures.add(executor.submit(new Callable<Valuable>() {
+				@Override
+				public Valuable call() throws Exception {
+					barrier.await();
+					return batcher.evaluate(bindings);
+				}
+			}));
+		}
+		return futures;
+	}
+	
+	private void assertResults(List<Future<Valuable>> futures) throws Exception {
+		for(int i=0; i<THREADS; i++) {
+			if(i == 3) {
+				try {
+					futures.get(i).get(5, TimeUnit.SECONDS);
+					fail();
+				} catch (ExecutionException e) {
+					assertTrue(e.getCause() instanceof ArithmeticException);
+				}
+			} else {
+				BigDecimal expected = new BigDecimal(i * 10 + 12 / (i - 3));
+				assertEquals(0, expected.compareTo(futures.get(i).get(5, TimeUnit.SECONDS).getNumberValue()));
+			}
+		}
+	}
+	
+	public void testRowBatch() throws Exception {
+		MicroBatcher batcher = new MicroBatcher(CompiledExpression.compile("a * 10 + 12 / (a - 3);"), 4, 200, TimeUnit.MILLISECONDS);
+		assertResults(submitConcurrently(batcher));
+	}
+	
+	public void testColumnarBatch() throws Exception {
+		MicroBatcher batcher = new MicroBatcher(CompiledExpression.compile("if(a > 3) a * 10; else a * 10 + 1; endif"), 
+				THREADS, 200, TimeUnit.MILLISECONDS);
+		batcher.setColumnar(true);
+		List<Future<Valuable>> futures = submitConcurrently(batcher);
+		for(int i=0; i<THREADS; i++) {
+			BigDecimal expected = new BigDecimal(i > 3 ? i * 10 : i * 10 + 1);
+			assertEquals(0, expected.compareTo(futures.get(i).get(5, TimeUnit.SECONDS).getNumberValue()));
+		}
+	}
+	
+	public void testColumnarErrorIsolation() throws Exception {
+		MicroBatcher batcher = new MicroBatcher(CompiledExpression.compile("a * 10 + 12 / (a - 3);"), 
+				THREADS, 200, TimeUnit.MILLISECONDS);
+		batcher.setColumnar(true);
+		assertResults(submitConcurrently(batcher));
+	}
+	
+	public void testColumnarDecimalPrecision() throws Exception {
+		final MicroBatcher batcher = new MicroBatcher(CompiledExpression.compile("a * 3;"), 
+				2, 200, TimeUnit.MILLISECONDS);
+		batcher.setColumnar(true);
+		//0.1不能用double精确表示，须按行计算
+		List<Future<Valuable>> futures = new ArrayList<Future<Valuable>>();
+		for(final String a : new String[]{"0.1", "0.5"}) {
+			futures.add(executor.submit(new Callable<Valuable>() {
+				@Override
+				public Valuable call() throws Exception {
+					Map<String, Object> bindings = new HashMap<String, Object>();
+					bindings.put("a", new BigDecimal(a));
+					return batcher.evaluate(bindings);
+				}
+			}));
+		}
+		assertEquals(0, new BigDecimal("0.3").compareTo(futures.get(0).get(5, TimeUnit.SECONDS).getNumberValue()));
+		assertEquals(0, new BigDecimal("1.5").compareTo(futures.get(1).get(5, TimeUnit.SECONDS).getNumberValue()));
+	}
+	
+	public void testSingleRequest() throws Exception {
+		MicroBatcher batcher = new MicroBatcher(CompiledExpression.compile("a + 1;"), 16, 1, TimeUnit.MILLISECONDS);
+		Map<String, Object> bindings = new HashMap<String, Object>();
+		bindings.put("a", 1);
+		//批未满时在等待时间后计算
+		assertEquals(0, new BigDecimal(2).compareTo(batcher.evaluate(bindings).getNumberValue()));
+	}
+	
+	public void testService() throws Exception {
+		ExpressionService service = new ExpressionService(64, THREADS);
+		try {
+			service.register("rule", "a * 10 + 12 / (a - 3);");
+			service.setBatching(4, 200, TimeUnit.MILLISECONDS, false);
+			List<Future<Valuable>> futures = new ArrayList<Future<Valuable>>();
+			for(int i=0; i<THREADS; i++) {
+				Map<String, Object> bindings = new HashMap<String, Object>();
+				bindings.put("a", i);
+				futures.add(service.submit("t1", "rule", bindings));
+			}
+			assertResults(futures);
+		} finally {
+			service.close();
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package neu.sxc.expression.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import junit.framework.TestCase;
+import neu.sxc.expression.Expression;
+import neu.sxc.expression.ExpressionFactory;
+import neu.sxc.expression.monitor.ProfileEntry;
+import neu.sxc.expression.monitor.Profiler;
+import neu.sxc.expression.monitor.SlowLog;
+import neu.sxc.expression.utils.RingBuffer;
+
+public class TestMonitor extends TestCase {
+	
+	private ExpressionFactory factory = ExpressionFactory.getInstance();
+	
+	public void testFlightRecorderEvents() throws IOException {
+		Expression expression = factory.getExpression("a=1;\nif(a>0)\n b=a+1;\nelse\n b=a-1;\nendif");
+		
+		Recording recording = new Recording();
+		recording.enable("neu.sxc.expression.Compile");
+		recording.enable("neu.sxc.expression.Evaluate");
+		recording.start();
+		expression.reParseAndEvaluate();
+		recording.stop();
+		
+		File file = File.createTempFile("expression", ".jfr");
+		try {
+			recording.dump(file.toPath());
+			List<RecordedEvent> events = RecordingFile.readAllEvents(file.toPath());
+			boolean compiled = false, evaluated = false;
+			for(RecordedEvent event : events) {
+				String name = event.getEventType().getName();
+				assertEquals(expression.getFingerprint(), event.getString("fingerprint"));
+				if("neu.sxc.expression.Compile".equals(name)) {
+					compiled = true;
+				} else if("neu.sxc.expression.Evaluate".equals(name)) {
+					evaluated = true;
+					assertEquals(2, event.getInt("statementCount"));
+					assertEquals("2:T", event.getString("branchPath"));
+				}
+			}
+			assertTrue(compiled);
+			assertTrue(evaluated);
+		} finally {
+			recording.close();
+			file.delete();
+		}
+	}
+	
+	public void testProfiler() {
+		Expression expression = factory.getExpression("a=1;\nb=max(a,2)*3;\nc=b/4+abs(-a);");
+		Profiler profiler = new Profiler();
+		expression.setProfiler(profiler);
+		expression.lexicalAnalysis();
+		for(int i=0; i<10; i++)
+			expression.evaluate();
+		
+		List<ProfileEntry> hotLines = profiler.getHotLines();
+		assertEquals(3, hotLines.size());
+		for(int i=1; i<hotLines.size(); i++)
+			assertTrue(hotLines.get(i-1).getTotalNanos() >= hotLines.get(i).getTotalNanos());
+		
+		long divides = 0, maxCalls = 0;
+		for(ProfileEntry entry : profiler.getOperatorProfile())
+			if("DIVIDE".equals(entry.getName()))
+				divides = entry.getCount();
+		for(ProfileEntry entry : profiler.getFunctionProfile())
+			if("max".equals(entry.getName()))
+				maxCalls = entry.getCount();
+		assertEquals(10, divides);
+		assertEquals(10, maxCalls);
+		Printer.println(profiler.report(expression.getExpression(), 5));
+	}
+	
+	public void testSlowLog() throws IOException {
+		File file = File.createTempFile("expression", ".slow.log");
+		SlowLog slowLog = new SlowLog(file, 0);
+		try {
+			Expression expression = factory.getExpression("if(a>1)\n b=a*2;\nelse\n b=a;\nendif");
+			expression.setSlowLog(slowLog);
+			expression.initVariable("a", 3);
+			expression.reParseAndEvaluate();
+		} finally {
+			slowLog.close();
+		}
+		List<String> lines = Files.readAllLines(file.toPath(), Charset.forName("UTF-8"));
+		file.delete();
+		assertEquals(2, lines.size());
+		assertTrue(lines.get(0).contains(" compile "));
+		assertTrue(lines.get(0).contains(" eval=0 "));
+		assertTrue(lines.get(1).contains(" evaluate "));
+		//计算时没有进行词法分析
+		assertTrue(lines.get(1).contains(" lex=0 parse=0 "));
+		assertTrue(lines.get(1).contains("variables=[a]"));
+		assertTrue(lines.get(1).endsWith("path=1:T"));
+	}
+	
+	public void testRingBufferDropsWhenFull() {
+		RingBuffer<Integer> buffer = new RingBuffer<Integer>(3);
+		assertEquals(4, buffer.capacity());
+		for(int i=0; i<6; i++)
+			buffer.offer(i);
+		assertEquals(2, buffer.getDropped());
+		for(int i=0; i<4; i++)
+			assertEquals(Integer.valueOf(i), buffer.poll());
+		assertNull(buffer.poll());
+	}
+}
@@ -0,0 +1,101 @@
+package neu.sxc.expression.test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.TestCase;
+import neu.sxc.expression.ExpressionFactory;
+import neu.sxc.expression.compile.Aggregate;
+import neu.sxc.expression.compile.CompiledExpression;
+import neu.sxc.expression.compile.GroupedAggregate;
+import neu.sxc.expression.compile.vector.Column;
+import neu.sxc.expression.compile.vector.ColumnBatch;
+import neu.sxc.expression.compile.vector.VectorizedExpression;
+import neu.sxc.expression.tokens.Valuable;
+
+public class TestParallel extends TestCase {
+	
+	private static final int ROWS = 5000;
+	
+	private ForkJoinPool pool = new ForkJoinPool(4);
+	
+	@Override
+	protected void tearDown() throws Exception {
+		pool.shutdown();
+	}
+	
+	private List<Map<String, Object>> newRows() {
+		List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+		for(int i=0; i<ROWS; i++) {
+			Map<String, Object> row = new HashMap<String, Object>();
+			row.put("a", i);
+			rows.add(row);
+		}
+		return rows;
+	}
+	
+	private ColumnBatch newBatch() {
+		long[] a = new long[ROWS];
+		for(int i=0; i<ROWS; i++)
+			a[i] = i;
+		return new ColumnBatch(ROWS).addLongs("a", a);
+	}
+	
+	public void testRows() {
+		CompiledExpression compiled = CompiledExpression.compile("if(a % 3 == 0) a * 2; else a; endif");
+		List<Map<String, Object>> rows = newRows();
+		Valuable[] expected = compiled.evaluateBatch(rows);
+		Valuable[] actual = compiled.evaluateBatchParallel(new LinkedList<Map<String, Object>>(rows), pool);
+		assertEquals(expected.length, actual.length);
+		for(int i=0; i<expected.length; i++)
+			assertEquals(expected[i].getValue(), actual[i].getValue());
+		
+		CompiledExpression predicate = CompiledExpression.compile("a % 7 == 1;");
+		assertEquals(predicate.filter(rows), predicate.filterParallel(rows, pool));
+		
+		Aggregate aggregate = compiled.aggregateParallel(rows, new Aggregate(true), pool);
+		assertEquals(compiled.aggregate(rows, new Aggregate(true)).getExactSum(), aggregate.getExactSum());
+		assertEquals(ROWS, aggregate.getCount());
+		
+		GroupedAggregate groups = compiled.aggregateParallel(rows, CompiledExpression.compile("a % 4;"), new GroupedAggregate(), pool);
+		assertEquals(4, groups.size());
+		assertEquals(ROWS / 4, groups.get(2).getCount());
+	}
+	
+	public void testColumns() {
+		ColumnBatch batch = newBatch();
+		for(String source : new String[]{"if(a % 3 == 0) a * 2; else a; endif", "judge(a > 10, 'x', 'y');"}) {
+			VectorizedExpression vectorized = new VectorizedExpression(CompiledExpression.compile(source), 100);
+			Column expected = vectorized.evaluate(batch);
+			Column actual = vectorized.evaluateParallel(batch, pool);
+			for(int i=0; i<ROWS; i++)
+				assertEquals(source, expected.getValuable(i).getValue(), actual.getValuable(i).getValue());
+		}
+		
+		VectorizedExpression predicate = new VectorizedExpression(CompiledExpression.compile("a % 7 == 1;"), 100);
+		assertEquals(predicate.filter(batch), predicate.filterParallel(batch, pool));
+		
+		VectorizedExpression value = new VectorizedExpression(CompiledExpression.compile("a;"));
+		Aggregate aggregate = value.aggregateParallel(batch, new Aggregate(), pool);
+		assertEquals(ROWS, aggregate.getCount());
+		assertEquals(ROWS * (ROWS - 1) / 2.0, aggregate.getSum(), 0);
+		assertEquals(ROWS - 1.0, aggregate.getMax(), 0);
+		
+		GroupedAggregate groups = value.aggregateParallel(batch,
+				new VectorizedExpression(CompiledExpression.compile("a % 4;")), new GroupedAggregate(), pool);
+		assertEquals(4, groups.size());
+		assertEquals(ROWS / 4, groups.get(3).getCount());
+	}
+	
+	public void testExceptionPropagates() {
+		try {
+			new VectorizedExpression(CompiledExpression.compile("10 / (a - 4000);")).evaluateParallel(newBatch(), pool);
+			fail();
+		} catch(ArithmeticException e) {
+		}
+	}
+}
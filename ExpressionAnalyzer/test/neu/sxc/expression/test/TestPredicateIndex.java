@@ -0,0 +1,127 @@
+package neu.sxc.expression.test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import neu.sxc.expression.compile.Frame;
+import neu.sxc.expression.compile.rule.RuleEvaluationException;
+import neu.sxc.expression.compile.rule.RuleSet;
+import neu.sxc.expression.compile.rule.RuleSetBuilder;
+
+public class TestPredicateIndex extends TestCase {
+	
+	private static final int RULES = 2000;
+	
+	private RuleSet[] build() {
+		Random random = new Random(11);
+		RuleSetBuilder plain = new RuleSetBuilder();
+		RuleSetBuilder indexed = new RuleSetBuilder().setIndexed(true);
+		for(int i=0; i<RULES; i++) {
+			String rule;
+			int low = random.nextInt(100);
+			int key = random.nextInt(50);
+			switch(i % 8) {
+			case 0:
+				rule = "a > " + low + " && a <= " + (low + 10) + " && s == \"k" + key + "\";";
+				break;
+			case 1:
+				rule = "s == \"k" + key + "\" && b < " + low + ";";
+				break;
+			case 2:
+				rule = low + " < a && a < " + (low + 5) + " && b >= 50;";
+				break;
+			case 3:
+				rule = "a == " + low + " || b == " + low + ";";
+				break;
+			case 4:
+				rule = "d && a >= " + low + ";";
+				break;
+			case 5:
+				rule = "!d && c == '" + (char)('a' + key % 26) + "';";
+				break;
+			case 6:
+				rule = "a > " + (low + 20) + " && a < " + low + ";";
+				break;
+			default:
+				rule = "b >= " + low + " && a + b > 100;";
+				break;
+			}
+			plain.addRule("r" + i, rule);
+			indexed.addRule("r" + i, rule);
+		}
+		return new RuleSet[]{plain.build(), indexed.build()};
+	}
+	
+	private Map<String, Object> input(Random random) {
+		Map<String, Object> input = new HashMap<String, Object>();
+		input.put("a", random.nextInt(120));
+		input.put("b", random.nextInt(120));
+		input.put("s", "k" + random.nextInt(60));
+		input.put("c", (char)('a' + random.nextInt(26)));
+		input.put("d", random.nextBoolean());
+		return input;
+	}
+	
+	public void testSameMatches() {
+		RuleSet[] ruleSets = build();
+		assertFalse(ruleSets[0].isIndexed());
+		assertTrue(ruleSets[1].isIndexed());
+		//顶层为“||”的规则不能索引
+		assertEquals(RULES - RULES / 8, ruleSets[1].getIndexedRuleCount());
+		Random random = new Random(3);
+		Frame frame = ruleSets[1].newFrame();
+		long candidates = 0;
+		for(int n=0; n<300; n++) {
+			Map<String, Object> input = input(random);
+			ruleSets[1].bind(frame, input);
+			candidates += ruleSets[1].candidates(frame).length;
+			assertEquals(ruleSets[0].match(input), ruleSets[1].match(frame));
+		}
+		//候选规则远少于规则总数
+		assertTrue(candidates / 300 < RULES / 2);
+	}
+	
+	public void testUnusableValue() {
+		RuleSet[] ruleSets = build();
+		Map<String, Object> input = input(new Random(5));
+		input.put("s", 5);
+		Frame frame = ruleSets[1].newFrame();
+		ruleSets[1].bind(frame, input);
+		//类型不符时无法判断，以s索引的规则都是候选，计算时抛出类型错误
+		assertTrue(ruleSets[1].candidates(frame).length >= RULES / 4);
+		try {
+			ruleSets[1].match(frame);
+			fail();
+		} catch (RuleEvaluationException e) {
+		}
+	}
+	
+	public void testBoundaries() {
+		RuleSet ruleSet = new RuleSetBuilder().setIndexed(true)
+				.addRule("gt", "a > 5;")
+				.addRule("ge", "a >= 5;")
+				.addRule("lt", "5 > a;")
+				.addRule("range", "a >= 5 && a < 7.5;")
+				.addRule("eq", "a == 5.0;")
+				.addRule("empty", "a > 5 && a < 5;")
+				.build();
+		assertEquals("[ge, range, eq]", match(ruleSet, 5).toString());
+		assertEquals("[gt, ge, range]", match(ruleSet, 7).toString());
+		assertEquals("[gt, ge]", match(ruleSet, 7.5).toString());
+		assertEquals("[lt]", match(ruleSet, 4.99).toString());
+	}
+	
+	private List<String> match(RuleSet ruleSet, Object a) {
+		Map<String, Object> input = new HashMap<String, Object>();
+		input.put("a", a);
+		Frame frame = ruleSet.newFrame();
+		ruleSet.bind(frame, input);
+		List<String> matched = ruleSet.match(frame);
+		//候选规则中没有不匹配的区间规则
+		assertEquals(matched.size(), ruleSet.candidates(frame).length);
+		return matched;
+	}
+}
@@ -0,0 +1,136 @@
+package neu.sxc.expression.test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import neu.sxc.expression.compile.CompiledExpression;
+import neu.sxc.expression.compile.Frame;
+import neu.sxc.expression.compile.VariableResolver;
+import neu.sxc.expression.compile.rule.RuleSet;
+import neu.sxc.expression.compile.rule.RuleSetBuilder;
+import neu.sxc.expression.syntax.VariableNotInitializedException;
+import neu.sxc.expression.tokens.Valuable;
+
+public class TestResolver extends TestCase {
+	
+	/**
+	 * 从Map取值并记录被解析的变量
+	 */
+	private static class RecordingResolver implements VariableResolver {
+		
+		private final Map<String, ?> values;
+		
+		private final List<String> resolved = new ArrayList<String>();
+		
+		RecordingResolver(Map<String, ?> values) {
+			this.values = values;
+		}
+		
+		public Object resolve(String name, int slot) {
+			resolved.add(name);
+			return values.get(name);
+		}
+	}
+	
+	private static Map<String, Object> values(Object... pairs) {
+		Map<String, Object> values = new HashMap<String, Object>();
+		for(int i=0; i<pairs.length; i+=2)
+			values.put((String)pairs[i], pairs[i+1]);
+		return values;
+	}
+	
+	public void testOnlyExecutedPathIsResolved() {
+		CompiledExpression compiled = CompiledExpression.compile(
+				"if(vip) price * discount; else price + fee + fee; endif");
+		RecordingResolver resolver = new RecordingResolver(
+				values("vip", false, "price", 10, "discount", 0.5, "fee", 2));
+		Valuable result = compiled.evaluate(resolver);
+		assertEquals(0, new BigDecimal(14).compareTo(result.getNumberValue()));
+		//discount未被读取，fee只解析一次
+		assertEquals(Arrays.asList("vip", "price", "fee"), resolver.resolved);
+	}
+	
+	public void testSameResultAsEagerBinding() {
+		//分支中对输入变量的赋值保留，分支中新定义的变量失效
+		String source = "if(a > 1) x = x + a; tmp = 1; endif\n" +
+				"y = 0;\n" +
+				"if(a > 5) y = 1; else y = x; endif\n" +
+				"y;";
+		CompiledExpression compiled = CompiledExpression.compile(source);
+		Map<String, Object> input = values("a", 3, "x", 10);
+		Valuable eager = compiled.evaluate(input);
+		Valuable lazy = compiled.evaluate(new RecordingResolver(input));
+		assertEquals(0, eager.getNumberValue().compareTo(lazy.getNumberValue()));
+		assertEquals(0, new BigDecimal(13).compareTo(lazy.getNumberValue()));
+	}
+	
+	public void testUntakenNestedBranchIsNotResolved() {
+		String source = "r = 0;\n" +
+				"if(a > 1) if(a > 5) limit = limit * 2; endif r = a + 1; endif\n" +
+				"r + limit;";
+		CompiledExpression compiled = CompiledExpression.compile(source);
+		//内层分支未执行，进入外层分支时不解析limit，直到分支之后读取
+		RecordingResolver resolver = new RecordingResolver(values("a", 3, "limit", 10));
+		assertEquals(14, compiled.evaluate(resolver).getNumberValue().intValue());
+		assertEquals(Arrays.asList("r", "a", "limit"), resolver.resolved);
+		//内层分支执行时对输入变量的赋值保留
+		Map<String, Object> input = values("a", 6, "limit", 10);
+		assertEquals(27, compiled.evaluate(new RecordingResolver(input)).getNumberValue().intValue());
+		assertEquals(27, compiled.evaluate(input).getNumberValue().intValue());
+		//分支中新定义的变量在分支之后仍未定义
+		try {
+			CompiledExpression.compile("if(a > 1) if(a > 5) t = 1; endif endif t;").evaluate(new RecordingResolver(input));
+			fail();
+		} catch(VariableNotInitializedException e) {
+		}
+	}
+	
+	public void testUndefinedVariable() {
+		CompiledExpression compiled = CompiledExpression.compile("a + b;");
+		try {
+			compiled.evaluate(new RecordingResolver(values("a", 1)));
+			fail();
+		} catch(VariableNotInitializedException e) {
+		}
+	}
+	
+	public void testFrameReuse() {
+		CompiledExpression compiled = CompiledExpression.compile("a * 2;");
+		Frame frame = compiled.newFrame();
+		compiled.bind(frame, new RecordingResolver(values("a", 1)));
+		assertEquals(2, compiled.evaluate(frame).getNumberValue().intValue());
+		compiled.bind(frame, new RecordingResolver(values("a", 4)));
+		assertEquals(8, compiled.evaluate(frame).getNumberValue().intValue());
+		//clear后解析器被移除，可改为预先绑定
+		frame.clear();
+		compiled.bind(frame, values("a", 5));
+		assertFalse(frame.isResolving());
+		assertEquals(10, compiled.evaluate(frame).getNumberValue().intValue());
+	}
+	
+	public void testRuleSet() {
+		RuleSetBuilder builder = new RuleSetBuilder();
+		builder.addRule("small", "amount < 100;");
+		builder.addRule("risky", "amount >= 100 && score > 0.5;");
+		builder.addRule("counted", "n = amount; n >= 100;");
+		RuleSet rules = builder.build();
+		Frame frame = rules.newFrame();
+		RecordingResolver resolver = new RecordingResolver(values("amount", 50, "score", 0.9));
+		rules.bind(frame, resolver);
+		assertEquals(Arrays.asList("small"), rules.match(frame));
+		//&&不短路，被赋值的n也先解析，但每个变量只解析一次
+		assertEquals(3, new HashSet<String>(resolver.resolved).size());
+		assertEquals(3, resolver.resolved.size());
+		assertTrue(resolver.resolved.contains("score"));
+		
+		resolver = new RecordingResolver(values("amount", 150, "score", 0.9));
+		rules.bind(frame, resolver);
+		assertEquals(Arrays.asList("risky", "counted"), rules.match(frame));
+	}
+}
@@ -0,0 +1,121 @@
+package neu.sxc.expression.test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import neu.sxc.expression.compile.Frame;
+import neu.sxc.expression.compile.rule.MatchSession;
+import neu.sxc.expression.compile.rule.RuleEvaluationException;
+import neu.sxc.expression.compile.rule.RuleNetwork;
+import neu.sxc.expression.compile.rule.RuleSet;
+import neu.sxc.expression.compile.rule.RuleSetBuilder;
+
+public class TestRuleNetwork extends TestCase {
+	
+	private static final String[] RULES = {
+		"a > 10 && b < 5;",
+		"a > 10 && c == \"x\";",
+		"b < 5 && c == \"x\" && d;",
+		"a + b > 20 || !d;",
+		"if(d) a > b; else a < b; endif",
+		"t = a * 2; t > b;",
+		"c == \"y\";",
+		"10 / (b - 7) > 1 && a > 10;",
+	};
+	
+	private RuleSet build() {
+		RuleSetBuilder builder = new RuleSetBuilder();
+		for(int i=0; i<RULES.length; i++)
+			builder.addRule("r" + i, RULES[i]);
+		return builder.build();
+	}
+	
+	private Object randomValue(String variable, Random random) {
+		if("a".equals(variable) || "b".equals(variable))
+			return random.nextInt(20);
+		if("c".equals(variable))
+			return random.nextBoolean() ? "x" : "y";
+		return random.nextBoolean();
+	}
+	
+	public void testIncrementalMatchesFullMatch() {
+		RuleSet ruleSet = build();
+		RuleNetwork network = new RuleNetwork(ruleSet);
+		//“a > 10”在两条规则中共享
+		assertTrue(network.getAlphaCount() < 13);
+		MatchSession session = network.newSession();
+		Random random = new Random(17);
+		String[] variables = {"a", "b", "c", "d"};
+		Map<String, Object> input = new HashMap<String, Object>();
+		for(String variable : variables)
+			input.put(variable, randomValue(variable, random));
+		input.put("b", 1);
+		session.bind(input);
+		assertEquals(network.getAlphaCount(), session.getEvaluatedAlphaCount());
+		assertEquals(ruleSet.match(input), session.getMatches());
+		
+		for(int n=0; n<500; n++) {
+			if(n % 5 == 0) {
+				Map<String, Object> changes = new HashMap<String, Object>();
+				changes.put("a", randomValue("a", random));
+				changes.put("c", randomValue("c", random));
+				input.putAll(changes);
+				session.update(changes);
+			} else {
+				String variable = variables[random.nextInt(variables.length)];
+				Object value = randomValue(variable, random);
+				input.put(variable, value);
+				session.update(variable, value);
+			}
+			RuleEvaluationException expected = null;
+			try {
+				assertEquals(ruleSet.match(input), session.getMatches());
+			} catch (RuleEvaluationException e) {
+				expected = e;
+			}
+			if(expected != null) {
+				//b为7时除零
+				assertEquals(7, input.get("b"));
+				try {
+					session.getMatches();
+					fail();
+				} catch (RuleEvaluationException e) {
+					assertEquals(expected.getRuleId(), e.getRuleId());
+				}
+				//收集出错的规则时其余规则照常匹配
+				List<RuleEvaluationException> failures = new ArrayList<RuleEvaluationException>();
+				List<RuleEvaluationException> sessionFailures = new ArrayList<RuleEvaluationException>();
+				Frame frame = ruleSet.newFrame();
+				ruleSet.bind(frame, input);
+				assertEquals(ruleSet.match(frame, failures), session.getMatches(sessionFailures));
+				assertEquals(1, failures.size());
+				assertEquals(expected.getRuleId(), failures.get(0).getRuleId());
+				assertEquals(expected.getRuleId(), sessionFailures.get(0).getRuleId());
+			}
+		}
+	}
+	
+	public void testOnlyDependentNodesEvaluated() {
+		RuleSet ruleSet = build();
+		RuleNetwork network = new RuleNetwork(ruleSet);
+		MatchSession session = network.newSession();
+		Map<String, Object> input = new HashMap<String, Object>();
+		input.put("a", 12);
+		input.put("b", 1);
+		input.put("c", "x");
+		input.put("d", true);
+		session.bind(input);
+		assertTrue(session.isMatched("r1"));
+		//只有c == "x"与c == "y"依赖c
+		session.update("c", "y");
+		assertEquals(2, session.getEvaluatedAlphaCount());
+		assertFalse(session.isMatched("r1"));
+		assertTrue(session.isMatched("r6"));
+		session.update("unknown", 1);
+		assertEquals(0, session.getEvaluatedAlphaCount());
+	}
+}
@@ -0,0 +1,113 @@
+package neu.sxc.expression.test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import neu.sxc.expression.compile.CompiledExpression;
+import neu.sxc.expression.compile.Frame;
+import neu.sxc.expression.compile.rule.RuleEvaluationException;
+import neu.sxc.expression.compile.rule.RuleSet;
+import neu.sxc.expression.compile.rule.RuleSetBuilder;
+
+public class TestRuleSet extends TestCase {
+	
+	private static final String[] RULES = {
+		"a + b > 10;",
+		"a + b > 10 && c == \"x\";",
+		"a + b < 5 || a + b > 20;",
+		"if(c == \"x\") a * 2 > b; else false; endif",
+		"t = a + b; t * 2 > 30;",
+		"max(a, b) >= 8;",
+		"d;",
+	};
+	
+	private RuleSet build() {
+		RuleSetBuilder builder = new RuleSetBuilder();
+		for(int i=0; i<RULES.length; i++)
+			builder.addRule("r" + i, RULES[i]);
+		return builder.build();
+	}
+	
+	public void testSharing() {
+		RuleSet ruleSet = build();
+		assertEquals(RULES.length, ruleSet.getRuleCount());
+		assertEquals(5, ruleSet.getVariableNames().length);
+		//a + b在四条规则中出现，只保留一个节点并缓存
+		assertTrue(ruleSet.getMemoCount() >= 2);
+		assertEquals(-1, ruleSet.getSlot("unknown"));
+	}
+	
+	public void testMatchesIndividualRules() {
+		RuleSet ruleSet = build();
+		CompiledExpression[] rules = new CompiledExpression[RULES.length];
+		for(int i=0; i<RULES.length; i++)
+			rules[i] = CompiledExpression.compile(RULES[i]);
+		Random random = new Random(7);
+		Frame frame = ruleSet.newFrame();
+		for(int n=0; n<500; n++) {
+			Map<String, Object> input = new HashMap<String, Object>();
+			input.put("a", random.nextInt(20));
+			input.put("b", random.nextInt(20));
+			input.put("c", random.nextBoolean() ? "x" : "y");
+			input.put("d", random.nextBoolean());
+			List<String> expected = new ArrayList<String>();
+			for(int i=0; i<RULES.length; i++)
+				if(CompiledExpression.isTrue(rules[i].evaluate(input)))
+					expected.add("r" + i);
+			//帧在多次匹配间复用
+			ruleSet.bind(frame, input);
+			assertEquals(expected, ruleSet.match(frame));
+			assertEquals(expected, ruleSet.match(input));
+		}
+	}
+	
+	public void testAssigningRuleReusesFrame() {
+		RuleSet ruleSet = new RuleSetBuilder().addRule("r", "t = a * 2; if(a > 5) u = 1; endif t > 10;").build();
+		Frame frame = ruleSet.newFrame();
+		Map<String, Object> input = new HashMap<String, Object>();
+		input.put("a", 6);
+		ruleSet.bind(frame, input);
+		assertTrue(ruleSet.matches(frame, 0));
+		Frame own = frame.getChild(0);
+		assertNotNull(own);
+		//复用的附属帧不保留上次匹配的变量
+		input.put("a", 3);
+		ruleSet.bind(frame, input);
+		assertFalse(ruleSet.matches(frame, 0));
+		assertSame(own, frame.getChild(0));
+	}
+	
+	public void testErrors() {
+		RuleSet ruleSet = new RuleSetBuilder().addRule("ok", "a > 1;").addRule("number", "a + 1;").build();
+		Map<String, Object> input = new HashMap<String, Object>();
+		input.put("a", 3);
+		try {
+			ruleSet.match(input);
+			fail();
+		} catch (RuleEvaluationException e) {
+			assertEquals("number", e.getRuleId());
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		//出错的规则不影响其余规则
+		ruleSet = new RuleSetBuilder().addRule("ok", "a > 1;").addRule("number", "a + 1;")
+				.addRule("assign", "t = a * 2; t > 5;").build();
+		Frame frame = ruleSet.newFrame();
+		ruleSet.bind(frame, input);
+		List<RuleEvaluationException> failures = new ArrayList<RuleEvaluationException>();
+		List<String> expected = new ArrayList<String>();
+		expected.add("ok");
+		expected.add("assign");
+		assertEquals(expected, ruleSet.match(frame, failures));
+		assertEquals(1, failures.size());
+		assertEquals("number", failures.get(0).getRuleId());
+		try {
+			new RuleSetBuilder().addRule("r", "a > 1;").addRule("r", "a > 2;");
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+	}
+}
@@ -0,0 +1,275 @@
+package neu.sxc.expression.test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+import neu.sxc.expression.Expression;
+import neu.sxc.expression.ExpressionFactory;
+import neu.sxc.expression.service.ExpressionService;
+import neu.sxc.expression.syntax.function.Function;
+import neu.sxc.expression.tokens.DataType;
+import neu.sxc.expression.tokens.Valuable;
+
+public class TestService extends TestCase {
+	
+	private ExpressionService service = new ExpressionService(4, 2);
+	
+	/**
+	 * 阻塞直到latch被释放，模拟查库等阻塞操作
+	 */
+	private CountDownLatch latch = new CountDownLatch(1);
+	
+	private AtomicInteger running = new AtomicInteger();
+	
+	private AtomicInteger maxRunning = new AtomicInteger();
+	
+	@Override
+	protected void setUp() throws Exception {
+		Expression expression = ExpressionFactory.getInstance().getExpression("block(a) + 1;");
+		expression.addFunction(new Function() {
+			@Override
+			public String getName() {
+				return "block";
+			}
+			
+			@Override
+			public int getArgumentNum() {
+				return 1;
+			}
+			
+			@Override
+			public DataType[] getArgumentsDataType() {
+				return new DataType[]{DataType.NUMBER};
+			}
+			
+			@Override
+			protected Object executeFunction(Valuable[] arguments) {
+				int current = running.incrementAndGet();
+				int max;
+				while((max = maxRunning.get()) < current && !maxRunning.compareAndSet(max, current));
+				try {
+					latch.await();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				} finally {
+					running.decrementAndGet();
+				}
+				return arguments[0].getNumberValue();
+			}
+		});
+		expression.lexicalAnalysis();
+		service.register("block", expression.compile());
+		service.register("add", "a + b;");
+	}
+	
+	@Override
+	protected void tearDown() throws Exception {
+		latch.countDown();
+		service.close();
+	}
+	
+	private Map<String, Object> bindings(int a) {
+		Map<String, Object> bindings = new HashMap<String, Object>();
+		bindings.put("a", a);
+		bindings.put("b", 10);
+		return bindings;
+	}
+	
+	public void testEvaluate() throws Exception {
+		Valuable result = service.evaluate("t1", "add", bindings(5), 5, TimeUnit.SECONDS);
+		assertEquals(0, new BigDecimal(15).compareTo(result.getNumberValue()));
+		try {
+			service.submit("t1", "unknown", bindings(5));
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+	}
+	
+	public void testTenantLimit() throws Exception {
+		service.setTenantLimit("t1", 1);
+		Future<Valuable> first = service.submit("t1", "block", bindings(1));
+		Future<Valuable> second = service.submit("t1", "block", bindings(2));
+		Future<Valuable> other = service.submit("t2", "block", bindings(3));
+		//t1的第二个请求须等待许可，t2不受影响
+		long deadline = System.currentTimeMillis() + 5000;
+		while(running.get() < 2 && System.currentTimeMillis() < deadline)
+			Thread.sleep(5);
+		Thread.sleep(50);
+		assertEquals(2, running.get());
+		latch.countDown();
+		assertEquals(0, new BigDecimal(2).compareTo(first.get(5, TimeUnit.SECONDS).getNumberValue()));
+		assertEquals(0, new BigDecimal(3).compareTo(second.get(5, TimeUnit.SECONDS).getNumberValue()));
+		assertEquals(0, new BigDecimal(4).compareTo(other.get(5, TimeUnit.SECONDS).getNumberValue()));
+		assertEquals(2, maxRunning.get());
+	}
+	
+	public void testQueuedWithoutThreads() throws Exception {
+		ExpressionService queued = new ExpressionService(32, 1, 2);
+		queued.register("block", service.getExpression("block"));
+		List<Future<Valuable>> futures = new ArrayList<Future<Valuable>>();
+		for(int i=0; i<20; i++)
+			futures.add(queued.submit("t1", "block", bindings(i)));
+		Future<Valuable> expired = queued.submit("t1", "block", bindings(99), 50, TimeUnit.MILLISECONDS);
+		long deadline = System.currentTimeMillis() + 5000;
+		while(running.get() == 0 && System.currentTimeMillis() < deadline)
+			Thread.sleep(5);
+		//在队列中等待的请求不占用线程，到期后直接移出队列
+		try {
+			expired.get(5, TimeUnit.SECONDS);
+			fail();
+		} catch (CancellationException e) {
+		}
+		assertEquals(1, running.get());
+		assertTrue(countServiceThreads() <= 2);
+		//关闭后已接受的请求仍依次执行
+		queued.close();
+		latch.countDown();
+		for(int i=0; i<20; i++)
+			assertEquals(0, new BigDecimal(i + 1).compareTo(futures.get(i).get(5, TimeUnit.SECONDS).getNumberValue()));
+		assertEquals(1, maxRunning.get());
+		assertTrue(queued.awaitTermination(5, TimeUnit.SECONDS));
+	}
+	
+	private int countServiceThreads() {
+		int count = 0;
+		for(Thread thread : Thread.getAllStackTraces().keySet())
+			if(thread.getName().startsWith("expression-service-"))
+				count++;
+		return count;
+	}
+	
+	public void testRejection() throws Exception {
+		List<Future<Valuable>> futures = new ArrayList<Future<Valuable>>();
+		for(int i=0; i<4; i++)
+			futures.add(service.submit("t" + i, "block", bindings(i)));
+		try {
+			service.submit("t9", "add", bindings(1));
+			fail();
+		} catch (RejectedExecutionException e) {
+		}
+		latch.countDown();
+		for(Future<Valuable> future : futures)
+			future.get(5, TimeUnit.SECONDS);
+		//名额在请求结束时归还
+		long deadline = System.currentTimeMillis() + 5000;
+		while(service.getPendingCount() > 0 && System.currentTimeMillis() < deadline)
+			Thread.sleep(5);
+		assertEquals(0, service.getPendingCount());
+		service.submit("t9", "add", bindings(1)).get(5, TimeUnit.SECONDS);
+	}
+	
+	public void testDeadline() throws Exception {
+		Future<Valuable> future = service.submit("t1", "block", bindings(1), 50, TimeUnit.MILLISECONDS);
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			fail();
+		} catch (CancellationException e) {
+		}
+		//被中断的计算线程退出阻塞
+		long deadline = System.currentTimeMillis() + 5000;
+		while(running.get() > 0 && System.currentTimeMillis() < deadline)
+			Thread.sleep(5);
+		assertEquals(0, running.get());
+	}
+	
+	public void testDeadlineHoldsPendingUntilExit() throws Exception {
+		//忽略中断的函数在期限后仍在运行，名额在其退出后才归还
+		final CountDownLatch release = new CountDownLatch(1);
+		Expression expression = ExpressionFactory.getInstance().getExpression("stubborn(1);");
+		expression.addFunction(new Function() {
+			@Override
+			public String getName() {
+				return "stubborn";
+			}
+			
+			@Override
+			public int getArgumentNum() {
+				return 1;
+			}
+			
+			@Override
+			public DataType[] getArgumentsDataType() {
+				return new DataType[]{DataType.NUMBER};
+			}
+			
+			@Override
+			protected Object executeFunction(Valuable[] arguments) {
+				running.incrementAndGet();
+				boolean interrupted = false;
+				while(true) {
+					try {
+						release.await();
+						break;
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+				running.decrementAndGet();
+				if(interrupted)
+					Thread.currentThread().interrupt();
+				return arguments[0].getNumberValue();
+			}
+		});
+		expression.lexicalAnalysis();
+		ExpressionService single = new ExpressionService(1, 1);
+		single.register("stubborn", expression.compile());
+		single.register("add", "a + b;");
+		Future<Valuable> future = single.submit("t1", "stubborn", bindings(1), 200, TimeUnit.MILLISECONDS);
+		long deadline = System.currentTimeMillis() + 5000;
+		while(running.get() == 0 && System.currentTimeMillis() < deadline)
+			Thread.sleep(5);
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			fail();
+		} catch(CancellationException e) {
+		}
+		assertEquals(1, running.get());
+		assertEquals(1, single.getPendingCount());
+		try {
+			single.submit("t2", "add", bindings(1));
+			fail();
+		} catch (RejectedExecutionException e) {
+		}
+		//关闭后执行器等到计算线程退出才终止
+		single.close();
+		assertFalse(single.awaitTermination(50, TimeUnit.MILLISECONDS));
+		release.countDown();
+		assertTrue(single.awaitTermination(5, TimeUnit.SECONDS));
+		assertEquals(0, single.getPendingCount());
+	}
+	
+	public void testCancel() throws Exception {
+		Future<Valuable> future = service.submit("t1", "block", bindings(1));
+		long deadline = System.currentTimeMillis() + 5000;
+		while(running.get() == 0 && System.currentTimeMillis() < deadline)
+			Thread.sleep(5);
+		assertTrue(future.cancel(true));
+		try {
+			future.get();
+			fail();
+		} catch (CancellationException e) {
+		}
+		try {
+			service.submit("t1", "add", bindings(1), 5, TimeUnit.SECONDS).get();
+		} catch (ExecutionException e) {
+			fail();
+		}
+		service.close();
+		try {
+			service.submit("t1", "add", bindings(1));
+			fail();
+		} catch (RejectedExecutionException e) {
+		}
+	}
+}
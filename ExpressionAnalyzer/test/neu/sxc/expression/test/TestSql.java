@@ -0,0 +1,134 @@
+package neu.sxc.expression.test;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import neu.sxc.expression.compile.CompiledExpression;
+import neu.sxc.expression.compile.sql.SqlFilter;
+import neu.sxc.expression.compile.sql.SqlTranslator;
+import neu.sxc.expression.tokens.DataType;
+
+public class TestSql extends TestCase {
+	
+	private static SqlTranslator translator() {
+		return new SqlTranslator()
+				.mapColumn("age", "t.age")
+				.mapColumn("name", "t.name")
+				.mapColumn("price", "t.price")
+				.mapColumn("qty", "t.qty")
+				.mapColumn("vip", "t.vip")
+				.mapColumn("created", "t.created_at");
+	}
+	
+	public void testComparisonsAndLogic() {
+		SqlFilter filter = translator().setBinaryCollation(true).translate(CompiledExpression.compile(
+				"age >= 18 && (name == \"bob\" || !vip) && price * qty - 5 > 100;"));
+		assertTrue(filter.isComplete());
+		assertEquals("t.age >= ? AND (t.name = ? OR NOT t.vip = ?) AND t.price * t.qty - ? > ?",
+				filter.getWhere());
+		assertEquals(Arrays.asList((Object)new BigDecimal(18), "bob", Boolean.TRUE,
+				new BigDecimal(5), new BigDecimal(100)), filter.getParameters());
+	}
+	
+	public void testParentheses() {
+		SqlFilter filter = translator().translate(CompiledExpression.compile(
+				"price - (qty - 1) > -(age + 1) && !(age > 1 && age < 5);"));
+		assertEquals("t.price - (t.qty - ?) > -(t.age + ?) AND NOT (t.age > ? AND t.age < ?)",
+				filter.getWhere());
+		assertEquals(4, filter.getParameters().size());
+	}
+	
+	public void testFunctionsAndDates() {
+		SqlFilter filter = translator().setBinaryCollation(true).translate(CompiledExpression.compile(
+				"abs(price) <= max(qty, 10) && created >= [2024-01-31] && name != 'x';"));
+		assertEquals("ABS(t.price) <= GREATEST(t.qty, ?) AND t.created_at >= ? AND t.name <> ?",
+				filter.getWhere());
+		Timestamp date = (Timestamp)filter.getParameters().get(1);
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTime(date);
+		assertEquals(2024, calendar.get(Calendar.YEAR));
+		assertEquals(Calendar.JANUARY, calendar.get(Calendar.MONTH));
+		assertEquals(31, calendar.get(Calendar.DAY_OF_MONTH));
+		assertEquals("x", filter.getParameters().get(2));
+	}
+	
+	public void testResidual() {
+		//未映射的变量、除法和自定义函数留在Java中计算
+		CompiledExpression predicate = CompiledExpression.compile(
+				"age > 18 && score / 2 > 10 && price > 0 && (vip || getDate() > created);", new CurrentDate());
+		SqlFilter filter = translator().translate(predicate);
+		assertFalse(filter.isComplete());
+		assertEquals("t.age > ? AND t.price > ?", filter.getWhere());
+		CompiledExpression residual = filter.getResidual();
+		assertNull(residual.getFingerprint());
+		assertEquals(new LinkedHashSet<String>(Arrays.asList("score", "vip", "created")),
+				residual.analyze().getRequiredInputs());
+		
+		Map<String, Object> row = new HashMap<String, Object>();
+		row.put("score", 30);
+		row.put("vip", false);
+		Calendar created = Calendar.getInstance();
+		created.add(Calendar.DAY_OF_MONTH, -1);
+		row.put("created", created);
+		assertTrue(residual.evaluate(row).getBooleanValue());
+		row.put("score", 10);
+		assertFalse(residual.evaluate(row).getBooleanValue());
+	}
+	
+	public void testUntranslatable() {
+		CompiledExpression predicate = CompiledExpression.compile("x = age + 1; x > 10;");
+		SqlFilter filter = translator().translate(predicate);
+		assertNull(filter.getWhere());
+		assertSame(predicate, filter.getResidual());
+		
+		filter = translator().translate(CompiledExpression.compile("name + \"a\" == \"ba\";"));
+		assertNull(filter.getWhere());
+		assertTrue(filter.getParameters().isEmpty());
+	}
+	
+	public void testStringComparison() {
+		//数据库的排序规则可能不区分大小写，字符串比较默认在Java中计算
+		CompiledExpression predicate = CompiledExpression.compile("age > 18 && name == \"bob\" && city < title;");
+		SqlTranslator translator = translator().mapColumn("city", "t.city").mapColumn("title", "t.title");
+		SqlFilter filter = translator.translate(predicate);
+		assertEquals("t.age > ?", filter.getWhere());
+		Map<String, Object> row = new HashMap<String, Object>();
+		row.put("name", "Bob");
+		row.put("city", "a");
+		row.put("title", "b");
+		assertFalse(filter.getResidual().evaluate(row).getBooleanValue());
+		row.put("name", "bob");
+		assertTrue(filter.getResidual().evaluate(row).getBooleanValue());
+		//声明为DATE的列与其他列比较时可翻译
+		filter = translator().mapColumn("created", "t.created_at", DataType.DATE).mapColumn("updated", "t.updated")
+				.translate(CompiledExpression.compile("created <= updated;"));
+		assertEquals("t.created_at <= t.updated", filter.getWhere());
+		//二进制排序规则下与Java的比较结果相同
+		filter = translator.setBinaryCollation(true).translate(predicate);
+		assertTrue(filter.isComplete());
+		assertEquals("t.age > ? AND t.name = ? AND t.city < t.title", filter.getWhere());
+	}
+	
+	public void testAddition() {
+		//类型未知的两列相加可能是字符串连接，不翻译
+		CompiledExpression predicate = CompiledExpression.compile("price + qty > 3 && first + last == \"ab\";");
+		SqlTranslator translator = translator().mapColumn("first", "t.first").mapColumn("last", "t.last");
+		SqlFilter filter = translator.translate(predicate);
+		assertNull(filter.getWhere());
+		assertSame(predicate, filter.getResidual());
+		//声明为NUMBER的列或数值常量参与时翻译
+		translator.mapColumn("price", "t.price", DataType.NUMBER);
+		filter = translator.translate(predicate);
+		assertEquals("t.price + t.qty > ?", filter.getWhere());
+		assertEquals(new LinkedHashSet<String>(Arrays.asList("first", "last")),
+				filter.getResidual().analyze().getRequiredInputs());
+		filter = translator().translate(CompiledExpression.compile("qty + age * 2 + price > 3;"));
+		assertEquals("t.qty + t.age * ? + t.price > ?", filter.getWhere());
+	}
+}
@@ -0,0 +1,110 @@
+package neu.sxc.expression.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+import junit.framework.TestCase;
+import neu.sxc.expression.compile.CompiledExpression;
+import neu.sxc.expression.compile.stream.ExpressionAdapter;
+import neu.sxc.expression.compile.stream.FieldAccessor;
+
+public class TestStream extends TestCase {
+	
+	private static class Order {
+		final int quantity;
+		final double price;
+		final String region;
+		
+		Order(int quantity, double price, String region) {
+			this.quantity = quantity;
+			this.price = price;
+			this.region = region;
+		}
+	}
+	
+	private static final FieldAccessor<Order> QUANTITY = new FieldAccessor<Order>() {
+		public Object get(Order order) {
+			return order.quantity;
+		}
+	};
+	
+	private static final FieldAccessor<Order> PRICE = new FieldAccessor<Order>() {
+		public Object get(Order order) {
+			return order.price;
+		}
+	};
+	
+	private static final FieldAccessor<Order> REGION = new FieldAccessor<Order>() {
+		public Object get(Order order) {
+			return order.region;
+		}
+	};
+	
+	private static List<Order> orders(int count) {
+		List<Order> orders = new ArrayList<Order>();
+		for(int i=0; i<count; i++)
+			orders.add(new Order(i % 10, i * 0.5, i % 3 == 0 ? "north" : "south"));
+		return orders;
+	}
+	
+	public void testParallelFilter() {
+		Predicate<Order> predicate = new ExpressionAdapter<Order>(CompiledExpression.compile(
+				"quantity * price > 100 && region == \"north\";"))
+				.bind("quantity", QUANTITY).bind("price", PRICE).bind("region", REGION)
+				.toPredicate();
+		List<Order> orders = orders(10000);
+		long expected = 0;
+		for(Order order : orders)
+			if(order.quantity * order.price > 100 && order.region.equals("north"))
+				expected++;
+		assertEquals(expected, orders.parallelStream().filter(predicate).count());
+	}
+	
+	public void testNumericFunctions() {
+		ToDoubleFunction<Order> amount = new ExpressionAdapter<Order>(CompiledExpression.compile("quantity * price;"))
+				.bind("quantity", QUANTITY).bind("price", PRICE).toDoubleFunction();
+		ToLongFunction<Order> doubled = new ExpressionAdapter<Order>(CompiledExpression.compile("quantity * 2;"))
+				.bind("quantity", QUANTITY).toLongFunction();
+		List<Order> orders = orders(100);
+		double expected = 0;
+		long expectedLong = 0;
+		for(Order order : orders) {
+			expected += order.quantity * order.price;
+			expectedLong += order.quantity * 2;
+		}
+		assertEquals(expected, orders.stream().mapToDouble(amount).sum(), 1e-9);
+		assertEquals(expectedLong, orders.parallelStream().mapToLong(doubled).sum());
+	}
+	
+	public void testLazyAccess() {
+		final AtomicInteger reads = new AtomicInteger();
+		FieldAccessor<Order> countingPrice = new FieldAccessor<Order>() {
+			public Object get(Order order) {
+				reads.incrementAndGet();
+				return order.price;
+			}
+		};
+		Predicate<Order> predicate = new ExpressionAdapter<Order>(CompiledExpression.compile(
+				"if(quantity > 5) price > 1; else false; endif"))
+				.bind("quantity", QUANTITY).bind("price", countingPrice).toPredicate();
+		List<Order> orders = orders(10);
+		assertEquals(4, orders.stream().filter(predicate).count());
+		//只有quantity > 5的元素读取price
+		assertEquals(4, reads.get());
+	}
+	
+	public void testUnboundVariable() {
+		ExpressionAdapter<Order> adapter = new ExpressionAdapter<Order>(CompiledExpression.compile("quantity > limit;"))
+				.bind("quantity", QUANTITY);
+		try {
+			adapter.toPredicate();
+			fail();
+		} catch(IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("limit"));
+		}
+	}
+}
@@ -0,0 +1,155 @@
+package neu.sxc.expression.test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import neu.sxc.expression.ExpressionFactory;
+import neu.sxc.expression.compile.CompiledExpression;
+import neu.sxc.expression.compile.vector.Column;
+import neu.sxc.expression.compile.vector.ColumnBatch;
+import neu.sxc.expression.compile.vector.VectorizedExpression;
+import neu.sxc.expression.tokens.DataType;
+import neu.sxc.expression.tokens.Valuable;
+
+public class TestVector extends TestCase {
+	
+	private static final int ROWS = 100;
+	
+	private ColumnBatch newBatch() {
+		long[] amount = new long[ROWS];
+		double[] limit = new double[ROWS];
+		String[] name = new String[ROWS];
+		for(int i=0; i<ROWS; i++) {
+			amount[i] = i;
+			limit[i] = 50.5;
+			name[i] = "n" + (i % 7);
+		}
+		return new ColumnBatch(ROWS).addLongs("amount", amount)
+				.addDoubles("limit", limit).addStrings("name", name);
+	}
+	
+	/**
+	 * 列计算结果与逐行计算结果一致
+	 */
+	private void assertSameAsRows(CompiledExpression compiled, ColumnBatch batch, Column column) {
+		assertEquals(batch.getRowCount(), column.size());
+		for(int row=0; row<batch.getRowCount(); row++) {
+			Map<String, Object> variables = new HashMap<String, Object>();
+			for(Map.Entry<String, Column> entry : batch.getColumns().entrySet())
+				variables.put(entry.getKey(), entry.getValue().getValuable(row));
+			Valuable expected = compiled.evaluate(variables);
+			if(expected == null) {
+				assertTrue(column.isNull(row));
+			} else if(expected.getDataType() == DataType.NUMBER) {
+				assertEquals(expected.getNumberValue().doubleValue(), column.getDouble(row), 1e-9);
+			} else {
+				assertEquals(expected.getValue(), column.getValuable(row).getValue());
+			}
+		}
+	}
+	
+	public void testSameResultAsRows() {
+		String[] sources = {
+			"risk = 0; if(amount > limit) risk = amount - limit; else risk = -abs(amount % 3); endif risk * 2;",
+			"judge(amount >= 10 && !(amount == 20) || name == \"n1\", max(amount, limit, 3), amount / 4);",
+			"s = name + \"_\"; if(amount < 30) if(amount <= 10) s = s + \"low\"; else s = s + \"mid\"; endif endif s;",
+			"[2011-01-01] < [2011-01-02] && amount != 5;"
+		};
+		ColumnBatch batch = newBatch();
+		for(String source : sources) {
+			CompiledExpression compiled = CompiledExpression.compile(source);
+			//块大小7时只有尾部循环，默认块大小时数值内核可使用SIMD
+			for(int chunkSize : new int[]{7, VectorizedExpression.DEFAULT_CHUNK_SIZE}) {
+				VectorizedExpression vectorized = new VectorizedExpression(compiled, chunkSize);
+				assertTrue(source, vectorized.isVectorized(batch));
+				assertSameAsRows(compiled, batch, vectorized.evaluate(batch));
+			}
+		}
+	}
+	
+	public void testRowsWithoutResult() {
+		CompiledExpression compiled = CompiledExpression.compile("if(amount > 90) amount; endif");
+		Column column = new VectorizedExpression(compiled).evaluate(newBatch());
+		assertTrue(column.hasNulls());
+		assertTrue(column.isNull(90));
+		assertEquals(91.0, column.getDouble(91), 0);
+		assertSameAsRows(compiled, newBatch(), column);
+	}
+	
+	public void testFallbackToRows() {
+		//CHARACTER类型不支持列计算
+		CompiledExpression compiled = CompiledExpression.compile("name + 'c';");
+		VectorizedExpression vectorized = new VectorizedExpression(compiled);
+		ColumnBatch batch = newBatch();
+		assertFalse(vectorized.isVectorized(batch));
+		assertSameAsRows(compiled, batch, vectorized.evaluate(batch));
+		
+		//含空值的列逐行计算
+		boolean[] nulls = new boolean[ROWS];
+		nulls[3] = true;
+		batch.addColumn("amount", Column.withNulls(batch.getColumn("amount"), nulls));
+		vectorized = new VectorizedExpression(CompiledExpression.compile("if(amount > 2) 1; endif"));
+		assertFalse(vectorized.isVectorized(batch));
+		try {
+			vectorized.evaluate(batch);
+			fail();
+		} catch(RuntimeException e) {
+			//第3行变量未定义
+		}
+	}
+	
+	public void testDividedByZero() {
+		VectorizedExpression vectorized = new VectorizedExpression(CompiledExpression.compile("if(amount > 0) 1 / amount; endif"));
+		assertEquals(1.0, vectorized.evaluate(newBatch()).getDouble(1), 0);
+		try {
+			new VectorizedExpression(CompiledExpression.compile("1 / amount;")).evaluate(newBatch());
+			fail();
+		} catch(ArithmeticException e) {
+		}
+	}
+	
+	/**
+	 * 数值精度：列计算、含空值标志时的逐行计算与解释执行结果相同
+	 */
+	public void testSameAsRowsForExactNumbers() {
+		long[] big = {9007199254740992L, 9007199254740993L, Long.MAX_VALUE, 3};
+		double[] a = {0.1, 0.1, 0.5, 1};
+		double[] b = {0.2, 0.2, 0.25, 2};
+		ColumnBatch batch = new ColumnBatch(4).addLongs("big", big).addDoubles("a", a).addDoubles("b", b);
+		ColumnBatch masked = new ColumnBatch(4).addLongs("big", big).addDoubles("a", a).addDoubles("b", b);
+		for(String name : new String[]{"big", "a", "b"})
+			masked.addColumn(name, Column.withNulls(batch.getColumn(name), new boolean[4]));
+		String[] sources = {
+			"a + b == 0.3;",
+			"a + b > 0.3;",
+			"big == 9007199254740993;",
+			"big > 9007199254740992 && big < 9007199254740994;",
+			"big + 1 > 0;",
+			"big > a;",
+			"x = big % 5; if(a < 0.5) x = x / 2; endif x > 1;",
+			"judge(a == 0.1, big - 3, a * 2) != 1;"
+		};
+		for(String source : sources) {
+			CompiledExpression compiled = CompiledExpression.compile(source);
+			VectorizedExpression vectorized = new VectorizedExpression(compiled);
+			Column column = vectorized.evaluate(batch);
+			Column rows = vectorized.evaluate(masked);
+			for(int row=0; row<4; row++) {
+				Map<String, Object> variables = new HashMap<String, Object>();
+				for(Map.Entry<String, Column> entry : batch.getColumns().entrySet())
+					variables.put(entry.getKey(), entry.getValue().getValuable(row));
+				Object expected = compiled.evaluate(variables).getValue();
+				assertEquals(source + " row " + row, expected, column.getValuable(row).getValue());
+				assertEquals(source + " row " + row, expected, rows.getValuable(row).getValue());
+			}
+		}
+		//整数比较以long精确计算
+		assertTrue(new VectorizedExpression(CompiledExpression.compile("big == 9007199254740993;")).isVectorized(batch));
+		assertEquals(Boolean.FALSE, new VectorizedExpression(CompiledExpression.compile("big == 9007199254740993;"))
+				.evaluate(batch).getValuable(0).getValue());
+		//含小数的运算结果不参与比较
+		assertFalse(new VectorizedExpression(CompiledExpression.compile("a + b == 0.3;")).isVectorized(batch));
+		assertTrue(new VectorizedExpression(CompiledExpression.compile("a * 2 + b;")).isVectorized(batch));
+	}
+}
@@ -0,0 +1,52 @@
+package neu.sxc.expression.test;
+
+import java.util.Random;
+
+import neu.sxc.expression.compile.CompiledExpression;
+import neu.sxc.expression.compile.vector.ColumnBatch;
+import neu.sxc.expression.compile.vector.VectorizedExpression;
+
+/**
+ * 列计算基准测试，比较SIMD内核与标量内核：
+ * java --add-modules jdk.incubator.vector neu.sxc.expression.test.VectorBenchmark
+ * java -Dexpression.simd=false neu.sxc.expression.test.VectorBenchmark
+ */
+public class VectorBenchmark {
+	
+	private static final int ROWS = 1 << 20;
+	
+	private static final int ROUNDS = 50;
+	
+	public static void main(String[] args) {
+		String[] sources = {
+			"a > 1000 && b < 0.5;",
+			"a * 3 - a % 7 <= 15000;",
+			"(a >= 10 || b == 0.25) && a < 5000;"
+		};
+		Random random = new Random(1);
+		long[] a = new long[ROWS];
+		double[] b = new double[ROWS];
+		for(int i=0; i<ROWS; i++) {
+			a[i] = random.nextInt(10000);
+			b[i] = random.nextDouble();
+		}
+		ColumnBatch batch = new ColumnBatch(ROWS).addLongs("a", a).addDoubles("b", b);
+		
+		Printer.println("SIMD enabled: " + VectorizedExpression.isSimdEnabled());
+		for(String source : sources) {
+			CompiledExpression compiled = CompiledExpression.compile(source);
+			VectorizedExpression vectorized = new VectorizedExpression(compiled);
+			//退回逐行计算的表达式测的是解释器而非内核
+			if(!vectorized.isVectorized(batch))
+				throw new IllegalStateException(source + " is not vectorized.");
+			//预热
+			for(int i=0; i<ROUNDS; i++)
+				vectorized.filter(batch);
+			long start = System.nanoTime();
+			for(int i=0; i<ROUNDS; i++)
+				vectorized.filter(batch);
+			double nanosPerRow = (double)(System.nanoTime() - start) / ROUNDS / ROWS;
+			Printer.println(source + "  " + String.format("%.3f", nanosPerRow) + " ns/row");
+		}
+	}
+}